@@ -0,0 +1,11 @@
+package com.microsoft.cse.redis.api.bulk;
+
+/**
+ * Gets the progress of a bulk load, every BULK_PROGRESS_RECORDS records and
+ * once more when the load is done.
+ */
+@FunctionalInterface
+public interface BulkLoadListener
+{
+	void onProgress(BulkLoadResult progress);
+}
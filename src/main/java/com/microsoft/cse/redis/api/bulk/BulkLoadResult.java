@@ -0,0 +1,99 @@
+package com.microsoft.cse.redis.api.bulk;
+
+/**
+ * Counters of a bulk load, snapshot export or restore, while it runs or once it
+ * is done.
+ */
+public class BulkLoadResult
+{
+	private final long records;
+	private final long skipped;
+	private final long commands;
+	private final long replies;
+	private final long errors;
+	private final String firstError;
+	private final long bytes;
+	private final long elapsedMSec;
+	private final boolean done;
+
+	BulkLoadResult(long records, long skipped, long commands, long replies, long errors, String firstError,
+			long bytes, long elapsedMSec, boolean done)
+	{
+		this.records = records;
+		this.skipped = skipped;
+		this.commands = commands;
+		this.replies = replies;
+		this.errors = errors;
+		this.firstError = firstError;
+		this.bytes = bytes;
+		this.elapsedMSec = elapsedMSec;
+		this.done = done;
+	}
+
+	// Records read and sent
+	public long getRecords()
+	{
+		return records;
+	}
+
+	// Lines that could not be parsed
+	public long getSkipped()
+	{
+		return skipped;
+	}
+
+	// Commands sent, a record is one command plus an EXPIRE when its key starts
+	public long getCommands()
+	{
+		return commands;
+	}
+
+	public long getReplies()
+	{
+		return replies;
+	}
+
+	// Commands Redis replied to with an error
+	public long getErrors()
+	{
+		return errors;
+	}
+
+	public String getFirstError()
+	{
+		return firstError;
+	}
+
+	// Bytes of the file read so far
+	public long getBytes()
+	{
+		return bytes;
+	}
+
+	public long getElapsedMSec()
+	{
+		return elapsedMSec;
+	}
+
+	public boolean isDone()
+	{
+		return done;
+	}
+
+	public double getRecordsPerSecond()
+	{
+		return (elapsedMSec == 0) ? 0 : ((records * 1000.0) / elapsedMSec);
+	}
+
+	public double getBytesPerSecond()
+	{
+		return (elapsedMSec == 0) ? 0 : ((bytes * 1000.0) / elapsedMSec);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d records (%d skipped), %d commands, %d replies, %d errors in %d ms: %.0f records/s",
+				records, skipped, commands, replies, errors, elapsedMSec, getRecordsPerSecond());
+	}
+}
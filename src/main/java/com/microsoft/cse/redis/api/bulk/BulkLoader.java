@@ -0,0 +1,272 @@
+package com.microsoft.cse.redis.api.bulk;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.microsoft.cse.redis.api.exceptions.RedisApiException;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory.conn_type;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Loads CSV or NDJSON files into Redis at the speed of the network rather than
+ * of round trips. The file is memory mapped and scanned line by line, each
+ * record is encoded as RESP and streamed on a connection of its own without
+ * waiting for the replies, which are counted in the background. With sharding
+ * there is one such stream per shard. Values get the TTL DataFactory would
+ * give them, REDIS_DATA_EXPIRE, unless the record has its own.
+ *
+ * See BulkRecord for the record formats.
+ */
+public class BulkLoader
+{
+	public enum Format
+	{
+		CSV, NDJSON
+	}
+
+	// Largest part of the file mapped at once; no line can be longer
+	private static final long REGION = 1L << 28;
+
+	// Number of bad lines logged, the others are only counted
+	private static final int LOGGED_SKIPS = 10;
+
+	private final ConnectionFactory conn;
+	private final int bufferSize;
+	private final int maxInFlight;
+	private final long progressEvery;
+	private final int defaultTtl;
+	private BulkLoadListener listener;
+
+	public BulkLoader() throws RedisApiException
+	{
+		this(ConnectionFactory.getConnection());
+	}
+
+	// Loads with the connections of a named data source, e.g.
+	// new BulkLoader(DataSources.get("bulk"))
+	public BulkLoader(DataFactory data) throws RedisApiException
+	{
+		this(data.getConnectionFactory());
+	}
+
+	private BulkLoader(ConnectionFactory conn) throws RedisApiException
+	{
+		this.conn = conn;
+		if ((conn.getSelectedType() == conn_type.SPRING) || (conn.getSelectedType() == conn_type.JEDIS))
+		{
+			throw new RedisApiException(
+					"Bulk loads need a pooled Jedis connection, not " + conn.getSelectedType().name());
+		}
+
+		bufferSize = ConfigurationManager.getBulkBufferSize();
+		maxInFlight = ConfigurationManager.getBulkMaxInFlight();
+		progressEvery = Math.max(1, ConfigurationManager.getBulkProgressRecords());
+		defaultTtl = ConfigurationManager.getRedisDataExpireSec();
+	}
+
+	public void setListener(BulkLoadListener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Loads a file. Records are sent in file order on each connection, so a later
+	 * record for a key overwrites an earlier one.
+	 *
+	 * @return the counters of the load; records Redis rejected are counted as
+	 *         errors, lines that could not be parsed as skipped
+	 * @throws IOException if the file can't be read or a connection fails
+	 */
+	public BulkLoadResult load(Path file, Format format) throws IOException
+	{
+		Load load = new Load(format);
+		boolean ok = false;
+
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long size = ch.size();
+			long start = 0;
+
+			while (start < size)
+			{
+				long length = Math.min(REGION, size - start);
+				MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, start, length);
+				boolean last = (start + length) == size;
+				load.regionStart = start;
+
+				int lineStart = 0;
+				for (int i = 0; i < length; i++)
+				{
+					if (map.get(i) == '\n')
+					{
+						load.line(map, lineStart, i);
+						lineStart = i + 1;
+					}
+				}
+
+				if (last)
+				{
+					if (lineStart < length)
+					{
+						load.line(map, lineStart, (int) length);
+					}
+					start = size;
+				} else if (lineStart == 0)
+				{
+					throw new IOException("Line longer than " + REGION + " bytes at offset " + start);
+				} else
+				{
+					// the line cut by the end of the region starts the next one
+					start += lineStart;
+				}
+			}
+
+			for (RespPipe p : load.pipes.values())
+			{
+				p.finish();
+			}
+			ok = true;
+		} finally
+		{
+			for (RespPipe p : load.pipes.values())
+			{
+				p.close();
+			}
+		}
+
+		BulkLoadResult result = load.progress(ok);
+		CustomLogger.info("Loaded " + file + ": " + result);
+		if (listener != null)
+		{
+			listener.onProgress(result);
+		}
+		return result;
+	}
+
+	// State of one load
+	private final class Load
+	{
+		private final Format format;
+		private final long started = System.currentTimeMillis();
+		private final Map<String, RespPipe> pipes = new LinkedHashMap<>();
+		private byte[] line = new byte[4096];
+		private long lineNumber;
+		private long records;
+		private long skipped;
+		private long regionStart;
+		private long bytes;
+
+		Load(Format format)
+		{
+			this.format = format;
+		}
+
+		void line(MappedByteBuffer map, int from, int to) throws IOException
+		{
+			lineNumber++;
+			bytes = regionStart + to;
+			if ((to > from) && (map.get(to - 1) == '\r'))
+			{
+				to--;
+			}
+
+			int length = to - from;
+			if (length > line.length)
+			{
+				line = new byte[Math.max(length, line.length * 2)];
+			}
+			for (int i = 0; i < length; i++)
+			{
+				line[i] = map.get(from + i);
+			}
+			String s = new String(line, 0, length, StandardCharsets.UTF_8);
+			if (s.isBlank() || ((format == Format.CSV) && s.startsWith("#")))
+			{
+				return;
+			}
+
+			BulkRecord r;
+			try
+			{
+				r = (format == Format.CSV) ? BulkRecord.fromCsv(s, defaultTtl) : BulkRecord.fromJson(s, defaultTtl);
+			} catch (IllegalArgumentException e)
+			{
+				if (skipped++ < LOGGED_SKIPS)
+				{
+					CustomLogger.error("Skipping line " + lineNumber + ": " + e.getMessage());
+				}
+				return;
+			}
+
+			pipe(r.key).send(r);
+			if ((++records % progressEvery) == 0)
+			{
+				BulkLoadResult p = progress(false);
+				CustomLogger.info("Bulk load progress: " + p);
+				if (listener != null)
+				{
+					listener.onProgress(p);
+				}
+			}
+		}
+
+		// Stream of the endpoint the key is on, opened when first needed
+		private RespPipe pipe(String key) throws IOException
+		{
+			String shard = "";
+			if (conn.getSelectedType() == conn_type.JEDISSHARDED)
+			{
+				shard = conn.getShardedConnection().getShardName(key);
+			}
+
+			RespPipe p = pipes.get(shard);
+			if (p == null)
+			{
+				Jedis jd = (conn.getSelectedType() == conn_type.JEDISSHARDED)
+						? conn.getShardedConnection().getConnection(key)
+						: conn.getJedisPooledConnection().getConnection();
+				try
+				{
+					p = new RespPipe(jd, bufferSize, maxInFlight, String.valueOf(pipes.size()));
+				} catch (IOException | RuntimeException e)
+				{
+					jd.close();
+					throw e;
+				}
+				pipes.put(shard, p);
+			}
+			return p;
+		}
+
+		BulkLoadResult progress(boolean done)
+		{
+			long commands = 0;
+			long replies = 0;
+			long errors = 0;
+			String firstError = null;
+			for (RespPipe p : pipes.values())
+			{
+				commands += p.getCommands();
+				replies += p.getReplies();
+				errors += p.getErrors();
+				if (firstError == null)
+				{
+					firstError = p.getFirstError();
+				}
+			}
+			return new BulkLoadResult(records, skipped, commands, replies, errors, firstError, bytes,
+					System.currentTimeMillis() - started, done);
+		}
+	}
+}
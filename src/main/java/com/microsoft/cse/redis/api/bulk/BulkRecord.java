@@ -0,0 +1,149 @@
+package com.microsoft.cse.redis.api.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One record of an import file, parsed into the command it stands for.
+ *
+ * CSV lines are type,key,arguments:
+ *
+ * <pre>
+ * set,key,value[,ttl]
+ * hset,key,field,value
+ * sadd,key,member
+ * zadd,key,score,member
+ * lpush,key,value
+ * </pre>
+ *
+ * NDJSON lines are flat objects with the same names: type, key, value, field,
+ * member, score and ttl. Empty lines and CSV lines starting with # are skipped.
+ */
+final class BulkRecord
+{
+	enum Type
+	{
+		SET, HSET, SADD, ZADD, LPUSH
+	}
+
+	final Type type;
+	final String key;
+	final String a;
+	final String b;
+	final int ttl;
+
+	private BulkRecord(Type type, String key, String a, String b, int ttl)
+	{
+		this.type = type;
+		this.key = key;
+		this.a = a;
+		this.b = b;
+		this.ttl = ttl;
+	}
+
+	static BulkRecord fromCsv(String line, int defaultTtl)
+	{
+		List<String> f = splitCsv(line);
+		if (f.size() < 3)
+		{
+			throw new IllegalArgumentException("Expected type,key,arguments");
+		}
+
+		Type t = type(f.get(0));
+		switch (t) {
+		case SET:
+			return new BulkRecord(t, f.get(1), f.get(2), null,
+					(f.size() > 3) ? Integer.parseInt(f.get(3).trim()) : defaultTtl);
+		case HSET:
+		case ZADD:
+			if (f.size() < 4)
+			{
+				throw new IllegalArgumentException(t + " needs two arguments");
+			}
+			return new BulkRecord(t, f.get(1), f.get(2), f.get(3), defaultTtl);
+		default:
+			return new BulkRecord(t, f.get(1), f.get(2), null, defaultTtl);
+		}
+	}
+
+	static BulkRecord fromJson(String line, int defaultTtl)
+	{
+		Map<String, String> o = FlatJson.parse(line);
+		Type t = type(required(o, "type"));
+		int ttl = o.containsKey("ttl") ? Integer.parseInt(o.get("ttl")) : defaultTtl;
+		String key = required(o, "key");
+
+		switch (t) {
+		case HSET:
+			return new BulkRecord(t, key, required(o, "field"), required(o, "value"), ttl);
+		case ZADD:
+			return new BulkRecord(t, key, required(o, "score"), required(o, "member"), ttl);
+		case SADD:
+			return new BulkRecord(t, key, required(o, "member"), null, ttl);
+		default:
+			return new BulkRecord(t, key, required(o, "value"), null, ttl);
+		}
+	}
+
+	private static Type type(String s)
+	{
+		String t = s.trim().toUpperCase(Locale.ROOT);
+		return "SETEX".equals(t) ? Type.SET : Type.valueOf(t);
+	}
+
+	private static String required(Map<String, String> o, String name)
+	{
+		String s = o.get(name);
+		if (s == null)
+		{
+			throw new IllegalArgumentException("Missing " + name);
+		}
+		return s;
+	}
+
+	// Fields of a CSV line, quoted fields may hold commas and "" for a quote
+	static List<String> splitCsv(String line)
+	{
+		List<String> fields = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			if (quoted)
+			{
+				if ((c == '"') && ((i + 1) < line.length()) && (line.charAt(i + 1) == '"'))
+				{
+					sb.append('"');
+					i++;
+				} else if (c == '"')
+				{
+					quoted = false;
+				} else
+				{
+					sb.append(c);
+				}
+			} else if (c == '"')
+			{
+				quoted = true;
+			} else if (c == ',')
+			{
+				fields.add(sb.toString());
+				sb.setLength(0);
+			} else
+			{
+				sb.append(c);
+			}
+		}
+
+		if (quoted)
+		{
+			throw new IllegalArgumentException("Unterminated quote");
+		}
+		fields.add(sb.toString());
+		return fields;
+	}
+}
@@ -0,0 +1,175 @@
+package com.microsoft.cse.redis.api.bulk;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parser for the flat JSON objects of NDJSON import files: string, number,
+ * boolean and null values, no nested objects or arrays. Values are returned as
+ * their text, a null value as no entry.
+ */
+final class FlatJson
+{
+	private final String s;
+	private int pos;
+
+	private FlatJson(String s)
+	{
+		this.s = s;
+	}
+
+	static Map<String, String> parse(String line)
+	{
+		return new FlatJson(line).object();
+	}
+
+	private Map<String, String> object()
+	{
+		Map<String, String> o = new HashMap<>();
+		expect('{');
+		if (peek() == '}')
+		{
+			pos++;
+			return end(o);
+		}
+
+		while (true)
+		{
+			String name = string();
+			expect(':');
+			String value = value();
+			if (value != null)
+			{
+				o.put(name, value);
+			}
+
+			char c = next();
+			if (c == '}')
+			{
+				return end(o);
+			} else if (c != ',')
+			{
+				throw error("Expected , or }");
+			}
+		}
+	}
+
+	private Map<String, String> end(Map<String, String> o)
+	{
+		if (peek() != 0)
+		{
+			throw error("Unexpected text after the object");
+		}
+		return o;
+	}
+
+	private String value()
+	{
+		char c = peek();
+		if (c == '"')
+		{
+			return string();
+		} else if ((c == '{') || (c == '['))
+		{
+			throw error("Nested values are not supported");
+		}
+
+		int start = pos;
+		while ((pos < s.length()) && (",} \t\r\n".indexOf(s.charAt(pos)) < 0))
+		{
+			pos++;
+		}
+		String v = s.substring(start, pos);
+		if (v.isEmpty())
+		{
+			throw error("Expected a value");
+		}
+		return "null".equals(v) ? null : v;
+	}
+
+	private String string()
+	{
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+		while (true)
+		{
+			if (pos >= s.length())
+			{
+				throw error("Unterminated string");
+			}
+
+			char c = s.charAt(pos++);
+			if (c == '"')
+			{
+				return sb.toString();
+			} else if (c != '\\')
+			{
+				sb.append(c);
+				continue;
+			}
+
+			if (pos >= s.length())
+			{
+				throw error("Unterminated string");
+			}
+			c = s.charAt(pos++);
+			switch (c) {
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'u':
+				if ((pos + 4) > s.length())
+				{
+					throw error("Bad unicode escape");
+				}
+				sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+				pos += 4;
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+	}
+
+	// Next character that is not white space, 0 at the end
+	private char peek()
+	{
+		while ((pos < s.length()) && Character.isWhitespace(s.charAt(pos)))
+		{
+			pos++;
+		}
+		return (pos < s.length()) ? s.charAt(pos) : 0;
+	}
+
+	private char next()
+	{
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	private void expect(char c)
+	{
+		if (next() != c)
+		{
+			throw error("Expected " + c);
+		}
+	}
+
+	private IllegalArgumentException error(String message)
+	{
+		return new IllegalArgumentException(message + " at " + pos);
+	}
+}
@@ -0,0 +1,534 @@
+package com.microsoft.cse.redis.api.bulk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.microsoft.cse.redis.api.exceptions.FailureClassifier;
+import com.microsoft.cse.redis.api.exceptions.RedisApiException;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory.conn_type;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+/**
+ * Logical backup of the keyspace to a local file, and its restore, for when the
+ * RDB files of the server can't be reached. Every endpoint is walked with SCAN
+ * on a thread of its own; each batch of keys is DUMPed, with its PTTL, in one
+ * pipeline and appended to the file. A restore reads the file back and sends
+ * RESTORE in pipelines of EXPORT_BATCH commands, to the endpoint owning each
+ * key.
+ *
+ * The file holds a header (magic and version) followed by one record per key:
+ * key length (int), key, expiry as epoch milliseconds or -1 (long), DUMP length
+ * (int) and DUMP payload, all big endian; a key length of -1 and the number of
+ * records end it. Keys changed while the export runs may or may not be in it,
+ * and a key can appear twice if the keyspace was rehashed meanwhile.
+ */
+public class KeyspaceSnapshot
+{
+	private static final byte[] MAGIC = "RCSNAP".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final byte[] REPLACE = "REPLACE".getBytes(StandardCharsets.US_ASCII);
+
+	private final ConnectionFactory conn;
+	private final int batch;
+	private BulkLoadListener listener;
+
+	public KeyspaceSnapshot() throws RedisApiException
+	{
+		this(ConnectionFactory.getConnection());
+	}
+
+	// Snapshot of the endpoints of a named data source
+	public KeyspaceSnapshot(DataFactory data) throws RedisApiException
+	{
+		this(data.getConnectionFactory());
+	}
+
+	private KeyspaceSnapshot(ConnectionFactory conn) throws RedisApiException
+	{
+		this.conn = conn;
+		if ((conn.getSelectedType() == conn_type.SPRING) || (conn.getSelectedType() == conn_type.JEDIS))
+		{
+			throw new RedisApiException(
+					"Snapshots need a pooled Jedis connection, not " + conn.getSelectedType().name());
+		}
+		batch = Math.max(1, ConfigurationManager.getExportBatch());
+	}
+
+	// Gets the progress after every batch
+	public void setListener(BulkLoadListener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Writes the keys matching the pattern, with their values and expiries, to a
+	 * file. The file is replaced if it exists.
+	 *
+	 * @param pattern SCAN MATCH pattern, null for every key
+	 * @return records are the keys written, skipped the keys that were gone
+	 *         before they could be dumped
+	 */
+	public BulkLoadResult export(Path file, String pattern) throws IOException
+	{
+		Counters c = new Counters();
+		List<Supplier<Jedis>> endpoints = endpoints();
+		ExecutorService executor = Executors.newFixedThreadPool(endpoints.size(), r -> {
+			Thread t = new Thread(r, "redis-export");
+			t.setDaemon(true);
+			return t;
+		});
+
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4);
+			header.put(MAGIC).putInt(VERSION).flip();
+			writeFully(ch, header);
+
+			List<Future<Void>> futures = new ArrayList<>();
+			for (Supplier<Jedis> e : endpoints)
+			{
+				futures.add(executor.submit(() -> {
+					exportEndpoint(e, pattern, ch, c);
+					return null;
+				}));
+			}
+			for (Future<Void> f : futures)
+			{
+				await(f);
+			}
+
+			ByteBuffer trailer = ByteBuffer.allocate(12);
+			trailer.putInt(-1).putLong(c.records.get()).flip();
+			writeFully(ch, trailer);
+			c.bytes.set(ch.size());
+		} finally
+		{
+			executor.shutdownNow();
+		}
+
+		BulkLoadResult result = c.result(true);
+		CustomLogger.info("Exported to " + file + ": " + result);
+		return result;
+	}
+
+	// SCANs one endpoint and appends what it holds to the file
+	private void exportEndpoint(Supplier<Jedis> endpoint, String pattern, FileChannel ch, Counters c)
+			throws IOException
+	{
+		ScanParams params = new ScanParams().count(batch);
+		if (pattern != null)
+		{
+			params.match(pattern);
+		}
+
+		try (Jedis jd = endpoint.get())
+		{
+			byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+			do
+			{
+				ScanResult<byte[]> scan = jd.scan(cursor, params);
+				List<byte[]> keys = scan.getResult();
+				cursor = scan.getCursorAsBytes();
+				if (keys.isEmpty())
+				{
+					continue;
+				}
+
+				List<Response<byte[]>> dumps = new ArrayList<>(keys.size());
+				List<Response<Long>> ttls = new ArrayList<>(keys.size());
+				Pipeline p = jd.pipelined();
+				for (byte[] k : keys)
+				{
+					dumps.add(p.dump(k));
+					ttls.add(p.pttl(k));
+				}
+				p.sync();
+				long now = System.currentTimeMillis();
+
+				int size = 0;
+				for (int i = 0; i < keys.size(); i++)
+				{
+					if (dumps.get(i).get() != null)
+					{
+						size += 16 + keys.get(i).length + dumps.get(i).get().length;
+					}
+				}
+
+				ByteBuffer buf = ByteBuffer.allocate(size);
+				long written = 0;
+				for (int i = 0; i < keys.size(); i++)
+				{
+					byte[] dump = dumps.get(i).get();
+					Long ttl = ttls.get(i).get();
+					if ((dump == null) || (ttl == null) || (ttl == -2))
+					{
+						c.skipped.incrementAndGet();
+						continue;
+					}
+
+					buf.putInt(keys.get(i).length).put(keys.get(i));
+					buf.putLong((ttl < 0) ? -1 : (now + ttl));
+					buf.putInt(dump.length).put(dump);
+					written++;
+				}
+				buf.flip();
+
+				// a batch is written as a whole, the endpoints take turns
+				synchronized (ch)
+				{
+					writeFully(ch, buf);
+				}
+				c.records.addAndGet(written);
+				c.commands.addAndGet(1 + (2L * keys.size()));
+				progress(c);
+			} while (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY));
+		} catch (Exception e)
+		{
+			CustomLogger.error("Export failed: " + e.getMessage(), e);
+			if (FailureClassifier.classify(e) == FailureClassifier.Kind.TRANSPORT)
+			{
+				conn.resetConnection();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Restores the keys of an export, with the expiry they had. Keys that expired
+	 * since are left out.
+	 *
+	 * @param replace true to overwrite existing keys, false to leave them and
+	 *                count an error for each
+	 * @return records are the keys restored, skipped the expired ones
+	 */
+	public BulkLoadResult restore(Path file, boolean replace) throws IOException
+	{
+		Counters c = new Counters();
+		Map<String, Restorer> restorers = new HashMap<>();
+		boolean ok = false;
+
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			Reader in = new Reader(ch);
+			long expected;
+			byte[] magic = in.bytes(MAGIC.length);
+			if (!Arrays.equals(magic, MAGIC) || (in.getInt() != VERSION))
+			{
+				throw new IOException(file + " is not a snapshot");
+			}
+
+			while (true)
+			{
+				int keyLength = in.getInt();
+				if (keyLength < 0)
+				{
+					expected = in.getLong();
+					break;
+				}
+
+				byte[] key = in.bytes(keyLength);
+				long expireAt = in.getLong();
+				byte[] dump = in.bytes(in.getInt());
+
+				long ttl = 0;
+				if (expireAt >= 0)
+				{
+					ttl = expireAt - System.currentTimeMillis();
+					if (ttl <= 0)
+					{
+						c.skipped.incrementAndGet();
+						continue;
+					}
+				}
+
+				restorer(restorers, key).add(key, ttl, dump, replace, c);
+				c.bytes.set(in.position());
+			}
+
+			for (Restorer r : restorers.values())
+			{
+				r.sync(c);
+			}
+			ok = true;
+
+			long read = c.records.get() + c.skipped.get() + c.errors.get();
+			if (expected != read)
+			{
+				CustomLogger.error("Snapshot " + file + " has " + expected + " records, read " + read);
+			}
+		} finally
+		{
+			for (Restorer r : restorers.values())
+			{
+				r.close(ok);
+			}
+		}
+
+		BulkLoadResult result = c.result(true);
+		CustomLogger.info("Restored " + file + ": " + result);
+		if (listener != null)
+		{
+			listener.onProgress(result);
+		}
+		return result;
+	}
+
+	private Restorer restorer(Map<String, Restorer> restorers, byte[] key)
+	{
+		String shard = "";
+		String k = null;
+		if (conn.getSelectedType() == conn_type.JEDISSHARDED)
+		{
+			k = new String(key, StandardCharsets.UTF_8);
+			shard = conn.getShardedConnection().getShardName(k);
+		}
+
+		Restorer r = restorers.get(shard);
+		if (r == null)
+		{
+			r = new Restorer((k == null) ? conn.getJedisPooledConnection().getConnection()
+					: conn.getShardedConnection().getConnection(k));
+			restorers.put(shard, r);
+		}
+		return r;
+	}
+
+	// A connection per endpoint holding the keys: the current pool, or each shard
+	private List<Supplier<Jedis>> endpoints()
+	{
+		List<Supplier<Jedis>> l = new ArrayList<>();
+		if (conn.getSelectedType() == conn_type.JEDISSHARDED)
+		{
+			for (String shard : conn.getShardedConnection().getShardNames())
+			{
+				l.add(() -> conn.getShardedConnection().getShardConnection(shard));
+			}
+		} else
+		{
+			l.add(() -> conn.getJedisPooledConnection().getConnection());
+		}
+		return l;
+	}
+
+	private void progress(Counters c)
+	{
+		if (listener != null)
+		{
+			listener.onProgress(c.result(false));
+		}
+	}
+
+	private static void await(Future<Void> f) throws IOException
+	{
+		try
+		{
+			f.get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException
+	{
+		while (buf.hasRemaining())
+		{
+			ch.write(buf);
+		}
+	}
+
+	// Counters shared by the threads of an export or restore
+	private static final class Counters
+	{
+		private final long started = System.currentTimeMillis();
+		private final AtomicLong records = new AtomicLong();
+		private final AtomicLong skipped = new AtomicLong();
+		private final AtomicLong commands = new AtomicLong();
+		private final AtomicLong replies = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private volatile String firstError;
+
+		BulkLoadResult result(boolean done)
+		{
+			return new BulkLoadResult(records.get(), skipped.get(), commands.get(),
+					done ? commands.get() : replies.get(), errors.get(), firstError, bytes.get(),
+					System.currentTimeMillis() - started, done);
+		}
+	}
+
+	// Pipelined RESTOREs to one endpoint, synced every batch commands
+	private final class Restorer
+	{
+		private final Jedis jd;
+		private Pipeline pipeline;
+		private final List<Response<Object>> replies = new ArrayList<>();
+
+		Restorer(Jedis jd)
+		{
+			this.jd = jd;
+		}
+
+		void add(byte[] key, long ttl, byte[] dump, boolean replace, Counters c)
+		{
+			if (pipeline == null)
+			{
+				pipeline = jd.pipelined();
+			}
+
+			byte[] t = Long.toString(ttl).getBytes(StandardCharsets.US_ASCII);
+			replies.add(replace ? pipeline.sendCommand(Protocol.Command.RESTORE, key, t, dump, REPLACE)
+					: pipeline.sendCommand(Protocol.Command.RESTORE, key, t, dump));
+			c.commands.incrementAndGet();
+
+			if (replies.size() >= batch)
+			{
+				sync(c);
+			}
+		}
+
+		void sync(Counters c)
+		{
+			if (pipeline == null)
+			{
+				return;
+			}
+
+			pipeline.sync();
+			for (Response<Object> r : replies)
+			{
+				try
+				{
+					r.get();
+					c.records.incrementAndGet();
+				} catch (Exception e)
+				{
+					c.errors.incrementAndGet();
+					if (c.firstError == null)
+					{
+						c.firstError = e.getMessage();
+					}
+				}
+				c.replies.incrementAndGet();
+			}
+			replies.clear();
+			pipeline = null;
+			progress(c);
+		}
+
+		void close(boolean ok)
+		{
+			if (!ok)
+			{
+				jd.disconnect();
+			}
+			jd.close();
+		}
+	}
+
+	// Buffered reads from the snapshot file
+	private static final class Reader
+	{
+		private final FileChannel ch;
+		private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+
+		Reader(FileChannel ch)
+		{
+			this.ch = ch;
+			buf.limit(0);
+		}
+
+		int getInt() throws IOException
+		{
+			fill(4);
+			return buf.getInt();
+		}
+
+		long getLong() throws IOException
+		{
+			fill(8);
+			return buf.getLong();
+		}
+
+		byte[] bytes(int length) throws IOException
+		{
+			if (length < 0)
+			{
+				throw new IOException("Corrupt snapshot, negative length");
+			}
+
+			byte[] b = new byte[length];
+			int off = 0;
+			while (off < length)
+			{
+				fill(1);
+				int n = Math.min(buf.remaining(), length - off);
+				buf.get(b, off, n);
+				off += n;
+			}
+			return b;
+		}
+
+		// Position in the file of the next byte to be read
+		long position() throws IOException
+		{
+			return ch.position() - buf.remaining();
+		}
+
+		private void fill(int n) throws IOException
+		{
+			if (buf.remaining() >= n)
+			{
+				return;
+			}
+
+			buf.compact();
+			while (buf.position() < n)
+			{
+				if (ch.read(buf) < 0)
+				{
+					throw new EOFException("Snapshot ends before its trailer");
+				}
+			}
+			buf.flip();
+		}
+	}
+}
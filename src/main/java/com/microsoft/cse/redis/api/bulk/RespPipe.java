@@ -0,0 +1,371 @@
+package com.microsoft.cse.redis.api.bulk;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Streams commands over one connection the way redis-cli --pipe does. Commands
+ * are encoded as RESP straight into a reusable buffer that is written to the
+ * socket whenever it fills up, without waiting for replies. A reader thread
+ * consumes the replies as they come and counts the errors. At most maxInFlight
+ * commands are left without a reply, which bounds what Redis has to buffer. A
+ * final PING tells when every reply has been read.
+ */
+class RespPipe implements Runnable
+{
+	private static final byte[] SET = bytes("SET");
+	private static final byte[] SETEX = bytes("SETEX");
+	private static final byte[] HSET = bytes("HSET");
+	private static final byte[] SADD = bytes("SADD");
+	private static final byte[] ZADD = bytes("ZADD");
+	private static final byte[] LPUSH = bytes("LPUSH");
+	private static final byte[] EXPIRE = bytes("EXPIRE");
+	private static final byte[] PING = bytes("PING");
+
+	private final Jedis jedis;
+	private final OutputStream out;
+	private final InputStream in;
+	private final byte[] buf;
+	private int pos;
+
+	private final int maxInFlight;
+	private final Semaphore inFlight;
+	private final Thread reader;
+	private final LongAdder replies = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private volatile String firstError;
+	private volatile IOException failure;
+
+	private long commands;
+	private String lastKey;
+	private boolean finished;
+
+	RespPipe(Jedis jedis, int bufferSize, int maxInFlight, String name) throws IOException
+	{
+		this.jedis = jedis;
+		this.maxInFlight = Math.max(1, maxInFlight);
+		inFlight = new Semaphore(this.maxInFlight);
+		buf = new byte[Math.max(1024, bufferSize)];
+
+		// replies can take longer than the socket timeout while Redis works through
+		// the backlog
+		jedis.getClient().setTimeoutInfinite();
+		Socket socket = jedis.getClient().getSocket();
+		out = socket.getOutputStream();
+		in = new BufferedInputStream(socket.getInputStream(), buf.length);
+
+		reader = new Thread(this, "redis-bulk-" + name);
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	// Queues the command(s) of a record; the hash, set, sorted set and list keys
+	// get the TTL once, when a run of records for the key starts
+	void send(BulkRecord r) throws IOException
+	{
+		byte[] key = bytes(r.key);
+		switch (r.type) {
+		case SET:
+			if (r.ttl > 0)
+			{
+				command(SETEX, key, bytes(Integer.toString(r.ttl)), bytes(r.a));
+			} else
+			{
+				command(SET, key, bytes(r.a));
+			}
+			lastKey = null;
+			return;
+		case HSET:
+			command(HSET, key, bytes(r.a), bytes(r.b));
+			break;
+		case SADD:
+			command(SADD, key, bytes(r.a));
+			break;
+		case ZADD:
+			command(ZADD, key, bytes(r.a), bytes(r.b));
+			break;
+		case LPUSH:
+			command(LPUSH, key, bytes(r.a));
+			break;
+		}
+
+		if ((r.ttl > 0) && !r.key.equals(lastKey))
+		{
+			command(EXPIRE, key, bytes(Integer.toString(r.ttl)));
+		}
+		lastKey = r.key;
+	}
+
+	/**
+	 * Sends what is buffered and waits for every reply.
+	 *
+	 * @throws IOException if the connection failed
+	 */
+	void finish() throws IOException
+	{
+		command(PING);
+		flush();
+
+		try
+		{
+			reader.join();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for replies");
+		}
+
+		if (failure != null)
+		{
+			throw failure;
+		}
+		finished = true;
+	}
+
+	// Gives the connection back; one that did not get all its replies is dropped
+	void close()
+	{
+		try
+		{
+			if (finished)
+			{
+				jedis.getClient().rollbackTimeout();
+			} else
+			{
+				jedis.disconnect();
+				reader.interrupt();
+			}
+			jedis.close();
+		} catch (Exception e)
+		{
+			CustomLogger.error("Error closing a bulk load connection: " + e.getMessage(), e);
+		}
+	}
+
+	// Commands sent, replies read and error replies among them, not counting the
+	// final PING
+	long getCommands()
+	{
+		return finished ? (commands - 1) : commands;
+	}
+
+	long getReplies()
+	{
+		return replies.sum();
+	}
+
+	long getErrors()
+	{
+		return errors.sum();
+	}
+
+	String getFirstError()
+	{
+		return firstError;
+	}
+
+	private void command(byte[]... args) throws IOException
+	{
+		if (failure != null)
+		{
+			throw failure;
+		}
+
+		// out of permits: what is buffered has to go before replies can free some
+		if (!inFlight.tryAcquire())
+		{
+			flush();
+			try
+			{
+				inFlight.acquire();
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for replies");
+			}
+			if (failure != null)
+			{
+				throw failure;
+			}
+		}
+		commands++;
+
+		ensure(16);
+		buf[pos++] = '*';
+		number(args.length);
+		for (byte[] a : args)
+		{
+			ensure(16);
+			buf[pos++] = '$';
+			number(a.length);
+			write(a);
+			ensure(2);
+			buf[pos++] = '\r';
+			buf[pos++] = '\n';
+		}
+	}
+
+	// Writes a number and CRLF, the caller made room for it
+	private void number(int n)
+	{
+		int start = pos;
+		do
+		{
+			buf[pos++] = (byte) ('0' + (n % 10));
+			n /= 10;
+		} while (n > 0);
+
+		for (int i = start, j = pos - 1; i < j; i++, j--)
+		{
+			byte t = buf[i];
+			buf[i] = buf[j];
+			buf[j] = t;
+		}
+		buf[pos++] = '\r';
+		buf[pos++] = '\n';
+	}
+
+	private void write(byte[] b) throws IOException
+	{
+		if (b.length > (buf.length - pos))
+		{
+			flush();
+			if (b.length > buf.length)
+			{
+				out.write(b);
+				return;
+			}
+		}
+		System.arraycopy(b, 0, buf, pos, b.length);
+		pos += b.length;
+	}
+
+	private void ensure(int n) throws IOException
+	{
+		if ((pos + n) > buf.length)
+		{
+			flush();
+		}
+	}
+
+	private void flush() throws IOException
+	{
+		if (pos > 0)
+		{
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+		out.flush();
+	}
+
+	@Override
+	public void run()
+	{
+		StringBuilder line = new StringBuilder();
+		try
+		{
+			while (true)
+			{
+				int type = in.read();
+				readLine(line);
+
+				switch (type) {
+				case '+':
+					if ("PONG".contentEquals(line))
+					{
+						inFlight.release();
+						return;
+					}
+					break;
+				case '-':
+					errors.increment();
+					if (firstError == null)
+					{
+						firstError = line.toString();
+					}
+					break;
+				case ':':
+					break;
+				case '$':
+					skip(Integer.parseInt(line.toString()));
+					break;
+				case -1:
+					throw new EOFException("Connection closed by Redis");
+				default:
+					throw new IOException("Unexpected reply " + (char) type + line);
+				}
+
+				replies.increment();
+				inFlight.release();
+			}
+		} catch (IOException e)
+		{
+			failure = e;
+		} catch (Exception e)
+		{
+			failure = new IOException("Reading replies failed: " + e.getMessage(), e);
+		} finally
+		{
+			// unblock the writer if it is waiting for permits
+			if (failure != null)
+			{
+				inFlight.release(maxInFlight);
+			}
+		}
+	}
+
+	private void readLine(StringBuilder line) throws IOException
+	{
+		line.setLength(0);
+		int c;
+		while ((c = in.read()) != '\r')
+		{
+			if (c < 0)
+			{
+				return;
+			}
+			line.append((char) c);
+		}
+		in.read();
+	}
+
+	// Skips the payload of a bulk string reply and its CRLF
+	private void skip(int length) throws IOException
+	{
+		if (length < 0)
+		{
+			return;
+		}
+		long left = length + 2L;
+		while (left > 0)
+		{
+			long n = in.skip(left);
+			if (n <= 0)
+			{
+				if (in.read() < 0)
+				{
+					throw new EOFException("Connection closed by Redis");
+				}
+				n = 1;
+			}
+			left -= n;
+		}
+	}
+
+	private static byte[] bytes(String s)
+	{
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,17 @@
+package com.microsoft.cse.redis.api.exceptions;
+
+// Thrown by the calls made after the deadline of the thread has passed
+public final class DeadlineExceededException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	public DeadlineExceededException(String message)
+	{
+		super(message);
+	}
+
+	public DeadlineExceededException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
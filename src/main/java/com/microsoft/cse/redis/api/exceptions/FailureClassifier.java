@@ -0,0 +1,118 @@
+package com.microsoft.cse.redis.api.exceptions;
+
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+/**
+ * Sorts the failures of Redis calls by what they say about the connection that
+ * made them. Only a transport failure leaves the connection in an unknown state
+ * and calls for resetting it; Redis answered the other ones, so the connection
+ * is still good and the caller can be failed right away.
+ */
+public final class FailureClassifier
+{
+	public enum Kind
+	{
+		// The connection broke, timed out or could not be made
+		TRANSPORT,
+		// Redis or the pool refused the command for now: LOADING, BUSY, pool exhausted, ...
+		BUSY,
+		// Redis rejected the command itself: WRONGTYPE, syntax, script errors, ...
+		DATA,
+		// The deadline of the call passed
+		DEADLINE,
+		// Anything else, most likely a bug of the caller
+		UNKNOWN
+	}
+
+	// Redis refused these commands without running them
+	private static final String[] BUSY_ERRORS = { "LOADING", "BUSY", "TRYAGAIN", "CLUSTERDOWN", "MASTERDOWN" };
+
+	private FailureClassifier()
+	{
+	}
+
+	/**
+	 * @param t failure of a call, wrapped failures are looked at as well
+	 * @return what kind of failure it is
+	 */
+	public static Kind classify(Throwable t)
+	{
+		Kind kind = Kind.UNKNOWN;
+		for (Throwable c = t; c != null; c = c.getCause())
+		{
+			if (c instanceof DeadlineExceededException)
+			{
+				return Kind.DEADLINE;
+			}
+			if ((c instanceof JedisExhaustedPoolException) || isBusyError(c))
+			{
+				return Kind.BUSY;
+			}
+			if ((c instanceof JedisConnectionException) || (c instanceof RedisConnectionFailureException)
+					|| (c instanceof SocketException) || (c instanceof SocketTimeoutException))
+			{
+				return Kind.TRANSPORT;
+			}
+			if ((c instanceof JedisDataException) && (kind == Kind.UNKNOWN))
+			{
+				// a wrapped transport failure still wins
+				kind = Kind.DATA;
+			}
+		}
+		return kind;
+	}
+
+	/**
+	 * @param t failure of a call
+	 * @return true if the failure shows that the command was never run, so that
+	 *         running it again can't apply it twice
+	 */
+	public static boolean wasNotRun(Throwable t)
+	{
+		if (classify(t) == Kind.BUSY)
+		{
+			return true;
+		}
+		for (Throwable c = t; c != null; c = c.getCause())
+		{
+			if (c instanceof ConnectException)
+			{
+				return true;
+			}
+			if ((c instanceof JedisConnectionException) && (c.getMessage() != null)
+					&& c.getMessage().startsWith("Could not get a resource"))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isBusyError(Throwable c)
+	{
+		if (!(c instanceof JedisDataException) || (c.getMessage() == null))
+		{
+			return false;
+		}
+		// the error code is the first word of the reply, BUSYKEY and BUSYGROUP are data errors
+		String message = c.getMessage();
+		int end = message.indexOf(' ');
+		String code = (end < 0) ? message : message.substring(0, end);
+		for (String busy : BUSY_ERRORS)
+		{
+			if (busy.equals(code))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
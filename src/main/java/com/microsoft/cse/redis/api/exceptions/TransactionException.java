@@ -0,0 +1,19 @@
+package com.microsoft.cse.redis.api.exceptions;
+
+public final class TransactionException extends Exception
+{
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public TransactionException(String message)
+	{
+		super(message);
+	}
+
+	public TransactionException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
@@ -0,0 +1,153 @@
+package com.microsoft.cse.redis.api.helper;
+
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+
+/**
+ * Logger bound to one class, obtained through CustomLogger.forClass(). Messages
+ * can be given as slf4j patterns with {} placeholders or as suppliers, either
+ * way nothing is formatted or built unless the level is enabled.
+ */
+public final class ClassLogger
+{
+	private final Logger logger;
+
+	ClassLogger(Logger logger)
+	{
+		this.logger = logger;
+	}
+
+	Logger getLogger()
+	{
+		return logger;
+	}
+
+	public boolean isTraceEnabled()
+	{
+		return logger.isTraceEnabled();
+	}
+
+	public boolean isDebugEnabled()
+	{
+		return logger.isDebugEnabled();
+	}
+
+	public boolean isInfoEnabled()
+	{
+		return logger.isInfoEnabled();
+	}
+
+	public void trace(String message)
+	{
+		logger.trace(message);
+	}
+
+	public void trace(String format, Object arg)
+	{
+		logger.trace(format, arg);
+	}
+
+	public void trace(String format, Object arg1, Object arg2)
+	{
+		logger.trace(format, arg1, arg2);
+	}
+
+	public void trace(Supplier<String> message)
+	{
+		if (logger.isTraceEnabled())
+		{
+			logger.trace(message.get());
+		}
+	}
+
+	public void debug(String message)
+	{
+		logger.debug(message);
+	}
+
+	public void debug(String format, Object arg)
+	{
+		logger.debug(format, arg);
+	}
+
+	public void debug(String format, Object arg1, Object arg2)
+	{
+		logger.debug(format, arg1, arg2);
+	}
+
+	// Only checks the level once instead of allocating the argument array first
+	public void debug(String format, Object arg1, Object arg2, Object arg3)
+	{
+		if (logger.isDebugEnabled())
+		{
+			logger.debug(format, arg1, arg2, arg3);
+		}
+	}
+
+	public void debug(Supplier<String> message)
+	{
+		if (logger.isDebugEnabled())
+		{
+			logger.debug(message.get());
+		}
+	}
+
+	public void info(String message)
+	{
+		logger.info(message);
+	}
+
+	public void info(String format, Object arg)
+	{
+		logger.info(format, arg);
+	}
+
+	public void info(String format, Object arg1, Object arg2)
+	{
+		logger.info(format, arg1, arg2);
+	}
+
+	public void info(Supplier<String> message)
+	{
+		if (logger.isInfoEnabled())
+		{
+			logger.info(message.get());
+		}
+	}
+
+	public void warn(String message)
+	{
+		logger.warn(message);
+	}
+
+	public void warn(String format, Object arg)
+	{
+		logger.warn(format, arg);
+	}
+
+	public void warn(String format, Object arg1, Object arg2)
+	{
+		logger.warn(format, arg1, arg2);
+	}
+
+	public void warn(String message, Throwable t)
+	{
+		logger.warn(message, t);
+	}
+
+	public void error(String message)
+	{
+		logger.error(message);
+	}
+
+	public void error(String format, Object arg)
+	{
+		logger.error(format, arg);
+	}
+
+	public void error(String message, Throwable t)
+	{
+		logger.error(message, t);
+	}
+}
@@ -1,5 +1,8 @@
 package com.microsoft.cse.redis.api.helper;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class ClusterEndpoints
 {
 	private static volatile ClusterEndpoints INSTANCE = null;
@@ -27,6 +30,17 @@ public class ClusterEndpoints
 		return INSTANCE;
 	}
 
+	// Endpoints of their own, for connections other than the process wide ones
+	public static ClusterEndpoints newClusterEndpoints(String[] hosts, int[] ports)
+	{
+		if (hosts.length != ports.length)
+		{
+			throw new IllegalArgumentException("The number of hosts do not mathch the number of ports");
+		}
+
+		return new ClusterEndpoints(hosts, ports);
+	}
+
 // Represents the RedisCluster of list.
 	public class RedisCluster
 	{
@@ -103,6 +117,24 @@ public class ClusterEndpoints
 
 	}
 
+	// Every endpoint of the list once, in the order they were added
+	public List<RedisCluster> getAll()
+	{
+		List<RedisCluster> all = new ArrayList<>();
+		if (head == null)
+		{
+			return all;
+		}
+		RedisCluster temp = head;
+		do
+		{
+			all.add(temp);
+			temp = temp.next;
+		} while (temp != head);
+
+		return all;
+	}
+
 	public void clear()
 	{
 		head = null;
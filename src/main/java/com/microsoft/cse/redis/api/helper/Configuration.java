@@ -0,0 +1,259 @@
+package com.microsoft.cse.redis.api.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Immutable snapshot of the configuration: the properties file with the
+ * environment variables on top of it. Every value is parsed and checked once
+ * when the snapshot is built, so reading it afterwards is only a field or map
+ * lookup. ConfigurationManager publishes a new snapshot when the file changes.
+ */
+public final class Configuration
+{
+	// Properties without a default, a snapshot missing one of them is rejected
+	private static final String[] REQUIRED = { "REDIS_CONNECTION_TIMEOUT", "REDIS_CONNECTION_CHECK",
+			"REDIS_DATA_EXPIRE", "LOCK_TTL", "LOCK_PULL_TIME", "LOCK_RENEW_TIME" };
+
+	private final Map<String, String> values;
+	private final Map<String, Integer> ints;
+
+	private final int connectionTimeoutMSec;
+	private final int connectionCheckSec;
+	private final int redisDataExpireSec;
+	private final int lockTTL;
+	private final int lockPullTime;
+	private final int lockRenewTime;
+	private final int poolSize;
+	private final boolean serverSideSSLEnabled;
+
+	private Configuration(Map<String, String> values)
+	{
+		this.values = Collections.unmodifiableMap(values);
+
+		Map<String, Integer> parsed = new HashMap<>();
+		for (Map.Entry<String, String> entry : values.entrySet())
+		{
+			Integer i = parse(entry.getValue());
+			if (i != null)
+			{
+				parsed.put(entry.getKey(), i);
+			}
+		}
+		ints = Collections.unmodifiableMap(parsed);
+
+		validate();
+
+		connectionTimeoutMSec = getInt("REDIS_CONNECTION_TIMEOUT");
+		connectionCheckSec = getInt("REDIS_CONNECTION_CHECK");
+		redisDataExpireSec = getInt("REDIS_DATA_EXPIRE");
+		lockTTL = getInt("LOCK_TTL");
+		lockPullTime = getInt("LOCK_PULL_TIME");
+		lockRenewTime = getInt("LOCK_RENEW_TIME");
+		poolSize = getInt("POOL_SIZE", 0);
+		serverSideSSLEnabled = "true".equalsIgnoreCase(getProperty("SERVER_SIDE_SSL"));
+	}
+
+	/**
+	 * Builds a snapshot out of properties, environment variables of the same name
+	 * take precedence.
+	 *
+	 * @param properties content of the properties file
+	 * @return the snapshot
+	 * @throws IllegalArgumentException if a required value is missing or invalid
+	 */
+	public static Configuration fromProperties(Properties properties)
+	{
+		Map<String, String> values = new HashMap<>();
+		for (String name : properties.stringPropertyNames())
+		{
+			values.put(name, properties.getProperty(name));
+		}
+		values.putAll(System.getenv());
+
+		return new Configuration(values);
+	}
+
+	// Parses numbers without going through an exception for every other value
+	private static Integer parse(String value)
+	{
+		String v = value.trim();
+		if (v.isEmpty() || (v.length() > 11))
+		{
+			return null;
+		}
+		for (int i = 0; i < v.length(); i++)
+		{
+			char c = v.charAt(i);
+			if (((c < '0') || (c > '9')) && ((i > 0) || (c != '-')))
+			{
+				return null;
+			}
+		}
+
+		try
+		{
+			return Integer.valueOf(v);
+		} catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	private void validate()
+	{
+		List<String> errors = new ArrayList<>();
+		for (String name : REQUIRED)
+		{
+			String v = getProperty(name);
+			if ((v == null) || v.isEmpty())
+			{
+				errors.add(name + " is not set");
+			} else if (!ints.containsKey(name))
+			{
+				errors.add(name + " is not a number: " + v);
+			} else if (ints.get(name) <= 0)
+			{
+				errors.add(name + " must be positive: " + v);
+			}
+		}
+
+		for (String name : new String[] { "POOL_SIZE", "CONFIG_RELOAD_SEC" })
+		{
+			String v = getProperty(name);
+			if ((v != null) && !v.isEmpty() && (!ints.containsKey(name) || (ints.get(name) < 0)))
+			{
+				errors.add(name + " must be a number of at least 0: " + v);
+			}
+		}
+
+		if (!errors.isEmpty())
+		{
+			throw new IllegalArgumentException("Invalid configuration: " + String.join(", ", errors));
+		}
+	}
+
+	public String getProperty(String name)
+	{
+		return values.get(name);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the property is not set
+	 * @throws NumberFormatException    if it is not a number
+	 */
+	public int getInt(String name)
+	{
+		Integer i = ints.get(name);
+		if (i != null)
+		{
+			return i;
+		}
+
+		String v = values.get(name);
+		if ((v == null) || v.isEmpty())
+		{
+			throw new IllegalArgumentException(
+					"Property " + name + " does not have a value set in env or config file");
+		}
+		throw new NumberFormatException("Property " + name + " is not a number: " + v);
+	}
+
+	/**
+	 * @throws NumberFormatException if the property is set but is not a number
+	 */
+	public int getInt(String name, int defaultValue)
+	{
+		Integer i = ints.get(name);
+		if (i != null)
+		{
+			return i;
+		}
+
+		String v = values.get(name);
+		if ((v == null) || v.isEmpty())
+		{
+			return defaultValue;
+		}
+		throw new NumberFormatException("Property " + name + " is not a number: " + v);
+	}
+
+	/**
+	 * Name of a setting for one data source: DATASOURCE_&lt;NAME&gt;_ in front of
+	 * the setting, or the setting itself for the default data source.
+	 *
+	 * @param dataSource name of the data source, null for the default one
+	 */
+	public static String dataSourceKey(String dataSource, String name)
+	{
+		return (dataSource == null) ? name : "DATASOURCE_" + dataSource.toUpperCase(Locale.ROOT) + "_" + name;
+	}
+
+	// Value of a setting for one data source, the value shared by all of them if
+	// the data source does not set it
+	public String getProperty(String dataSource, String name)
+	{
+		String v = values.get(dataSourceKey(dataSource, name));
+		return (v == null) ? values.get(name) : v;
+	}
+
+	/**
+	 * @throws NumberFormatException if the property is set but is not a number
+	 */
+	public int getInt(String dataSource, String name, int defaultValue)
+	{
+		return getInt(dataSourceKey(dataSource, name), getInt(name, defaultValue));
+	}
+
+	// True when both snapshots were built out of the same values
+	public boolean hasSameValues(Configuration other)
+	{
+		return values.equals(other.values);
+	}
+
+	public int getConnectionTimeoutMSec()
+	{
+		return connectionTimeoutMSec;
+	}
+
+	public int getConnectionCheckSec()
+	{
+		return connectionCheckSec;
+	}
+
+	public int getRedisDataExpireSec()
+	{
+		return redisDataExpireSec;
+	}
+
+	public int getLockTTL()
+	{
+		return lockTTL;
+	}
+
+	public int getLockPullTime()
+	{
+		return lockPullTime;
+	}
+
+	public int getLockRenewTime()
+	{
+		return lockRenewTime;
+	}
+
+	// Connections per pool, 0 when the size given in code is used
+	public int getPoolSize()
+	{
+		return poolSize;
+	}
+
+	public boolean getServerSideSSLEnabled()
+	{
+		return serverSideSSLEnabled;
+	}
+}
@@ -0,0 +1,17 @@
+package com.microsoft.cse.redis.api.helper;
+
+/**
+ * Gets notified when ConfigurationManager publishes a new configuration after
+ * the properties file changed.
+ */
+@FunctionalInterface
+public interface ConfigurationListener
+{
+	/**
+	 * Called on the reloading thread once the new snapshot is in use.
+	 *
+	 * @param previous snapshot that was replaced
+	 * @param current  snapshot now returned by ConfigurationManager
+	 */
+	void onChange(Configuration previous, Configuration current);
+}
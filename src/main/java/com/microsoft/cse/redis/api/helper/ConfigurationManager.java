@@ -1,13 +1,37 @@
 package com.microsoft.cse.redis.api.helper;
 
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
+/**
+ * Gives access to the configuration. The properties file is parsed once into an
+ * immutable Configuration published through a volatile reference, so the
+ * getters don't parse anything. When the file is a plain file (config.properties
+ * on the file system classpath, or the file named by the CONFIG_FILE
+ * environment variable) it is checked every CONFIG_RELOAD_SEC seconds, and a
+ * changed file that still validates replaces the configuration and is handed to
+ * the listeners.
+ */
 public class ConfigurationManager
 {
+	private static final String PROP_FILE_NAME = "config.properties";
 
-	private static Properties prop = new Properties();
+	private static volatile Configuration current;
+
+	private static final List<ConfigurationListener> listeners = new CopyOnWriteArrayList<>();
+
+	private static Path file;
+	private static long fileStamp;
 
 	private ConfigurationManager()
 	{
@@ -15,65 +39,167 @@ public class ConfigurationManager
 
 	static
 	{
-		InputStream inputStream = null;
 		try
 		{
-			String propFileName = "config.properties";
-			inputStream = ConfigurationManager.class.getClassLoader().getResourceAsStream(propFileName);
+			file = configFile();
+			current = Configuration.fromProperties(read());
+		} catch (Exception e)
+		{
+			// surfaces as an ExceptionInInitializerError to the first caller, the
+			// application decides whether to stop
+			CustomLogger.error("Configuration can't be loaded: " + e.getMessage());
+			throw new IllegalStateException("Configuration can't be loaded: " + e.getMessage(), e);
+		}
 
-			if (inputStream != null)
+		int reloadSec = current.getInt("CONFIG_RELOAD_SEC", 5);
+		if ((file != null) && (reloadSec > 0))
+		{
+			ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(r ->
 			{
-				prop.load(inputStream);
-			} else
+				Thread t = new Thread(r, "redis-config-watcher");
+				t.setDaemon(true);
+				return t;
+			});
+			watcher.scheduleWithFixedDelay(ConfigurationManager::checkFile, reloadSec, reloadSec, TimeUnit.SECONDS);
+		}
+	}
+
+	// File the configuration is read from, null when it can't be watched
+	private static Path configFile() throws Exception
+	{
+		String name = System.getenv("CONFIG_FILE");
+		if ((name != null) && !name.isEmpty())
+		{
+			return Paths.get(name);
+		}
+
+		URL url = ConfigurationManager.class.getClassLoader().getResource(PROP_FILE_NAME);
+		if ((url != null) && "file".equals(url.getProtocol()))
+		{
+			return Paths.get(url.toURI());
+		}
+		return null;
+	}
+
+	private static Properties read() throws Exception
+	{
+		Properties prop = new Properties();
+		if (file != null)
+		{
+			fileStamp = stamp();
+			try (InputStream inputStream = Files.newInputStream(file))
 			{
-				prop = null;
+				prop.load(inputStream);
 			}
-			if (inputStream != null)
+		} else
+		{
+			try (InputStream inputStream = ConfigurationManager.class.getClassLoader()
+					.getResourceAsStream(PROP_FILE_NAME))
 			{
-				inputStream.close();
+				if (inputStream != null)
+				{
+					prop.load(inputStream);
+				}
 			}
+		}
+		return prop;
+	}
+
+	// Changes whenever the file is written
+	private static long stamp() throws Exception
+	{
+		return Files.getLastModifiedTime(file).toMillis() ^ (Files.size(file) << 40);
+	}
 
+	private static void checkFile()
+	{
+		try
+		{
+			if (stamp() != fileStamp)
+			{
+				reload();
+			}
 		} catch (Exception e)
 		{
-			CustomLogger.error("Exception: " + e);
+			CustomLogger.error("Checking configuration file failed: " + e.getMessage(), e);
 		}
 	}
 
-	public static String getProperty(String name)
+	/**
+	 * Reads the configuration again. The new snapshot replaces the current one and
+	 * is handed to the listeners if it validates and has changed, otherwise the
+	 * current one stays in use.
+	 *
+	 * @return true if a new configuration was published
+	 */
+	public static synchronized boolean reload()
 	{
-		String val = System.getenv(name);
-		if ((val == null) && prop.containsKey(name))
+		Configuration next;
+		try
+		{
+			next = Configuration.fromProperties(read());
+		} catch (Exception e)
 		{
-			val = prop.getProperty(name);
+			CustomLogger.error("Configuration not reloaded: " + e.getMessage());
+			return false;
 		}
 
-		return val;
+		Configuration previous = current;
+		if (previous.hasSameValues(next))
+		{
+			return false;
+		}
 
+		current = next;
+		CustomLogger.info("Configuration reloaded");
+
+		for (ConfigurationListener l : listeners)
+		{
+			try
+			{
+				l.onChange(previous, next);
+			} catch (Exception e)
+			{
+				CustomLogger.error("Configuration listener failed: " + e.getMessage(), e);
+			}
+		}
+		return true;
 	}
 
-	public static boolean getServerSideSSLEnabled()
+	// Snapshot in use, stays the same for as long as it is referenced
+	public static Configuration getConfiguration()
 	{
+		return current;
+	}
 
-		String res = getProperty("SERVER_SIDE_SSL");
-		if ((res != null) && res.equalsIgnoreCase("true"))
-		{
-			return true;
-		}
-		return false;
+	public static void addListener(ConfigurationListener listener)
+	{
+		listeners.add(listener);
+	}
 
+	public static void removeListener(ConfigurationListener listener)
+	{
+		listeners.remove(listener);
 	}
 
-	public static Integer getIntProperty(String name)
+	public static String getProperty(String name)
 	{
-		String val = getProperty(name);
-		if ((val == null) || (val.equals("")))
-		{
+		return current.getProperty(name);
+	}
 
-			CustomLogger.error("Property " + name + " does not have a value set in env or config file.  Exiting...");
-			System.exit(-1);
-		}
-		return Integer.parseInt(val);
+	public static boolean getServerSideSSLEnabled()
+	{
+		return current.getServerSideSSLEnabled();
+	}
 
+	public static Integer getIntProperty(String name)
+	{
+		return current.getInt(name);
+	}
+
+	public static int getIntProperty(String name, int defaultValue)
+	{
+		return current.getInt(name, defaultValue);
 	}
 
 	public static String[] getHostname()
@@ -115,35 +241,254 @@ public class ConfigurationManager
 
 	public static int getConnectionTimeoutMSec()
 	{
-		return getIntProperty("REDIS_CONNECTION_TIMEOUT");
-
+		return current.getConnectionTimeoutMSec();
 	}
 
 	public static int getConnectionCheckSec()
 	{
-		return getIntProperty("REDIS_CONNECTION_CHECK");
-
+		return current.getConnectionCheckSec();
 	}
 
 	public static int getRedisDataExpireSec()
 	{
-		return getIntProperty("REDIS_DATA_EXPIRE");
-
+		return current.getRedisDataExpireSec();
 	}
 
 	public static int getLockTTL()
 	{
-		return getIntProperty("LOCK_TTL");
+		return current.getLockTTL();
 	}
 
 	public static int getLockPullTime()
 	{
-		return getIntProperty("LOCK_PULL_TIME");
+		return current.getLockPullTime();
 	}
 
 	public static int getLockRenewTime()
 	{
-		return getIntProperty("LOCK_RENEW_TIME");
+		return current.getLockRenewTime();
+	}
+
+	// Whether unlock() publishes the release and waiters listen to it instead of polling
+	public static boolean getLockWaitNotify()
+	{
+		return !"false".equalsIgnoreCase(getProperty("LOCK_WAIT_NOTIFY"));
+	}
+
+	// Waiters that heard no release try again after this, as messages can be lost
+	// and an expired lock sends none
+	public static int getLockNotifyFallbackMSec()
+	{
+		return getIntProperty("LOCK_NOTIFY_FALLBACK_MSEC", 250);
+	}
+
+	// Time between the ticks of the lease renewer, leases due by a tick are renewed
+	// in one pipeline
+	public static int getLeaseTickMSec()
+	{
+		return getIntProperty("LEASE_TICK_MSEC", 100);
+	}
+
+	// Time each endpoint of a quorum lock has to answer, small next to LOCK_TTL
+	public static int getLockQuorumEndpointTimeoutMSec()
+	{
+		return getIntProperty("LOCK_QUORUM_ENDPOINT_TIMEOUT_MSEC", 50);
+	}
+
+	// Quorum locks not taken are tried again after a random delay up to this
+	public static int getLockQuorumRetryDelayMSec()
+	{
+		return getIntProperty("LOCK_QUORUM_RETRY_DELAY_MSEC", 100);
+	}
+
+	// Connections of the pool of each quorum lock endpoint
+	public static int getLockQuorumPoolSize()
+	{
+		return getIntProperty("LOCK_QUORUM_POOL_SIZE", 4);
+	}
+
+	// Connections per pool overriding the size given in code, 0 if not set
+	public static int getPoolSize()
+	{
+		return current.getPoolSize();
+	}
+
+	// Number of queued commands after which a pipeline is flushed automatically
+	public static int getPipelineMaxCommands()
+	{
+		return getIntProperty("PIPELINE_MAX_COMMANDS", 10000);
+	}
+
+	// Approximate number of queued bytes after which a pipeline is flushed
+	// automatically
+	public static int getPipelineMaxBytes()
+	{
+		return getIntProperty("PIPELINE_MAX_BYTES", 8 * 1024 * 1024);
+	}
+
+	// Number of connections, each with its own writer thread, used to coalesce the
+	// commands of the auto-pipelined data factory
+	public static int getAutoPipelineLanes()
+	{
+		return getIntProperty("AUTOPIPELINE_LANES", 4);
+	}
+
+	// Largest number of coalesced commands written in a single batch
+	public static int getAutoPipelineMaxBatch()
+	{
+		return getIntProperty("AUTOPIPELINE_MAX_BATCH", 1000);
+	}
+
+	// Number of times an optimistic transaction is run again after a conflict
+	public static int getTransactionMaxRetries()
+	{
+		return getIntProperty("TRANSACTION_MAX_RETRIES", 10);
+	}
+
+	// Base of the randomized exponential backoff between transaction retries
+	public static int getTransactionBackoffMSec()
+	{
+		return getIntProperty("TRANSACTION_BACKOFF", 2);
+	}
+
+	public static int getTransactionMaxBackoffMSec()
+	{
+		return getIntProperty("TRANSACTION_MAX_BACKOFF", 100);
+	}
+
+	// Number of positions of every endpoint on the consistent hash ring of the
+	// sharded connection, more positions spread the keys more evenly
+	public static int getShardVirtualNodes()
+	{
+		return getIntProperty("SHARD_VIRTUAL_NODES", 160);
+	}
+
+	// Number of batch chunks pipelined in parallel, each one on its own pooled
+	// connection
+	public static int getScatterParallelism()
+	{
+		return getIntProperty("SCATTER_PARALLELISM", 8);
+	}
+
+	// Largest number of keys of a batch command pipelined on a single connection
+	public static int getScatterChunkSize()
+	{
+		return getIntProperty("SCATTER_CHUNK_SIZE", 5000);
+	}
+
+	// Size in bytes of the chunks blobs are stored as
+	public static int getBlobChunkSize()
+	{
+		return getIntProperty("BLOB_CHUNK_SIZE", 256 * 1024);
+	}
+
+	// Number of chunks a blob writer buffers before sending them in one batch
+	public static int getBlobWriteBatch()
+	{
+		return getIntProperty("BLOB_WRITE_BATCH", 8);
+	}
+
+	// Number of chunks a blob reader fetches at once, and ahead of time
+	public static int getBlobPrefetch()
+	{
+		return getIntProperty("BLOB_PREFETCH", 4);
+	}
+
+	// Approximate number of entries streams are trimmed to as they grow, 0 to never trim
+	public static long getStreamMaxLen()
+	{
+		return getIntProperty("STREAM_MAX_LEN", 0);
+	}
+
+	// How long a stream consumer waits for new entries, 0 to not wait at all
+	public static long getStreamBlockMSec()
+	{
+		return getIntProperty("STREAM_BLOCK_MSEC", 2000);
+	}
+
+	// Number of acknowledgements a stream consumer buffers before sending them
+	public static int getStreamAckBatch()
+	{
+		return getIntProperty("STREAM_ACK_BATCH", 100);
+	}
+
+	// Number of threads pub/sub messages are handed to the handlers on
+	public static int getPubSubDispatchThreads()
+	{
+		return getIntProperty("PUBSUB_DISPATCH_THREADS", 4);
+	}
+
+	// Messages waiting for a dispatch thread before new ones are dropped
+	public static int getPubSubDispatchQueue()
+	{
+		return getIntProperty("PUBSUB_DISPATCH_QUEUE", 10000);
+	}
+
+	// Wait before a broken subscriber connection is connected again
+	public static long getPubSubReconnectMSec()
+	{
+		return getIntProperty("PUBSUB_RECONNECT_MSEC", 1000);
+	}
+
+	// Number of IDs globalIncrement leases from Redis at once
+	public static long getIdBlockSize()
+	{
+		return getIntProperty("ID_BLOCK_SIZE", 10000);
+	}
+
+	// Size in bytes of the buffer bulk loads encode commands into before writing them
+	public static int getBulkBufferSize()
+	{
+		return getIntProperty("BULK_BUFFER_SIZE", 64 * 1024);
+	}
+
+	// Number of commands a bulk load sends ahead of their replies
+	public static int getBulkMaxInFlight()
+	{
+		return getIntProperty("BULK_MAX_IN_FLIGHT", 100000);
+	}
+
+	// Number of records between two progress reports of a bulk load
+	public static long getBulkProgressRecords()
+	{
+		return getIntProperty("BULK_PROGRESS_RECORDS", 1000000);
+	}
+
+	// Keys asked for per SCAN by an export, and RESTOREs pipelined at once by a restore
+	public static int getExportBatch()
+	{
+		return getIntProperty("EXPORT_BATCH", 1000);
+	}
+
+	// Percentile of the recent read latencies after which a read is hedged on a
+	// second connection, 0 to never hedge
+	public static int getHedgePercentile()
+	{
+		return getIntProperty("HEDGE_PERCENTILE", 0);
+	}
+
+	// Reads faster than this are never hedged
+	public static int getHedgeMinDelayMSec()
+	{
+		return getIntProperty("HEDGE_MIN_DELAY_MSEC", 1);
+	}
+
+	// Hedges allowed per 100 reads
+	public static int getHedgeBudgetPercent()
+	{
+		return getIntProperty("HEDGE_BUDGET_PERCENT", 5);
+	}
+
+	// Permits a rate limiter takes from Redis at once, 1 to ask for every permit
+	public static int getRateLimitBatch()
+	{
+		return getIntProperty("RATE_LIMIT_BATCH", 1);
+	}
+
+	// Permits taken in a batch and not used within this time are dropped
+	public static int getRateLimitMaxHoldMSec()
+	{
+		return getIntProperty("RATE_LIMIT_MAX_HOLD_MSEC", 100);
 	}
 
 	public static String getKeyStoreFileLocation()
@@ -0,0 +1,128 @@
+package com.microsoft.cse.redis.api.helper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import redis.clients.jedis.util.Hashing;
+
+/**
+ * Consistent hash ring mapping keys to named nodes. Every node is placed on the
+ * ring at a number of virtual positions derived from its name only, so adding
+ * or removing a node only moves the keys of the ring segments it owns, roughly
+ * 1/N of them. Keys containing a {hashtag} are placed by the tag alone, like
+ * Redis Cluster does, so related keys can be kept on the same node.
+ *
+ * Lookups don't lock: the ring is rebuilt and replaced on every change.
+ *
+ * @param <T> type of the nodes
+ */
+public class ConsistentHashRing<T>
+{
+	private final int virtualNodes;
+	private final Map<String, T> nodes = new LinkedHashMap<>();
+	private volatile NavigableMap<Long, String> ring = new TreeMap<>();
+	private volatile Map<String, T> lookup = Collections.emptyMap();
+
+	public ConsistentHashRing(int virtualNodes)
+	{
+		this.virtualNodes = Math.max(1, virtualNodes);
+	}
+
+	public synchronized void add(String name, T node)
+	{
+		nodes.put(name, node);
+		rebuild();
+	}
+
+	// Removes the node, its keys move to the next nodes on the ring
+	public synchronized T remove(String name)
+	{
+		T node = nodes.remove(name);
+		rebuild();
+		return node;
+	}
+
+	private void rebuild()
+	{
+		NavigableMap<Long, String> r = new TreeMap<>();
+		for (String name : nodes.keySet())
+		{
+			for (int i = 0; i < virtualNodes; i++)
+			{
+				// on the rare collision the smaller name wins, so the ring does not depend
+				// on the order the nodes were added in
+				r.merge(hash(name + "#" + i), name, (a, b) -> (a.compareTo(b) <= 0) ? a : b);
+			}
+		}
+		lookup = Collections.unmodifiableMap(new LinkedHashMap<>(nodes));
+		ring = r;
+	}
+
+	/**
+	 * @return the name of the node owning the key, null if the ring is empty
+	 */
+	public String getNodeName(String key)
+	{
+		NavigableMap<Long, String> r = ring;
+		if (r.isEmpty())
+		{
+			return null;
+		}
+
+		Map.Entry<Long, String> e = r.ceilingEntry(hash(hashTag(key)));
+		return (e == null) ? r.firstEntry().getValue() : e.getValue();
+	}
+
+	public T get(String key)
+	{
+		String name = getNodeName(key);
+		return (name == null) ? null : lookup.get(name);
+	}
+
+	public T getNode(String name)
+	{
+		return lookup.get(name);
+	}
+
+	public Collection<T> getNodes()
+	{
+		return lookup.values();
+	}
+
+	public Collection<String> getNodeNames()
+	{
+		return lookup.keySet();
+	}
+
+	public int size()
+	{
+		return lookup.size();
+	}
+
+	/**
+	 * Part of the key that is hashed: the content of the first non-empty {...}
+	 * section if there is one, the whole key otherwise.
+	 */
+	public static String hashTag(String key)
+	{
+		int start = key.indexOf('{');
+		if (start >= 0)
+		{
+			int end = key.indexOf('}', start + 1);
+			if (end > (start + 1))
+			{
+				return key.substring(start + 1, end);
+			}
+		}
+		return key;
+	}
+
+	private static long hash(String s)
+	{
+		return Hashing.MURMUR_HASH.hash(s);
+	}
+}
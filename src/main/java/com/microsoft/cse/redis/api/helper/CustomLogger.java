@@ -1,6 +1,6 @@
 package com.microsoft.cse.redis.api.helper;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,95 +8,100 @@ import org.slf4j.LoggerFactory;
 public class CustomLogger
 {
 
-	private static final HashMap<String, Logger> loggers = new HashMap<>();
+	private static final ConcurrentHashMap<Class<?>, ClassLogger> loggers = new ConcurrentHashMap<>();
+
+	// Only walks as far as the caller's frame instead of capturing the whole stack
+	private static final StackWalker walker = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
 
 	private CustomLogger()
 	{
 	}
 
+	/**
+	 * Gets the logger of a class, meant to be kept in a static final field so hot
+	 * paths don't have to look up their caller on every call.
+	 *
+	 * @param clazz class the messages are logged for
+	 * @return the logger of the class
+	 */
+	public static ClassLogger forClass(Class<?> clazz)
+	{
+		return loggers.computeIfAbsent(clazz, c -> new ClassLogger(LoggerFactory.getLogger(c)));
+	}
+
 	public static void debug(String message)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.debug(message);
 	}
 
 	public static void error(String message)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.error(message);
 	}
 
 	public static void error(String message, Exception e)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.error(message, e);
 	}
 
 	public static void error(String message, Throwable e)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.error(message, e);
 	}
 
 	public static void info(String message)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.info(message);
 	}
 
 	public static void info(String message, Exception e)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.info(message, e);
 	}
 
 	public static void trace(String message)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.trace(message);
 	}
 
 	public static void warn(String message)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.warn(message);
 	}
 
 	public static void warn(String message, Exception e)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.warn(message, e);
 	}
 
 	public static void warn(String message, Throwable e)
 	{
 
-		Logger log = CustomLogger.getLogger(Thread.currentThread().getStackTrace()[2].getClassName());
+		Logger log = CustomLogger.getLogger(walker.getCallerClass());
 		log.warn(message, e);
 	}
 
-	private static Logger getLogger(String clazz)
+	private static Logger getLogger(Class<?> clazz)
 	{
-		Logger log = CustomLogger.loggers.get(clazz);
-		if (log == null)
-		{
-
-			log = LoggerFactory.getLogger(clazz);
-
-			loggers.put(clazz, log);
-
-		}
-		return log;
-
+		return forClass(clazz).getLogger();
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package com.microsoft.cse.redis.api.helper;
+
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.cse.redis.api.exceptions.DeadlineExceededException;
+
+/**
+ * Point in time by which the calls made by a thread must be done. While a
+ * deadline is set, the pooled connections bound the wait for a free connection
+ * and the socket reads by the time left, and failed calls are only retried if
+ * there is time left for it. Once it has passed, calls fail right away with a
+ * DeadlineExceededException.
+ *
+ * <pre>
+ * try (Deadline.Scope s = Deadline.start(50, TimeUnit.MILLISECONDS))
+ * {
+ * 	value = dataFactory.get(key);
+ * }
+ * </pre>
+ *
+ * A scope started inside another one never extends it. Work handed to another
+ * thread takes the deadline along with attach().
+ */
+public final class Deadline
+{
+	private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+	private final long expiresAt;
+
+	private Deadline(long expiresAt)
+	{
+		this.expiresAt = expiresAt;
+	}
+
+	/**
+	 * Sets a deadline on the calling thread until the returned scope is closed.
+	 *
+	 * @param timeout time the calls of the scope may take
+	 * @param unit    unit of the timeout
+	 * @return the scope to close once the calls are done
+	 */
+	public static Scope start(long timeout, TimeUnit unit)
+	{
+		long expiresAt = System.nanoTime() + unit.toNanos(timeout);
+
+		Deadline enclosing = current.get();
+		if ((enclosing != null) && ((enclosing.expiresAt - expiresAt) < 0))
+		{
+			expiresAt = enclosing.expiresAt;
+		}
+		return new Deadline(expiresAt).attach();
+	}
+
+	// Deadline of the calling thread, null if there is none
+	public static Deadline current()
+	{
+		return current.get();
+	}
+
+	/**
+	 * Makes this the deadline of the calling thread until the returned scope is
+	 * closed, for work done on behalf of the thread that set it.
+	 */
+	public Scope attach()
+	{
+		Scope s = new Scope(this, current.get());
+		current.set(this);
+		return s;
+	}
+
+	public long remainingNanos()
+	{
+		return expiresAt - System.nanoTime();
+	}
+
+	public long remainingMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+	}
+
+	public boolean isExpired()
+	{
+		return remainingNanos() <= 0;
+	}
+
+	/**
+	 * @param what what was about to be done, for the message of the exception
+	 * @throws DeadlineExceededException if the deadline has passed
+	 */
+	public void check(String what)
+	{
+		if (isExpired())
+		{
+			throw new DeadlineExceededException("Deadline exceeded " + what);
+		}
+	}
+
+	/**
+	 * Deadline set on a thread by start() or attach(), closing it puts back the
+	 * one that was set before.
+	 */
+	public static final class Scope implements AutoCloseable
+	{
+		private final Deadline deadline;
+		private final Deadline previous;
+
+		private Scope(Deadline deadline, Deadline previous)
+		{
+			this.deadline = deadline;
+			this.previous = previous;
+		}
+
+		public Deadline getDeadline()
+		{
+			return deadline;
+		}
+
+		@Override
+		public void close()
+		{
+			if (previous == null)
+			{
+				current.remove();
+			} else
+			{
+				current.set(previous);
+			}
+		}
+	}
+}
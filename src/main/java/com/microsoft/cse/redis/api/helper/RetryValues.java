@@ -1,8 +0,0 @@
-package com.microsoft.cse.redis.api.helper;
-
-public interface RetryValues
-{
-	public final static int delay = 100;
-	public final static int retrycount = 3;
-	public final static boolean verbose = true;
-}
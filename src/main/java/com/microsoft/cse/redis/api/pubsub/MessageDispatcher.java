@@ -0,0 +1,80 @@
+package com.microsoft.cse.redis.api.pubsub;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+
+/**
+ * Hands received messages over to the handlers, away from the thread reading
+ * the subscriber connection. Each channel always goes to the same single
+ * threaded lane, which keeps its messages in order. A lane queues at most
+ * queueSize messages; when a slow handler lets it fill up, new messages for it
+ * are dropped rather than stalling the reader.
+ */
+class MessageDispatcher
+{
+	private final ThreadPoolExecutor[] lanes;
+	private final LongAdder dropped = new LongAdder();
+
+	MessageDispatcher(int laneCount, int queueSize)
+	{
+		lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+		for (int i = 0; i < lanes.length; i++)
+		{
+			String name = "redis-pubsub-dispatch-" + i;
+			lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+						Thread t = new Thread(r, name);
+						t.setDaemon(true);
+						return t;
+					});
+		}
+	}
+
+	void dispatch(String channel, String message, List<Subscription> subscriptions)
+	{
+		if (subscriptions.isEmpty())
+		{
+			return;
+		}
+
+		try
+		{
+			lanes[Math.floorMod(channel.hashCode(), lanes.length)].execute(() -> {
+				for (Subscription s : subscriptions)
+				{
+					try
+					{
+						s.getHandler().onMessage(channel, message);
+					} catch (Exception e)
+					{
+						CustomLogger.error("Handler of " + s.getChannel() + " failed: " + e.getMessage(), e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e)
+		{
+			dropped.increment();
+			CustomLogger.debug("Dispatch queue full, dropped a message of " + channel);
+		}
+	}
+
+	// Messages dropped because their lane was full
+	long getDropped()
+	{
+		return dropped.sum();
+	}
+
+	void shutdown()
+	{
+		for (ThreadPoolExecutor lane : lanes)
+		{
+			lane.shutdownNow();
+		}
+	}
+}
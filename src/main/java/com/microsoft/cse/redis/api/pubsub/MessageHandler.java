@@ -0,0 +1,17 @@
+package com.microsoft.cse.redis.api.pubsub;
+
+/**
+ * Receives the messages of a subscription. Handlers are called from the
+ * dispatch pool, the messages of a channel one at a time and in the order they
+ * were published.
+ */
+@FunctionalInterface
+public interface MessageHandler
+{
+	/**
+	 * @param channel channel the message was published to, for a pattern
+	 *                subscription the channel that matched
+	 * @param message the message
+	 */
+	void onMessage(String channel, String message);
+}
@@ -0,0 +1,308 @@
+package com.microsoft.cse.redis.api.pubsub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * One connection in subscribed mode, shared by all the subscriptions to one
+ * endpoint. A reader thread owns the connection: it subscribes to everything
+ * that has a handler, passes the messages to the dispatcher and, when the
+ * connection breaks, connects again and subscribes to everything anew.
+ * Subscriptions added while connected are sent on the live connection.
+ */
+class SubscriberConnection extends JedisPubSub implements Runnable
+{
+	private final ConnectionFactory conn;
+	private final String endpoint;
+	private final MessageDispatcher dispatcher;
+	private final long reconnectMSec;
+	private final Thread reader;
+
+	private final Map<String, List<Subscription>> channels = new ConcurrentHashMap<>();
+	private final Map<String, List<Subscription>> patterns = new ConcurrentHashMap<>();
+	private final LongAdder reconnects = new LongAdder();
+
+	// Guards the subscription maps and every command written to the connection
+	private final Object lock = new Object();
+	private final Set<String> sentChannels = new HashSet<>();
+	private final Set<String> sentPatterns = new HashSet<>();
+	private boolean live;
+
+	private volatile Jedis connection;
+	private volatile boolean running = true;
+
+	/**
+	 * @param endpoint host:port to connect to, null for the current endpoint of
+	 *                 the cluster list
+	 */
+	SubscriberConnection(ConnectionFactory conn, String endpoint, MessageDispatcher dispatcher, long reconnectMSec,
+			int id)
+	{
+		this.conn = conn;
+		this.endpoint = endpoint;
+		this.dispatcher = dispatcher;
+		this.reconnectMSec = reconnectMSec;
+
+		reader = new Thread(this, "redis-subscriber-" + id);
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	void add(Subscription s)
+	{
+		Map<String, List<Subscription>> map = s.isPattern() ? patterns : channels;
+		synchronized (lock)
+		{
+			List<Subscription> list = map.computeIfAbsent(s.getChannel(), k -> new CopyOnWriteArrayList<>());
+			list.add(s);
+			if (list.size() == 1)
+			{
+				send(Collections.singletonList(s.getChannel()), s.isPattern(), true);
+			}
+			lock.notifyAll();
+		}
+	}
+
+	void remove(Subscription s)
+	{
+		Map<String, List<Subscription>> map = s.isPattern() ? patterns : channels;
+		synchronized (lock)
+		{
+			List<Subscription> list = map.get(s.getChannel());
+			if ((list == null) || !list.remove(s) || !list.isEmpty())
+			{
+				return;
+			}
+			map.remove(s.getChannel());
+			send(Collections.singletonList(s.getChannel()), s.isPattern(), false);
+		}
+	}
+
+	// Times the connection was established again after breaking
+	long getReconnects()
+	{
+		return reconnects.sum();
+	}
+
+	void shutdown()
+	{
+		running = false;
+		synchronized (lock)
+		{
+			lock.notifyAll();
+		}
+
+		Jedis c = connection;
+		if (c != null)
+		{
+			c.disconnect();
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		boolean broken = false;
+
+		while (running)
+		{
+			List<String> first;
+			boolean pattern;
+			synchronized (lock)
+			{
+				while (running && channels.isEmpty() && patterns.isEmpty())
+				{
+					try
+					{
+						lock.wait();
+					} catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				if (!running)
+				{
+					return;
+				}
+
+				// Jedis starts subscribed mode with a single command, whatever else
+				// there is to subscribe to goes out once it is confirmed
+				live = false;
+				sentChannels.clear();
+				sentPatterns.clear();
+				pattern = channels.isEmpty();
+				first = new ArrayList<>(pattern ? patterns.keySet() : channels.keySet());
+				(pattern ? sentPatterns : sentChannels).addAll(first);
+			}
+
+			try
+			{
+				connection = conn.newSubscriberConnection(endpoint);
+				if (broken)
+				{
+					reconnects.increment();
+					CustomLogger.info("Subscriber connection " + reader.getName() + " is back");
+					broken = false;
+				}
+
+				if (pattern)
+				{
+					connection.psubscribe(this, first.toArray(new String[0]));
+				} else
+				{
+					connection.subscribe(this, first.toArray(new String[0]));
+				}
+			} catch (Exception e)
+			{
+				if (running)
+				{
+					CustomLogger.error("Subscriber connection " + reader.getName() + " failed: " + e.getMessage(), e);
+					broken = true;
+				}
+			} finally
+			{
+				synchronized (lock)
+				{
+					live = false;
+				}
+				close();
+			}
+
+			if (broken)
+			{
+				try
+				{
+					Thread.sleep(reconnectMSec);
+				} catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void onMessage(String channel, String message)
+	{
+		dispatcher.dispatch(channel, message, channels.getOrDefault(channel, Collections.emptyList()));
+	}
+
+	@Override
+	public void onPMessage(String pattern, String channel, String message)
+	{
+		dispatcher.dispatch(channel, message, patterns.getOrDefault(pattern, Collections.emptyList()));
+	}
+
+	@Override
+	public void onSubscribe(String channel, int subscribedChannels)
+	{
+		confirmed();
+	}
+
+	@Override
+	public void onPSubscribe(String pattern, int subscribedChannels)
+	{
+		confirmed();
+	}
+
+	// First confirmation on a new connection: brings what the server is subscribed
+	// to in line with what was added or removed in the meantime
+	private void confirmed()
+	{
+		synchronized (lock)
+		{
+			if (live)
+			{
+				return;
+			}
+			live = true;
+
+			send(missing(channels.keySet(), sentChannels), false, true);
+			send(missing(patterns.keySet(), sentPatterns), true, true);
+			send(missing(sentChannels, channels.keySet()), false, false);
+			send(missing(sentPatterns, patterns.keySet()), true, false);
+		}
+	}
+
+	private static List<String> missing(Collection<String> from, Collection<String> in)
+	{
+		List<String> l = new ArrayList<>();
+		for (String s : from)
+		{
+			if (!in.contains(s))
+			{
+				l.add(s);
+			}
+		}
+		return l;
+	}
+
+	// Sends a (p)(un)subscribe on the live connection, called holding the lock.
+	// Without a live connection there is nothing to do: the reader subscribes to
+	// what is in the maps when it connects.
+	private void send(List<String> names, boolean pattern, boolean subscribe)
+	{
+		if (!live || names.isEmpty())
+		{
+			return;
+		}
+
+		String[] a = names.toArray(new String[0]);
+		try
+		{
+			if (pattern && subscribe)
+			{
+				psubscribe(a);
+				sentPatterns.addAll(names);
+			} else if (pattern)
+			{
+				punsubscribe(a);
+				sentPatterns.removeAll(names);
+			} else if (subscribe)
+			{
+				subscribe(a);
+				sentChannels.addAll(names);
+			} else
+			{
+				unsubscribe(a);
+				sentChannels.removeAll(names);
+			}
+		} catch (Exception e)
+		{
+			// the reader sees the broken connection too, and subscribes again
+			CustomLogger.error("Updating subscriptions of " + reader.getName() + " failed: " + e.getMessage(), e);
+		}
+	}
+
+	private void close()
+	{
+		Jedis c = connection;
+		connection = null;
+		if (c != null)
+		{
+			try
+			{
+				c.close();
+			} catch (Exception e)
+			{
+				CustomLogger.error("Error closing a subscriber connection: " + e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.microsoft.cse.redis.api.pubsub;
+
+import java.util.List;
+
+/**
+ * A handler subscribed to a channel or a pattern. Closing it unsubscribes the
+ * handler; the connection unsubscribes from the channel once it has no handler
+ * left. A pattern subscription with sharding is held on every shard.
+ */
+public class Subscription implements AutoCloseable
+{
+	private final List<SubscriberConnection> connections;
+	private final String channel;
+	private final boolean pattern;
+	private final MessageHandler handler;
+
+	Subscription(List<SubscriberConnection> connections, String channel, boolean pattern, MessageHandler handler)
+	{
+		this.connections = connections;
+		this.channel = channel;
+		this.pattern = pattern;
+		this.handler = handler;
+	}
+
+	// Channel, or pattern, subscribed to
+	public String getChannel()
+	{
+		return channel;
+	}
+
+	public boolean isPattern()
+	{
+		return pattern;
+	}
+
+	MessageHandler getHandler()
+	{
+		return handler;
+	}
+
+	@Override
+	public void close()
+	{
+		for (SubscriberConnection c : connections)
+		{
+			c.remove(this);
+		}
+	}
+}
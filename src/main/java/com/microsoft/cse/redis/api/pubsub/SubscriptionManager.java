@@ -0,0 +1,118 @@
+package com.microsoft.cse.redis.api.pubsub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory.conn_type;
+
+/**
+ * Subscriptions of a data factory. All its subscriptions to an endpoint share one
+ * subscriber connection, so subscribing costs no connection of its own. With
+ * sharding a channel is subscribed to on the shard its name hashes to, where it
+ * is also published, and a pattern on every shard.
+ */
+public class SubscriptionManager
+{
+	// Key of the subscriber connection when there is no sharding
+	private static final String CURRENT = "";
+
+	private final ConnectionFactory conn;
+	private final MessageDispatcher dispatcher;
+	private final Map<String, SubscriberConnection> connections = new ConcurrentHashMap<>();
+
+	public SubscriptionManager(ConnectionFactory conn)
+	{
+		this.conn = conn;
+		dispatcher = new MessageDispatcher(ConfigurationManager.getPubSubDispatchThreads(),
+				ConfigurationManager.getPubSubDispatchQueue());
+	}
+
+	/**
+	 * Subscribes a handler to a channel.
+	 *
+	 * @return the subscription, to be closed to unsubscribe
+	 */
+	public Subscription subscribe(String channel, MessageHandler handler)
+	{
+		String endpoint = CURRENT;
+		if (conn.getSelectedType() == conn_type.JEDISSHARDED)
+		{
+			endpoint = conn.getShardedConnection().getShardName(channel);
+		}
+
+		return add(Collections.singletonList(getConnection(endpoint)), channel, false, handler);
+	}
+
+	/**
+	 * Subscribes a handler to every channel matching a glob-style pattern.
+	 *
+	 * @return the subscription, to be closed to unsubscribe
+	 */
+	public Subscription psubscribe(String pattern, MessageHandler handler)
+	{
+		List<SubscriberConnection> l = new ArrayList<>();
+		if (conn.getSelectedType() == conn_type.JEDISSHARDED)
+		{
+			for (String shard : conn.getShardedConnection().getShardNames())
+			{
+				l.add(getConnection(shard));
+			}
+		} else
+		{
+			l.add(getConnection(CURRENT));
+		}
+
+		return add(l, pattern, true, handler);
+	}
+
+	// Messages dropped because a handler could not keep up
+	public long getDropped()
+	{
+		return dispatcher.getDropped();
+	}
+
+	// Times a subscriber connection broke and was connected again
+	public long getReconnects()
+	{
+		long l = 0;
+		for (SubscriberConnection c : connections.values())
+		{
+			l += c.getReconnects();
+		}
+		return l;
+	}
+
+	// Closes the subscriber connections and stops dispatching
+	public void shutdown()
+	{
+		for (SubscriberConnection c : connections.values())
+		{
+			c.shutdown();
+		}
+		connections.clear();
+		dispatcher.shutdown();
+	}
+
+	private static Subscription add(List<SubscriberConnection> l, String channel, boolean pattern,
+			MessageHandler handler)
+	{
+		Subscription s = new Subscription(l, channel, pattern, handler);
+		for (SubscriberConnection c : l)
+		{
+			c.add(s);
+		}
+		return s;
+	}
+
+	private SubscriberConnection getConnection(String endpoint)
+	{
+		return connections.computeIfAbsent(endpoint,
+				e -> new SubscriberConnection(conn, CURRENT.equals(e) ? null : e, dispatcher,
+						ConfigurationManager.getPubSubReconnectMSec(), connections.size()));
+	}
+}
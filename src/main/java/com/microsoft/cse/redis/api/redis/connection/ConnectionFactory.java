@@ -1,11 +1,16 @@
 package com.microsoft.cse.redis.api.redis.connection;
 
 import com.microsoft.cse.redis.api.helper.ClusterEndpoints;
+import com.microsoft.cse.redis.api.helper.ClusterEndpoints.RedisCluster;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
 import com.microsoft.cse.redis.api.helper.CustomLogger;
 import com.microsoft.cse.redis.api.redis.connection.jedis.PooledConnection;
+import com.microsoft.cse.redis.api.redis.connection.jedis.ShardedConnection;
 import com.microsoft.cse.redis.api.redis.connection.jedis.SingleConnection;
 import com.microsoft.cse.redis.api.redis.connection.spring.SpringConnection;
 
+import redis.clients.jedis.Jedis;
+
 /*
 This is where the magic happens and depending on the type of Redis SDK requested, the appropriate connection
 is created. Jedis has a choice of Pooled and Single instance. Lettuce and Spring are pooled by default.
@@ -15,7 +20,7 @@ public class ConnectionFactory
 
 	public enum conn_type
 	{
-		JEDIS, JEDISPOOL, SPRING, JEDISPIPELINED
+		JEDIS, JEDISPOOL, SPRING, JEDISPIPELINED, JEDISAUTOPIPELINED, JEDISSHARDED
 	}
 
 	private static volatile ConnectionFactory INSTANCE = null;
@@ -28,6 +33,8 @@ public class ConnectionFactory
 
 	private SingleConnection jConnection;
 
+	private ShardedConnection shardedConnection;
+
 	private final String password;
 
 	private final int poolsize;
@@ -38,6 +45,9 @@ public class ConnectionFactory
 
 	private final ClusterEndpoints clusters;
 
+	// Name of the data source, null for the process wide instance
+	private final String name;
+
 	public static ConnectionFactory getJedisInstance(String[] host, int[] port, String password, int numberofpools,
 			int timeoutmsec)
 	{
@@ -95,6 +105,48 @@ public class ConnectionFactory
 		return INSTANCE;
 	}
 
+	// Pooled Jedis connection whose data factory coalesces the commands of
+	// concurrent threads into shared pipelines
+	public static ConnectionFactory getAutoPipelinedJedisPooledInstance(String[] host, int[] port, String password,
+			int poolsize, int numberofpools, int timeoutmsec)
+	{
+		CustomLogger.debug("Requesting an auto-pipelined Jedis-pooled connections");
+
+		if (INSTANCE == null)
+		{
+			synchronized (ConnectionFactory.class)
+			{
+				if (INSTANCE == null)
+				{
+					INSTANCE = new ConnectionFactory(conn_type.JEDISAUTOPIPELINED, host, port, password, poolsize,
+							numberofpools, timeoutmsec);
+				}
+			}
+		}
+		return INSTANCE;
+	}
+
+	// Pooled Jedis connections to every endpoint of the list, each key being served
+	// by the endpoint that owns it on a consistent hash ring
+	public static ConnectionFactory getShardedJedisPooledInstance(String[] host, int[] port, String password,
+			int poolsize, int timeoutmsec)
+	{
+		CustomLogger.debug("Requesting sharded Jedis-pooled connections");
+
+		if (INSTANCE == null)
+		{
+			synchronized (ConnectionFactory.class)
+			{
+				if (INSTANCE == null)
+				{
+					INSTANCE = new ConnectionFactory(conn_type.JEDISSHARDED, host, port, password, poolsize, 0,
+							timeoutmsec);
+				}
+			}
+		}
+		return INSTANCE;
+	}
+
 	public static ConnectionFactory getSpringInstance(String[] host, int[] port, String password, int timeoutmsec)
 	{
 		CustomLogger.debug("Requesting a Spring connections");
@@ -112,6 +164,21 @@ public class ConnectionFactory
 		return INSTANCE;
 	}
 
+	/**
+	 * Creates connections of their own for a named data source, next to the
+	 * process wide instance. Settings of the data source, such as its POOL_SIZE,
+	 * are read with DATASOURCE_&lt;NAME&gt;_ in front of them.
+	 *
+	 * @param name name of the data source
+	 */
+	public static ConnectionFactory newInstance(String name, conn_type t, String[] host, int[] port, String password,
+			int poolsize, int numberofpools, int timeoutmsec)
+	{
+		CustomLogger.debug("Creating connections for data source " + name);
+
+		return new ConnectionFactory(name, t, host, port, password, poolsize, numberofpools, timeoutmsec);
+	}
+
 	public static ConnectionFactory getConnection()
 	{
 		if (INSTANCE != null)
@@ -127,13 +194,22 @@ public class ConnectionFactory
 	private ConnectionFactory(conn_type t, String[] host, int[] port, String password, int poolsize, int numberofpools,
 			int timeoutmsec)
 	{
+		this(null, t, host, port, password, poolsize, numberofpools, timeoutmsec);
+	}
+
+	private ConnectionFactory(String name, conn_type t, String[] host, int[] port, String password, int poolsize,
+			int numberofpools, int timeoutmsec)
+	{
+		this.name = name;
 		this.password = password;
 		this.poolsize = poolsize;
 		this.timeoutmsec = timeoutmsec;
 		this.numberofpools = numberofpools;
 		selected = t;
 
-		clusters = ClusterEndpoints.clusterEndpoints(host, port);
+		// data sources have endpoints of their own, the process wide ones are shared
+		clusters = (name == null) ? ClusterEndpoints.clusterEndpoints(host, port)
+				: ClusterEndpoints.newClusterEndpoints(host, port);
 
 		CustomLogger.debug("Requesting a connection of type: " + t);
 		CustomLogger.debug("Requesting a connection to: " + host);
@@ -147,11 +223,15 @@ public class ConnectionFactory
 			break;
 		case JEDISPOOL:
 		case JEDISPIPELINED:
-			pooledConnection = new PooledConnection(clusters, poolsize, numberofpools, password, timeoutmsec);
+		case JEDISAUTOPIPELINED:
+			pooledConnection = new PooledConnection(clusters, poolsize, numberofpools, password, timeoutmsec, name);
 			break;
 		case SPRING:
 			springConnection = new SpringConnection(clusters, poolsize, password, timeoutmsec);
 			break;
+		case JEDISSHARDED:
+			shardedConnection = new ShardedConnection(clusters, poolsize, password, timeoutmsec, name);
+			break;
 		}
 	}
 
@@ -162,6 +242,39 @@ public class ConnectionFactory
 
 	}
 
+	// Name of the data source, null for the process wide instance
+	public String getName()
+	{
+		return name;
+	}
+
+	// Endpoints the connections were opened to
+	public ClusterEndpoints getClusterEndpoints()
+	{
+		return clusters;
+	}
+
+	// Closes every connection this factory opened
+	public void shutdown()
+	{
+		if (pooledConnection != null)
+		{
+			pooledConnection.shutdown();
+		}
+		if (shardedConnection != null)
+		{
+			shardedConnection.shutdown();
+		}
+		if (springConnection != null)
+		{
+			springConnection.shutdown();
+		}
+		if (jConnection != null)
+		{
+			jConnection.shutdown();
+		}
+	}
+
 	public void resetConnection()
 	{
 		CustomLogger.error("Resetting ALL connections");
@@ -195,11 +308,22 @@ public class ConnectionFactory
 
 		if (pooledConnection == null)
 		{
-			pooledConnection = new PooledConnection(clusters, poolsize, numberofpools, password, timeoutmsec);
+			pooledConnection = new PooledConnection(clusters, poolsize, numberofpools, password, timeoutmsec, name);
 		}
 		return pooledConnection;
 	}
 
+	public ShardedConnection getShardedConnection()
+	{
+		if (shardedConnection == null)
+		{
+			CustomLogger.debug("Sharded connection NULL, creating a new one");
+
+			shardedConnection = new ShardedConnection(clusters, poolsize, password, timeoutmsec, name);
+		}
+		return shardedConnection;
+	}
+
 	public SpringConnection getSpringConnection()
 	{
 		CustomLogger.debug("Spring connection NULL, creating a new one");
@@ -212,4 +336,45 @@ public class ConnectionFactory
 		return springConnection;
 	}
 
+	/**
+	 * Opens a connection outside of the pools, for a subscriber that keeps it as
+	 * long as it is subscribed. Without an endpoint it connects to the next one of
+	 * the cluster list, so reconnecting fails over the way the pools do.
+	 *
+	 * @param endpoint host:port to connect to, or null
+	 */
+	public Jedis newSubscriberConnection(String endpoint)
+	{
+		String host;
+		int port;
+		if (endpoint == null)
+		{
+			RedisCluster rc = clusters.next();
+			host = rc.getHost();
+			port = rc.getPort();
+		} else
+		{
+			host = endpoint.substring(0, endpoint.lastIndexOf(':'));
+			port = Integer.parseInt(endpoint.substring(endpoint.lastIndexOf(':') + 1));
+		}
+
+		CustomLogger.debug("Opening a subscriber connection to " + host + ":" + port);
+		Jedis jd = new Jedis(host, port, timeoutmsec, ConfigurationManager.getServerSideSSLEnabled());
+		try
+		{
+			if (password != null)
+			{
+				jd.auth(password);
+			} else
+			{
+				jd.connect();
+			}
+		} catch (RuntimeException e)
+		{
+			jd.close();
+			throw e;
+		}
+		return jd;
+	}
+
 }
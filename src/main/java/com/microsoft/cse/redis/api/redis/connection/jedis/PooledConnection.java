@@ -3,15 +3,20 @@ package com.microsoft.cse.redis.api.redis.connection.jedis;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-import com.jcabi.aspects.RetryOnFailure;
 import com.microsoft.cse.redis.api.helper.ClusterEndpoints;
+import com.microsoft.cse.redis.api.helper.Configuration;
+import com.microsoft.cse.redis.api.helper.ConfigurationListener;
 import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.ClassLogger;
 import com.microsoft.cse.redis.api.helper.CustomLogger;
-import com.microsoft.cse.redis.api.helper.RetryValues;
 import com.microsoft.cse.redis.api.helper.ClusterEndpoints.RedisCluster;
+import com.microsoft.cse.redis.api.helper.Deadline;
 import com.microsoft.cse.redis.api.redis.connection.ConnectionInterface;
+import com.microsoft.cse.redis.api.redis.data.DataSources;
+import com.microsoft.cse.redis.api.retry.Retryable;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
@@ -19,17 +24,31 @@ import redis.clients.jedis.JedisPoolConfig;
 
 public class PooledConnection extends ConnectionInterface
 {
+	private static final ClassLogger LOG = CustomLogger.forClass(PooledConnection.class);
+
 	// Private member that contains the actual pool
-	private JedisPool currentPool;
-	private final ConcurrentLinkedQueue<JedisPool> pools;
+	private volatile ResizableJedisPool currentPool;
+	private final ConcurrentLinkedQueue<ResizableJedisPool> pools;
 
 	private final JedisPoolConfig config;
 	private final int numPools;
+	private final String dataSource;
+
+	// Checks the pools of every instance; each check is bounded by the connection
+	// timeout, so an endpoint that is down can't hold up the checks of the others
+	private static final ScheduledExecutorService checker = Executors.newScheduledThreadPool(2, r ->
+	{
+		Thread t = new Thread(r, "redis-pool-check");
+		t.setDaemon(true);
+		return t;
+	});
 
-	private static ScheduledExecutorService executor;
+	private final ScheduledFuture<?> check;
 
 	private final Object lockObj = new Object();
 
+	private final ConfigurationListener resizer = this::onConfigurationChange;
+
 	// Pool is created during the constructor phase.
 
 	/**
@@ -49,10 +68,23 @@ public class PooledConnection extends ConnectionInterface
 
 	public PooledConnection(ClusterEndpoints clusters, int numberOfConnection, int numberofpool, String password,
 			int timeout)
+	{
+		this(clusters, numberOfConnection, numberofpool, password, timeout, null);
+	}
+
+	// Pools of a named data source, sized by its own POOL_SIZE setting
+	public PooledConnection(ClusterEndpoints clusters, int numberOfConnection, int numberofpool, String password,
+			int timeout, String dataSource)
 	{
 		super(clusters, password, timeout);
 
 		numPools = numberofpool;
+		this.dataSource = dataSource;
+		int size = DataSources.getPoolSize(ConfigurationManager.getConfiguration(), dataSource);
+		if (size > 0)
+		{
+			numberOfConnection = size;
+		}
 
 		config = new JedisPoolConfig();
 		config.setTestWhileIdle(true);
@@ -71,24 +103,52 @@ public class PooledConnection extends ConnectionInterface
 			RedisCluster rc = clusters.next();
 			if (password == null)
 			{
-				pools.add(new JedisPool(config, rc.getHost(), rc.getPort(), timeout, super.serverSsl));
+				pools.add(new ResizableJedisPool(config, rc.getHost(), rc.getPort(), timeout, super.serverSsl));
 			} else
 			{
-				pools.add(new JedisPool(config, rc.getHost(), rc.getPort(), timeout, password, super.serverSsl));
+				pools.add(new ResizableJedisPool(config, rc.getHost(), rc.getPort(), timeout, password,
+						super.serverSsl));
 			}
 		}
 		currentPool = pools.remove();
+		ConfigurationManager.addListener(resizer);
 
-		if (executor == null)
+		// every instance checks its own pools, so that each data source keeps its own
+		check = checker.scheduleWithFixedDelay(() ->
 		{
-			executor = Executors.newScheduledThreadPool(2);
+			checkPool();
+			resetPool();
+		}, 0, ConfigurationManager.getConnectionCheckSec(), TimeUnit.MILLISECONDS);
+	}
 
-			executor.scheduleWithFixedDelay(() -> checkPool(), 0, ConfigurationManager.getConnectionCheckSec(),
-					TimeUnit.MILLISECONDS);
+	private void onConfigurationChange(Configuration previous, Configuration current)
+	{
+		int size = DataSources.getPoolSize(current, dataSource);
+		if ((size > 0) && (size != DataSources.getPoolSize(previous, dataSource)))
+		{
+			resize(size);
+		}
+	}
 
-			executor.scheduleWithFixedDelay(() -> resetPool(), 0, ConfigurationManager.getConnectionCheckSec(),
-					TimeUnit.MILLISECONDS);
+	// Applies a new POOL_SIZE to the pools in use and to the ones created later
+	private void resize(int size)
+	{
+		LOG.info("Resizing pools to {} connections", size);
+		synchronized (lockObj)
+		{
+			config.setMaxTotal(size);
+			config.setMaxIdle(size);
+			config.setMinIdle(size / 2);
+		}
 
+		ResizableJedisPool pool = currentPool;
+		if (pool != null)
+		{
+			pool.resize(size);
+		}
+		for (ResizableJedisPool p : pools)
+		{
+			p.resize(size);
 		}
 	}
 
@@ -99,7 +159,7 @@ public class PooledConnection extends ConnectionInterface
 
 	private void checkPool()
 	{
-		CustomLogger.debug("Checking to see if pools are ok");
+		LOG.debug("Checking to see if pools are ok");
 		try
 		{
 			if (pools.isEmpty() && (currentPool != null))
@@ -112,7 +172,8 @@ public class PooledConnection extends ConnectionInterface
 						{
 							RedisCluster rc = clusters.next();
 
-							pools.add(new JedisPool(config, rc.getHost(), rc.getPort(), timeout, super.serverSsl));
+							pools.add(new ResizableJedisPool(config, rc.getHost(), rc.getPort(), timeout,
+									super.serverSsl));
 						}
 
 					} else
@@ -121,7 +182,7 @@ public class PooledConnection extends ConnectionInterface
 						{
 							RedisCluster rc = clusters.next();
 
-							pools.add(new JedisPool(config, rc.getHost(), rc.getPort(), timeout, password,
+							pools.add(new ResizableJedisPool(config, rc.getHost(), rc.getPort(), timeout, password,
 									super.serverSsl));
 						}
 					}
@@ -136,7 +197,8 @@ public class PooledConnection extends ConnectionInterface
 						{
 							RedisCluster rc = clusters.next();
 
-							pools.add(new JedisPool(config, rc.getHost(), rc.getPort(), timeout, super.serverSsl));
+							pools.add(new ResizableJedisPool(config, rc.getHost(), rc.getPort(), timeout,
+									super.serverSsl));
 						}
 
 					} else
@@ -145,7 +207,7 @@ public class PooledConnection extends ConnectionInterface
 						{
 							RedisCluster rc = clusters.next();
 
-							pools.add(new JedisPool(config, rc.getHost(), rc.getPort(), timeout, password,
+							pools.add(new ResizableJedisPool(config, rc.getHost(), rc.getPort(), timeout, password,
 									super.serverSsl));
 						}
 					}
@@ -160,7 +222,8 @@ public class PooledConnection extends ConnectionInterface
 						{
 							RedisCluster rc = clusters.next();
 
-							pools.add(new JedisPool(config, rc.getHost(), rc.getPort(), timeout, super.serverSsl));
+							pools.add(new ResizableJedisPool(config, rc.getHost(), rc.getPort(), timeout,
+									super.serverSsl));
 						}
 
 					} else
@@ -169,7 +232,7 @@ public class PooledConnection extends ConnectionInterface
 						{
 							RedisCluster rc = clusters.next();
 
-							pools.add(new JedisPool(config, rc.getHost(), rc.getPort(), timeout, password,
+							pools.add(new ResizableJedisPool(config, rc.getHost(), rc.getPort(), timeout, password,
 									super.serverSsl));
 						}
 					}
@@ -178,17 +241,17 @@ public class PooledConnection extends ConnectionInterface
 
 		} catch (Exception error)
 		{
-			CustomLogger.error("Checkpool failed: " + error.getMessage(), error);
+			LOG.error("Checkpool failed: " + error.getMessage(), error);
 		}
 	}
 
 	// Return a connection from the Pool
 	// It blocks and waits when there are no more connections.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public Jedis getConnection()
 	{
-		CustomLogger.debug("In getConnection - getting a connection from pool");
+		LOG.debug("In getConnection - getting a connection from pool");
 
 		Jedis connection = null;
 		try
@@ -199,16 +262,30 @@ public class PooledConnection extends ConnectionInterface
 			}
 		} catch (Exception ex)
 		{
-			CustomLogger.error("Error getting connection: " + ex.toString());
+			LOG.error("Error getting connection: " + ex.toString());
 			throw ex;
 		}
 
 		return connection;
 	}
 
+	// Connection for the duplicate of a slow read: from another pool of the list,
+	// likely to another endpoint, or from the current pool if there is no other
+	public Jedis getHedgeConnection()
+	{
+		JedisPool pool = pools.peek();
+		if (pool == null)
+		{
+			pool = currentPool;
+		}
+		return pool.getResource();
+	}
+
 	public JedisPool resetPool()
 	{
 		Jedis connection = null;
+		// the check gives up after the connection timeout, 0 waits as long as Jedis does
+		Deadline.Scope scope = (timeout > 0) ? Deadline.start(timeout, TimeUnit.MILLISECONDS) : null;
 		try
 		{
 			connection = currentPool.getResource();
@@ -216,7 +293,7 @@ public class PooledConnection extends ConnectionInterface
 
 		} catch (Exception ex)
 		{
-			CustomLogger.error("Error pinging, resetting the connection: " + ex.toString());
+			LOG.error("Error pinging, resetting the connection: " + ex.toString());
 
 			if (currentPool != null)
 			{
@@ -224,18 +301,10 @@ public class PooledConnection extends ConnectionInterface
 				currentPool = null;
 			}
 
-			while (pools.isEmpty())
+			if (pools.isEmpty())
 			{
-				CustomLogger.debug("No connection pools left... will go to sleep and wake up to check in a min");
-
-				try
-				{
-					Thread.sleep(5L * timeout);
-				} catch (InterruptedException e)
-				{
-					CustomLogger.error("Exception in sleeping for pool creation..." + e.getMessage(), e);
-
-				}
+				LOG.debug("No connection pools left... creating new ones");
+				checkPool();
 			}
 
 			if (!pools.isEmpty() && (currentPool == null))
@@ -248,6 +317,10 @@ public class PooledConnection extends ConnectionInterface
 			{
 				connection.close();
 			}
+			if (scope != null)
+			{
+				scope.close();
+			}
 		}
 
 		return currentPool;
@@ -276,21 +349,22 @@ public class PooledConnection extends ConnectionInterface
 	public void shutdown()
 	{
 
-		CustomLogger.debug("Shutting everything down");
+		LOG.debug("Shutting everything down");
+		ConfigurationManager.removeListener(resizer);
 		try
 		{
 			for (int i = 0; i < pools.size(); i++)
 			{
 
-				JedisPool jp = pools.remove();
+				ResizableJedisPool jp = pools.remove();
 				jp.destroy();
 
 			}
-			executor.shutdown();
+			check.cancel(false);
 
 		} catch (Exception error)
 		{
-			CustomLogger.error("Checkpool failed: " + error.getMessage(), error);
+			LOG.error("Checkpool failed: " + error.getMessage(), error);
 		}
 
 	}
@@ -0,0 +1,221 @@
+package com.microsoft.cse.redis.api.redis.connection.jedis;
+
+import java.util.NoSuchElementException;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+
+import com.microsoft.cse.redis.api.exceptions.DeadlineExceededException;
+import com.microsoft.cse.redis.api.helper.Deadline;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+// JedisPool whose size can be changed while it is in use, and whose borrows
+// follow the deadline of the calling thread, including the connections they open
+class ResizableJedisPool extends JedisPool
+{
+	private final int timeout;
+
+	ResizableJedisPool(JedisPoolConfig config, String host, int port, int timeout, boolean ssl)
+	{
+		this(config, host, port, timeout, null, ssl);
+	}
+
+	ResizableJedisPool(JedisPoolConfig config, String host, int port, int timeout, String password,
+			boolean ssl)
+	{
+		super(config, host, port, timeout, password, ssl);
+		this.timeout = timeout;
+		initPool(config, new DeadlineJedisFactory(host, port, timeout, password, ssl));
+	}
+
+	/**
+	 * Opens the connections of the pool. A connection opened for a borrow under a
+	 * deadline connects and authenticates within the time left, not within the
+	 * full connection timeout.
+	 */
+	private static final class DeadlineJedisFactory implements PooledObjectFactory<Jedis>
+	{
+		private final String host;
+		private final int port;
+		private final int timeout;
+		private final String password;
+		private final boolean ssl;
+
+		DeadlineJedisFactory(String host, int port, int timeout, String password, boolean ssl)
+		{
+			this.host = host;
+			this.port = port;
+			this.timeout = timeout;
+			this.password = password;
+			this.ssl = ssl;
+		}
+
+		@Override
+		public PooledObject<Jedis> makeObject()
+		{
+			int t = timeout;
+			Deadline deadline = Deadline.current();
+			if (deadline != null)
+			{
+				deadline.check("before opening a pooled connection");
+				t = (int) Math.max(1, Math.min(deadline.remainingMillis(), (timeout > 0) ? timeout
+						: Integer.MAX_VALUE));
+			}
+
+			Jedis jedis = new Jedis(host, port, t, t, ssl);
+			try
+			{
+				jedis.connect();
+				if (password != null)
+				{
+					jedis.auth(password);
+				}
+			} catch (JedisException e)
+			{
+				jedis.close();
+				if ((deadline != null) && deadline.isExpired())
+				{
+					throw new DeadlineExceededException("Deadline exceeded opening a pooled connection", e);
+				}
+				throw e;
+			}
+			return new DefaultPooledObject<>(jedis);
+		}
+
+		@Override
+		public void destroyObject(PooledObject<Jedis> p)
+		{
+			Jedis jedis = p.getObject();
+			if (jedis.isConnected())
+			{
+				try
+				{
+					jedis.quit();
+				} catch (Exception e)
+				{
+					// closed anyway
+				}
+				jedis.disconnect();
+			}
+		}
+
+		@Override
+		public boolean validateObject(PooledObject<Jedis> p)
+		{
+			try
+			{
+				return p.getObject().isConnected() && "PONG".equals(p.getObject().ping());
+			} catch (Exception e)
+			{
+				return false;
+			}
+		}
+
+		@Override
+		public void activateObject(PooledObject<Jedis> p)
+		{
+		}
+
+		@Override
+		public void passivateObject(PooledObject<Jedis> p)
+		{
+		}
+	}
+
+	// Connections above the new size are closed as they are given back
+	void resize(int size)
+	{
+		internalPool.setMaxTotal(size);
+		internalPool.setMaxIdle(size);
+		internalPool.setMinIdle(size / 2);
+	}
+
+	/**
+	 * Under a deadline, waits for a free connection and lets its socket reads
+	 * block no longer than the time left.
+	 */
+	@Override
+	public Jedis getResource()
+	{
+		Deadline deadline = Deadline.current();
+		if (deadline == null)
+		{
+			return super.getResource();
+		}
+
+		deadline.check("before getting a pooled connection");
+		long wait = deadline.remainingMillis();
+		if (internalPool.getMaxWaitMillis() >= 0)
+		{
+			wait = Math.min(wait, internalPool.getMaxWaitMillis());
+		}
+
+		Jedis jedis;
+		try
+		{
+			jedis = internalPool.borrowObject(Math.max(1, wait));
+		} catch (NoSuchElementException e)
+		{
+			if (deadline.isExpired())
+			{
+				throw new DeadlineExceededException("Deadline exceeded waiting for a pooled connection", e);
+			}
+			throw new JedisExhaustedPoolException("Could not get a resource since the pool is exhausted", e);
+		} catch (DeadlineExceededException e)
+		{
+			throw e;
+		} catch (Exception e)
+		{
+			throw new JedisConnectionException("Could not get a resource from the pool", e);
+		}
+		jedis.setDataSource(this);
+
+		int soTimeout = (int) Math.max(1, Math.min(deadline.remainingMillis(), (timeout > 0) ? timeout
+				: Integer.MAX_VALUE));
+		try
+		{
+			setSoTimeout(jedis.getClient(), soTimeout);
+		} catch (RuntimeException e)
+		{
+			jedis.close();
+			throw e;
+		}
+		return jedis;
+	}
+
+	// Connections go back to the pool with the timeout they were created with
+	@Override
+	protected void returnResource(Jedis resource)
+	{
+		Client c = resource.getClient();
+		if ((c.getSoTimeout() != timeout) && !c.isBroken())
+		{
+			try
+			{
+				setSoTimeout(c, timeout);
+			} catch (JedisConnectionException e)
+			{
+				returnBrokenResource(resource);
+				return;
+			}
+		}
+		super.returnResource(resource);
+	}
+
+	private static void setSoTimeout(Client c, int soTimeout)
+	{
+		c.setSoTimeout(soTimeout);
+		if (c.isConnected())
+		{
+			c.rollbackTimeout();
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package com.microsoft.cse.redis.api.redis.connection.jedis;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import com.microsoft.cse.redis.api.helper.ClusterEndpoints;
+import com.microsoft.cse.redis.api.helper.ClusterEndpoints.RedisCluster;
+import com.microsoft.cse.redis.api.helper.Configuration;
+import com.microsoft.cse.redis.api.helper.ConfigurationListener;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.ConsistentHashRing;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionInterface;
+import com.microsoft.cse.redis.api.redis.data.DataSources;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+/**
+ * Spreads the keys over independent (non-clustered) Redis instances. Every
+ * endpoint of HOST_NAME/HOST_PORT gets its own pool, and each key is served by
+ * the pool that owns it on a consistent hash ring. Keys sharing a {hashtag} are
+ * always on the same endpoint.
+ */
+public class ShardedConnection extends ConnectionInterface
+{
+	private final JedisPoolConfig config;
+	private final ConsistentHashRing<ResizableJedisPool> ring;
+	private final String dataSource;
+
+	private final ConfigurationListener listener = this::onConfigurationChange;
+
+	public ShardedConnection(ClusterEndpoints clusters, int numberOfConnection, String password, int timeout)
+	{
+		this(clusters, numberOfConnection, password, timeout, null);
+	}
+
+	// Shards of a named data source, sized by its own POOL_SIZE setting
+	public ShardedConnection(ClusterEndpoints clusters, int numberOfConnection, String password, int timeout,
+			String dataSource)
+	{
+		super(clusters, password, timeout);
+		this.dataSource = dataSource;
+		int size = DataSources.getPoolSize(ConfigurationManager.getConfiguration(), dataSource);
+		if (size > 0)
+		{
+			numberOfConnection = size;
+		}
+
+		config = new JedisPoolConfig();
+		config.setTestWhileIdle(true);
+		config.setTestOnBorrow(false);
+		config.setTestOnReturn(false);
+		config.setNumTestsPerEvictionRun(-1);
+		config.setMaxTotal(numberOfConnection);
+		config.setMaxIdle(numberOfConnection);
+		config.setMinIdle(numberOfConnection / 2);
+		config.setBlockWhenExhausted(true);
+
+		ring = new ConsistentHashRing<>(ConfigurationManager.getShardVirtualNodes());
+		for (RedisCluster rc : clusters.getAll())
+		{
+			addShard(rc.getHost(), rc.getPort());
+		}
+		ConfigurationManager.addListener(listener);
+	}
+
+	private static String shardName(String host, int port)
+	{
+		return host + ":" + port;
+	}
+
+	private void addShard(String host, int port)
+	{
+		String name = shardName(host, port);
+		if (ring.getNode(name) != null)
+		{
+			return;
+		}
+
+		CustomLogger.debug("Adding shard " + name);
+		if (password == null)
+		{
+			ring.add(name, new ResizableJedisPool(config, host, port, timeout, super.serverSsl));
+		} else
+		{
+			ring.add(name, new ResizableJedisPool(config, host, port, timeout, password, super.serverSsl));
+		}
+	}
+
+	/**
+	 * Applies a reloaded configuration: a new POOL_SIZE resizes the pools, and a
+	 * new HOST_NAME/HOST_PORT list adds and removes shards. A list that can't be
+	 * read is logged and the current shards are kept.
+	 */
+	public void onConfigurationChange(Configuration previous, Configuration current)
+	{
+		int size = DataSources.getPoolSize(current, dataSource);
+		if ((size > 0) && (size != DataSources.getPoolSize(previous, dataSource)))
+		{
+			resize(size);
+		}
+
+		String hosts = current.getProperty(dataSource, "HOST_NAME");
+		String ports = current.getProperty(dataSource, "HOST_PORT");
+		boolean same = Objects.equals(hosts, previous.getProperty(dataSource, "HOST_NAME"))
+				&& Objects.equals(ports, previous.getProperty(dataSource, "HOST_PORT"));
+		if ((hosts == null) || (ports == null) || same)
+		{
+			return;
+		}
+
+		try
+		{
+			updateShards(ClusterEndpoints.newClusterEndpoints(hosts.trim().split("\\s*,\\s*"),
+					Stream.of(ports.trim().split("\\s*,\\s*")).mapToInt(Integer::parseInt).toArray()).getAll());
+		} catch (IllegalArgumentException e)
+		{
+			CustomLogger.error("Shards not updated, endpoints can't be read: " + e.getMessage());
+		}
+	}
+
+	// Applies a new POOL_SIZE to every shard, including the ones added later
+	private synchronized void resize(int size)
+	{
+		CustomLogger.info("Resizing shard pools to " + size + " connections");
+		config.setMaxTotal(size);
+		config.setMaxIdle(size);
+		config.setMinIdle(size / 2);
+		for (ResizableJedisPool pool : ring.getNodes())
+		{
+			pool.resize(size);
+		}
+	}
+
+	/**
+	 * Replaces the list of shards. Endpoints that are still listed keep their pool
+	 * and their place on the ring, so only the keys of the added or removed
+	 * endpoints move.
+	 */
+	public synchronized void updateShards(List<RedisCluster> endpoints)
+	{
+		Set<String> names = new HashSet<>();
+		for (RedisCluster rc : endpoints)
+		{
+			names.add(shardName(rc.getHost(), rc.getPort()));
+			addShard(rc.getHost(), rc.getPort());
+		}
+
+		for (String name : new HashSet<>(ring.getNodeNames()))
+		{
+			if (!names.contains(name))
+			{
+				CustomLogger.debug("Removing shard " + name);
+				ring.remove(name).close();
+			}
+		}
+	}
+
+	// Name (host:port) of the shard owning the key
+	public String getShardName(String key)
+	{
+		return ring.getNodeName(key);
+	}
+
+	public Set<String> getShardNames()
+	{
+		return new HashSet<>(ring.getNodeNames());
+	}
+
+	/**
+	 * Gets a connection to the shard owning the key. A null key gets a connection
+	 * to the first shard.
+	 */
+	public Jedis getConnection(String key)
+	{
+		JedisPool pool = (key == null) ? ring.getNodes().iterator().next() : ring.get(key);
+		return pool.getResource();
+	}
+
+	// Gets a connection to the shard of the given name, as returned by getShardNames
+	public Jedis getShardConnection(String name)
+	{
+		JedisPool pool = ring.getNode(name);
+		if (pool == null)
+		{
+			throw new IllegalArgumentException("No shard " + name);
+		}
+		return pool.getResource();
+	}
+
+	@Override
+	public Jedis getConnection()
+	{
+		return getConnection(null);
+	}
+
+	@Override
+	public void shutdown()
+	{
+		CustomLogger.debug("Shutting all shards down");
+		ConfigurationManager.removeListener(listener);
+		for (JedisPool pool : ring.getNodes())
+		{
+			try
+			{
+				pool.close();
+			} catch (Exception error)
+			{
+				CustomLogger.error("Shard shutdown failed: " + error.getMessage(), error);
+			}
+		}
+	}
+}
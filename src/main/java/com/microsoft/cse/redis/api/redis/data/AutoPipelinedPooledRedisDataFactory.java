@@ -0,0 +1,493 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import com.microsoft.cse.redis.api.exceptions.DeadlineExceededException;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.helper.Deadline;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.retry.Retryable;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+
+/**
+ * Pooled Jedis data factory that coalesces the single key commands of all the
+ * calling threads: commands issued at the same time are written to Redis in one
+ * batch per connection instead of one round trip each. Callers don't need to
+ * start a pipeline, every method still returns its own reply. The batched
+ * (Set/Map) methods already use a pipeline and go straight to the pool.
+ */
+public class AutoPipelinedPooledRedisDataFactory extends PooledRedisDataFactory
+{
+	private volatile CommandCoalescer coalescer;
+
+	public AutoPipelinedPooledRedisDataFactory(ConnectionFactory conn)
+	{
+		super(conn);
+	}
+
+	private CommandCoalescer getCoalescer()
+	{
+		if (coalescer == null)
+		{
+			synchronized (this)
+			{
+				if (coalescer == null)
+				{
+					if (pooledConnection == null)
+					{
+						pooledConnection = conn.getJedisPooledConnection();
+					}
+					coalescer = new CommandCoalescer(pooledConnection, ConfigurationManager.getAutoPipelineLanes(),
+							ConfigurationManager.getAutoPipelineMaxBatch());
+				}
+			}
+		}
+		return coalescer;
+	}
+
+	/**
+	 * Queues a command to be sent with the next batch of the calling thread's lane.
+	 * The function gets the batch's pipeline and must only queue commands on it,
+	 * never sync it.
+	 *
+	 * @param command queues the command(s) and returns the Response of the reply
+	 * @return completes with the reply once the batch is written
+	 */
+	public <T> CompletableFuture<T> submit(Function<Pipeline, Response<T>> command)
+	{
+		return getCoalescer().submit(command);
+	}
+
+	// Asynchronous version of get, the future completes with the value once the
+	// batch it was sent with is written.
+	public CompletableFuture<String> getAsync(String key)
+	{
+		if (key == null)
+		{
+			return CompletableFuture.completedFuture(null);
+		}
+		return submit(p -> p.get(key));
+	}
+
+	// Asynchronous version of set, the future completes once the batch it was sent
+	// with is written.
+	public CompletableFuture<String> setAsync(String key, String value)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in setAsync");
+			return CompletableFuture.completedFuture(null);
+		}
+		return submit(p -> p.setex(key, ConfigurationManager.getRedisDataExpireSec(), value));
+	}
+
+	/**
+	 * Stops the writer threads and gives their connections back to the pool.
+	 * Commands still queued fail.
+	 */
+	@Override
+	public void shutdown()
+	{
+		synchronized (this)
+		{
+			if (coalescer != null)
+			{
+				coalescer.shutdown();
+				coalescer = null;
+			}
+		}
+		super.shutdown();
+	}
+
+	// Waits for the reply of a coalesced command, failures are thrown back to the
+	// caller like a direct call would. Under a deadline, waits no longer than it.
+	private <T> T await(CompletableFuture<T> future)
+	{
+		Deadline deadline = Deadline.current();
+		try
+		{
+			if (deadline == null)
+			{
+				return future.get();
+			}
+			return future.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e)
+		{
+			throw new DeadlineExceededException("Deadline exceeded waiting for an auto-pipelined reply", e);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new JedisException("Interrupted while waiting for an auto-pipelined reply", e);
+		} catch (ExecutionException e)
+		{
+			handleFailure(e.getCause());
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw new JedisException(e.getCause());
+		}
+	}
+
+	private long awaitLong(CompletableFuture<Long> future)
+	{
+		Long l = await(future);
+		return (l == null) ? 0L : l;
+	}
+
+	@Override
+	@Retryable
+	public void set(String key, String value)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in set");
+			return;
+		}
+
+		CustomLogger.debug("Setting a value for key set: " + key);
+
+		await(setAsync(key, value));
+	}
+
+	// Simple Redis Set operation to add the value to the top of a Set
+	@Override
+	@Retryable(idempotent = false)
+	public void setAdd(String key, String value)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in setArray");
+			return;
+		}
+
+		CustomLogger.debug("Setting a value for keys setAdd: " + key);
+
+		await(submit(p -> {
+			p.lpush(key, value);
+			return p.expire(key, ConfigurationManager.getRedisDataExpireSec());
+		}));
+	}
+
+	// Redis Set operation to add an entire array of strings to the top of a set.
+	@Override
+	@Retryable
+	public void setUnsortedSet(String key, List<String> values)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in setUnsortedSet");
+			return;
+		}
+
+		CustomLogger.debug("Setting a value for key: " + key);
+
+		String[] array = values.toArray(new String[values.size()]);
+		await(submit(p -> {
+			p.sadd(key, array);
+			return p.expire(key, ConfigurationManager.getRedisDataExpireSec());
+		}));
+	}
+
+	// Redis hashmap set that overwrites an existing hash set with a new one with
+	// the specified key.
+	@Override
+	@Retryable
+	public void setMultimap(String key, Map<String, String> values)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in setMultimap");
+			return;
+		}
+
+		CustomLogger.debug("Setting a multimap value for key: " + key);
+
+		await(submit(p -> {
+			p.hmset(key, values);
+			return p.expire(key, ConfigurationManager.getRedisDataExpireSec());
+		}));
+	}
+
+	// Redis SortedSet operation that adds the value to the appropriate location in
+	// the set based on score.
+	@Override
+	@Retryable
+	public void setZSet(String key, String value, Double score)
+	{
+		if ((key == null) || (value == null))
+		{
+			CustomLogger.error("Received a null key in setZSet");
+			return;
+		}
+
+		CustomLogger.debug("Setting a sorted set for key: " + key + " score: " + score);
+
+		await(submit(p -> p.zadd(key, score, value)));
+	}
+
+	// Simplest Redis operation to get the value of a key in a typical name/value
+	// pair.
+	@Override
+	@Retryable
+	public String get(String key)
+	{
+		if (key == null)
+		{
+			return null;
+		}
+
+		CustomLogger.debug("Looking up key: " + key);
+
+		return await(getAsync(key));
+	}
+
+	// Get the HashSet associated with a key
+	@Override
+	@Retryable
+	public Map<String, String> getMultimap(String key)
+	{
+		if (key == null)
+		{
+			return null;
+		}
+
+		CustomLogger.debug("looking up key to get a map: " + key);
+
+		return await(submit(p -> p.hgetAll(key)));
+	}
+
+	// Gets the list of items that were previously added to an unordered Set
+	@Override
+	@Retryable
+	public List<String> getMultivalue(String key)
+	{
+		if (key == null)
+		{
+			return null;
+		}
+
+		CustomLogger.debug("looking up key to get a map: " + key);
+
+		return await(submit(p -> p.lrange(key, 0, -1)));
+	}
+
+	// Get's the list of items that were added to a Sorted Set for a specific key
+	// and score value.
+	@Override
+	@Retryable
+	public Set<String> getZSet(String key, Long minScore, Long maxScore)
+	{
+		if ((key == null) || (maxScore < minScore) || (minScore < 0) || (maxScore < 0))
+		{
+			return null;
+		}
+
+		CustomLogger.debug("Getting based on scores: " + minScore + ":" + maxScore);
+
+		return await(submit(p -> p.zrangeByScore(key, minScore, maxScore)));
+	}
+
+	@Override
+	@Retryable
+	public Set<String> getUnsortedSet(String key)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in getUnsortedSet");
+			return null;
+		}
+
+		CustomLogger.debug("Setting a value for key getUnsortedSet: " + key);
+
+		return await(submit(p -> p.smembers(key)));
+	}
+
+	// Remove the specified key/value pair from Redis
+	@Override
+	@Retryable
+	public long remove(String key)
+	{
+		if (key == null)
+		{
+			return 0L;
+		}
+
+		CustomLogger.debug("Removing key: " + key);
+
+		return awaitLong(submit(p -> p.unlink(key)));
+	}
+
+	// Remove the ordered set values for a specific key and score.
+	@Override
+	@Retryable
+	public long removeZSet(String key, double minScore, double maxScore)
+	{
+		if (key == null)
+		{
+			return 0L;
+		}
+
+		CustomLogger.debug("Removing key: " + key + " based on scores: " + minScore + ":" + maxScore);
+
+		return awaitLong(submit(p -> p.zremrangeByScore(key, minScore, maxScore)));
+	}
+
+	// Remove the specified value from the order set (the key)
+	@Override
+	@Retryable
+	public long removeZSet(String key, String value)
+	{
+		if (key == null)
+		{
+			return 0L;
+		}
+
+		CustomLogger.debug("Removing value " + value + " from set " + key);
+
+		return awaitLong(submit(p -> p.zrem(key, value)));
+	}
+
+	// Remove the specified value from the unordered set (the key)
+	@Override
+	@Retryable
+	public long removeSetValue(String key, String value)
+	{
+		if (key == null)
+		{
+			return 0L;
+		}
+
+		CustomLogger.debug("Removing value " + value + " from set " + key);
+
+		return awaitLong(submit(p -> p.srem(key, value)));
+	}
+
+	// The value and its TTL are set by a single SET NX EX, as the reply of SETNX
+	// can't be read in the middle of a batch to decide on the EXPIRE.
+	@Override
+	@Retryable(idempotent = false)
+	public long setIfNotExists(String key, String value, int ttl)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in setIfNotExists");
+			return -1;
+		}
+
+		CustomLogger.debug("Setting a value for key in setIfNotExists: " + key);
+
+		String reply = await(submit(p -> p.set(key, value, SetParams.setParams().nx().ex(ttl))));
+		return (reply == null) ? 0L : 1L;
+	}
+
+	@Override
+	@Retryable
+	public long setExpiration(String key, Integer timeout)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in setExpiration");
+			return -1;
+		}
+
+		CustomLogger.debug("Setting expiration for key: " + key);
+
+		return awaitLong(submit(p -> p.expire(key, timeout)));
+	}
+
+	@Override
+	@Retryable
+	public long delete(String key)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in delete");
+			return -1;
+		}
+
+		return awaitLong(submit(p -> p.del(key)));
+	}
+
+	@Override
+	@Retryable(idempotent = false)
+	public long setHashSetValueIfNotExists(String hashSetName, String fieldName, String value)
+	{
+		if (hashSetName == null)
+		{
+			CustomLogger.error("Received a null hashSetName in setHashSetValueIfNotExists");
+			return -1;
+		}
+
+		CustomLogger.debug("Setting " + fieldName + " field for hash set " + hashSetName);
+
+		return awaitLong(submit(p -> p.hsetnx(hashSetName, fieldName, value)));
+	}
+
+	@Override
+	@Retryable
+	public long deleteHashSetValue(String hashSetName, String fieldName)
+	{
+		if (hashSetName == null)
+		{
+			CustomLogger.error("Received a null hashSetName in deleteHashSetValue");
+			return -1;
+		}
+
+		CustomLogger.debug("Deleting " + fieldName + " field for hash set " + hashSetName);
+
+		return awaitLong(submit(p -> p.hdel(hashSetName, fieldName)));
+	}
+
+	@Override
+	@Retryable
+	public long deleteFromMultivalue(String key, String keytoremove)
+	{
+		if ((key == null) || (keytoremove == null))
+		{
+			CustomLogger.error("Received a null key in keytoremove");
+			return -1;
+		}
+
+		CustomLogger.debug("Removing " + key + " and value " + keytoremove);
+
+		return awaitLong(submit(p -> p.lrem(key, 0, keytoremove)));
+	}
+
+	@Override
+	@Retryable(idempotent = false)
+	public long increment(String key, long amount)
+	{
+		if (key == null)
+		{
+			CustomLogger.error("Received a null key in increment");
+			return -1;
+		}
+
+		return awaitLong(submit(p -> p.incrBy(key, amount)));
+	}
+
+	@Override
+	public long publish(String channel, String message)
+	{
+		if (channel == null)
+		{
+			CustomLogger.error("Received a null channel in publish");
+			return -1;
+		}
+
+		return awaitLong(submit(p -> p.publish(channel, message)));
+	}
+}
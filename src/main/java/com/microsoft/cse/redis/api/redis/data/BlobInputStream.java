@@ -0,0 +1,176 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads a blob written by BlobOutputStream. Chunks are fetched lazily, a window
+ * of BLOB_PREFETCH chunks at a time in a single batch, and the next window is
+ * fetched in the background while the current one is being read.
+ */
+class BlobInputStream extends InputStream
+{
+	private static final ExecutorService prefetcher = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "redis-blob-prefetch");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final DataFactory data;
+	private final String key;
+	private final String generation;
+	private final int chunks;
+	private final long size;
+	private final int prefetch;
+
+	private List<byte[]> window = new ArrayList<>();
+	private CompletableFuture<List<byte[]>> ahead;
+	private int nextWindow;
+	private int windowIndex;
+	private byte[] current;
+	private int position;
+	private long read;
+
+	BlobInputStream(DataFactory data, String key, Map<String, String> manifest, int prefetch)
+	{
+		this.data = data;
+		this.key = key;
+		this.prefetch = Math.max(1, prefetch);
+		generation = manifest.get(BlobOutputStream.GENERATION);
+		chunks = Integer.parseInt(manifest.get(BlobOutputStream.CHUNKS));
+		size = Long.parseLong(manifest.get(BlobOutputStream.SIZE));
+	}
+
+	// Size of the whole blob, in bytes
+	long size()
+	{
+		return size;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (!ensureData())
+		{
+			return -1;
+		}
+		read++;
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+		{
+			return 0;
+		}
+		if (!ensureData())
+		{
+			return -1;
+		}
+
+		int n = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, n);
+		position += n;
+		read += n;
+		return n;
+	}
+
+	@Override
+	public int available()
+	{
+		return (int) Math.min(Integer.MAX_VALUE, size - read);
+	}
+
+	@Override
+	public void close()
+	{
+		if (ahead != null)
+		{
+			ahead.cancel(false);
+			ahead = null;
+		}
+		window = new ArrayList<>();
+		current = null;
+		nextWindow = chunks;
+	}
+
+	// Moves to the next chunk when the current one was read, false at the end
+	private boolean ensureData() throws IOException
+	{
+		while ((current == null) || (position == current.length))
+		{
+			if (windowIndex == window.size())
+			{
+				if (nextWindow >= chunks)
+				{
+					return false;
+				}
+				window = nextWindow();
+				windowIndex = 0;
+			}
+			current = window.get(windowIndex++);
+			position = 0;
+		}
+		return true;
+	}
+
+	private List<byte[]> nextWindow() throws IOException
+	{
+		List<byte[]> w;
+		try
+		{
+			w = (ahead != null) ? ahead.join() : fetch(nextWindow);
+		} catch (CompletionException e)
+		{
+			if (e.getCause() instanceof UncheckedIOException)
+			{
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw e;
+		} catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+
+		nextWindow += prefetch;
+		int start = nextWindow;
+		ahead = (start < chunks) ? CompletableFuture.supplyAsync(() -> fetch(start), prefetcher) : null;
+		return w;
+	}
+
+	private List<byte[]> fetch(int start)
+	{
+		Set<String> keys = new LinkedHashSet<>();
+		for (int i = start; i < Math.min(start + prefetch, chunks); i++)
+		{
+			keys.add(BlobOutputStream.chunkKey(key, generation, i));
+		}
+
+		Map<String, byte[]> values = data.getChunks(keys);
+
+		List<byte[]> w = new ArrayList<>(keys.size());
+		for (String k : keys)
+		{
+			byte[] chunk = values.get(k);
+			if (chunk == null)
+			{
+				throw new UncheckedIOException(
+						new IOException("Chunk " + k + " is missing, the blob was replaced or expired while reading"));
+			}
+			w.add(chunk);
+		}
+		return w;
+	}
+}
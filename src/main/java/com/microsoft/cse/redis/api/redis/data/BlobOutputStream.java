@@ -0,0 +1,148 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes a large value as fixed size chunks. Full chunks are sent in batches of
+ * BLOB_WRITE_BATCH, so only that many chunks are ever held in memory. The
+ * manifest is written by close(), after every chunk: readers keep seeing the
+ * previous version of the blob until then. Chunks of the previous version are
+ * deleted once the manifest points to the new ones.
+ */
+class BlobOutputStream extends OutputStream
+{
+	static final String GENERATION = "generation";
+	static final String SIZE = "size";
+	static final String CHUNKS = "chunks";
+	static final String CHUNK_SIZE = "chunkSize";
+
+	private final DataFactory data;
+	private final String key;
+	private final String generation = UUID.randomUUID().toString().replace("-", "");
+	private final int chunkSize;
+	private final int batchSize;
+	private final Map<String, byte[]> pending = new LinkedHashMap<>();
+
+	private byte[] buffer;
+	private int position;
+	private int chunks;
+	private long size;
+	private boolean closed;
+
+	BlobOutputStream(DataFactory data, String key, int chunkSize, int batchSize)
+	{
+		this.data = data;
+		this.key = key;
+		this.chunkSize = Math.max(1, chunkSize);
+		this.batchSize = Math.max(1, batchSize);
+		buffer = new byte[this.chunkSize];
+	}
+
+	static String chunkKey(String key, String generation, int index)
+	{
+		return key + ":blob:" + generation + ":" + index;
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		ensureOpen();
+		buffer[position++] = (byte) b;
+		size++;
+		if (position == buffer.length)
+		{
+			endChunk();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		ensureOpen();
+		while (len > 0)
+		{
+			int n = Math.min(len, buffer.length - position);
+			System.arraycopy(b, off, buffer, position, n);
+			position += n;
+			size += n;
+			off += n;
+			len -= n;
+			if (position == buffer.length)
+			{
+				endChunk();
+			}
+		}
+	}
+
+	// Sends the full chunks, the partial one is only sent by close()
+	@Override
+	public void flush() throws IOException
+	{
+		ensureOpen();
+		sendPending();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+
+		if (position > 0)
+		{
+			byte[] last = new byte[position];
+			System.arraycopy(buffer, 0, last, 0, position);
+			pending.put(chunkKey(key, generation, chunks++), last);
+		}
+		buffer = null;
+		sendPending();
+
+		Map<String, String> previous = data.getMultimap(key);
+
+		Map<String, String> manifest = new HashMap<>();
+		manifest.put(GENERATION, generation);
+		manifest.put(SIZE, Long.toString(size));
+		manifest.put(CHUNKS, Integer.toString(chunks));
+		manifest.put(CHUNK_SIZE, Integer.toString(chunkSize));
+
+		// a single HMSET of the same fields, readers see either version as a whole
+		data.setMultimap(key, manifest);
+
+		DataFactory.deleteBlobChunks(data, key, previous);
+	}
+
+	private void endChunk()
+	{
+		pending.put(chunkKey(key, generation, chunks++), buffer.clone());
+		position = 0;
+		if (pending.size() >= batchSize)
+		{
+			sendPending();
+		}
+	}
+
+	private void sendPending()
+	{
+		if (!pending.isEmpty())
+		{
+			data.setChunks(pending);
+			pending.clear();
+		}
+	}
+
+	private void ensureOpen() throws IOException
+	{
+		if (closed)
+		{
+			throw new IOException("Blob " + key + " was already closed");
+		}
+	}
+}
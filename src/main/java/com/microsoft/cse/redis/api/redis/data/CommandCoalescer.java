@@ -0,0 +1,255 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+import com.microsoft.cse.redis.api.exceptions.DeadlineExceededException;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.helper.Deadline;
+import com.microsoft.cse.redis.api.redis.connection.jedis.PooledConnection;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Collects the commands issued by many threads into batches that are written to
+ * Redis together. Each lane owns one pooled connection and a writer thread: the
+ * writer takes whatever was queued while the previous batch was in flight,
+ * sends it as a single pipeline and completes the future of every caller with
+ * its own reply. A thread always uses the same lane, so its commands are sent
+ * in the order it issued them. Commands whose caller's deadline passed while
+ * they were queued are dropped instead of written.
+ */
+class CommandCoalescer
+{
+	private final PooledConnection pool;
+	private final Lane[] lanes;
+	private final int maxBatch;
+
+	private volatile boolean running = true;
+
+	CommandCoalescer(PooledConnection pool, int laneCount, int maxBatch)
+	{
+		this.pool = pool;
+		this.maxBatch = Math.max(1, maxBatch);
+
+		lanes = new Lane[Math.max(1, laneCount)];
+		for (int i = 0; i < lanes.length; i++)
+		{
+			lanes[i] = new Lane(i);
+		}
+	}
+
+	/**
+	 * Queues a command on the lane of the calling thread. The command gets the
+	 * batch's pipeline and queues one or more commands on it, the reply of the
+	 * returned Response completes the future.
+	 */
+	<T> CompletableFuture<T> submit(Function<Pipeline, Response<T>> command)
+	{
+		CompletableFuture<T> future = new CompletableFuture<>();
+		if (!running)
+		{
+			future.completeExceptionally(new IllegalStateException("Command coalescer was shut down"));
+			return future;
+		}
+
+		int lane = (int) (Thread.currentThread().getId() % lanes.length);
+		lanes[lane].queue.add(new Queued<>(command, future, Deadline.current()));
+
+		// shut down while queueing, the writer may already be gone
+		if (!running)
+		{
+			future.completeExceptionally(new IllegalStateException("Command coalescer was shut down"));
+		}
+		return future;
+	}
+
+	// Stops the writer threads, fails whatever is still queued and gives the
+	// connections back to the pool
+	void shutdown()
+	{
+		running = false;
+		for (Lane l : lanes)
+		{
+			l.writer.interrupt();
+		}
+	}
+
+	private static final class Queued<T>
+	{
+		private final Function<Pipeline, Response<T>> command;
+		private final CompletableFuture<T> future;
+		private final Deadline deadline;
+		private Response<T> response;
+
+		Queued(Function<Pipeline, Response<T>> command, CompletableFuture<T> future, Deadline deadline)
+		{
+			this.command = command;
+			this.future = future;
+			this.deadline = deadline;
+		}
+
+		void queue(Pipeline p)
+		{
+			// nobody waits for the reply anymore
+			if ((deadline != null) && deadline.isExpired())
+			{
+				fail(new DeadlineExceededException("Deadline exceeded before an auto-pipelined command was sent"));
+				return;
+			}
+			try
+			{
+				response = command.apply(p);
+			} catch (Exception e)
+			{
+				// a command that can't be encoded, such as one with a null argument, is
+				// never written and only fails its own caller
+				fail(e);
+			}
+		}
+
+		// Replies with an error only fail their own caller, not the batch
+		void complete()
+		{
+			if (response == null)
+			{
+				return;
+			}
+			try
+			{
+				future.complete(response.get());
+			} catch (Exception e)
+			{
+				future.completeExceptionally(e);
+			}
+		}
+
+		void fail(Throwable t)
+		{
+			future.completeExceptionally(t);
+		}
+	}
+
+	private final class Lane implements Runnable
+	{
+		private final BlockingQueue<Queued<?>> queue = new LinkedBlockingQueue<>();
+		private final Thread writer;
+		private Jedis connection;
+
+		Lane(int id)
+		{
+			writer = new Thread(this, "redis-autopipeline-" + id);
+			writer.setDaemon(true);
+			writer.start();
+		}
+
+		@Override
+		public void run()
+		{
+			List<Queued<?>> batch = new ArrayList<>(maxBatch);
+
+			while (running)
+			{
+				try
+				{
+					batch.add(queue.take());
+				} catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					break;
+				}
+				queue.drainTo(batch, maxBatch - 1);
+
+				write(batch);
+				batch.clear();
+			}
+
+			close();
+			queue.drainTo(batch);
+			for (Queued<?> q : batch)
+			{
+				q.fail(new IllegalStateException("Command coalescer was shut down"));
+			}
+		}
+
+		private void write(List<Queued<?>> batch)
+		{
+			Pipeline p;
+			try
+			{
+				if (connection == null)
+				{
+					connection = pool.getConnection();
+				}
+				if (connection == null)
+				{
+					throw new JedisConnectionException("No connection available for an auto-pipelined batch");
+				}
+				p = connection.pipelined();
+			} catch (JedisException e)
+			{
+				failBatch(batch, e);
+				return;
+			}
+
+			for (Queued<?> q : batch)
+			{
+				q.queue(p);
+			}
+
+			try
+			{
+				p.sync();
+			} catch (JedisException e)
+			{
+				failBatch(batch, e);
+				return;
+			}
+
+			for (Queued<?> q : batch)
+			{
+				q.complete();
+			}
+		}
+
+		private void failBatch(List<Queued<?>> batch, JedisException e)
+		{
+			CustomLogger.error("Auto-pipelined batch of " + batch.size() + " commands failed: " + e.getMessage(), e);
+			for (Queued<?> q : batch)
+			{
+				q.fail(e);
+			}
+
+			// replies of the batch may still be unread, so the connection can't be trusted
+			// anymore and the next batch borrows a new one
+			if ((connection != null) && !(e instanceof JedisConnectionException))
+			{
+				connection.disconnect();
+			}
+			close();
+		}
+
+		private void close()
+		{
+			if (connection != null)
+			{
+				try
+				{
+					connection.close();
+				} catch (Exception e)
+				{
+					CustomLogger.error("Error returning an auto-pipeline connection: " + e.getMessage(), e);
+				}
+				connection = null;
+			}
+		}
+	}
+}
@@ -1,23 +1,43 @@
 package com.microsoft.cse.redis.api.redis.data;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
-import com.jcabi.aspects.RetryOnFailure;
+import com.microsoft.cse.redis.api.exceptions.FailureClassifier;
+import com.microsoft.cse.redis.api.helper.ClassLogger;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
 import com.microsoft.cse.redis.api.helper.CustomLogger;
-import com.microsoft.cse.redis.api.helper.RetryValues;
+import com.microsoft.cse.redis.api.pubsub.MessageHandler;
+import com.microsoft.cse.redis.api.pubsub.Subscription;
+import com.microsoft.cse.redis.api.pubsub.SubscriptionManager;
 import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
 import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory.conn_type;
+import com.microsoft.cse.redis.api.retry.Retryable;
 
 public abstract class DataFactory
 {
 
 	protected final ConnectionFactory conn;
 
+	private final ClassLogger failures;
+
 	private static volatile DataFactory INSTANCE;
 
+	// Created on first use, each data factory has its own
+	private volatile SubscriptionManager subscriptions;
+
+	private static final String GLOBAL_ID_KEY = "global_id_number";
+	// Releases that took one ID per INCR added an offset of up to 999 to the
+	// counter, the blocks leased from it skip those IDs
+	private static final long GLOBAL_ID_LEGACY_OFFSETS = 1000;
+	private volatile IdGenerator ids;
+
 	// This is a HORRIBLE HORRIBLE HORRIBLE idea. Did i Say horrible. But the darn
 	// static checker likes it!
 	protected static final String CAUGHTANEXCEPTION = "Caught an exception: ";
@@ -31,100 +51,163 @@ public abstract class DataFactory
 			{
 				if (INSTANCE == null)
 				{
-					if (connection.getSelectedType() == conn_type.SPRING)
-					{
-						INSTANCE = new SpringDataFactory(connection);
-					} else if (connection.getSelectedType() == conn_type.JEDIS)
-					{
-						INSTANCE = new RedisDataFactory(connection);
-					} else if (connection.getSelectedType() == conn_type.JEDISPOOL)
-					{
-						INSTANCE = new PooledRedisDataFactory(connection);
-					} else if (connection.getSelectedType() == conn_type.JEDISPIPELINED)
-					{
-						INSTANCE = new PipelinedPooledRedisDataFactory(connection);
-					} else
-					{
-						INSTANCE = new PooledRedisDataFactory(connection);
-					}
-
+					INSTANCE = newDataFactory(connection);
 				}
 			}
 		}
 		return INSTANCE;
 	}
 
+	// New DataFactory for the Redis SDK of the connection, used by the named data
+	// sources that each have connections of their own
+	public static DataFactory newDataFactory(ConnectionFactory connection)
+	{
+		if (connection.getSelectedType() == conn_type.SPRING)
+		{
+			return new SpringDataFactory(connection);
+		} else if (connection.getSelectedType() == conn_type.JEDIS)
+		{
+			return new RedisDataFactory(connection);
+		} else if (connection.getSelectedType() == conn_type.JEDISPOOL)
+		{
+			return new PooledRedisDataFactory(connection);
+		} else if (connection.getSelectedType() == conn_type.JEDISPIPELINED)
+		{
+			return new PipelinedPooledRedisDataFactory(connection);
+		} else if (connection.getSelectedType() == conn_type.JEDISAUTOPIPELINED)
+		{
+			return new AutoPipelinedPooledRedisDataFactory(connection);
+		} else if (connection.getSelectedType() == conn_type.JEDISSHARDED)
+		{
+			return new ShardedRedisDataFactory(connection);
+		} else
+		{
+			return new PooledRedisDataFactory(connection);
+		}
+	}
+
 	protected DataFactory(ConnectionFactory connection)
 	{
 		CustomLogger.debug("Creating a data factory");
 
 		conn = connection;
+		failures = CustomLogger.forClass(getClass());
+
+	}
+
+	// Connections of the data source this factory serves
+	public ConnectionFactory getConnectionFactory()
+	{
+		return conn;
+	}
+
+	// Name of the data source this factory serves, null for the process wide one
+	public String getDataSourceName()
+	{
+		return conn.getName();
+	}
 
+	// Shard of the key, keys of different shards can't be used by the same script
+	// or pipeline. There is a single shard unless the factory spreads the keys.
+	public String shardOf(String key)
+	{
+		return "";
+	}
+
+	/**
+	 * Handles the failure of a call before it is thrown back to the caller. Only a
+	 * transport failure resets the connection and is logged with its stack trace;
+	 * Redis answered the other ones, so the connection is still good and they are
+	 * logged briefly, or not at all for the data errors the caller gets anyway.
+	 *
+	 * @return what kind of failure it was
+	 */
+	protected FailureClassifier.Kind handleFailure(Throwable e)
+	{
+		FailureClassifier.Kind kind = FailureClassifier.classify(e);
+		switch (kind)
+		{
+		case TRANSPORT:
+			failures.error(CAUGHTANEXCEPTION + e.getMessage(), e);
+			conn.resetConnection();
+			break;
+		case BUSY:
+			failures.warn("Redis is busy: {}", e.getMessage());
+			break;
+		case DATA:
+		case DEADLINE:
+			failures.debug("Call failed: {}", e.getMessage());
+			break;
+		default:
+			failures.error(CAUGHTANEXCEPTION + e.getMessage(), e);
+			break;
+		}
+		return kind;
 	}
 
 	// Simple Redis Key/Value operation. Based on the SDK type, different operations
 	// are invoked to set the key to the specified value.
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract void set(String key, String value);
 
 	// Simple Redis Set operation to add the value to the top of a Set
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 	public abstract void setAdd(String key, String value);
 
 	// Redis Set operation to add an entire array of strings to the top of a set.
 
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract void setUnsortedSet(String key, List<String> values);
 
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract Set<String> getUnsortedSet(String key);
 
 	// Redis hashmap setthat overwrites an existing hash set with a new one with the
 	// specified key.
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract void setMultimap(String key, Map<String, String> values);
 
 	// Redis SortedSet operation that adds the value to the appropriate location in
 	// the set based on score.
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract void setZSet(String key, String value, Double score);
 
 	// Simplest Redis operation to get the value of a key in a typical name/value
 	// pair.
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract String get(String key);
 
 	// Get the HashSet associated with a key
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract Map<String, String> getMultimap(String key);
 
 	// Get the HashSet associated with a set of keys
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract Map<String, Map<String, String>> getMultimap(Set<String> keys);
 
 	// Gets the list of items that were previously added to an unordered Set
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract List<String> getMultivalue(String key);
 
 	// Get's the list of items that were added to a Sorted Set for a specific key
 	// and score value.
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract Set<String> getZSet(String key, Long minScore, Long maxScore);
 
 	// Remove the specified key/value pair from Redis
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract long remove(String key);
 
 	// Remove the ordered set values for a specific key and score.
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract long removeZSet(String key, double minScore, double maxScore);
 
 	// Remove the spcified value from the order set (the key)
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract long removeZSet(String key, String value);
 
 	// Remove the specified value from the unordered set (the key)
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract long removeSetValue(String key, String value);
 
 	/**
@@ -135,7 +218,7 @@ public abstract class DataFactory
 	 * @return 0 if it was not set, meaning the item already exists. 1 when
 	 *         sucessfully created the item. -1 when error.
 	 */
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 	public abstract long setIfNotExists(String key, String value);
 
 	/**
@@ -145,7 +228,7 @@ public abstract class DataFactory
 	 * @param timeout TTL value, in seconds
 	 * @return
 	 */
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract long setExpiration(String key, Integer timeout);
 
 	/**
@@ -154,7 +237,7 @@ public abstract class DataFactory
 	 * @param key
 	 * @return 1 if succeeds, 0 if fails.
 	 */
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract long delete(String key);
 
 	/**
@@ -166,7 +249,7 @@ public abstract class DataFactory
 	 * @return 0 if it was not set, meaning the item already exists. 1 when
 	 *         sucessfully created the item. -1 when error.
 	 */
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 	public abstract long setHashSetValueIfNotExists(String hashSetName, String fieldName, String value);
 
 	/**
@@ -188,7 +271,7 @@ public abstract class DataFactory
 	 * @param fieldName   field name
 	 * @return 1 if succeeds, 0 if fails.
 	 */
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public abstract long deleteHashSetValue(String hashSetName, String fieldName);
 
 	/**
@@ -200,11 +283,246 @@ public abstract class DataFactory
 	 */
 	public abstract Map<String, Long> deleteHashSetValue(Set<String> hashSetNames, String fieldName);
 
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 	public abstract long setIfNotExists(String key, String value, int ttl);
 
+	/**
+	 * Gets the values of a set of keys. Do it using a pipeline.
+	 *
+	 * @param keys keys to look up
+	 * @return a map of key to value, the value is null when the key does not exist
+	 */
+	public abstract Map<String, String> get(Set<String> keys);
+
+	/**
+	 * Sets a batch of key/value pairs, each one with the default TTL. Do it using a
+	 * pipeline.
+	 *
+	 * @param values key/value pairs to set
+	 */
+	public abstract void set(Map<String, String> values);
+
+	/**
+	 * Deletes a set of keys. Do it using a pipeline.
+	 *
+	 * @param keys keys to delete
+	 * @return a map of key to 1 if it was deleted, 0 if it did not exist.
+	 */
+	public abstract Map<String, Long> delete(Set<String> keys);
+
+	/**
+	 * Sets the TTL of a set of keys. Do it using a pipeline.
+	 *
+	 * @param keys    keys to expire
+	 * @param timeout TTL value, in seconds
+	 * @return a map of key to 1 if the TTL was set, 0 if the key did not exist.
+	 */
+	public abstract Map<String, Long> setExpiration(Set<String> keys, Integer timeout);
+
+	/**
+	 * Runs one attempt of an optimistic transaction: the watched keys are WATCHed,
+	 * the callback reads what it needs and queues its writes, which are then sent
+	 * in a single MULTI/EXEC. Use OptimisticTransaction to retry on conflicts.
+	 *
+	 * @param watchKeys keys whose change by someone else aborts the transaction
+	 * @param callback  reads and queues the writes of the transaction
+	 * @return the outcome, CONFLICT when a watched key was changed before EXEC
+	 */
+	public abstract <T> TransactionResult<T> executeTransaction(List<String> watchKeys,
+			TransactionCallback<T> callback);
+
+	/**
+	 * Runs a Lua script atomically in Redis. With sharding all the keys have to be
+	 * on the same shard, use a {hashtag} to keep them together.
+	 *
+	 * @param keys keys the script uses, KEYS in the script
+	 * @param args other arguments, ARGV in the script
+	 * @return the reply of the script: Long for integers, String for strings,
+	 *         List for arrays, null for nil
+	 */
+	@Retryable(idempotent = false)
+	public abstract Object eval(LuaScript script, List<String> keys, List<String> args);
+
+	/**
+	 * Opens a stream that stores a large value as fixed size chunks, with a
+	 * manifest at the key. The value is never held in memory as a whole, and every
+	 * batch of chunks is a short command of its own. The new value replaces the
+	 * previous one when the stream is closed. Use Channels.newChannel to get a
+	 * WritableByteChannel.
+	 *
+	 * @param key key of the manifest
+	 * @return the stream, to be closed to publish the value
+	 */
+	public OutputStream openBlobOutput(String key)
+	{
+		return new BlobOutputStream(this, key, ConfigurationManager.getBlobChunkSize(),
+				ConfigurationManager.getBlobWriteBatch());
+	}
+
+	/**
+	 * Opens a stream reading a value stored with openBlobOutput. Chunks are fetched
+	 * as they are read, the next ones being fetched ahead in the background.
+	 *
+	 * @param key key of the manifest
+	 * @return the stream, null if there is no blob at the key
+	 */
+	public InputStream openBlobInput(String key)
+	{
+		Map<String, String> manifest = getMultimap(key);
+		if ((manifest == null) || !manifest.containsKey(BlobOutputStream.CHUNKS))
+		{
+			return null;
+		}
+		return new BlobInputStream(this, key, manifest, ConfigurationManager.getBlobPrefetch());
+	}
+
+	/**
+	 * Deletes a blob, its manifest and all its chunks.
+	 *
+	 * @return 1 if the blob was deleted, 0 if there was none
+	 */
+	public long deleteBlob(String key)
+	{
+		Map<String, String> manifest = getMultimap(key);
+		long l = delete(key);
+		deleteBlobChunks(this, key, manifest);
+		return l;
+	}
+
+	static void deleteBlobChunks(DataFactory data, String key, Map<String, String> manifest)
+	{
+		if ((manifest == null) || !manifest.containsKey(BlobOutputStream.CHUNKS))
+		{
+			return;
+		}
+
+		Set<String> keys = new HashSet<>();
+		for (int i = 0; i < Integer.parseInt(manifest.get(BlobOutputStream.CHUNKS)); i++)
+		{
+			keys.add(BlobOutputStream.chunkKey(key, manifest.get(BlobOutputStream.GENERATION), i));
+		}
+		if (!keys.isEmpty())
+		{
+			data.delete(keys);
+		}
+	}
+
+	// Stores blob chunks with the default TTL. The values are Base64 encoded to go
+	// through the String API, backends that can store raw bytes override this.
+	protected void setChunks(Map<String, byte[]> chunks)
+	{
+		Map<String, String> values = new HashMap<>();
+		for (Map.Entry<String, byte[]> entry : chunks.entrySet())
+		{
+			values.put(entry.getKey(), Base64.getEncoder().encodeToString(entry.getValue()));
+		}
+		set(values);
+	}
+
+	// Gets blob chunks, missing chunks are not in the returned map
+	protected Map<String, byte[]> getChunks(Set<String> keys)
+	{
+		Map<String, byte[]> chunks = new HashMap<>();
+		for (Map.Entry<String, String> entry : get(keys).entrySet())
+		{
+			if (entry.getValue() != null)
+			{
+				chunks.put(entry.getKey(), Base64.getDecoder().decode(entry.getValue()));
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * Publishes a message to a channel. With sharding the message goes to the
+	 * shard the channel name hashes to, where its subscribers are.
+	 *
+	 * @return number of subscribers that received the message
+	 */
+	public abstract long publish(String channel, String message);
+
+	/**
+	 * Subscribes to a channel. Subscriptions share one subscriber connection per
+	 * endpoint, which is connected again and resubscribed if it breaks. Handlers
+	 * run on a dispatch pool, never on the thread reading the connection.
+	 *
+	 * @return the subscription, to be closed to unsubscribe
+	 */
+	public Subscription subscribe(String channel, MessageHandler handler)
+	{
+		return getSubscriptions().subscribe(channel, handler);
+	}
+
+	// Same as subscribe, for every channel matching a glob-style pattern
+	public Subscription psubscribe(String pattern, MessageHandler handler)
+	{
+		return getSubscriptions().psubscribe(pattern, handler);
+	}
+
+	public SubscriptionManager getSubscriptions()
+	{
+		if (subscriptions == null)
+		{
+			synchronized (this)
+			{
+				if (subscriptions == null)
+				{
+					subscriptions = new SubscriptionManager(conn);
+				}
+			}
+		}
+		return subscriptions;
+	}
+
 	public abstract long deleteFromMultivalue(String key, String keytoremove);
 
-	public abstract long globalIncrement();
+	/**
+	 * Atomically adds to the integer value of a key, a missing key counting as 0.
+	 *
+	 * @return the value after the increment
+	 */
+	public abstract long increment(String key, long amount);
+
+	/**
+	 * Gets an ID that is unique across all the processes using the same Redis. IDs
+	 * are leased from Redis in blocks of ID_BLOCK_SIZE and handed out locally, so
+	 * most calls don't go to Redis at all. They increase within a process but
+	 * not across processes, and there are gaps where a process stopped before
+	 * using up its block.
+	 */
+	public long globalIncrement()
+	{
+		if (ids == null)
+		{
+			synchronized (this)
+			{
+				if (ids == null)
+				{
+					ids = new IdGenerator(this, GLOBAL_ID_KEY, ConfigurationManager.getIdBlockSize(),
+							GLOBAL_ID_LEGACY_OFFSETS);
+				}
+			}
+		}
+		return ids.next();
+	}
+
+	/**
+	 * Stops the subscriptions and threads of the factory. Its connections are not
+	 * closed, as they may be shared with other factories.
+	 */
+	public void shutdown()
+	{
+		SubscriptionManager s;
+		synchronized (this)
+		{
+			s = subscriptions;
+			subscriptions = null;
+			ids = null;
+		}
+		if (s != null)
+		{
+			s.shutdown();
+		}
+	}
 
 }
\ No newline at end of file
@@ -0,0 +1,233 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import com.microsoft.cse.redis.api.helper.Configuration;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory.conn_type;
+
+/**
+ * Named data sources, each with connections, retries and timeouts of its own,
+ * so that a bulk job can't take the connections the online calls need. They
+ * are listed in DATASOURCES and set up with DATASOURCE_&lt;NAME&gt;_ in front of
+ * the usual settings:
+ *
+ * <pre>
+ * DATASOURCES=bulk
+ * DATASOURCE_BULK_TYPE=JEDISPIPELINED
+ * DATASOURCE_BULK_POOL_SIZE=4
+ * DATASOURCE_BULK_REDIS_CONNECTION_TIMEOUT=30000
+ * DATASOURCE_BULK_RETRY_ATTEMPTS=1
+ * DATASOURCE_BULK_KEY_PREFIXES=reindex:, export:
+ * </pre>
+ *
+ * Settings a data source does not have are taken from the ones shared by all.
+ * A data source is picked by name with get(), or by key with forKey(): the
+ * longest KEY_PREFIXES the key starts with wins, and keys without one go to
+ * the process wide DataFactory. Data sources are created on first use.
+ */
+public final class DataSources
+{
+	private static final int DEFAULT_POOL_SIZE = 10;
+
+	private static final Map<String, DataFactory> sources = new ConcurrentHashMap<>();
+
+	// Key prefixes of the data sources, built once per configuration snapshot
+	private static volatile Rules rules;
+
+	private DataSources()
+	{
+	}
+
+	private static final class Rules
+	{
+		private final Configuration config;
+		// prefix and data source name, longest prefix first
+		private final List<String[]> prefixes = new ArrayList<>();
+
+		Rules(Configuration config)
+		{
+			this.config = config;
+			for (String name : getNames(config))
+			{
+				String p = config.getProperty(Configuration.dataSourceKey(name, "KEY_PREFIXES"));
+				if (p == null)
+				{
+					continue;
+				}
+				for (String prefix : p.trim().split("\\s*,\\s*"))
+				{
+					if (!prefix.isEmpty())
+					{
+						prefixes.add(new String[] { prefix, name });
+					}
+				}
+			}
+			prefixes.sort((a, b) -> b[0].length() - a[0].length());
+		}
+	}
+
+	// Names of the data sources listed in DATASOURCES of the configuration
+	public static List<String> getNames(Configuration config)
+	{
+		String names = config.getProperty("DATASOURCES");
+		if ((names == null) || names.trim().isEmpty())
+		{
+			return Collections.emptyList();
+		}
+
+		List<String> l = new ArrayList<>();
+		for (String n : names.trim().split("\\s*,\\s*"))
+		{
+			l.add(n.toLowerCase(Locale.ROOT));
+		}
+		return l;
+	}
+
+	/**
+	 * POOL_SIZE of the connections of a data source. The data sources listed in
+	 * DATASOURCES fall back to the shared POOL_SIZE; connections made under
+	 * another name for a purpose of their own, such as the endpoints of the quorum
+	 * lock, only follow their own DATASOURCE_&lt;NAME&gt;_POOL_SIZE.
+	 *
+	 * @param name name of the data source, null for the process wide connections
+	 * @return the pool size, 0 if none is set
+	 */
+	public static int getPoolSize(Configuration config, String name)
+	{
+		if ((name == null) || getNames(config).contains(name.toLowerCase(Locale.ROOT)))
+		{
+			return config.getInt(name, "POOL_SIZE", 0);
+		}
+		return config.getInt(Configuration.dataSourceKey(name, "POOL_SIZE"), 0);
+	}
+
+	/**
+	 * @param name name of the data source, as listed in DATASOURCES
+	 * @return the data factory of the data source
+	 * @throws IllegalArgumentException if DATASOURCES does not list it
+	 */
+	public static DataFactory get(String name)
+	{
+		String n = name.toLowerCase(Locale.ROOT);
+		DataFactory d = sources.get(n);
+		if (d == null)
+		{
+			synchronized (sources)
+			{
+				d = sources.get(n);
+				if (d == null)
+				{
+					Configuration config = ConfigurationManager.getConfiguration();
+					if (!getNames(config).contains(n))
+					{
+						throw new IllegalArgumentException("Unknown data source: " + name);
+					}
+					d = create(config, n);
+					sources.put(n, d);
+				}
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * @param key key about to be used
+	 * @return the data factory of the data source the key's prefix belongs to, or
+	 *         the process wide one
+	 * @throws IllegalStateException if the key has no data source and the process
+	 *                               wide connection was not created
+	 */
+	public static DataFactory forKey(String key)
+	{
+		String name = sourceOf(ConfigurationManager.getConfiguration(), key);
+		if (name != null)
+		{
+			return get(name);
+		}
+
+		ConnectionFactory c = ConnectionFactory.getConnection();
+		if (c == null)
+		{
+			throw new IllegalStateException("Key " + key + " has no data source and no connection was created");
+		}
+		return DataFactory.getDataFactory(c);
+	}
+
+	/**
+	 * @param config configuration holding the data sources
+	 * @param key    key about to be used
+	 * @return name of the data source with the longest prefix of the key, null if
+	 *         none has one
+	 */
+	public static String sourceOf(Configuration config, String key)
+	{
+		Rules r = rules;
+		if ((r == null) || (r.config != config))
+		{
+			r = new Rules(config);
+			if (config == ConfigurationManager.getConfiguration())
+			{
+				rules = r;
+			}
+		}
+
+		if (key != null)
+		{
+			for (String[] p : r.prefixes)
+			{
+				if (key.startsWith(p[0]))
+				{
+					return p[1];
+				}
+			}
+		}
+		return null;
+	}
+
+	// Closes the connections of every data source created so far
+	public static void shutdown()
+	{
+		synchronized (sources)
+		{
+			for (DataFactory d : sources.values())
+			{
+				d.shutdown();
+				d.conn.shutdown();
+			}
+			sources.clear();
+		}
+	}
+
+	// Endpoints and the type of a data source are read once, when it is created;
+	// its pool size and retry settings follow the reloaded configuration
+	private static DataFactory create(Configuration config, String name)
+	{
+		String type = config.getProperty(Configuration.dataSourceKey(name, "TYPE"));
+		conn_type t = ((type == null) || type.trim().isEmpty()) ? conn_type.JEDISPOOL
+				: conn_type.valueOf(type.trim().toUpperCase(Locale.ROOT));
+
+		String hosts = config.getProperty(name, "HOST_NAME");
+		String ports = config.getProperty(name, "HOST_PORT");
+		String password = config.getProperty(name, "REDIS_PASSWORD");
+
+		CustomLogger.info("Creating data source " + name + " of type " + t);
+		ConnectionFactory conn = ConnectionFactory.newInstance(name, t,
+				(hosts == null) ? ConfigurationManager.getHostname() : hosts.trim().split("\\s*,\\s*"),
+				(ports == null) ? ConfigurationManager.getPortnumber()
+						: Stream.of(ports.trim().split("\\s*,\\s*")).mapToInt(Integer::parseInt).toArray(),
+				((password == null) || password.isEmpty()) ? null : password,
+				config.getInt(name, "POOL_SIZE", DEFAULT_POOL_SIZE),
+				config.getInt(Configuration.dataSourceKey(name, "POOLS"), 1),
+				config.getInt(name, "REDIS_CONNECTION_TIMEOUT", config.getConnectionTimeoutMSec()));
+		return DataFactory.newDataFactory(conn);
+	}
+}
@@ -0,0 +1,329 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.microsoft.cse.redis.api.exceptions.DeadlineExceededException;
+import com.microsoft.cse.redis.api.helper.Deadline;
+
+/**
+ * Sends a duplicate of a read that is slower than usual to another connection,
+ * and returns whichever reply comes first. A read is hedged once it has taken
+ * longer than the given percentile of the recent reads, and hedges are capped
+ * to a share of the reads so that a slow Redis does not get twice the load.
+ * The loser of a hedged read still completes and gives its connection back.
+ * Both run under the deadline of the caller, if it has one.
+ */
+public final class HedgedReads
+{
+	// Latencies are counted in buckets 4 per doubling, from 1us to about 65ms
+	private static final int BUCKETS = 64;
+	// Samples kept before the older ones are decayed
+	private static final long WINDOW = 10000;
+	// Reads needed before the percentile is trusted
+	private static final long MIN_SAMPLES = 100;
+	// In thousandths of a hedge, at most this many hedges can be saved up
+	private static final long UNIT = 1000;
+	private static final long MAX_BALANCE = 10 * UNIT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong samples = new AtomicLong();
+	private final AtomicLong balance = new AtomicLong(MAX_BALANCE);
+
+	private final AtomicLong reads = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final ExecutorService workers;
+
+	private volatile int percentile;
+	private volatile long minDelayMicros;
+	private volatile int budgetPercent;
+	private volatile long delayMicros = -1;
+
+	/**
+	 * @param percentile     percentile of the recent read latencies after which a
+	 *                       read is hedged, 0 to never hedge
+	 * @param minDelayMicros reads faster than this are never hedged
+	 * @param budgetPercent  hedges allowed per 100 reads
+	 */
+	public HedgedReads(int percentile, long minDelayMicros, int budgetPercent)
+	{
+		configure(percentile, minDelayMicros, budgetPercent);
+
+		AtomicInteger count = new AtomicInteger();
+		workers = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "redis-hedge-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	// Applies new settings, the latencies seen so far are kept
+	public void configure(int percentile, long minDelayMicros, int budgetPercent)
+	{
+		this.percentile = Math.min(percentile, 100);
+		this.minDelayMicros = Math.max(0, minDelayMicros);
+		this.budgetPercent = Math.max(0, budgetPercent);
+	}
+
+	public boolean isEnabled()
+	{
+		return percentile > 0;
+	}
+
+	// Reads already running complete, the ones started later are refused
+	public void shutdown()
+	{
+		workers.shutdown();
+	}
+
+	/**
+	 * Runs a read, hedging it on a second connection if it is slow.
+	 *
+	 * @param primary gets the connection the read normally uses
+	 * @param hedge   gets a connection for the duplicate, preferably to another
+	 *                pool or replica
+	 * @param command the read, it must not change anything
+	 * @return the first reply
+	 */
+	public <C extends Closeable, T> T read(Supplier<C> primary, Supplier<C> hedge, Function<C, T> command)
+	{
+		reads.incrementAndGet();
+		earn();
+
+		Deadline deadline = Deadline.current();
+		CompletableFuture<T> result = new CompletableFuture<>();
+		AtomicInteger running = new AtomicInteger(1);
+		long start = System.nanoTime();
+		workers.execute(() -> attempt(primary, command, result, running, start, false, deadline));
+
+		long delay = delayMicros;
+		try
+		{
+			if ((delay < 0) || !isEnabled())
+			{
+				return await(result, deadline);
+			}
+
+			try
+			{
+				long wait = TimeUnit.MICROSECONDS.toNanos(delay);
+				if (deadline != null)
+				{
+					wait = Math.min(wait, deadline.remainingNanos());
+				}
+				return result.get(wait, TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e)
+			{
+				if (((deadline == null) || !deadline.isExpired()) && tryHedge())
+				{
+					running.incrementAndGet();
+					workers.execute(() -> attempt(hedge, command, result, running, start, true, deadline));
+				}
+				return await(result, deadline);
+			}
+		} catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error)
+			{
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a read", e);
+		}
+	}
+
+	// Waits for the reply, no longer than the deadline if there is one
+	private static <T> T await(CompletableFuture<T> result, Deadline deadline)
+			throws InterruptedException, ExecutionException
+	{
+		if (deadline == null)
+		{
+			return result.get();
+		}
+		try
+		{
+			return result.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e)
+		{
+			throw new DeadlineExceededException("Deadline exceeded waiting for a read", e);
+		}
+	}
+
+	private <C extends Closeable, T> void attempt(Supplier<C> connection, Function<C, T> command,
+			CompletableFuture<T> result, AtomicInteger running, long start, boolean hedged, Deadline deadline)
+	{
+		// the other one already answered
+		if (result.isDone())
+		{
+			return;
+		}
+
+		Deadline.Scope scope = (deadline == null) ? null : deadline.attach();
+		try (C c = connection.get())
+		{
+			T value = command.apply(c);
+			if (!hedged)
+			{
+				record((System.nanoTime() - start) / 1000);
+			}
+			if (result.complete(value) && hedged)
+			{
+				hedgeWins.incrementAndGet();
+			}
+		} catch (Throwable t)
+		{
+			// a failure only counts if the other one can't answer anymore
+			if (running.decrementAndGet() == 0)
+			{
+				result.completeExceptionally(t);
+			}
+			return;
+		} finally
+		{
+			if (scope != null)
+			{
+				scope.close();
+			}
+		}
+		running.decrementAndGet();
+	}
+
+	private void earn()
+	{
+		long earned = (budgetPercent * UNIT) / 100;
+		long b = balance.get();
+		while ((b < MAX_BALANCE) && !balance.compareAndSet(b, Math.min(MAX_BALANCE, b + earned)))
+		{
+			b = balance.get();
+		}
+	}
+
+	private boolean tryHedge()
+	{
+		long b = balance.get();
+		while (b >= UNIT)
+		{
+			if (balance.compareAndSet(b, b - UNIT))
+			{
+				hedges.incrementAndGet();
+				return true;
+			}
+			b = balance.get();
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	private static int bucket(long micros)
+	{
+		if (micros < 1)
+		{
+			return 0;
+		}
+		int log = 63 - Long.numberOfLeadingZeros(micros);
+		int fraction = (int) ((log >= 2) ? ((micros >> (log - 2)) & 3) : ((micros << (2 - log)) & 3));
+		return Math.min(BUCKETS - 1, (log * 4) + fraction);
+	}
+
+	// Largest latency counted in the bucket
+	private static long upperBound(int bucket)
+	{
+		int log = bucket / 4;
+		return ((4L + (bucket % 4) + 1) << log) >> 2;
+	}
+
+	private void record(long micros)
+	{
+		buckets.incrementAndGet(bucket(micros));
+		long n = samples.incrementAndGet();
+
+		if (n >= WINDOW)
+		{
+			// halving keeps the shape of the recent latencies and lets the old ones fade
+			samples.set(n / 2);
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				buckets.set(i, buckets.get(i) / 2);
+			}
+		}
+		if ((n & 127) == 0)
+		{
+			updateDelay();
+		}
+	}
+
+	private void updateDelay()
+	{
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			total += buckets.get(i);
+		}
+		if (total < MIN_SAMPLES)
+		{
+			return;
+		}
+
+		long rank = (total * percentile) / 100;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += buckets.get(i);
+			if (seen >= rank)
+			{
+				delayMicros = Math.max(minDelayMicros, upperBound(i));
+				return;
+			}
+		}
+	}
+
+	// Number of reads run through here
+	public long getReads()
+	{
+		return reads.get();
+	}
+
+	// Number of duplicates sent
+	public long getHedges()
+	{
+		return hedges.get();
+	}
+
+	// Number of reads answered by their duplicate
+	public long getHedgeWins()
+	{
+		return hedgeWins.get();
+	}
+
+	// Number of slow reads not hedged because the budget was spent
+	public long getRejected()
+	{
+		return rejected.get();
+	}
+
+	// Current hedging delay, -1 until enough reads were seen
+	public long getDelayMicros()
+	{
+		return delayMicros;
+	}
+}
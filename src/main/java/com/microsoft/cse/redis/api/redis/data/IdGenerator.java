@@ -0,0 +1,167 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+
+/**
+ * Hands out unique IDs without a round trip per ID. A block of blockSize IDs is
+ * leased at once with INCRBY on the counter key, which no other process can
+ * lease again, and its IDs are taken with an atomic increment. Once half of a
+ * block is used the next one is leased in the background, so threads only wait
+ * on Redis if IDs are taken faster than a lease takes.
+ *
+ * A lease can skip a gap below its block, for counters that other clients also
+ * take IDs above: their IDs then never fall in a block.
+ */
+public class IdGenerator
+{
+	private static final ExecutorService prefetcher = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "redis-id-prefetch");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final DataFactory data;
+	private final String key;
+	private final long blockSize;
+	private final long gap;
+
+	private final AtomicReference<Block> current;
+	private final AtomicReference<CompletableFuture<Block>> next = new AtomicReference<>();
+	private final LongAdder leases = new LongAdder();
+
+	/**
+	 * @param data      factory used to lease the blocks
+	 * @param key       counter the blocks are leased from, every generator on the
+	 *                  same key hands out different IDs
+	 * @param blockSize number of IDs leased at once
+	 */
+	public IdGenerator(DataFactory data, String key, long blockSize)
+	{
+		this(data, key, blockSize, 0);
+	}
+
+	/**
+	 * Same as above, for a counter other clients take IDs from as the counter plus
+	 * an offset below gap: each lease skips gap IDs below its block.
+	 *
+	 * @param gap number of IDs above the counter that may be in use by others
+	 */
+	public IdGenerator(DataFactory data, String key, long blockSize, long gap)
+	{
+		this.data = data;
+		this.key = key;
+		this.blockSize = Math.max(1, blockSize);
+		this.gap = Math.max(0, gap);
+
+		// an empty block, the first call leases a real one
+		current = new AtomicReference<>(new Block(0, 0));
+	}
+
+	/**
+	 * @return an ID no other call, in this or any other process using the same
+	 *         key, got
+	 */
+	public long next()
+	{
+		while (true)
+		{
+			Block b = current.get();
+			long id = b.next.getAndIncrement();
+
+			if (id < b.end)
+			{
+				if (id == b.prefetchAt)
+				{
+					lease(false);
+				}
+				return id;
+			}
+
+			// this block is used up: wait for the next one, the thread that gets to
+			// install it clears the way for the next prefetch
+			CompletableFuture<Block> f = lease(true);
+			try
+			{
+				Block n = f.join();
+				if (current.compareAndSet(b, n))
+				{
+					next.compareAndSet(f, null);
+				}
+			} catch (CompletionException e)
+			{
+				next.compareAndSet(f, null);
+				CustomLogger.error("Leasing IDs from " + key + " failed: " + e.getCause().getMessage(), e.getCause());
+				throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+			}
+		}
+	}
+
+	// Number of blocks leased so far
+	public long getLeases()
+	{
+		return leases.sum();
+	}
+
+	// Starts leasing the next block unless that is already under way, and returns
+	// its future. The lease runs in the background, or in the calling thread when
+	// it has to wait for it anyway.
+	private CompletableFuture<Block> lease(boolean wait)
+	{
+		CompletableFuture<Block> f = next.get();
+		if (f != null)
+		{
+			return f;
+		}
+
+		CompletableFuture<Block> mine = new CompletableFuture<>();
+		if (!next.compareAndSet(null, mine))
+		{
+			return next.get();
+		}
+
+		if (wait)
+		{
+			complete(mine);
+		} else
+		{
+			prefetcher.execute(() -> complete(mine));
+		}
+		return mine;
+	}
+
+	private void complete(CompletableFuture<Block> f)
+	{
+		try
+		{
+			long last = data.increment(key, gap + blockSize);
+			leases.increment();
+			f.complete(new Block(last - blockSize + 1, last + 1));
+		} catch (Exception e)
+		{
+			f.completeExceptionally(e);
+		}
+	}
+
+	// IDs from start to end, end excluded
+	private static final class Block
+	{
+		private final AtomicLong next;
+		private final long end;
+		private final long prefetchAt;
+
+		Block(long start, long end)
+		{
+			next = new AtomicLong(start);
+			this.end = end;
+			prefetchAt = start + ((end - start) / 2);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+/**
+ * Jedis implementation of the script calls: EVALSHA first, and EVAL, which
+ * caches the script in Redis, only when Redis does not know it yet.
+ */
+final class JedisScriptOperations
+{
+	private JedisScriptOperations()
+	{
+	}
+
+	static Object eval(Jedis connection, LuaScript script, List<String> keys, List<String> args)
+	{
+		try
+		{
+			return connection.evalsha(script.getSha1(), keys, args);
+		} catch (JedisNoScriptException e)
+		{
+			return connection.eval(script.getSource(), keys, args);
+		}
+	}
+}
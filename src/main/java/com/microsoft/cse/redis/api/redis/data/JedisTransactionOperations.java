@@ -0,0 +1,157 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.List;
+import java.util.Map;
+
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Transaction;
+
+/**
+ * Jedis implementation of the transaction operations. MULTI is only sent with
+ * the first write, the reads before it go straight to the connection.
+ */
+class JedisTransactionOperations implements TransactionOperations
+{
+	private final Jedis connection;
+	private Transaction transaction;
+	private boolean discarded;
+
+	private JedisTransactionOperations(Jedis connection)
+	{
+		this.connection = connection;
+	}
+
+	/**
+	 * Runs one attempt of the transaction on the connection. The connection is
+	 * left without a WATCH or MULTI pending, whatever the outcome.
+	 */
+	static <T> TransactionResult<T> execute(Jedis connection, List<String> watchKeys, TransactionCallback<T> callback)
+	{
+		if (!watchKeys.isEmpty())
+		{
+			connection.watch(watchKeys.toArray(new String[watchKeys.size()]));
+		}
+
+		JedisTransactionOperations operations = new JedisTransactionOperations(connection);
+		try
+		{
+			T value = callback.doInTransaction(operations);
+			if (operations.discarded)
+			{
+				operations.abort();
+				return TransactionResult.discarded(value);
+			}
+
+			// EXEC returns null when a watched key was changed
+			List<Object> replies = operations.multi().exec();
+			operations.transaction = null;
+			return (replies == null) ? TransactionResult.conflict() : TransactionResult.committed(value, replies);
+
+		} catch (RuntimeException e)
+		{
+			operations.abort();
+			throw e;
+		}
+	}
+
+	private Transaction multi()
+	{
+		if (transaction == null)
+		{
+			transaction = connection.multi();
+		}
+		return transaction;
+	}
+
+	private void reading()
+	{
+		if (transaction != null)
+		{
+			throw new IllegalStateException("Reads must be done before the first write of a transaction");
+		}
+	}
+
+	private void abort()
+	{
+		try
+		{
+			if (transaction != null)
+			{
+				transaction.discard();
+				transaction = null;
+			} else
+			{
+				connection.unwatch();
+			}
+		} catch (Exception e)
+		{
+			CustomLogger.error("Error aborting a transaction: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public String get(String key)
+	{
+		reading();
+		return connection.get(key);
+	}
+
+	@Override
+	public Map<String, String> getMultimap(String key)
+	{
+		reading();
+		return connection.hgetAll(key);
+	}
+
+	@Override
+	public String getHashValue(String hashSetName, String fieldName)
+	{
+		reading();
+		return connection.hget(hashSetName, fieldName);
+	}
+
+	@Override
+	public void set(String key, String value)
+	{
+		set(key, value, ConfigurationManager.getRedisDataExpireSec());
+	}
+
+	@Override
+	public void set(String key, String value, int ttl)
+	{
+		multi().setex(key, ttl, value);
+	}
+
+	@Override
+	public void setHashValue(String hashSetName, String fieldName, String value)
+	{
+		multi().hset(hashSetName, fieldName, value);
+	}
+
+	@Override
+	public void deleteHashValue(String hashSetName, String fieldName)
+	{
+		multi().hdel(hashSetName, fieldName);
+	}
+
+	@Override
+	public void delete(String key)
+	{
+		multi().del(key);
+	}
+
+	@Override
+	public void setExpiration(String key, int timeout)
+	{
+		multi().expire(key, timeout);
+	}
+
+	@Override
+	public void discard()
+	{
+		discarded = true;
+	}
+}
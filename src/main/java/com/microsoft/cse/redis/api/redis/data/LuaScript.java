@@ -0,0 +1,76 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Lua script run atomically by Redis with DataFactory.eval. Scripts are sent by
+ * their SHA1 and only sent whole when Redis does not have them cached yet, so
+ * a script costs one short command per call.
+ */
+public final class LuaScript
+{
+	private final String source;
+	private final String sha1;
+
+	public LuaScript(String source)
+	{
+		this.source = source;
+
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(40);
+			for (byte b : digest)
+			{
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			sha1 = sb.toString();
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	/**
+	 * @param resource name of the script on the classpath, e.g. /lua/script.lua
+	 * @return the script
+	 * @throws IllegalArgumentException if there is no such resource
+	 */
+	public static LuaScript fromResource(String resource)
+	{
+		try (InputStream in = LuaScript.class.getResourceAsStream(resource))
+		{
+			if (in == null)
+			{
+				throw new IllegalArgumentException("Script not found: " + resource);
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) > 0)
+			{
+				out.write(buf, 0, n);
+			}
+			return new LuaScript(new String(out.toByteArray(), StandardCharsets.UTF_8));
+		} catch (IOException e)
+		{
+			throw new IllegalArgumentException("Script can't be read: " + resource, e);
+		}
+	}
+
+	public String getSource()
+	{
+		return source;
+	}
+
+	public String getSha1()
+	{
+		return sha1;
+	}
+}
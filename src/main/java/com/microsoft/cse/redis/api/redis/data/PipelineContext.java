@@ -0,0 +1,121 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.Collections;
+import java.util.Map;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * State of the pipeline scope of one thread: the pooled connection the scope
+ * was started on, the Jedis pipeline and what has been queued since the last
+ * flush. It is only ever touched by the thread that owns it.
+ */
+class PipelineContext
+{
+	final Jedis connection;
+	final Pipeline pipeline;
+	final Thread owner = Thread.currentThread();
+	private final PipelineFlushListener listener;
+	private final int maxCommands;
+	private final long maxBytes;
+
+	private int pendingCommands;
+	private long pendingBytes;
+	private long flushes;
+	private boolean closed;
+
+	PipelineContext(Jedis connection, PipelineFlushListener listener, int maxCommands, long maxBytes)
+	{
+		this.connection = connection;
+		this.listener = listener;
+		this.maxCommands = maxCommands;
+		this.maxBytes = maxBytes;
+		pipeline = connection.pipelined();
+	}
+
+	/**
+	 * Accounts for commands that were just queued and flushes the pipeline if the
+	 * scope went over its command or byte limit.
+	 */
+	void queued(int commands, long bytes)
+	{
+		pendingCommands += commands;
+		pendingBytes += bytes;
+
+		if (((maxCommands > 0) && (pendingCommands >= maxCommands)) || ((maxBytes > 0) && (pendingBytes >= maxBytes)))
+		{
+			flush(false);
+		}
+	}
+
+	/**
+	 * Sends everything queued so far and reads the replies. The listener, if any,
+	 * gets the replies of this flush only.
+	 */
+	void flush(boolean last)
+	{
+		if ((pendingCommands == 0) && !last)
+		{
+			return;
+		}
+
+		if (listener == null)
+		{
+			pipeline.sync();
+		} else if (pendingCommands == 0)
+		{
+			listener.onFlush(new PipelineFlushResult(flushes, 0, 0, last, Collections.emptyList()));
+		} else
+		{
+			PipelineFlushResult result = new PipelineFlushResult(flushes, pendingCommands, pendingBytes, last,
+					pipeline.syncAndReturnAll());
+			listener.onFlush(result);
+		}
+
+		flushes++;
+		pendingCommands = 0;
+		pendingBytes = 0;
+	}
+
+	// Number of flushes done so far in this scope
+	long getFlushes()
+	{
+		return flushes;
+	}
+
+	// Marks the scope as ended, nothing can be flushed through it anymore
+	void close()
+	{
+		closed = true;
+	}
+
+	boolean isClosed()
+	{
+		return closed;
+	}
+
+	// Rough size of a command on the wire, used for the byte limit
+	static long size(String... parts)
+	{
+		long l = 16;
+		for (String s : parts)
+		{
+			if (s != null)
+			{
+				l += s.length();
+			}
+		}
+		return l;
+	}
+
+	static long size(Map<String, String> values)
+	{
+		long l = 16;
+		for (Map.Entry<String, String> entry : values.entrySet())
+		{
+			l += size(entry.getKey(), entry.getValue());
+		}
+		return l;
+	}
+}
@@ -0,0 +1,11 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+/**
+ * Receives the outcome of every flush of a pipeline scope, including the
+ * automatic flushes triggered when the scope reaches its command or byte limit.
+ */
+@FunctionalInterface
+public interface PipelineFlushListener
+{
+	void onFlush(PipelineFlushResult result);
+}
@@ -0,0 +1,77 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of a single pipeline flush. Replies are listed in the order the
+ * commands were queued; commands that failed on the server are also listed
+ * separately in getFailures.
+ */
+public class PipelineFlushResult
+{
+	private final long sequence;
+	private final int commandCount;
+	private final long bytes;
+	private final boolean last;
+	private final List<Object> results;
+	private final List<Exception> failures;
+
+	PipelineFlushResult(long sequence, int commandCount, long bytes, boolean last, List<Object> results)
+	{
+		this.sequence = sequence;
+		this.commandCount = commandCount;
+		this.bytes = bytes;
+		this.last = last;
+		this.results = Collections.unmodifiableList(results);
+
+		List<Exception> f = new ArrayList<>();
+		for (Object o : results)
+		{
+			if (o instanceof Exception)
+			{
+				f.add((Exception) o);
+			}
+		}
+		failures = Collections.unmodifiableList(f);
+	}
+
+	// Position of this flush in its pipeline scope, starting at 0
+	public long getSequence()
+	{
+		return sequence;
+	}
+
+	public int getCommandCount()
+	{
+		return commandCount;
+	}
+
+	// Approximate size of the keys and values sent in this flush
+	public long getBytes()
+	{
+		return bytes;
+	}
+
+	// True when the flush was done by endPipeline
+	public boolean isLast()
+	{
+		return last;
+	}
+
+	public List<Object> getResults()
+	{
+		return results;
+	}
+
+	public List<Exception> getFailures()
+	{
+		return failures;
+	}
+
+	public boolean hasFailures()
+	{
+		return !failures.isEmpty();
+	}
+}
@@ -0,0 +1,76 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import redis.clients.jedis.Response;
+
+/**
+ * Reply of a command queued in a pipeline scope. The value becomes available
+ * once the pipeline is flushed, either automatically, by flushPipeline() or by
+ * endPipeline(). Calling get() from the thread that owns the scope before that
+ * flushes the pipeline. Outside of a pipeline scope commands run right away and
+ * the result is already done.
+ *
+ * @param <T> type of the reply
+ */
+public class PipelineResult<T>
+{
+	private final Response<T> response;
+	private final PipelineContext context;
+	private final long flush;
+	private final T value;
+
+	PipelineResult(Response<T> response, PipelineContext context)
+	{
+		this.response = response;
+		this.context = context;
+		flush = context.getFlushes();
+		value = null;
+	}
+
+	private PipelineResult(T value)
+	{
+		response = null;
+		context = null;
+		flush = 0;
+		this.value = value;
+	}
+
+	static <T> PipelineResult<T> completed(T value)
+	{
+		return new PipelineResult<>(value);
+	}
+
+	/**
+	 * @return true when the reply has been read from Redis
+	 */
+	public boolean isDone()
+	{
+		return (response == null) || (context.getFlushes() > flush);
+	}
+
+	/**
+	 * Gets the reply. If the command was not flushed yet and the caller owns the
+	 * pipeline scope, the pipeline is flushed first.
+	 *
+	 * @return the reply of the command
+	 * @throws IllegalStateException if the command was not flushed and cannot be
+	 *                               flushed from this thread
+	 */
+	public T get()
+	{
+		if (response == null)
+		{
+			return value;
+		}
+
+		if (!isDone())
+		{
+			if ((context.owner != Thread.currentThread()) || context.isClosed())
+			{
+				throw new IllegalStateException("Pipelined command was not flushed yet");
+			}
+			context.flush(false);
+		}
+
+		return response.get();
+	}
+}
@@ -1,23 +1,26 @@
 package com.microsoft.cse.redis.api.redis.data;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
-import com.jcabi.aspects.RetryOnFailure;
+import com.microsoft.cse.redis.api.exceptions.FailureClassifier;
 import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.ClassLogger;
 import com.microsoft.cse.redis.api.helper.CustomLogger;
-import com.microsoft.cse.redis.api.helper.RetryValues;
 import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.retry.Retryable;
 
-import redis.clients.jedis.Jedis;
 import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 
 public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 {
-	private static ThreadLocal<Pipeline> pipeline = ThreadLocal.withInitial(() -> null);
-	private static ThreadLocal<Jedis> connection = ThreadLocal.withInitial(() -> null);
+	private static final ClassLogger LOG = CustomLogger.forClass(PipelinedPooledRedisDataFactory.class);
+
+	private final ThreadLocal<PipelineContext> context = ThreadLocal.withInitial(() -> null);
 
 	public PipelinedPooledRedisDataFactory(ConnectionFactory conn)
 	{
@@ -25,53 +28,137 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 	}
 
 	public void startPipeline()
+	{
+		startPipeline(null);
+	}
+
+	/**
+	 * Starts a pipeline for the current thread. The pipeline is flushed
+	 * automatically once PIPELINE_MAX_COMMANDS commands or PIPELINE_MAX_BYTES bytes
+	 * are queued, so a single scope can be used for any number of commands without
+	 * buffering all of them in memory.
+	 *
+	 * @param listener gets the replies and failures of every flush, may be null
+	 */
+	public void startPipeline(PipelineFlushListener listener)
 	{
 		if (pooledConnection == null)
 		{
 			pooledConnection = conn.getJedisPooledConnection();
 		}
-		connection.set(pooledConnection.getConnection());
-		Pipeline p = connection.get().pipelined();
-		if (p != null)
+		context.set(new PipelineContext(pooledConnection.getConnection(), listener,
+				ConfigurationManager.getPipelineMaxCommands(), ConfigurationManager.getPipelineMaxBytes()));
+
+	}
+
+	/**
+	 * Sends everything queued so far in the current thread's pipeline, without
+	 * ending the scope.
+	 */
+	public void flushPipeline()
+	{
+		PipelineContext c = context.get();
+		if (c != null)
 		{
-			pipeline.set(p);
+			c.flush(false);
 		}
-
 	}
 
 	public void endPipeline()
 	{
 
-		Pipeline p = pipeline.get();
-		if (p != null)
+		PipelineContext c = context.get();
+		if (c != null)
 		{
-			p.sync();
-			p.close();
-			p.clear();
-			pipeline.remove();
-
-			connection.get().close();
-			connection.remove();
+			try
+			{
+				c.flush(true);
+				c.pipeline.close();
+			} finally
+			{
+				context.remove();
+				c.close();
+				c.connection.close();
+			}
 		}
 
 	}
 
 	private Pipeline getPipeline()
 	{
-		return pipeline.get();
+		PipelineContext c = context.get();
+		return (c == null) ? null : c.pipeline;
 
 	}
 
+	private void queued(int commands, long bytes)
+	{
+		context.get().queued(commands, bytes);
+	}
+
+	// A pipeline whose connection broke is dropped without flushing it, as the
+	// replies still queued on it can't be read anymore. Other failures leave the
+	// scope to the caller.
+	private void failPipeline(Exception e)
+	{
+		if (handleFailure(e) == FailureClassifier.Kind.TRANSPORT)
+		{
+			resetPipeline();
+		}
+	}
+
 	private void resetPipeline()
 	{
-		pipeline.remove();
-		connection.get().close();
-		connection.remove();
+		PipelineContext c = context.get();
+		context.remove();
+		if (c != null)
+		{
+			c.close();
+			c.connection.close();
+		}
+
+	}
+
+	// Wraps the response of a command that was just queued, and accounts for it in
+	// the pipeline limits. The result has to be created before the command is
+	// accounted for, as that can flush the pipeline.
+	private <T> PipelineResult<T> pipelined(Response<T> response, int commands, long bytes)
+	{
+		PipelineContext c = context.get();
+		PipelineResult<T> result = new PipelineResult<>(response, c);
+		c.queued(commands, bytes);
+		return result;
+	}
 
+	// The long returning methods can't wait for the reply, so they return it only
+	// if the pipeline was already flushed and 1 (queued) otherwise.
+	private static long replyOrQueued(PipelineResult<Long> result)
+	{
+		if (result.isDone())
+		{
+			Long l = result.get();
+			return (l == null) ? 0L : l;
+		}
+		return 1;
+	}
+
+	// Reads inside a pipeline scope flush the pipeline to get their value, so they
+	// see every write queued before them and use the scope's connection.
+	private <T> T await(PipelineResult<T> result)
+	{
+		try
+		{
+			return result.get();
+		} catch (Exception e)
+		{
+			failPipeline(e);
+			throw e;
+
+		}
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public void set(String key, String value)
 	{
 		if (getPipeline() == null)
@@ -82,12 +169,10 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 		try
 		{
 			getPipeline().setex(key, ConfigurationManager.getRedisDataExpireSec(), value);
+			queued(1, PipelineContext.size(key, value));
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -95,7 +180,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 
 	// Simple Redis Set operation to add the value to the top of a Set
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public void setAdd(String key, String value)
 	{
@@ -107,23 +192,21 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setArray");
+			LOG.error("Received a null key in setArray");
 			return;
 		}
 
-		CustomLogger.debug("Setting a value for keys setAdd: " + key);
+		LOG.debug("Setting a value for keys setAdd: {}", key);
 
 		try
 		{
 			getPipeline().lpush(key, value);
 			getPipeline().expire(key, ConfigurationManager.getRedisDataExpireSec());
+			queued(2, PipelineContext.size(key, value));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -133,7 +216,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 	// TODO: the name setSet is somewhat misleading here as we are adding items to a
 	// set.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setUnsortedSet(String key, List<String> values)
 	{
@@ -145,11 +228,11 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setUnsortedSet");
+			LOG.error("Received a null key in setUnsortedSet");
 			return;
 		}
 
-		CustomLogger.debug("Setting a value for key: " + key);
+		LOG.debug("Setting a value for key: {}", key);
 
 		try
 		{
@@ -158,13 +241,11 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 
 			getPipeline().sadd(key, array);
 			getPipeline().expire(key, ConfigurationManager.getRedisDataExpireSec());
+			queued(2, PipelineContext.size(key) + PipelineContext.size(array));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -173,7 +254,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 	// Redis hashmap setthat overwrites an existing hash set with a new one with the
 	// specified key.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setMultimap(String key, Map<String, String> values)
 	{
@@ -184,23 +265,21 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 		}
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setMultimap");
+			LOG.error("Received a null key in setMultimap");
 			return;
 		}
 
-		CustomLogger.debug("Setting a multimap value for key: " + key);
+		LOG.debug("Setting a multimap value for key: {}", key);
 
 		try
 		{
 			getPipeline().hmset(key, values);
 			getPipeline().expire(key, ConfigurationManager.getRedisDataExpireSec());
+			queued(2, PipelineContext.size(key) + PipelineContext.size(values));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -209,7 +288,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 	// Redis SortedSet operation that adds the value to the appropriate location in
 	// the set based on score.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setZSet(String key, String value, Double score)
 	{
@@ -221,33 +300,232 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 
 		if ((key == null) || (value == null))
 		{
-			CustomLogger.error("Received a null key in setZSet");
+			LOG.error("Received a null key in setZSet");
 			return;
 		}
 
-		CustomLogger.debug("Setting a sorted set for key: " + key + " score: " + score);
+		LOG.debug("Setting a sorted set for key: {} score: {}", key, score);
 
 		try
 		{
 			ConcurrentHashMap<String, Double> tempmap = new ConcurrentHashMap<>();
 			tempmap.put(value, score);
 			getPipeline().zadd(key, tempmap);
+			queued(1, PipelineContext.size(key, value));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
+			throw e;
+
+		}
+
+	}
+
+	// Simplest Redis operation to get the value of a key in a typical name/value
+	// pair.
+	@Override
+	@Retryable
+
+	public String get(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return super.get(key);
+		}
+		return await(getPipelined(key));
+	}
+
+	// Pipelined version of get, the value is available once the pipeline is
+	// flushed.
+	public PipelineResult<String> getPipelined(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.get(key));
+		}
+		if (key == null)
+		{
+			return PipelineResult.completed(null);
+		}
+
+		LOG.debug("Looking up key: {}", key);
+
+		try
+		{
+			return pipelined(getPipeline().get(key), 1, PipelineContext.size(key));
+
+		} catch (Exception e)
+		{
+			failPipeline(e);
 			throw e;
 
 		}
+	}
 
+	// Get the HashSet associated with a key
+	@Override
+	@Retryable
+
+	public Map<String, String> getMultimap(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return super.getMultimap(key);
+		}
+		return await(getMultimapPipelined(key));
+	}
+
+	// Pipelined version of getMultimap, the value is available once the
+	// pipeline is flushed.
+	public PipelineResult<Map<String, String>> getMultimapPipelined(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.getMultimap(key));
+		}
+		if (key == null)
+		{
+			return PipelineResult.completed(null);
+		}
+
+		LOG.debug("looking up key to get a map: {}", key);
+
+		try
+		{
+			return pipelined(getPipeline().hgetAll(key), 1, PipelineContext.size(key));
+
+		} catch (Exception e)
+		{
+			failPipeline(e);
+			throw e;
+
+		}
+	}
+
+	// Gets the list of items that were previously added to an unordered Set
+	@Override
+	@Retryable
+
+	public List<String> getMultivalue(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return super.getMultivalue(key);
+		}
+		return await(getMultivaluePipelined(key));
+	}
+
+	// Pipelined version of getMultivalue, the value is available once the
+	// pipeline is flushed.
+	public PipelineResult<List<String>> getMultivaluePipelined(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.getMultivalue(key));
+		}
+		if (key == null)
+		{
+			return PipelineResult.completed(null);
+		}
+
+		LOG.debug("looking up key to get a map: {}", key);
+
+		try
+		{
+			return pipelined(getPipeline().lrange(key, 0, -1), 1, PipelineContext.size(key));
+
+		} catch (Exception e)
+		{
+			failPipeline(e);
+			throw e;
+
+		}
+	}
+
+	// Get's the list of items that were added to a Sorted Set for a specific key
+	// and score value.
+	@Override
+	@Retryable
+
+	public Set<String> getZSet(String key, Long minScore, Long maxScore)
+	{
+		if (getPipeline() == null)
+		{
+			return super.getZSet(key, minScore, maxScore);
+		}
+		return await(getZSetPipelined(key, minScore, maxScore));
+	}
+
+	// Pipelined version of getZSet, the value is available once the pipeline is
+	// flushed.
+	public PipelineResult<Set<String>> getZSetPipelined(String key, Long minScore, Long maxScore)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.getZSet(key, minScore, maxScore));
+		}
+		if ((key == null) || (maxScore < minScore) || (minScore < 0) || (maxScore < 0))
+		{
+			return PipelineResult.completed(null);
+		}
+
+		LOG.debug("Getting based on scores: {}:{}", minScore, maxScore);
+
+		try
+		{
+			return pipelined(getPipeline().zrangeByScore(key, minScore, maxScore), 1, PipelineContext.size(key));
+
+		} catch (Exception e)
+		{
+			failPipeline(e);
+			throw e;
+
+		}
+	}
+
+	@Override
+	@Retryable
+	public Set<String> getUnsortedSet(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return super.getUnsortedSet(key);
+		}
+		return await(getUnsortedSetPipelined(key));
+	}
+
+	// Pipelined version of getUnsortedSet, the value is available once the
+	// pipeline is flushed.
+	public PipelineResult<Set<String>> getUnsortedSetPipelined(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.getUnsortedSet(key));
+		}
+		if (key == null)
+		{
+			LOG.error("Received a null key in getUnsortedSet");
+			return PipelineResult.completed(null);
+		}
+
+		LOG.debug("Setting a value for key getUnsortedSet: {}", key);
+
+		try
+		{
+			return pipelined(getPipeline().smembers(key), 1, PipelineContext.size(key));
+
+		} catch (Exception e)
+		{
+			failPipeline(e);
+			throw e;
+
+		}
 	}
 
 	// Remove the specified key/value pair from Redis
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long remove(String key)
 	{
@@ -256,24 +534,31 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 			return super.remove(key);
 
 		}
+		return replyOrQueued(removePipelined(key));
+	}
+
+	// Pipelined version of remove, the reply is available once the pipeline is
+	// flushed.
+	public PipelineResult<Long> removePipelined(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.remove(key));
+		}
 		if (key == null)
 		{
-			return 0L;
+			return PipelineResult.completed(0L);
 		}
 
-		CustomLogger.debug("Removing key: " + key);
+		LOG.debug("Removing key: {}", key);
 
 		try
 		{
-			getPipeline().unlink(key);
-			return 1;
+			return pipelined(getPipeline().unlink(key), 1, PipelineContext.size(key));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -282,7 +567,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 
 	// Remove the ordered set values for a specific key and score.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeZSet(String key, double minScore, double maxScore)
 	{
@@ -291,24 +576,31 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 			return super.removeZSet(key, minScore, maxScore);
 
 		}
+		return replyOrQueued(removeZSetPipelined(key, minScore, maxScore));
+	}
+
+	// Pipelined version of removeZSet, the reply is available once the pipeline
+	// is flushed.
+	public PipelineResult<Long> removeZSetPipelined(String key, double minScore, double maxScore)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.removeZSet(key, minScore, maxScore));
+		}
 		if (key == null)
 		{
-			return 0L;
+			return PipelineResult.completed(0L);
 		}
 
-		CustomLogger.debug("Removing key: " + key + " based on scores: " + minScore + ":" + maxScore);
+		LOG.debug("Removing key: {} based on scores: {}:{}", key, minScore, maxScore);
 
 		try
 		{
-			getPipeline().zremrangeByScore(key, minScore, maxScore);
-			return 1;
+			return pipelined(getPipeline().zremrangeByScore(key, minScore, maxScore), 1, PipelineContext.size(key));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -317,7 +609,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 
 	// Remove the spcified value from the order set (the key)
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeZSet(String key, String value)
 	{
@@ -326,25 +618,32 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 			return super.removeZSet(key, value);
 
 		}
+		return replyOrQueued(removeZSetPipelined(key, value));
+	}
+
+	// Pipelined version of removeZSet, the reply is available once the pipeline
+	// is flushed.
+	public PipelineResult<Long> removeZSetPipelined(String key, String value)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.removeZSet(key, value));
+		}
 		if (key == null)
 		{
-			return 0L;
+			return PipelineResult.completed(0L);
 		}
 
-		CustomLogger.debug("Removing value " + value + " from set " + key);
+		LOG.debug("Removing value {} from set {}", value, key);
 
 		try
 		{
 
-			getPipeline().zrem(key, value);
-			return 1;
+			return pipelined(getPipeline().zrem(key, value), 1, PipelineContext.size(key, value));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -353,7 +652,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 
 	// Remove the specified value from the unordered set (the key)
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeSetValue(String key, String value)
 	{
@@ -362,24 +661,31 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 			return super.removeSetValue(key, value);
 
 		}
+		return replyOrQueued(removeSetValuePipelined(key, value));
+	}
+
+	// Pipelined version of removeSetValue, the reply is available once the
+	// pipeline is flushed.
+	public PipelineResult<Long> removeSetValuePipelined(String key, String value)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.removeSetValue(key, value));
+		}
 		if (key == null)
 		{
-			return 0L;
+			return PipelineResult.completed(0L);
 		}
 
-		CustomLogger.debug("Removing value " + value + " from set " + key);
+		LOG.debug("Removing value {} from set {}", value, key);
 
 		try
 		{
-			getPipeline().srem(key, value);
-			return 1;
+			return pipelined(getPipeline().srem(key, value), 1, PipelineContext.size(key, value));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -387,7 +693,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long setExpiration(String key, Integer timeout)
 	{
@@ -396,33 +702,39 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 			return super.setExpiration(key, timeout);
 
 		}
+		return replyOrQueued(setExpirationPipelined(key, timeout));
+	}
 
+	// Pipelined version of setExpiration, the reply is available once the
+	// pipeline is flushed.
+	public PipelineResult<Long> setExpirationPipelined(String key, Integer timeout)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.setExpiration(key, timeout));
+		}
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setExpiration");
-			return -1;
+			LOG.error("Received a null key in setExpiration");
+			return PipelineResult.completed(-1L);
 		}
 
-		CustomLogger.debug("Setting expiration for key: " + key);
+		LOG.debug("Setting expiration for key: {}", key);
 
 		try
 		{
-			getPipeline().expire(key, timeout);
-			return 1;
+			return pipelined(getPipeline().expire(key, timeout), 1, PipelineContext.size(key));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long delete(String key)
 	{
@@ -431,30 +743,36 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 			return super.delete(key);
 
 		}
+		return replyOrQueued(deletePipelined(key));
+	}
 
+	// Pipelined version of delete, the reply is available once the pipeline is
+	// flushed.
+	public PipelineResult<Long> deletePipelined(String key)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.delete(key));
+		}
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in delete");
-			return -1;
+			LOG.error("Received a null key in delete");
+			return PipelineResult.completed(-1L);
 		}
 
 		try
 		{
-			getPipeline().del(key);
-			return 1;
+			return pipelined(getPipeline().del(key), 1, PipelineContext.size(key));
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setHashSetValueIfNotExists(String hashSetName, String fieldName, String value)
 	{
@@ -463,26 +781,34 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 			return super.setHashSetValueIfNotExists(hashSetName, fieldName, value);
 
 		}
+		return replyOrQueued(setHashSetValueIfNotExistsPipelined(hashSetName, fieldName, value));
+	}
 
+	// Pipelined version of setHashSetValueIfNotExists, the reply is available
+	// once the pipeline is flushed.
+	public PipelineResult<Long> setHashSetValueIfNotExistsPipelined(String hashSetName, String fieldName,
+			String value)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.setHashSetValueIfNotExists(hashSetName, fieldName, value));
+		}
 		if (hashSetName == null)
 		{
-			CustomLogger.error("Received a null hashSetName in setHashSetValueIfNotExists");
-			return -1;
+			LOG.error("Received a null hashSetName in setHashSetValueIfNotExists");
+			return PipelineResult.completed(-1L);
 		}
 
-		CustomLogger.debug("Setting " + fieldName + " field for hash set " + hashSetName);
+		LOG.debug("Setting {} field for hash set {}", fieldName, hashSetName);
 
 		try
 		{
-			getPipeline().hsetnx(hashSetName, fieldName, value);
-			return 1;
+			return pipelined(getPipeline().hsetnx(hashSetName, fieldName, value), 1,
+					PipelineContext.size(hashSetName, fieldName, value));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -490,7 +816,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long deleteHashSetValue(String hashSetName, String fieldName)
 	{
@@ -499,26 +825,33 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 			return super.deleteHashSetValue(hashSetName, fieldName);
 
 		}
+		return replyOrQueued(deleteHashSetValuePipelined(hashSetName, fieldName));
+	}
 
+	// Pipelined version of deleteHashSetValue, the reply is available once the
+	// pipeline is flushed.
+	public PipelineResult<Long> deleteHashSetValuePipelined(String hashSetName, String fieldName)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.deleteHashSetValue(hashSetName, fieldName));
+		}
 		if (hashSetName == null)
 		{
-			CustomLogger.error("Received a null hashSetName in deleteHashSetValue");
-			return -1;
+			LOG.error("Received a null hashSetName in deleteHashSetValue");
+			return PipelineResult.completed(-1L);
 		}
 
-		CustomLogger.debug("Setting " + fieldName + " field for hash set " + hashSetName);
+		LOG.debug("Setting {} field for hash set {}", fieldName, hashSetName);
 
 		try
 		{
 
-			getPipeline().hdel(hashSetName, fieldName);
-			return 1;
+			return pipelined(getPipeline().hdel(hashSetName, fieldName), 1,
+					PipelineContext.size(hashSetName, fieldName));
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
 			throw e;
 
 		}
@@ -526,7 +859,7 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long deleteFromMultivalue(String key, String keytoremove)
 	{
@@ -535,29 +868,209 @@ public class PipelinedPooledRedisDataFactory extends PooledRedisDataFactory
 			return super.deleteFromMultivalue(key, keytoremove);
 
 		}
+		return replyOrQueued(deleteFromMultivaluePipelined(key, keytoremove));
+	}
+
+	// Pipelined version of deleteFromMultivalue, the reply is available once
+	// the pipeline is flushed.
+	public PipelineResult<Long> deleteFromMultivaluePipelined(String key, String keytoremove)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.deleteFromMultivalue(key, keytoremove));
+		}
 		if ((key == null) || (keytoremove == null))
 		{
-			CustomLogger.error("Received a null key in keytoremove");
-			return -1;
+			LOG.error("Received a null key in keytoremove");
+			return PipelineResult.completed(-1L);
 		}
 
-		CustomLogger.debug("Removing " + key + " and value " + keytoremove);
+		LOG.debug("Removing {} and value {}", key, keytoremove);
 
 		try
 		{
 
-			getPipeline().lrem(key, 0, keytoremove);
-			return 1;
+			return pipelined(getPipeline().lrem(key, 0, keytoremove), 1, PipelineContext.size(key, keytoremove));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			endPipeline();
-			resetPipeline();
-			conn.resetConnection();
+			failPipeline(e);
+			throw e;
+
+		}
+	}
+
+	@Override
+	public long publish(String channel, String message)
+	{
+		if (getPipeline() == null)
+		{
+			return super.publish(channel, message);
+
+		}
+		return replyOrQueued(publishPipelined(channel, message));
+	}
+
+	// Pipelined version of publish, the reply is available once the pipeline is
+	// flushed.
+	public PipelineResult<Long> publishPipelined(String channel, String message)
+	{
+		if (getPipeline() == null)
+		{
+			return PipelineResult.completed(super.publish(channel, message));
+		}
+		if (channel == null)
+		{
+			LOG.error("Received a null channel in publish");
+			return PipelineResult.completed(-1L);
+		}
+
+		try
+		{
+			return pipelined(getPipeline().publish(channel, message), 1, PipelineContext.size(channel, message));
+		} catch (Exception e)
+		{
+			failPipeline(e);
 			throw e;
 
 		}
 	}
 
+	// Batches inside a pipeline scope are queued on the scope's pipeline, one
+	// command per key, instead of running on a connection of their own, so they
+	// keep their place among the commands queued around them. Reads flush the
+	// pipeline once for the whole batch, writes return their replies as the
+	// single key versions do.
+	@Override
+	@Retryable
+	public Map<String, Map<String, String>> getMultimap(Set<String> keys)
+	{
+		if ((getPipeline() == null) || (keys == null))
+		{
+			return super.getMultimap(keys);
+		}
+
+		Map<String, PipelineResult<Map<String, String>>> results = new HashMap<>();
+		for (String key : keys)
+		{
+			results.put(key, getMultimapPipelined(key));
+		}
+		return awaitAll(results);
+	}
+
+	@Override
+	public Map<String, String> get(Set<String> keys)
+	{
+		if ((getPipeline() == null) || (keys == null))
+		{
+			return super.get(keys);
+		}
+
+		Map<String, PipelineResult<String>> results = new HashMap<>();
+		for (String key : keys)
+		{
+			results.put(key, getPipelined(key));
+		}
+		return awaitAll(results);
+	}
+
+	@Override
+	public void set(Map<String, String> values)
+	{
+		if ((getPipeline() == null) || (values == null))
+		{
+			super.set(values);
+			return;
+		}
+
+		for (Map.Entry<String, String> e : values.entrySet())
+		{
+			set(e.getKey(), e.getValue());
+		}
+	}
+
+	@Override
+	public Map<String, Long> delete(Set<String> keys)
+	{
+		if ((getPipeline() == null) || (keys == null))
+		{
+			return super.delete(keys);
+		}
+
+		Map<String, PipelineResult<Long>> results = new HashMap<>();
+		for (String key : keys)
+		{
+			results.put(key, deletePipelined(key));
+		}
+		return repliesOrQueued(results);
+	}
+
+	@Override
+	public Map<String, Long> setExpiration(Set<String> keys, Integer timeout)
+	{
+		if ((getPipeline() == null) || (keys == null))
+		{
+			return super.setExpiration(keys, timeout);
+		}
+
+		Map<String, PipelineResult<Long>> results = new HashMap<>();
+		for (String key : keys)
+		{
+			results.put(key, setExpirationPipelined(key, timeout));
+		}
+		return repliesOrQueued(results);
+	}
+
+	@Override
+	public Map<String, Long> setHashSetValueIfNotExists(Set<String> hashSetNames, String fieldName, String value)
+	{
+		if ((getPipeline() == null) || (hashSetNames == null))
+		{
+			return super.setHashSetValueIfNotExists(hashSetNames, fieldName, value);
+		}
+
+		Map<String, PipelineResult<Long>> results = new HashMap<>();
+		for (String hashSetName : hashSetNames)
+		{
+			results.put(hashSetName, setHashSetValueIfNotExistsPipelined(hashSetName, fieldName, value));
+		}
+		return repliesOrQueued(results);
+	}
+
+	@Override
+	public Map<String, Long> deleteHashSetValue(Set<String> hashSetNames, String fieldName)
+	{
+		if ((getPipeline() == null) || (hashSetNames == null))
+		{
+			return super.deleteHashSetValue(hashSetNames, fieldName);
+		}
+
+		Map<String, PipelineResult<Long>> results = new HashMap<>();
+		for (String hashSetName : hashSetNames)
+		{
+			results.put(hashSetName, deleteHashSetValuePipelined(hashSetName, fieldName));
+		}
+		return repliesOrQueued(results);
+	}
+
+	// Values of the queued reads of a batch, the first one flushes the pipeline
+	private <T> Map<String, T> awaitAll(Map<String, PipelineResult<T>> results)
+	{
+		Map<String, T> values = new HashMap<>();
+		for (Map.Entry<String, PipelineResult<T>> e : results.entrySet())
+		{
+			values.put(e.getKey(), await(e.getValue()));
+		}
+		return values;
+	}
+
+	private static Map<String, Long> repliesOrQueued(Map<String, PipelineResult<Long>> results)
+	{
+		Map<String, Long> replies = new HashMap<>();
+		for (Map.Entry<String, PipelineResult<Long>> e : results.entrySet())
+		{
+			replies.put(e.getKey(), replyOrQueued(e.getValue()));
+		}
+		return replies;
+	}
 }
@@ -1,63 +1,187 @@
 package com.microsoft.cse.redis.api.redis.data;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-import com.jcabi.aspects.RetryOnFailure;
 import com.jcabi.log.Logger;
+import com.microsoft.cse.redis.api.helper.ConfigurationListener;
 import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.ClassLogger;
 import com.microsoft.cse.redis.api.helper.CustomLogger;
-import com.microsoft.cse.redis.api.helper.RetryValues;
 import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
 import com.microsoft.cse.redis.api.redis.connection.jedis.PooledConnection;
+import com.microsoft.cse.redis.api.retry.Retryable;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Response;
+import redis.clients.jedis.util.SafeEncoder;
 
 public class PooledRedisDataFactory extends DataFactory
 {
 
+	private static final ClassLogger LOG = CustomLogger.forClass(PooledRedisDataFactory.class);
+
 	protected PooledConnection pooledConnection;
 
+	// Created on first use, each data factory has its own
+	private volatile ScatterGatherExecutor scatterGather;
+
+	private volatile HedgedReads hedgedReads;
+	private ConfigurationListener hedgeSettings;
+
 	public PooledRedisDataFactory(ConnectionFactory conn)
 	{
 		super(conn);
 	}
 
+	// Connection for a command on the key. Every key of a multi-key command must
+	// be served by the same connection; a null key means any connection will do.
+	protected Jedis getConnection(String key)
+	{
+		if (pooledConnection == null)
+		{
+			pooledConnection = conn.getJedisPooledConnection();
+		}
+		return pooledConnection.getConnection();
+	}
+
+	// Connection for the duplicate of a slow read on the key
+	protected Jedis getHedgeConnection(String key)
+	{
+		if (pooledConnection == null)
+		{
+			pooledConnection = conn.getJedisPooledConnection();
+		}
+		return pooledConnection.getHedgeConnection();
+	}
+
+	// False when another connection could hold different data for the key
+	protected boolean canHedge()
+	{
+		return true;
+	}
+
+	/**
+	 * Hedging of the reads of this data factory. HEDGE_PERCENTILE,
+	 * HEDGE_MIN_DELAY_MSEC and HEDGE_BUDGET_PERCENT are applied again when the
+	 * configuration is reloaded.
+	 */
+	public HedgedReads getHedgedReads()
+	{
+		if (hedgedReads == null)
+		{
+			synchronized (this)
+			{
+				if (hedgedReads == null)
+				{
+					HedgedReads h = new HedgedReads(ConfigurationManager.getHedgePercentile(),
+							ConfigurationManager.getHedgeMinDelayMSec() * 1000L,
+							ConfigurationManager.getHedgeBudgetPercent());
+					hedgeSettings = (previous, current) -> h.configure(ConfigurationManager.getHedgePercentile(),
+							ConfigurationManager.getHedgeMinDelayMSec() * 1000L,
+							ConfigurationManager.getHedgeBudgetPercent());
+					ConfigurationManager.addListener(hedgeSettings);
+					hedgedReads = h;
+				}
+			}
+		}
+		return hedgedReads;
+	}
+
+	// Runs a read on the connection of the key, hedged if it is enabled
+	protected <T> T read(String key, Function<Jedis, T> command)
+	{
+		HedgedReads h = getHedgedReads();
+		if (!h.isEnabled() || !canHedge())
+		{
+			try (Jedis jd = getConnection(key))
+			{
+				return command.apply(jd);
+			}
+		}
+		return h.read(() -> getConnection(key), () -> getHedgeConnection(key), command);
+	}
+
+	protected static String firstKey(Collection<String> keys)
+	{
+		return keys.isEmpty() ? null : keys.iterator().next();
+	}
+
+	private ScatterGatherExecutor getScatterGather()
+	{
+		if (scatterGather == null)
+		{
+			synchronized (this)
+			{
+				if (scatterGather == null)
+				{
+					scatterGather = new ScatterGatherExecutor(ConfigurationManager.getScatterParallelism(),
+							ConfigurationManager.getScatterChunkSize());
+				}
+			}
+		}
+		return scatterGather;
+	}
+
+	// Runs a batched command over the keys, one pipeline per shard and chunk, the
+	// pipelines running in parallel on their own connections
+	protected <R> Map<String, R> scatter(Set<String> keys, Function<Set<String>, Map<String, R>> batch)
+	{
+		return getScatterGather().execute(keys, this::shardOf, batch);
+	}
+
+	// Also stops the threads of the scattered batches and of the hedged reads
+	@Override
+	public void shutdown()
+	{
+		synchronized (this)
+		{
+			if (scatterGather != null)
+			{
+				scatterGather.shutdown();
+				scatterGather = null;
+			}
+			if (hedgedReads != null)
+			{
+				ConfigurationManager.removeListener(hedgeSettings);
+				hedgedReads.shutdown();
+				hedgedReads = null;
+			}
+		}
+		super.shutdown();
+	}
+
 	// Simple Redis Key/Value operation. Based on the SDK type, different operations
 	// are invoked to set the key to the specified value.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public void set(String key, String value)
 	{
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in set");
+			LOG.error("Received a null key in set");
 			return;
 		}
 
-		CustomLogger.debug("Setting a value for key set: " + key);
+		LOG.debug("Setting a value for key set: {}", key);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			jd.setex(key, ConfigurationManager.getRedisDataExpireSec(), value);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -70,33 +194,20 @@ public class PooledRedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
-	public long globalIncrement()
+	@Retryable(idempotent = false)
+	public long increment(String key, long amount)
 	{
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
-			String h = jd.getClient().getHost();
-			int hc = (h.hashCode() & 0x7fffffff) % 1000;
-
-			/**
-			 * This is the old way of doing increement. But it does not work and we need to
-			 * use increment List<Long> responses = jd.bitfield("globalIncrement", "INCRBY",
-			 * "u32", "0", "1", "OVERFLOW", "WRAP"); return responses.get(0);
-			 */
-			return jd.incr("global_id_number") + hc;
+			jd = getConnection(key);
+			return jd.incrBy(key, amount);
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -110,34 +221,29 @@ public class PooledRedisDataFactory extends DataFactory
 
 	// Simple Redis Set operation to add the value to the top of a Set
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 	public void setAdd(String key, String value)
 	{
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setArray");
+			LOG.error("Received a null key in setArray");
 			return;
 		}
 
-		CustomLogger.debug("Setting a value for keys setAdd: " + key);
+		LOG.debug("Setting a value for keys setAdd: {}", key);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			jd.lpush(key, value);
 			jd.expire(key, ConfigurationManager.getRedisDataExpireSec());
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -153,26 +259,22 @@ public class PooledRedisDataFactory extends DataFactory
 	// TODO: the name setSet is somewhat misleading here as we are adding items to a
 	// set.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public void setUnsortedSet(String key, List<String> values)
 	{
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setUnsortedSet");
+			LOG.error("Received a null key in setUnsortedSet");
 			return;
 		}
 
-		CustomLogger.debug("Setting a value for key: " + key);
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
+		LOG.debug("Setting a value for key: {}", key);
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 
 			String[] array = values.toArray(new String[values.size()]);
 
@@ -181,8 +283,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -197,35 +298,30 @@ public class PooledRedisDataFactory extends DataFactory
 	// Redis hashmap setthat overwrites an existing hash set with a new one with the
 	// specified key.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setMultimap(String key, Map<String, String> values)
 	{
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setMultimap");
+			LOG.error("Received a null key in setMultimap");
 			return;
 		}
 
-		CustomLogger.debug("Setting a multimap value for key: " + key);
+		LOG.debug("Setting a multimap value for key: {}", key);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			jd.hmset(key, values);
 			jd.expire(key, ConfigurationManager.getRedisDataExpireSec());
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -240,34 +336,29 @@ public class PooledRedisDataFactory extends DataFactory
 	// Redis SortedSet operation that adds the value to the appropriate location in
 	// the set based on score.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public void setZSet(String key, String value, Double score)
 	{
 
 		if ((key == null) || (value == null))
 		{
-			CustomLogger.error("Received a null key in setZSet");
+			LOG.error("Received a null key in setZSet");
 			return;
 		}
 
-		CustomLogger.debug("Setting a sorted set for key: " + key + " score: " + score);
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
+		LOG.debug("Setting a sorted set for key: {} score: {}", key, score);
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			ConcurrentHashMap<String, Double> tempmap = new ConcurrentHashMap<>();
 			tempmap.put(value, score);
 			jd.zadd(key, tempmap);
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -283,7 +374,7 @@ public class PooledRedisDataFactory extends DataFactory
 	// Simplest Redis operation to get the value of a key in a typical name/value
 	// pair.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public String get(String key)
 	{
@@ -292,37 +383,22 @@ public class PooledRedisDataFactory extends DataFactory
 			return null;
 		}
 
-		CustomLogger.debug("Looking up key: " + key);
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
-		Jedis jd = null;
-
+		LOG.debug("Looking up key: {}", key);
 		try
 		{
-			jd = pooledConnection.getConnection();
-			return jd.get(key);
+			return read(key, jd -> jd.get(key));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
-
-		} finally
-		{
-			if (jd != null)
-			{
-				jd.close();
-			}
 		}
 
 	}
 
 	// Get the HashSet associated with a key
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public Map<String, String> getMultimap(String key)
 	{
@@ -332,38 +408,23 @@ public class PooledRedisDataFactory extends DataFactory
 			return null;
 		}
 
-		CustomLogger.debug("looking up key to get a map: " + key);
-
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
-		Jedis jd = null;
+		LOG.debug("looking up key to get a map: {}", key);
 
 		try
 		{
-			jd = pooledConnection.getConnection();
-			return jd.hgetAll(key);
+			return read(key, jd -> jd.hgetAll(key));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
-
-		} finally
-		{
-			if (jd != null)
-			{
-				jd.close();
-			}
 		}
 
 	}
 
 	// Gets the list of items that were previously added to an unordered Set
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public List<String> getMultivalue(String key)
 	{
@@ -373,22 +434,17 @@ public class PooledRedisDataFactory extends DataFactory
 			return null;
 		}
 
-		CustomLogger.debug("looking up key to get a map: " + key);
+		LOG.debug("looking up key to get a map: {}", key);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			return jd.lrange(key, 0, -1);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -404,7 +460,7 @@ public class PooledRedisDataFactory extends DataFactory
 	// Get's the list of items that were added to a Sorted Set for a specific key
 	// and score value.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public Set<String> getZSet(String key, Long minScore, Long maxScore)
 	{
@@ -413,38 +469,23 @@ public class PooledRedisDataFactory extends DataFactory
 			return null;
 		}
 
-		CustomLogger.debug("Getting based on scores: " + minScore + ":" + maxScore);
-
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
-		Jedis jd = null;
+		LOG.debug("Getting based on scores: {}:{}", minScore, maxScore);
 
 		try
 		{
-			jd = pooledConnection.getConnection();
-			return jd.zrangeByScore(key, minScore, maxScore);
+			return read(key, jd -> jd.zrangeByScore(key, minScore, maxScore));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
-
-		} finally
-		{
-			if (jd != null)
-			{
-				jd.close();
-			}
 		}
 
 	}
 
 	// Remove the specified key/value pair from Redis
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long remove(String key)
 	{
@@ -453,23 +494,18 @@ public class PooledRedisDataFactory extends DataFactory
 			return 0L;
 		}
 
-		CustomLogger.debug("Removing key: " + key);
+		LOG.debug("Removing key: {}", key);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			return jd.unlink(key);
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -484,7 +520,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 	// Remove the ordered set values for a specific key and score.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeZSet(String key, double minScore, double maxScore)
 	{
@@ -493,23 +529,18 @@ public class PooledRedisDataFactory extends DataFactory
 			return 0L;
 		}
 
-		CustomLogger.debug("Removing key: " + key + " based on scores: " + minScore + ":" + maxScore);
+		LOG.debug("Removing key: {} based on scores: {}:{}", key, minScore, maxScore);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			return jd.zremrangeByScore(key, minScore, maxScore);
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -524,7 +555,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 	// Remove the spcified value from the order set (the key)
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeZSet(String key, String value)
 	{
@@ -533,23 +564,18 @@ public class PooledRedisDataFactory extends DataFactory
 			return 0L;
 		}
 
-		CustomLogger.debug("Removing value " + value + " from set " + key);
+		LOG.debug("Removing value {} from set {}", value, key);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			return jd.zrem(key, value);
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -564,7 +590,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 	// Remove the specified value from the unordered set (the key)
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeSetValue(String key, String value)
 	{
@@ -573,24 +599,19 @@ public class PooledRedisDataFactory extends DataFactory
 			return 0L;
 		}
 
-		CustomLogger.debug("Removing value " + value + " from set " + key);
+		LOG.debug("Removing value {} from set {}", value, key);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 
 			return jd.srem(key, value);
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -604,7 +625,7 @@ public class PooledRedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setIfNotExists(String key, String value)
 	{
@@ -612,29 +633,25 @@ public class PooledRedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setIfNotExists(String key, String value, int ttl)
 	{
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setIfNotExists");
+			LOG.error("Received a null key in setIfNotExists");
 			return -1;
 		}
 
-		CustomLogger.debug("Setting a value for key in setIfNotExists: " + key);
+		LOG.debug("Setting a value for key in setIfNotExists: {}", key);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			Long l = jd.setnx(key, value);
 
 			// don't set TTL if it wasn't set
@@ -647,8 +664,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -662,34 +678,29 @@ public class PooledRedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long setExpiration(String key, Integer timeout)
 	{
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setExpiration");
+			LOG.error("Received a null key in setExpiration");
 			return -1;
 		}
 
-		CustomLogger.debug("Setting expiration for key: " + key);
+		LOG.debug("Setting expiration for key: {}", key);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			return jd.expire(key, timeout);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -703,32 +714,27 @@ public class PooledRedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long delete(String key)
 	{
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in delete");
+			LOG.error("Received a null key in delete");
 			return -1;
 		}
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			return jd.del(key);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -742,34 +748,29 @@ public class PooledRedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setHashSetValueIfNotExists(String hashSetName, String fieldName, String value)
 	{
 
 		if (hashSetName == null)
 		{
-			CustomLogger.error("Received a null hashSetName in setHashSetValueIfNotExists");
+			LOG.error("Received a null hashSetName in setHashSetValueIfNotExists");
 			return -1;
 		}
 
-		CustomLogger.debug("Setting " + fieldName + " field for hash set " + hashSetName);
+		LOG.debug("Setting {} field for hash set {}", fieldName, hashSetName);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(hashSetName);
 			return jd.hsetnx(hashSetName, fieldName, value);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -783,34 +784,29 @@ public class PooledRedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long deleteHashSetValue(String hashSetName, String fieldName)
 	{
 
 		if (hashSetName == null)
 		{
-			CustomLogger.error("Received a null hashSetName in deleteHashSetValue");
+			LOG.error("Received a null hashSetName in deleteHashSetValue");
 			return -1;
 		}
 
-		CustomLogger.debug("Setting " + fieldName + " field for hash set " + hashSetName);
+		LOG.debug("Setting {} field for hash set {}", fieldName, hashSetName);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(hashSetName);
 			return jd.hdel(hashSetName, fieldName);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -824,33 +820,28 @@ public class PooledRedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long deleteFromMultivalue(String key, String keytoremove)
 	{
 		if ((key == null) || (keytoremove == null))
 		{
-			CustomLogger.error("Received a null key in keytoremove");
+			LOG.error("Received a null key in keytoremove");
 			return -1;
 		}
 
-		CustomLogger.debug("Removing " + key + " and value " + keytoremove);
+		LOG.debug("Removing {} and value {}", key, keytoremove);
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
 
 		Jedis jd = null;
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(key);
 			return jd.lrem(key, 0, keytoremove);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -863,62 +854,49 @@ public class PooledRedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public Set<String> getUnsortedSet(String key)
 	{
 
 		if (key == null)
 		{
-			CustomLogger.error("Received a null key in setUnsortedSet");
+			LOG.error("Received a null key in setUnsortedSet");
 			return null;
 		}
 
-		CustomLogger.debug("Setting a value for key getUnsortedSet: " + key);
-
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
-		Jedis jd = null;
+		LOG.debug("Setting a value for key getUnsortedSet: {}", key);
 
 		try
 		{
-			jd = pooledConnection.getConnection();
-
-			return jd.smembers(key);
+			return read(key, jd -> jd.smembers(key));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
-
-		} finally
-		{
-			if (jd != null)
-			{
-				jd.close();
-			}
 		}
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 	public Map<String, Map<String, String>> getMultimap(Set<String> keys)
 	{
 
 		if (keys == null)
 		{
-			CustomLogger.error("Received a null key in getMultimapBatched");
+			LOG.error("Received a null key in getMultimapBatched");
 			return null;
 		}
 
-		CustomLogger.debug("Get values for this many keys in getMultimapBatched: " + keys.size());
+		LOG.debug("Get values for this many keys in getMultimapBatched: {}", keys.size());
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
+		return scatter(keys, this::getMultimapBatch);
+	}
+
+	// Pipelines the whole batch on a single connection, scatter() splits the big
+	// ones before they get here
+	private Map<String, Map<String, String>> getMultimapBatch(Set<String> keys)
+	{
 		Jedis jd = null;
 
 		Map<String, Map<String, String>> ret = new HashMap<>();
@@ -926,7 +904,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(firstKey(keys));
 			Pipeline p = jd.pipelined();
 
 			for (String key : keys)
@@ -948,8 +926,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -968,16 +945,17 @@ public class PooledRedisDataFactory extends DataFactory
 	{
 		if (hashSetNames == null)
 		{
-			CustomLogger.error("Received a null hashSetNames in setHashSetValueIfNotExists");
+			LOG.error("Received a null hashSetNames in setHashSetValueIfNotExists");
 			return null;
 		}
 
-		CustomLogger.debug("Get values for this many keys in setHashSetValueIfNotExists: " + hashSetNames.size());
+		LOG.debug("Get values for this many keys in setHashSetValueIfNotExists: {}", hashSetNames.size());
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
+		return scatter(hashSetNames, group -> setHashSetValueIfNotExistsBatch(group, fieldName, value));
+	}
+
+	private Map<String, Long> setHashSetValueIfNotExistsBatch(Set<String> hashSetNames, String fieldName, String value)
+	{
 		Jedis jd = null;
 
 		Map<String, Long> ret = new HashMap<>();
@@ -985,7 +963,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(firstKey(hashSetNames));
 			Pipeline p = jd.pipelined();
 
 			for (String key : hashSetNames)
@@ -1007,8 +985,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -1027,16 +1004,17 @@ public class PooledRedisDataFactory extends DataFactory
 	{
 		if (hashSetNames == null)
 		{
-			CustomLogger.error("Received a null hashSetNames in deleteHashSetValue");
+			LOG.error("Received a null hashSetNames in deleteHashSetValue");
 			return null;
 		}
 
-		CustomLogger.debug("Get values for this many keys in deleteHashSetValue: " + hashSetNames.size());
+		LOG.debug("Get values for this many keys in deleteHashSetValue: {}", hashSetNames.size());
 
-		if (pooledConnection == null)
-		{
-			pooledConnection = conn.getJedisPooledConnection();
-		}
+		return scatter(hashSetNames, group -> deleteHashSetValueBatch(group, fieldName));
+	}
+
+	private Map<String, Long> deleteHashSetValueBatch(Set<String> hashSetNames, String fieldName)
+	{
 		Jedis jd = null;
 
 		Map<String, Long> ret = new HashMap<>();
@@ -1044,7 +1022,7 @@ public class PooledRedisDataFactory extends DataFactory
 
 		try
 		{
-			jd = pooledConnection.getConnection();
+			jd = getConnection(firstKey(hashSetNames));
 			Pipeline p = jd.pipelined();
 
 			for (String key : hashSetNames)
@@ -1066,8 +1044,298 @@ public class PooledRedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+			}
+		}
+
+		return ret;
+	}
+
+	@Override
+	public Map<String, String> get(Set<String> keys)
+	{
+		if (keys == null)
+		{
+			LOG.error("Received a null key in getBatched");
+			return null;
+		}
+
+		LOG.debug("Get values for this many keys in getBatched: {}", keys.size());
+
+		return scatter(keys, this::getBatch);
+	}
+
+	private Map<String, String> getBatch(Set<String> keys)
+	{
+		Jedis jd = null;
+
+		Map<String, String> ret = new HashMap<>();
+		Map<String, Response<String>> responses = new HashMap<>();
+
+		try
+		{
+			jd = getConnection(firstKey(keys));
+			Pipeline p = jd.pipelined();
+
+			for (String key : keys)
+			{
+				responses.put(key, p.get(key));
+			}
+			if (p != null)
+			{
+				p.sync();
+				p.close();
+				p.clear();
+
+			}
+
+			for (String key : keys)
+			{
+				ret.put(key, responses.get(key).get());
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+			}
+		}
+
+		return ret;
+	}
+
+	@Override
+	public void set(Map<String, String> values)
+	{
+		if (values == null)
+		{
+			LOG.error("Received a null map in setBatched");
+			return;
+		}
+
+		LOG.debug("Setting values for this many keys in setBatched: {}", values.size());
+
+		scatter(values.keySet(), group -> {
+			Map<String, String> part = new HashMap<>();
+			for (String key : group)
+			{
+				part.put(key, values.get(key));
+			}
+			setBatch(part);
+			return Collections.emptyMap();
+		});
+	}
+
+	private void setBatch(Map<String, String> values)
+	{
+		Jedis jd = null;
+
+		try
+		{
+			jd = getConnection(firstKey(values.keySet()));
+			Pipeline p = jd.pipelined();
+			int ttl = ConfigurationManager.getRedisDataExpireSec();
+
+			for (Map.Entry<String, String> entry : values.entrySet())
+			{
+				p.setex(entry.getKey(), ttl, entry.getValue());
+			}
+			if (p != null)
+			{
+				p.sync();
+				p.close();
+				p.clear();
+
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+			}
+		}
+	}
+
+	@Override
+	public Map<String, Long> delete(Set<String> keys)
+	{
+		if (keys == null)
+		{
+			LOG.error("Received a null key in deleteBatched");
+			return null;
+		}
+
+		LOG.debug("Deleting this many keys in deleteBatched: {}", keys.size());
+
+		return scatter(keys, this::deleteBatch);
+	}
+
+	private Map<String, Long> deleteBatch(Set<String> keys)
+	{
+		Jedis jd = null;
+
+		Map<String, Long> ret = new HashMap<>();
+		Map<String, Response<Long>> responses = new HashMap<>();
+
+		try
+		{
+			jd = getConnection(firstKey(keys));
+			Pipeline p = jd.pipelined();
+
+			for (String key : keys)
+			{
+				responses.put(key, p.del(key));
+			}
+			if (p != null)
+			{
+				p.sync();
+				p.close();
+				p.clear();
+
+			}
+
+			for (String key : keys)
+			{
+				ret.put(key, responses.get(key).get());
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+			}
+		}
+
+		return ret;
+	}
+
+	@Override
+	public Map<String, Long> setExpiration(Set<String> keys, Integer timeout)
+	{
+		if (keys == null)
+		{
+			LOG.error("Received a null key in setExpiration");
+			return null;
+		}
+
+		LOG.debug("Expiring this many keys in setExpiration: {}", keys.size());
+
+		return scatter(keys, part -> expireBatch(part, timeout));
+	}
+
+	private Map<String, Long> expireBatch(Set<String> keys, int timeout)
+	{
+		Jedis jd = null;
+
+		Map<String, Long> ret = new HashMap<>();
+		Map<String, Response<Long>> responses = new HashMap<>();
+
+		try
+		{
+			jd = getConnection(firstKey(keys));
+			Pipeline p = jd.pipelined();
+
+			for (String key : keys)
+			{
+				responses.put(key, p.expire(key, timeout));
+			}
+			if (p != null)
+			{
+				p.sync();
+				p.close();
+				p.clear();
+
+			}
+
+			for (String key : keys)
+			{
+				ret.put(key, responses.get(key).get());
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+			}
+		}
+
+		return ret;
+	}
+
+	@Override
+	public <T> TransactionResult<T> executeTransaction(List<String> watchKeys, TransactionCallback<T> callback)
+	{
+
+		LOG.debug("Running a transaction watching keys: {}", watchKeys);
+
+		Jedis jd = null;
+
+		try
+		{
+			jd = getConnection(watchKeys.isEmpty() ? null : watchKeys.get(0));
+			return JedisTransactionOperations.execute(jd, watchKeys, callback);
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+			}
+		}
+	}
+
+	@Override
+	@Retryable(idempotent = false)
+	public Object eval(LuaScript script, List<String> keys, List<String> args)
+	{
+		LOG.debug("Running script {} on keys {}", script.getSha1(), keys);
+
+		Jedis jd = null;
+
+		try
+		{
+			jd = getConnection(keys.isEmpty() ? null : keys.get(0));
+			return JedisScriptOperations.eval(jd, script, keys, args);
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -1077,7 +1345,111 @@ public class PooledRedisDataFactory extends DataFactory
 				jd.close();
 			}
 		}
+	}
+
+	// Chunks are stored as raw bytes, pipelined like the other batch commands
+	@Override
+	protected void setChunks(Map<String, byte[]> chunks)
+	{
+		int ttl = ConfigurationManager.getRedisDataExpireSec();
 
+		scatter(chunks.keySet(), group -> {
+			Jedis jd = null;
+			try
+			{
+				jd = getConnection(firstKey(group));
+				Pipeline p = jd.pipelined();
+				for (String key : group)
+				{
+					p.setex(SafeEncoder.encode(key), ttl, chunks.get(key));
+				}
+				p.sync();
+				p.close();
+
+			} catch (Exception e)
+			{
+				handleFailure(e);
+				throw e;
+
+			} finally
+			{
+				if (jd != null)
+				{
+					jd.close();
+				}
+			}
+			return Collections.emptyMap();
+		});
+	}
+
+	@Override
+	protected Map<String, byte[]> getChunks(Set<String> keys)
+	{
+		Map<String, byte[]> ret = scatter(keys, group -> {
+			Map<String, Response<byte[]>> responses = new HashMap<>();
+			Jedis jd = null;
+			try
+			{
+				jd = getConnection(firstKey(group));
+				Pipeline p = jd.pipelined();
+				for (String key : group)
+				{
+					responses.put(key, p.get(SafeEncoder.encode(key)));
+				}
+				p.sync();
+				p.close();
+
+			} catch (Exception e)
+			{
+				handleFailure(e);
+				throw e;
+
+			} finally
+			{
+				if (jd != null)
+				{
+					jd.close();
+				}
+			}
+
+			Map<String, byte[]> values = new HashMap<>();
+			for (Map.Entry<String, Response<byte[]>> entry : responses.entrySet())
+			{
+				values.put(entry.getKey(), entry.getValue().get());
+			}
+			return values;
+		});
+
+		ret.values().removeIf(v -> v == null);
 		return ret;
 	}
+
+	@Override
+	public long publish(String channel, String message)
+	{
+		if (channel == null)
+		{
+			LOG.error("Received a null channel in publish");
+			return -1;
+		}
+
+		Jedis jd = null;
+
+		try
+		{
+			jd = getConnection(channel);
+			return jd.publish(channel, message);
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+			}
+		}
+	}
 }
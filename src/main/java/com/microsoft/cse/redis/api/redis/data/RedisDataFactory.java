@@ -5,14 +5,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
-import com.jcabi.aspects.RetryOnFailure;
 import com.microsoft.cse.redis.api.helper.ConfigurationManager;
 import com.microsoft.cse.redis.api.helper.CustomLogger;
-import com.microsoft.cse.redis.api.helper.RetryValues;
 import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
 import com.microsoft.cse.redis.api.redis.connection.jedis.SingleConnection;
+import com.microsoft.cse.redis.api.retry.Retryable;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.Pipeline;
@@ -28,7 +26,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void set(String key, String value)
 	{
@@ -54,8 +52,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -72,7 +69,7 @@ public class RedisDataFactory extends DataFactory
 
 	// Simple Redis Set operation to add the value to the top of a Set
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public void setAdd(String key, String value)
 	{
@@ -99,8 +96,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -118,7 +114,7 @@ public class RedisDataFactory extends DataFactory
 	// TODO: the name setSet is somewhat misleading here as we are adding items to a
 	// set.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setUnsortedSet(String key, List<String> values)
 	{
@@ -146,8 +142,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -163,7 +158,7 @@ public class RedisDataFactory extends DataFactory
 	// Redis hashmap setthat overwrites an existing hash set with a new one with the
 	// specified key.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setMultimap(String key, Map<String, String> values)
 	{
@@ -190,8 +185,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -207,7 +201,7 @@ public class RedisDataFactory extends DataFactory
 	// Redis SortedSet operation that adds the value to the appropriate location in
 	// the set based on score.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setZSet(String key, String value, Double score)
 	{
@@ -235,8 +229,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -254,7 +247,7 @@ public class RedisDataFactory extends DataFactory
 	// Simplest Redis operation to get the value of a key in a typical name/value
 	// pair.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public String get(String key)
 	{
@@ -278,8 +271,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -295,7 +287,7 @@ public class RedisDataFactory extends DataFactory
 
 	// Get the HashSet associated with a key
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public Map<String, String> getMultimap(String key)
 	{
@@ -320,8 +312,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -337,7 +328,7 @@ public class RedisDataFactory extends DataFactory
 
 	// Gets the list of items that were previously added to an unordered Set
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public List<String> getMultivalue(String key)
 	{
@@ -362,8 +353,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -380,7 +370,7 @@ public class RedisDataFactory extends DataFactory
 	// Get's the list of items that were added to a Sorted Set for a specific key
 	// and score value.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public Set<String> getZSet(String key, Long minScore, Long maxScore)
 	{
@@ -403,8 +393,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.zrangeByScore(key, minScore, maxScore);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -420,7 +409,7 @@ public class RedisDataFactory extends DataFactory
 
 	// Remove the specified key/value pair from Redis
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long remove(String key)
 	{
@@ -443,8 +432,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.unlink(key);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -460,7 +448,7 @@ public class RedisDataFactory extends DataFactory
 
 	// Remove the ordered set values for a specific key and score.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeZSet(String key, double minScore, double maxScore)
 	{
@@ -483,8 +471,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.zremrangeByScore(key, minScore, maxScore);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -500,7 +487,7 @@ public class RedisDataFactory extends DataFactory
 
 	// Remove the spcified value from the order set (the key)
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeZSet(String key, String value)
 	{
@@ -523,8 +510,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.zrem(key, value);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -540,7 +526,7 @@ public class RedisDataFactory extends DataFactory
 
 	// Remove the specified value from the unordered set (the key)
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeSetValue(String key, String value)
 	{
@@ -563,8 +549,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.srem(key, value);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -579,7 +564,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setIfNotExists(String key, String value)
 	{
@@ -608,8 +593,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -624,9 +608,9 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
-	public long globalIncrement()
+	public long increment(String key, long amount)
 	{
 
 		if (jConnection == null)
@@ -638,18 +622,11 @@ public class RedisDataFactory extends DataFactory
 		try
 		{
 			jd = jConnection.getConnection();
-			String h = jd.getClient().getHost();
-			int hc = (h.hashCode() & 0x7fffffff) % 1000;
-			/**
-			 * List<Long> responses = jd.bitfield("globalIncrement", "INCRBY", "u32", "0",
-			 * "1", "OVERFLOW", "WRAP"); return responses.get(0);
-			 */
-			return jd.incr("global_id_number") + hc;
+			return jd.incrBy(key, amount);
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -663,7 +640,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setIfNotExists(String key, String value, int ttl)
 	{
@@ -692,8 +669,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -708,7 +684,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long setExpiration(String key, Integer timeout)
 	{
@@ -733,8 +709,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.expire(key, timeout);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -749,7 +724,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long delete(String key)
 	{
@@ -772,8 +747,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.del(key);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -788,7 +762,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setHashSetValueIfNotExists(String hashSetName, String fieldName, String value)
 	{
@@ -814,8 +788,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.hsetnx(hashSetName, fieldName, value);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -830,7 +803,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long deleteHashSetValue(String hashSetName, String fieldName)
 	{
@@ -855,8 +828,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.hdel(hashSetName, fieldName);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -871,7 +843,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long deleteFromMultivalue(String key, String keytoremove)
 	{
@@ -896,8 +868,7 @@ public class RedisDataFactory extends DataFactory
 			return jd.lrem(key, 0, keytoremove);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -911,7 +882,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public Set<String> getUnsortedSet(String key)
 	{
@@ -938,8 +909,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -954,7 +924,7 @@ public class RedisDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public Map<String, Map<String, String>> getMultimap(Set<String> keys)
 	{
@@ -1000,8 +970,7 @@ public class RedisDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		} finally
@@ -1030,4 +999,333 @@ public class RedisDataFactory extends DataFactory
 
 	}
 
+	@Override
+	public Map<String, String> get(Set<String> keys)
+	{
+		if (keys == null)
+		{
+			CustomLogger.error("Received a null key in getBatched");
+			return null;
+		}
+
+		CustomLogger.debug("Get values for this many keys in getBatched: " + keys.size());
+
+		if (jConnection == null)
+		{
+			jConnection = conn.getJedisConnection();
+		}
+		Jedis jd = null;
+
+		Map<String, String> ret = new HashMap<>();
+		Map<String, Response<String>> responses = new HashMap<>();
+
+		try
+		{
+			jd = jConnection.getConnection();
+			Pipeline p = jd.pipelined();
+
+			for (String key : keys)
+			{
+				responses.put(key, p.get(key));
+			}
+			if (p != null)
+			{
+				p.sync();
+				p.close();
+				p.clear();
+
+			}
+
+			for (String key : keys)
+			{
+				ret.put(key, responses.get(key).get());
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+				jConnection.returnConn(jd);
+			}
+		}
+		return ret;
+
+	}
+
+	@Override
+	public void set(Map<String, String> values)
+	{
+		if (values == null)
+		{
+			CustomLogger.error("Received a null map in setBatched");
+			return;
+		}
+
+		CustomLogger.debug("Setting values for this many keys in setBatched: " + values.size());
+
+		if (jConnection == null)
+		{
+			jConnection = conn.getJedisConnection();
+		}
+		Jedis jd = null;
+
+		try
+		{
+			jd = jConnection.getConnection();
+			Pipeline p = jd.pipelined();
+			int ttl = ConfigurationManager.getRedisDataExpireSec();
+
+			for (Map.Entry<String, String> entry : values.entrySet())
+			{
+				p.setex(entry.getKey(), ttl, entry.getValue());
+			}
+			if (p != null)
+			{
+				p.sync();
+				p.close();
+				p.clear();
+
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+				jConnection.returnConn(jd);
+			}
+		}
+
+	}
+
+	@Override
+	public Map<String, Long> delete(Set<String> keys)
+	{
+		if (keys == null)
+		{
+			CustomLogger.error("Received a null key in deleteBatched");
+			return null;
+		}
+
+		CustomLogger.debug("Deleting this many keys in deleteBatched: " + keys.size());
+
+		if (jConnection == null)
+		{
+			jConnection = conn.getJedisConnection();
+		}
+		Jedis jd = null;
+
+		Map<String, Long> ret = new HashMap<>();
+		Map<String, Response<Long>> responses = new HashMap<>();
+
+		try
+		{
+			jd = jConnection.getConnection();
+			Pipeline p = jd.pipelined();
+
+			for (String key : keys)
+			{
+				responses.put(key, p.del(key));
+			}
+			if (p != null)
+			{
+				p.sync();
+				p.close();
+				p.clear();
+
+			}
+
+			for (String key : keys)
+			{
+				ret.put(key, responses.get(key).get());
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+				jConnection.returnConn(jd);
+			}
+		}
+		return ret;
+
+	}
+
+	@Override
+	public Map<String, Long> setExpiration(Set<String> keys, Integer timeout)
+	{
+		if (keys == null)
+		{
+			CustomLogger.error("Received a null key in setExpiration");
+			return null;
+		}
+
+		CustomLogger.debug("Expiring this many keys in setExpiration: " + keys.size());
+
+		if (jConnection == null)
+		{
+			jConnection = conn.getJedisConnection();
+		}
+		Jedis jd = null;
+
+		Map<String, Long> ret = new HashMap<>();
+		Map<String, Response<Long>> responses = new HashMap<>();
+
+		try
+		{
+			jd = jConnection.getConnection();
+			Pipeline p = jd.pipelined();
+
+			for (String key : keys)
+			{
+				responses.put(key, p.expire(key, timeout));
+			}
+			if (p != null)
+			{
+				p.sync();
+				p.close();
+				p.clear();
+
+			}
+
+			for (String key : keys)
+			{
+				ret.put(key, responses.get(key).get());
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+				jConnection.returnConn(jd);
+			}
+		}
+		return ret;
+
+	}
+
+	@Override
+	public <T> TransactionResult<T> executeTransaction(List<String> watchKeys, TransactionCallback<T> callback)
+	{
+
+		CustomLogger.debug("Running a transaction watching keys: " + watchKeys);
+
+		if (jConnection == null)
+		{
+			jConnection = conn.getJedisConnection();
+		}
+		Jedis jd = null;
+
+		try
+		{
+			jd = jConnection.getConnection();
+			return JedisTransactionOperations.execute(jd, watchKeys, callback);
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+
+				jConnection.returnConn(jd);
+			}
+		}
+	}
+
+	@Override
+	@Retryable(idempotent = false)
+	public Object eval(LuaScript script, List<String> keys, List<String> args)
+	{
+
+		CustomLogger.debug("Running script " + script.getSha1() + " on keys " + keys);
+
+		if (jConnection == null)
+		{
+			jConnection = conn.getJedisConnection();
+		}
+		Jedis jd = null;
+
+		try
+		{
+			jd = jConnection.getConnection();
+			return JedisScriptOperations.eval(jd, script, keys, args);
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+
+				jConnection.returnConn(jd);
+			}
+		}
+	}
+
+	@Override
+	public long publish(String channel, String message)
+	{
+		if (channel == null)
+		{
+			CustomLogger.error("Received a null channel in publish");
+			return -1;
+		}
+
+		if (jConnection == null)
+		{
+			jConnection = conn.getJedisConnection();
+		}
+
+		Jedis jd = null;
+
+		try
+		{
+			jd = jConnection.getConnection();
+			return jd.publish(channel, message);
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		} finally
+		{
+			if (jd != null)
+			{
+				jd.close();
+				jConnection.returnConn(jd);
+			}
+		}
+	}
 }
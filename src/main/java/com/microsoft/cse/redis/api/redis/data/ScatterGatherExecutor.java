@@ -0,0 +1,156 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.microsoft.cse.redis.api.exceptions.DeadlineExceededException;
+import com.microsoft.cse.redis.api.helper.Deadline;
+
+/**
+ * Runs a batched command over a large set of keys as several smaller batches in
+ * parallel. The keys are grouped by shard, each group is cut in chunks of at
+ * most chunkSize keys, and every chunk runs on a worker thread with its own
+ * pooled connection. The results of the chunks are merged into one map. The
+ * chunks run under the deadline of the caller, which is not kept waiting past it.
+ */
+class ScatterGatherExecutor
+{
+	private final ExecutorService workers;
+	private final int chunkSize;
+
+	ScatterGatherExecutor(int parallelism, int chunkSize)
+	{
+		this.chunkSize = Math.max(1, chunkSize);
+
+		AtomicInteger count = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+			Thread t = new Thread(r, "redis-scatter-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	<R> Map<String, R> execute(Set<String> keys, Function<String, String> shardOf,
+			Function<Set<String>, Map<String, R>> batch)
+	{
+		List<Set<String>> chunks = split(keys, shardOf);
+
+		// nothing to gain from another thread
+		if (chunks.size() <= 1)
+		{
+			return batch.apply(chunks.isEmpty() ? keys : chunks.get(0));
+		}
+
+		// the chunks run under the deadline of the caller, if it has one
+		Deadline deadline = Deadline.current();
+		List<CompletableFuture<Map<String, R>>> futures = new ArrayList<>(chunks.size());
+		for (Set<String> chunk : chunks)
+		{
+			futures.add(CompletableFuture.supplyAsync(() -> run(batch, chunk, deadline), workers));
+		}
+
+		Map<String, R> ret = new HashMap<>();
+		try
+		{
+			for (CompletableFuture<Map<String, R>> f : futures)
+			{
+				ret.putAll((deadline == null) ? f.get()
+						: f.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS));
+			}
+		} catch (TimeoutException e)
+		{
+			cancel(futures);
+			throw new DeadlineExceededException("Deadline exceeded waiting for " + chunks.size() + " batches", e);
+		} catch (ExecutionException e)
+		{
+			cancel(futures);
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error)
+			{
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e)
+		{
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for batches", e);
+		}
+		return ret;
+	}
+
+	// Batches already running complete, the ones submitted later are refused
+	void shutdown()
+	{
+		workers.shutdown();
+	}
+
+	private static <R> Map<String, R> run(Function<Set<String>, Map<String, R>> batch, Set<String> chunk,
+			Deadline deadline)
+	{
+		if (deadline == null)
+		{
+			return batch.apply(chunk);
+		}
+
+		Deadline.Scope scope = deadline.attach();
+		try
+		{
+			deadline.check("before a scattered batch");
+			return batch.apply(chunk);
+		} finally
+		{
+			scope.close();
+		}
+	}
+
+	// Chunks not started yet are dropped, the running ones complete on their own
+	private static <R> void cancel(List<CompletableFuture<Map<String, R>>> futures)
+	{
+		for (CompletableFuture<Map<String, R>> f : futures)
+		{
+			f.cancel(false);
+		}
+	}
+
+	private List<Set<String>> split(Set<String> keys, Function<String, String> shardOf)
+	{
+		Map<String, Set<String>> open = new LinkedHashMap<>();
+		List<Set<String>> chunks = new ArrayList<>();
+
+		for (String key : keys)
+		{
+			String shard = shardOf.apply(key);
+			Set<String> chunk = open.get(shard);
+			if (chunk == null)
+			{
+				chunk = new HashSet<>();
+				open.put(shard, chunk);
+				chunks.add(chunk);
+			}
+			chunk.add(key);
+
+			if (chunk.size() >= chunkSize)
+			{
+				open.remove(shard);
+			}
+		}
+		return chunks;
+	}
+}
@@ -0,0 +1,90 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.connection.jedis.ShardedConnection;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Pooled Jedis data factory spreading the keys over independent Redis
+ * instances. Single key commands go to the shard owning the key; the batched
+ * commands are split per shard by scatter() and each part is pipelined on its
+ * own shard. Transactions run on the shard of their watched keys, so they can
+ * only watch and write keys of a single shard; use a {hashtag} to keep them
+ * together.
+ */
+public class ShardedRedisDataFactory extends PooledRedisDataFactory
+{
+	private ShardedConnection shardedConnection;
+
+	public ShardedRedisDataFactory(ConnectionFactory conn)
+	{
+		super(conn);
+	}
+
+	private ShardedConnection shards()
+	{
+		if (shardedConnection == null)
+		{
+			shardedConnection = conn.getShardedConnection();
+		}
+		return shardedConnection;
+	}
+
+	@Override
+	protected Jedis getConnection(String key)
+	{
+		return shards().getConnection(key);
+	}
+
+	// Every key has a single shard, no other connection holds it
+	@Override
+	protected boolean canHedge()
+	{
+		return false;
+	}
+
+	@Override
+	public String shardOf(String key)
+	{
+		return shards().getShardName(key);
+	}
+
+	@Override
+	public <T> TransactionResult<T> executeTransaction(List<String> watchKeys, TransactionCallback<T> callback)
+	{
+		Set<String> watched = new HashSet<>();
+		for (String key : watchKeys)
+		{
+			watched.add(shardOf(key));
+		}
+
+		if (watched.size() > 1)
+		{
+			throw new IllegalArgumentException(
+					"Watched keys " + watchKeys + " are on different shards, use a {hashtag} to keep them together");
+		}
+		return super.executeTransaction(watchKeys, callback);
+	}
+
+	@Override
+	public Object eval(LuaScript script, List<String> keys, List<String> args)
+	{
+		Set<String> shards = new HashSet<>();
+		for (String key : keys)
+		{
+			shards.add(shardOf(key));
+		}
+
+		if (shards.size() > 1)
+		{
+			throw new IllegalArgumentException(
+					"Script keys " + keys + " are on different shards, use a {hashtag} to keep them together");
+		}
+		return super.eval(script, keys, args);
+	}
+}
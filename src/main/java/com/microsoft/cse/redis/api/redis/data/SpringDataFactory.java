@@ -1,26 +1,31 @@
 package com.microsoft.cse.redis.api.redis.data;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.SetOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.data.redis.core.ZSetOperations;
 
-import com.jcabi.aspects.RetryOnFailure;
 import com.microsoft.cse.redis.api.helper.ConfigurationManager;
 import com.microsoft.cse.redis.api.helper.CustomLogger;
-import com.microsoft.cse.redis.api.helper.RetryValues;
 import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
 import com.microsoft.cse.redis.api.redis.connection.spring.SpringConnection;
+import com.microsoft.cse.redis.api.retry.Retryable;
 
 public class SpringDataFactory extends DataFactory
 {
@@ -33,7 +38,7 @@ public class SpringDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void set(String key, String value)
 	{
@@ -54,12 +59,11 @@ public class SpringDataFactory extends DataFactory
 		{
 			StringRedisTemplate st = springConnection.strRedisTemplate();
 			ValueOperations<String, String> values = st.opsForValue();
-			values.set(key, value, ConfigurationManager.getRedisDataExpireSec());
+			values.set(key, value, Duration.ofSeconds(ConfigurationManager.getRedisDataExpireSec()));
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -68,7 +72,7 @@ public class SpringDataFactory extends DataFactory
 
 	// Simple Redis Set operation to add the value to the top of a Set
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public void setAdd(String key, String value)
 	{
@@ -95,8 +99,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -106,7 +109,7 @@ public class SpringDataFactory extends DataFactory
 	// Redis hashmap setthat overwrites an existing hash set with a new one with the
 	// specified key.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setMultimap(String key, Map<String, String> values)
 	{
@@ -130,8 +133,7 @@ public class SpringDataFactory extends DataFactory
 			v.putAll(key, values);
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -140,7 +142,7 @@ public class SpringDataFactory extends DataFactory
 	// Redis SortedSet operation that adds the value to the appropriate location in
 	// the set based on score.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setZSet(String key, String value, Double score)
 	{
@@ -164,8 +166,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 		}
 	}
@@ -173,7 +174,7 @@ public class SpringDataFactory extends DataFactory
 	// Simplest Redis operation to get the value of a key in a typical name/value
 	// pair.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public String get(String key)
 	{
@@ -196,8 +197,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -206,7 +206,7 @@ public class SpringDataFactory extends DataFactory
 
 	// Get the HashSet associated with a key
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public Map<String, String> getMultimap(String key)
 	{
@@ -243,8 +243,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -253,7 +252,7 @@ public class SpringDataFactory extends DataFactory
 
 	// Gets the list of items that were previously added to an unordered Set
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public List<String> getMultivalue(String key)
 	{
@@ -277,8 +276,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -288,7 +286,7 @@ public class SpringDataFactory extends DataFactory
 	// Get's the list of items that were added to a Sorted Set for a specific key
 	// and score value.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public Set<String> getZSet(String key, Long minScore, Long maxScore)
 	{
@@ -312,8 +310,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 		}
 
@@ -321,7 +318,7 @@ public class SpringDataFactory extends DataFactory
 
 	// Remove the specified key/value pair from Redis
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long remove(String key)
 	{
@@ -352,8 +349,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 		}
 
@@ -361,7 +357,7 @@ public class SpringDataFactory extends DataFactory
 
 	// Remove the ordered set values for a specific key and score.
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeZSet(String key, double minScore, double maxScore)
 	{
@@ -384,8 +380,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 		}
 
@@ -393,7 +388,7 @@ public class SpringDataFactory extends DataFactory
 
 	// Remove the spcified value from the order set (the key)
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeZSet(String key, String value)
 	{
@@ -417,8 +412,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 		}
 
@@ -426,7 +420,7 @@ public class SpringDataFactory extends DataFactory
 
 	// Remove the specified value from the unordered set (the key)
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long removeSetValue(String key, String value)
 	{
@@ -450,15 +444,14 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 		}
 
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public void setUnsortedSet(String key, List<String> values)
 	{
@@ -477,17 +470,16 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
-	public long globalIncrement()
+	public long increment(String key, long amount)
 	{
 
 		if (springConnection == null)
@@ -500,31 +492,18 @@ public class SpringDataFactory extends DataFactory
 			StringRedisTemplate st = springConnection.strRedisTemplate();
 			ValueOperations<String, String> values = st.opsForValue();
 
-			return values.increment("global_id_number");
-
-			/**
-			 *
-			 *
-			 * BitFieldSubCommands b =
-			 * BitFieldSubCommands.create().incr(BitFieldType.unsigned(32))
-			 * .valueAt(BitFieldSubCommands.Offset.offset(0L))
-			 * .overflow(BitFieldSubCommands.BitFieldIncrBy.Overflow.WRAP).by(1L);
-			 *
-			 * List<Long> responses = values.bitField("globalIncrement", b); return
-			 * responses.get(0);
-			 */
+			return values.increment(key, amount);
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setIfNotExists(String key, String value)
 	{
@@ -551,15 +530,14 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setIfNotExists(String key, String value, int ttl)
 	{
@@ -585,8 +563,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -594,7 +571,7 @@ public class SpringDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long setExpiration(String key, Integer timeout)
 	{
@@ -617,8 +594,7 @@ public class SpringDataFactory extends DataFactory
 			return st.expire(key, timeout, TimeUnit.SECONDS) ? 1 : 0;
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -626,7 +602,7 @@ public class SpringDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long delete(String key)
 	{
@@ -650,8 +626,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -659,7 +634,7 @@ public class SpringDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable(idempotent = false)
 
 	public long setHashSetValueIfNotExists(String hashSetName, String fieldName, String value)
 	{
@@ -684,15 +659,14 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long deleteHashSetValue(String hashSetName, String fieldName)
 	{
@@ -717,8 +691,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -726,7 +699,7 @@ public class SpringDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public long deleteFromMultivalue(String key, String keytoremove)
 	{
@@ -751,15 +724,14 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
 	public Set<String> getUnsortedSet(String key)
 	{
@@ -783,8 +755,7 @@ public class SpringDataFactory extends DataFactory
 
 		} catch (Exception e)
 		{
-			CustomLogger.error(CAUGHTANEXCEPTION + e.getMessage(), e);
-			conn.resetConnection();
+			handleFailure(e);
 			throw e;
 
 		}
@@ -792,25 +763,515 @@ public class SpringDataFactory extends DataFactory
 	}
 
 	@Override
-	@RetryOnFailure(attempts = RetryValues.retrycount, delay = RetryValues.delay, unit = TimeUnit.MILLISECONDS, verbose = RetryValues.verbose)
+	@Retryable
 
-	public Map<String, Map<String, String>> getMultimap(Set<String> key)
+	public Map<String, Map<String, String>> getMultimap(Set<String> keys)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		if (keys == null)
+		{
+			CustomLogger.error("Received a null key in getMultimapBatched");
+			return null;
+		}
+
+		CustomLogger.debug("Get values for this many keys in getMultimapBatched: " + keys.size());
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+
+		Map<String, Map<String, String>> ret = new HashMap<>();
+		List<String> orderedKeys = new ArrayList<>(keys);
+
+		try
+		{
+			RedisTemplate<String, Map<String, String>> st = springConnection.transactionRedisTemplate();
+
+			List<Object> results = st.executePipelined(new SessionCallback<Object>()
+			{
+				@Override
+				@SuppressWarnings("unchecked")
+				public <K, V> Object execute(RedisOperations<K, V> operations)
+				{
+					HashOperations<String, Object, Object> v = ((RedisOperations<String, Map<String, String>>) operations)
+							.opsForHash();
+					for (String key : orderedKeys)
+					{
+						v.entries(key);
+					}
+					return null;
+				}
+			});
+
+			for (int i = 0; i < orderedKeys.size(); i++)
+			{
+				Map<String, String> newMap = new HashMap<>();
+				Object result = results.get(i);
+				if (result instanceof Map)
+				{
+					for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet())
+					{
+						if (entry.getValue() instanceof String)
+						{
+							newMap.put((String) entry.getKey(), (String) entry.getValue());
+						}
+					}
+				}
+				ret.put(orderedKeys.get(i), newMap);
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
+
+		return ret;
 	}
 
 	@Override
-	public Map<String, Long> setHashSetValueIfNotExists(Set<String> hashSetName, String fieldName, String value)
+	public Map<String, Long> setHashSetValueIfNotExists(Set<String> hashSetNames, String fieldName, String value)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		if (hashSetNames == null)
+		{
+			CustomLogger.error("Received a null hashSetNames in setHashSetValueIfNotExists");
+			return null;
+		}
+
+		CustomLogger.debug("Get values for this many keys in setHashSetValueIfNotExists: " + hashSetNames.size());
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+
+		List<String> orderedKeys = new ArrayList<>(hashSetNames);
+
+		try
+		{
+			StringRedisTemplate st = springConnection.strRedisTemplate();
+
+			List<Object> results = st.executePipelined(new SessionCallback<Object>()
+			{
+				@Override
+				@SuppressWarnings("unchecked")
+				public <K, V> Object execute(RedisOperations<K, V> operations)
+				{
+					HashOperations<String, String, String> values = ((RedisOperations<String, String>) operations)
+							.opsForHash();
+					for (String key : orderedKeys)
+					{
+						values.putIfAbsent(key, fieldName, value);
+					}
+					return null;
+				}
+			});
+
+			return toResultMap(orderedKeys, results);
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
 	}
 
 	@Override
 	public Map<String, Long> deleteHashSetValue(Set<String> hashSetNames, String fieldName)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		if (hashSetNames == null)
+		{
+			CustomLogger.error("Received a null hashSetNames in deleteHashSetValue");
+			return null;
+		}
+
+		CustomLogger.debug("Get values for this many keys in deleteHashSetValue: " + hashSetNames.size());
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+
+		List<String> orderedKeys = new ArrayList<>(hashSetNames);
+
+		try
+		{
+			StringRedisTemplate st = springConnection.strRedisTemplate();
+
+			List<Object> results = st.executePipelined(new SessionCallback<Object>()
+			{
+				@Override
+				@SuppressWarnings("unchecked")
+				public <K, V> Object execute(RedisOperations<K, V> operations)
+				{
+					HashOperations<String, String, String> values = ((RedisOperations<String, String>) operations)
+							.opsForHash();
+					for (String key : orderedKeys)
+					{
+						values.delete(key, fieldName);
+					}
+					return null;
+				}
+			});
+
+			return toResultMap(orderedKeys, results);
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
+	}
+
+	@Override
+	public Map<String, String> get(Set<String> keys)
+	{
+		if (keys == null)
+		{
+			CustomLogger.error("Received a null key in getBatched");
+			return null;
+		}
+
+		CustomLogger.debug("Get values for this many keys in getBatched: " + keys.size());
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+
+		Map<String, String> ret = new HashMap<>();
+		List<String> orderedKeys = new ArrayList<>(keys);
+
+		try
+		{
+			StringRedisTemplate st = springConnection.strRedisTemplate();
+
+			List<Object> results = st.executePipelined(new SessionCallback<Object>()
+			{
+				@Override
+				@SuppressWarnings("unchecked")
+				public <K, V> Object execute(RedisOperations<K, V> operations)
+				{
+					ValueOperations<String, String> values = ((RedisOperations<String, String>) operations)
+							.opsForValue();
+					for (String key : orderedKeys)
+					{
+						values.get(key);
+					}
+					return null;
+				}
+			});
+
+			for (int i = 0; i < orderedKeys.size(); i++)
+			{
+				Object result = results.get(i);
+				ret.put(orderedKeys.get(i), (result instanceof String) ? (String) result : null);
+			}
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
+
+		return ret;
+	}
+
+	@Override
+	public void set(Map<String, String> values)
+	{
+		if (values == null)
+		{
+			CustomLogger.error("Received a null map in setBatched");
+			return;
+		}
+
+		CustomLogger.debug("Setting values for this many keys in setBatched: " + values.size());
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+
+		try
+		{
+			StringRedisTemplate st = springConnection.strRedisTemplate();
+			Duration ttl = Duration.ofSeconds(ConfigurationManager.getRedisDataExpireSec());
+
+			st.executePipelined(new SessionCallback<Object>()
+			{
+				@Override
+				@SuppressWarnings("unchecked")
+				public <K, V> Object execute(RedisOperations<K, V> operations)
+				{
+					ValueOperations<String, String> v = ((RedisOperations<String, String>) operations).opsForValue();
+					for (Map.Entry<String, String> entry : values.entrySet())
+					{
+						v.set(entry.getKey(), entry.getValue(), ttl);
+					}
+					return null;
+				}
+			});
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
+	}
+
+	@Override
+	public Map<String, Long> delete(Set<String> keys)
+	{
+		if (keys == null)
+		{
+			CustomLogger.error("Received a null key in deleteBatched");
+			return null;
+		}
+
+		CustomLogger.debug("Deleting this many keys in deleteBatched: " + keys.size());
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+
+		List<String> orderedKeys = new ArrayList<>(keys);
+
+		try
+		{
+			StringRedisTemplate st = springConnection.strRedisTemplate();
+
+			List<Object> results = st.executePipelined(new SessionCallback<Object>()
+			{
+				@Override
+				@SuppressWarnings("unchecked")
+				public <K, V> Object execute(RedisOperations<K, V> operations)
+				{
+					RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+					for (String key : orderedKeys)
+					{
+						ops.delete(key);
+					}
+					return null;
+				}
+			});
+
+			return toResultMap(orderedKeys, results);
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
+	}
+
+	@Override
+	public Map<String, Long> setExpiration(Set<String> keys, Integer timeout)
+	{
+		if (keys == null)
+		{
+			CustomLogger.error("Received a null key in setExpiration");
+			return null;
+		}
+
+		CustomLogger.debug("Expiring this many keys in setExpiration: " + keys.size());
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+
+		List<String> orderedKeys = new ArrayList<>(keys);
+
+		try
+		{
+			StringRedisTemplate st = springConnection.strRedisTemplate();
+
+			List<Object> results = st.executePipelined(new SessionCallback<Object>()
+			{
+				@Override
+				@SuppressWarnings("unchecked")
+				public <K, V> Object execute(RedisOperations<K, V> operations)
+				{
+					RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+					for (String key : orderedKeys)
+					{
+						ops.expire(key, timeout, TimeUnit.SECONDS);
+					}
+					return null;
+				}
+			});
+
+			return toResultMap(orderedKeys, results);
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
+	}
+
+	/**
+	 * Pipelined replies come back in the order the commands were queued. Depending
+	 * on the command, Spring converts integer replies to either Long or Boolean, so
+	 * both are mapped to the 1/0 values returned by the rest of the API.
+	 */
+	private static Map<String, Long> toResultMap(List<String> orderedKeys, List<Object> results)
+	{
+		Map<String, Long> ret = new HashMap<>();
+		for (int i = 0; i < orderedKeys.size(); i++)
+		{
+			Object result = results.get(i);
+			long l = 0L;
+			if (result instanceof Number)
+			{
+				l = ((Number) result).longValue();
+			} else if (result instanceof Boolean)
+			{
+				l = ((Boolean) result) ? 1L : 0L;
+			}
+			ret.put(orderedKeys.get(i), l);
+		}
+		return ret;
+	}
+
+	@Override
+	public <T> TransactionResult<T> executeTransaction(List<String> watchKeys, TransactionCallback<T> callback)
+	{
+
+		CustomLogger.debug("Running a transaction watching keys: " + watchKeys);
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+		try
+		{
+			return SpringTransactionOperations.execute(springConnection.strRedisTemplate(), watchKeys, callback);
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
+	}
+
+	@Override
+	@Retryable(idempotent = false)
+	public Object eval(LuaScript script, List<String> keys, List<String> args)
+	{
+
+		CustomLogger.debug("Running script " + script.getSha1() + " on keys " + keys);
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+
+		byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+		int i = 0;
+		for (String k : keys)
+		{
+			keysAndArgs[i++] = k.getBytes(StandardCharsets.UTF_8);
+		}
+		for (String a : args)
+		{
+			keysAndArgs[i++] = a.getBytes(StandardCharsets.UTF_8);
+		}
+
+		try
+		{
+			StringRedisTemplate st = springConnection.strRedisTemplate();
+			return toScriptReply(st.execute((RedisCallback<Object>) c ->
+			{
+				try
+				{
+					return c.evalSha(script.getSha1(), ReturnType.VALUE, keys.size(), keysAndArgs);
+				} catch (RuntimeException e)
+				{
+					if (!isNoScript(e))
+					{
+						throw e;
+					}
+					// not cached in Redis yet, EVAL caches it
+					return c.eval(script.getSource().getBytes(StandardCharsets.UTF_8), ReturnType.VALUE,
+							keys.size(), keysAndArgs);
+				}
+			}));
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
+	}
+
+	private static boolean isNoScript(Throwable t)
+	{
+		for (Throwable c = t; c != null; c = c.getCause())
+		{
+			if ((c.getMessage() != null) && c.getMessage().contains("NOSCRIPT"))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Script replies come back as raw bytes, they are given as the Jedis types
+	private static Object toScriptReply(Object reply)
+	{
+		if (reply instanceof byte[])
+		{
+			return new String((byte[]) reply, StandardCharsets.UTF_8);
+		}
+		if (reply instanceof List)
+		{
+			List<Object> l = new ArrayList<>();
+			for (Object o : (List<?>) reply)
+			{
+				l.add(toScriptReply(o));
+			}
+			return l;
+		}
+		return reply;
+	}
+
+	@Override
+	public long publish(String channel, String message)
+	{
+		if (channel == null)
+		{
+			CustomLogger.error("Received a null channel in publish");
+			return -1;
+		}
+
+		if (springConnection == null)
+		{
+			springConnection = conn.getSpringConnection();
+		}
+		try
+		{
+			StringRedisTemplate st = springConnection.strRedisTemplate();
+			Long l = st.execute((RedisCallback<Long>) c -> c.publish(channel.getBytes(StandardCharsets.UTF_8),
+					message.getBytes(StandardCharsets.UTF_8)));
+			return (l == null) ? 0 : l;
+
+		} catch (Exception e)
+		{
+			handleFailure(e);
+			throw e;
+
+		}
 	}
 }
@@ -0,0 +1,182 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+
+/**
+ * Spring implementation of the transaction operations. The whole attempt runs
+ * in a SessionCallback so WATCH, the reads and MULTI/EXEC use the same
+ * connection.
+ */
+class SpringTransactionOperations implements TransactionOperations
+{
+	private final RedisOperations<String, String> operations;
+	private boolean multi;
+	private boolean discarded;
+
+	private SpringTransactionOperations(RedisOperations<String, String> operations)
+	{
+		this.operations = operations;
+	}
+
+	/**
+	 * Runs one attempt of the transaction with the template.
+	 */
+	static <T> TransactionResult<T> execute(StringRedisTemplate template, List<String> watchKeys,
+			TransactionCallback<T> callback)
+	{
+		return template.execute(new SessionCallback<TransactionResult<T>>()
+		{
+			@Override
+			@SuppressWarnings("unchecked")
+			public <K, V> TransactionResult<T> execute(RedisOperations<K, V> session)
+			{
+				SpringTransactionOperations o = new SpringTransactionOperations(
+						(RedisOperations<String, String>) session);
+				if (!watchKeys.isEmpty())
+				{
+					o.operations.watch(watchKeys);
+				}
+
+				try
+				{
+					T value = callback.doInTransaction(o);
+					if (o.discarded)
+					{
+						o.abort();
+						return TransactionResult.discarded(value);
+					}
+
+					// EXEC returns null when a watched key was changed
+					o.multi();
+					List<Object> replies = o.operations.exec();
+					o.multi = false;
+					return (replies == null) ? TransactionResult.conflict() : TransactionResult.committed(value, replies);
+
+				} catch (RuntimeException e)
+				{
+					o.abort();
+					throw e;
+				}
+			}
+		});
+	}
+
+	private void multi()
+	{
+		if (!multi)
+		{
+			operations.multi();
+			multi = true;
+		}
+	}
+
+	private void reading()
+	{
+		if (multi)
+		{
+			throw new IllegalStateException("Reads must be done before the first write of a transaction");
+		}
+	}
+
+	private void abort()
+	{
+		try
+		{
+			if (multi)
+			{
+				operations.discard();
+				multi = false;
+			} else
+			{
+				operations.unwatch();
+			}
+		} catch (Exception e)
+		{
+			CustomLogger.error("Error aborting a transaction: " + e.getMessage(), e);
+		}
+	}
+
+	private HashOperations<String, String, String> hash()
+	{
+		return operations.opsForHash();
+	}
+
+	@Override
+	public String get(String key)
+	{
+		reading();
+		return operations.opsForValue().get(key);
+	}
+
+	@Override
+	public Map<String, String> getMultimap(String key)
+	{
+		reading();
+		return hash().entries(key);
+	}
+
+	@Override
+	public String getHashValue(String hashSetName, String fieldName)
+	{
+		reading();
+		return hash().get(hashSetName, fieldName);
+	}
+
+	@Override
+	public void set(String key, String value)
+	{
+		set(key, value, ConfigurationManager.getRedisDataExpireSec());
+	}
+
+	@Override
+	public void set(String key, String value, int ttl)
+	{
+		multi();
+		operations.opsForValue().set(key, value, Duration.ofSeconds(ttl));
+	}
+
+	@Override
+	public void setHashValue(String hashSetName, String fieldName, String value)
+	{
+		multi();
+		hash().put(hashSetName, fieldName, value);
+	}
+
+	@Override
+	public void deleteHashValue(String hashSetName, String fieldName)
+	{
+		multi();
+		hash().delete(hashSetName, fieldName);
+	}
+
+	@Override
+	public void delete(String key)
+	{
+		multi();
+		operations.delete(key);
+	}
+
+	@Override
+	public void setExpiration(String key, int timeout)
+	{
+		multi();
+		operations.expire(key, timeout, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void discard()
+	{
+		discarded = true;
+	}
+}
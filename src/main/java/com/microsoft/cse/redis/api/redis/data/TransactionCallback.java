@@ -0,0 +1,14 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+/**
+ * Body of an optimistic transaction. It can be run more than once when a
+ * watched key is changed by someone else, so it must not have side effects
+ * outside of the operations it gets.
+ *
+ * @param <T> type of the value computed by the transaction
+ */
+@FunctionalInterface
+public interface TransactionCallback<T>
+{
+	T doInTransaction(TransactionOperations operations);
+}
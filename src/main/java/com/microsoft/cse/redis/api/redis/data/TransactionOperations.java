@@ -0,0 +1,37 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.Map;
+
+/**
+ * Operations available inside an optimistic transaction. Reads run right away,
+ * after the watched keys were WATCHed. Writes are queued and sent in a single
+ * MULTI/EXEC once the callback returns, so every read has to be done before the
+ * first write.
+ */
+public interface TransactionOperations
+{
+	String get(String key);
+
+	Map<String, String> getMultimap(String key);
+
+	String getHashValue(String hashSetName, String fieldName);
+
+	// Queues a SET with the default TTL
+	void set(String key, String value);
+
+	// Queues a SET with a TTL in seconds
+	void set(String key, String value, int ttl);
+
+	void setHashValue(String hashSetName, String fieldName, String value);
+
+	void deleteHashValue(String hashSetName, String fieldName);
+
+	void delete(String key);
+
+	void setExpiration(String key, int timeout);
+
+	/**
+	 * Drops the queued writes and ends the transaction without retrying it.
+	 */
+	void discard();
+}
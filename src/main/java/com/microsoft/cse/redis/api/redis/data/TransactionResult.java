@@ -0,0 +1,66 @@
+package com.microsoft.cse.redis.api.redis.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a single attempt at an optimistic transaction.
+ *
+ * @param <T> type of the value computed by the transaction
+ */
+public class TransactionResult<T>
+{
+	public enum Status
+	{
+		COMMITTED, CONFLICT, DISCARDED
+	}
+
+	private final Status status;
+	private final T value;
+	private final List<Object> replies;
+
+	private TransactionResult(Status status, T value, List<Object> replies)
+	{
+		this.status = status;
+		this.value = value;
+		this.replies = replies;
+	}
+
+	static <T> TransactionResult<T> committed(T value, List<Object> replies)
+	{
+		return new TransactionResult<>(Status.COMMITTED, value, Collections.unmodifiableList(replies));
+	}
+
+	static <T> TransactionResult<T> conflict()
+	{
+		return new TransactionResult<>(Status.CONFLICT, null, Collections.emptyList());
+	}
+
+	static <T> TransactionResult<T> discarded(T value)
+	{
+		return new TransactionResult<>(Status.DISCARDED, value, Collections.emptyList());
+	}
+
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	// True when the attempt has to be retried
+	public boolean isConflict()
+	{
+		return status == Status.CONFLICT;
+	}
+
+	// Value returned by the callback, null on conflict
+	public T getValue()
+	{
+		return value;
+	}
+
+	// Replies of the queued writes, in the order they were queued
+	public List<Object> getReplies()
+	{
+		return replies;
+	}
+}
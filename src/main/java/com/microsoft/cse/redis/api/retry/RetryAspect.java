@@ -0,0 +1,97 @@
+package com.microsoft.cse.redis.api.retry;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+import com.microsoft.cse.redis.api.exceptions.DeadlineExceededException;
+import com.microsoft.cse.redis.api.helper.ClassLogger;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.helper.Deadline;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+/**
+ * Retries the methods annotated with Retryable. It is woven in at build time
+ * like the other aspects, but everything it does is decided at runtime by
+ * RetryPolicy and RetryBudget. Under a deadline, a call is not started once
+ * the deadline has passed and not retried if the wait would outlast it.
+ */
+@Aspect
+public class RetryAspect
+{
+	private static final ClassLogger LOG = CustomLogger.forClass(RetryAspect.class);
+
+	// Set while a retried call runs on the thread
+	private static final ThreadLocal<boolean[]> retrying = ThreadLocal.withInitial(() -> new boolean[1]);
+
+	@Around(value = "execution(* *(..)) && @annotation(retryable)", argNames = "point,retryable")
+	public Object retry(ProceedingJoinPoint point, Retryable retryable) throws Throwable
+	{
+		boolean[] active = retrying.get();
+		if (active[0])
+		{
+			// the enclosing call already retries, retrying here as well would multiply
+			// the attempts
+			return point.proceed();
+		}
+
+		String operation = point.getSignature().getName();
+		Deadline deadline = Deadline.current();
+		if (deadline != null)
+		{
+			deadline.check("before " + operation);
+		}
+
+		// calls of a named data source follow its own policy and budget
+		String dataSource = (point.getThis() instanceof DataFactory)
+				? ((DataFactory) point.getThis()).getDataSourceName()
+				: null;
+		RetryPolicy policy = RetryPolicy.forOperation(dataSource, operation);
+		RetryBudget budget = RetryBudget.forDataSource(dataSource);
+		budget.onCall();
+
+		active[0] = true;
+		try
+		{
+			for (int attempt = 1;; attempt++)
+			{
+				try
+				{
+					return point.proceed();
+				} catch (Throwable t)
+				{
+					if ((attempt >= policy.getAttempts()) || !RetryPolicy.isRetriable(t, retryable.idempotent())
+							|| !budget.tryAcquire())
+					{
+						throw t;
+					}
+
+					long wait = policy.backoffMSec(attempt);
+					if ((deadline != null) && (deadline.remainingMillis() <= wait))
+					{
+						if (deadline.isExpired())
+						{
+							throw new DeadlineExceededException("Deadline exceeded in " + operation, t);
+						}
+						throw t;
+					}
+					LOG.warn("Retrying {} after {}", operation, t.toString());
+					if (wait > 0)
+					{
+						try
+						{
+							Thread.sleep(wait);
+						} catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+							throw t;
+						}
+					}
+				}
+			}
+		} finally
+		{
+			active[0] = false;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.microsoft.cse.redis.api.retry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+
+/**
+ * Caps the retries of the whole process so that an outage does not multiply
+ * the load on Redis. Every call earns RETRY_BUDGET_PERCENT of a retry and
+ * every retry spends a whole one, up to a reserve of RETRY_BUDGET_MAX retries.
+ * Once the reserve is spent, failures are returned to the callers right away.
+ * Every named data source has a budget of its own, so that the retries of one
+ * workload can't spend those of another.
+ */
+public final class RetryBudget
+{
+	private static final RetryBudget GLOBAL = new RetryBudget(null);
+	private static final ConcurrentHashMap<String, RetryBudget> dataSources = new ConcurrentHashMap<>();
+
+	// In thousandths of a retry
+	private static final long UNIT = 1000;
+
+	private final String dataSource;
+	private final AtomicLong balance;
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	private RetryBudget(String dataSource)
+	{
+		this.dataSource = dataSource;
+		balance = new AtomicLong(max());
+	}
+
+	public static RetryBudget global()
+	{
+		return GLOBAL;
+	}
+
+	/**
+	 * @param dataSource name of the data source, null for the process wide one
+	 * @return the budget of the data source
+	 */
+	public static RetryBudget forDataSource(String dataSource)
+	{
+		if (dataSource == null)
+		{
+			return GLOBAL;
+		}
+		return dataSources.computeIfAbsent(dataSource, RetryBudget::new);
+	}
+
+	private long max()
+	{
+		return ConfigurationManager.getConfiguration().getInt(dataSource, "RETRY_BUDGET_MAX", 100) * UNIT;
+	}
+
+	// Called once per call, before its first attempt
+	void onCall()
+	{
+		long earned = (ConfigurationManager.getConfiguration().getInt(dataSource, "RETRY_BUDGET_PERCENT", 10) * UNIT)
+				/ 100;
+		long max = max();
+
+		long b = balance.get();
+		while ((b < max) && !balance.compareAndSet(b, Math.min(max, b + earned)))
+		{
+			b = balance.get();
+		}
+	}
+
+	/**
+	 * Takes one retry out of the budget.
+	 *
+	 * @return false if the budget is spent and the call must not be retried
+	 */
+	boolean tryAcquire()
+	{
+		long b = balance.get();
+		while (b >= UNIT)
+		{
+			if (balance.compareAndSet(b, b - UNIT))
+			{
+				retries.incrementAndGet();
+				return true;
+			}
+			b = balance.get();
+		}
+
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	// Number of retries done so far
+	public long getRetries()
+	{
+		return retries.get();
+	}
+
+	// Number of retries not done because the budget was spent
+	public long getRejected()
+	{
+		return rejected.get();
+	}
+}
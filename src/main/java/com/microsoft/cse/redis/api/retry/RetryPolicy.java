@@ -0,0 +1,107 @@
+package com.microsoft.cse.redis.api.retry;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.microsoft.cse.redis.api.exceptions.FailureClassifier;
+import com.microsoft.cse.redis.api.helper.Configuration;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+
+/**
+ * How the calls of one operation are retried: the number of attempts and the
+ * exponential backoff between them, with full jitter so that the clients that
+ * failed together don't retry together. The settings come from the
+ * configuration:
+ *
+ * <pre>
+ * RETRY_ATTEMPTS               attempts per call, 1 to never retry
+ * RETRY_ATTEMPTS_&lt;OPERATION&gt;   attempts of one operation, e.g. RETRY_ATTEMPTS_GETBATCHED
+ * RETRY_BACKOFF_MSEC           base of the backoff, doubled after every retry
+ * RETRY_MAX_BACKOFF_MSEC       cap of the backoff
+ * </pre>
+ *
+ * A named data source can have policies of its own, with DATASOURCE_&lt;NAME&gt;_
+ * in front of these settings. Policies are rebuilt when the configuration is
+ * reloaded.
+ */
+public final class RetryPolicy
+{
+	private static final ConcurrentHashMap<String, RetryPolicy> policies = new ConcurrentHashMap<>();
+
+	static
+	{
+		ConfigurationManager.addListener((previous, current) -> policies.clear());
+	}
+
+	private final int attempts;
+	private final long backoffMSec;
+	private final long maxBackoffMSec;
+
+	private RetryPolicy(Configuration config, String dataSource, String operation)
+	{
+		int all = config.getInt(dataSource, "RETRY_ATTEMPTS", 3);
+		attempts = Math.max(1,
+				config.getInt(dataSource, "RETRY_ATTEMPTS_" + operation.toUpperCase(Locale.ROOT), all));
+		backoffMSec = Math.max(0, config.getInt(dataSource, "RETRY_BACKOFF_MSEC", 10));
+		maxBackoffMSec = Math.max(backoffMSec, config.getInt(dataSource, "RETRY_MAX_BACKOFF_MSEC", 200));
+	}
+
+	/**
+	 * @param operation name of the operation, the name of the annotated method
+	 * @return the policy of the operation
+	 */
+	public static RetryPolicy forOperation(String operation)
+	{
+		return forOperation(null, operation);
+	}
+
+	/**
+	 * @param dataSource name of the data source, null for the process wide one
+	 * @param operation  name of the operation, the name of the annotated method
+	 * @return the policy of the operation for the data source
+	 */
+	public static RetryPolicy forOperation(String dataSource, String operation)
+	{
+		String key = (dataSource == null) ? operation : dataSource + "." + operation;
+		RetryPolicy p = policies.get(key);
+		if (p == null)
+		{
+			p = policies.computeIfAbsent(key,
+					k -> new RetryPolicy(ConfigurationManager.getConfiguration(), dataSource, operation));
+		}
+		return p;
+	}
+
+	// Total number of attempts, the first one included
+	public int getAttempts()
+	{
+		return attempts;
+	}
+
+	/**
+	 * Wait before a retry: a random time between 0 and the exponential backoff of
+	 * the retry.
+	 *
+	 * @param retry the retry that is about to be made, starting at 1
+	 */
+	public long backoffMSec(int retry)
+	{
+		long cap = backoffMSec << Math.min(retry - 1, 20);
+		cap = Math.min(cap, maxBackoffMSec);
+		return (cap <= 0) ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+	}
+
+	/**
+	 * Tells whether a failure is worth another attempt. Failures that show the
+	 * command never ran are always retried. A broken connection may have lost the
+	 * reply of a command that did run, so it is only retried for idempotent
+	 * commands. Errors such as WRONGTYPE fail the same way every time and are
+	 * never retried.
+	 */
+	public static boolean isRetriable(Throwable t, boolean idempotent)
+	{
+		return FailureClassifier.wasNotRun(t)
+				|| (idempotent && (FailureClassifier.classify(t) == FailureClassifier.Kind.TRANSPORT));
+	}
+}
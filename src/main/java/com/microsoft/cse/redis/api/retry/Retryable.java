@@ -0,0 +1,23 @@
+package com.microsoft.cse.redis.api.retry;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method whose failures are retried by RetryAspect, following the
+ * RetryPolicy of the method's name and the global RetryBudget. The settings
+ * are read from the configuration, so they can be tuned without rebuilding.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Retryable
+{
+	/**
+	 * False for commands that must not run twice, such as LPUSH or INCRBY. They
+	 * are only retried when the failure shows the command never ran, not when the
+	 * connection broke after it may have been sent.
+	 */
+	boolean idempotent() default true;
+}
@@ -0,0 +1,39 @@
+package com.microsoft.cse.redis.api.streams;
+
+import com.microsoft.cse.redis.api.exceptions.RedisApiException;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory.conn_type;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Borrows the Jedis connections streams are read and written on. Streams need
+ * one of the pooled Jedis connection types; with sharding the stream lives on
+ * the shard its name hashes to.
+ */
+final class StreamConnections
+{
+	private StreamConnections()
+	{
+	}
+
+	// Checks that the configured connection type can be used for streams
+	static void check(ConnectionFactory conn) throws RedisApiException
+	{
+		if ((conn.getSelectedType() == conn_type.SPRING) || (conn.getSelectedType() == conn_type.JEDIS))
+		{
+			throw new RedisApiException(
+					"Streams need a pooled Jedis connection, not " + conn.getSelectedType().name());
+		}
+	}
+
+	// Connection to the endpoint holding the stream, to be closed by the caller
+	static Jedis borrow(ConnectionFactory conn, String stream)
+	{
+		if (conn.getSelectedType() == conn_type.JEDISSHARDED)
+		{
+			return conn.getShardedConnection().getConnection(stream);
+		}
+		return conn.getJedisPooledConnection().getConnection();
+	}
+}
@@ -0,0 +1,460 @@
+package com.microsoft.cse.redis.api.streams;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.microsoft.cse.redis.api.exceptions.FailureClassifier;
+import com.microsoft.cse.redis.api.exceptions.RedisApiException;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.StreamEntry;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.StreamPendingEntry;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * Reads a stream as one consumer of a consumer group. The consumer keeps a
+ * connection of its own for as long as it is open, so a blocking XREADGROUP
+ * never holds up the connections used by everything else. Acknowledgements are
+ * buffered and sent as a single XACK, when STREAM_ACK_BATCH of them are waiting
+ * and before every read. Entries delivered to consumers that died without
+ * acknowledging them are taken over with claim().
+ *
+ * A consumer is meant to be used by one thread at a time.
+ */
+public class StreamConsumer implements AutoCloseable
+{
+	// Commands Jedis 3.3 has no method for, or no method returning the whole reply
+	private enum Command implements ProtocolCommand
+	{
+		XAUTOCLAIM, XPENDING, XINFO;
+
+		private final byte[] raw = SafeEncoder.encode(name());
+
+		@Override
+		public byte[] getRaw()
+		{
+			return raw;
+		}
+	}
+
+	private final ConnectionFactory conn;
+	private final String stream;
+	private final String group;
+	private final String consumer;
+	private final long blockMSec;
+	private final int ackBatch;
+
+	private final List<StreamEntryID> pendingAcks = new ArrayList<>();
+	private Jedis connection;
+	private String claimCursor = "0-0";
+	private boolean autoClaim = true;
+
+	private long delivered;
+	private long acked;
+	private long claimed;
+
+	public StreamConsumer(String stream, String group, String consumer) throws RedisApiException
+	{
+		this(stream, group, consumer, new StreamEntryID());
+	}
+
+	/**
+	 * Creates the group, and the stream, if they don't exist yet.
+	 *
+	 * @param stream   name of the stream
+	 * @param group    consumer group, every entry is delivered to one consumer of
+	 *                 the group
+	 * @param consumer name of this consumer, unique within the group
+	 * @param start    id after which a newly created group starts reading,
+	 *                 StreamEntryID.LAST_ENTRY to only get new entries
+	 */
+	public StreamConsumer(String stream, String group, String consumer, StreamEntryID start)
+			throws RedisApiException
+	{
+		this(ConnectionFactory.getConnection(), stream, group, consumer, start);
+	}
+
+	/**
+	 * Same as above, reading with the connections of a named data source.
+	 *
+	 * @param data data source whose connections the stream is read with
+	 */
+	public StreamConsumer(DataFactory data, String stream, String group, String consumer, StreamEntryID start)
+			throws RedisApiException
+	{
+		this(data.getConnectionFactory(), stream, group, consumer, start);
+	}
+
+	private StreamConsumer(ConnectionFactory conn, String stream, String group, String consumer,
+			StreamEntryID start) throws RedisApiException
+	{
+		this.conn = conn;
+		StreamConnections.check(conn);
+		this.stream = stream;
+		this.group = group;
+		this.consumer = consumer;
+		blockMSec = ConfigurationManager.getStreamBlockMSec();
+		ackBatch = Math.max(1, ConfigurationManager.getStreamAckBatch());
+
+		try
+		{
+			getJedis().xgroupCreate(stream, group, start, true);
+		} catch (JedisDataException e)
+		{
+			if ((e.getMessage() == null) || !e.getMessage().startsWith("BUSYGROUP"))
+			{
+				failed("Creating group " + group + " of stream " + stream, e);
+				throw e;
+			}
+		}
+	}
+
+	public String getStream()
+	{
+		return stream;
+	}
+
+	public String getGroup()
+	{
+		return group;
+	}
+
+	public String getConsumer()
+	{
+		return consumer;
+	}
+
+	/**
+	 * Gets entries that were never delivered to the group, waiting up to
+	 * STREAM_BLOCK_MSEC for some to arrive. Waiting acknowledgements are sent
+	 * first.
+	 *
+	 * @param count largest number of entries returned
+	 * @return the entries, empty if none arrived in time
+	 */
+	public List<StreamEntry> read(int count)
+	{
+		flushAcks();
+
+		try
+		{
+			// xreadGroup takes the streams as generic varargs, so the array is built here:
+			// it only ever holds this one entry of the declared type
+			@SuppressWarnings("unchecked")
+			Map.Entry<String, StreamEntryID>[] streams = (Map.Entry<String, StreamEntryID>[]) new Map.Entry<?, ?>[] {
+					new AbstractMap.SimpleImmutableEntry<>(stream, StreamEntryID.UNRECEIVED_ENTRY) };
+			List<Map.Entry<String, List<StreamEntry>>> reply = getJedis().xreadGroup(group, consumer, count,
+					blockMSec, false, streams);
+
+			if ((reply == null) || reply.isEmpty() || (reply.get(0).getValue() == null))
+			{
+				return Collections.emptyList();
+			}
+
+			List<StreamEntry> entries = reply.get(0).getValue();
+			delivered += entries.size();
+			return entries;
+		} catch (Exception e)
+		{
+			failed("Reading group " + group + " of stream " + stream, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Marks entries as processed. The acknowledgement is buffered, it is sent with
+	 * the next batch.
+	 */
+	public void ack(StreamEntryID... ids)
+	{
+		pendingAcks.addAll(Arrays.asList(ids));
+		if (pendingAcks.size() >= ackBatch)
+		{
+			flushAcks();
+		}
+	}
+
+	public void ack(List<StreamEntry> entries)
+	{
+		for (StreamEntry e : entries)
+		{
+			pendingAcks.add(e.getID());
+		}
+		if (pendingAcks.size() >= ackBatch)
+		{
+			flushAcks();
+		}
+	}
+
+	/**
+	 * Sends the buffered acknowledgements as one XACK. If that fails they stay
+	 * buffered and are sent again with the next batch, acknowledging twice is
+	 * harmless.
+	 */
+	public void flushAcks()
+	{
+		if (pendingAcks.isEmpty())
+		{
+			return;
+		}
+
+		try
+		{
+			getJedis().xack(stream, group, pendingAcks.toArray(new StreamEntryID[0]));
+			acked += pendingAcks.size();
+			pendingAcks.clear();
+		} catch (Exception e)
+		{
+			failed("Acknowledging " + pendingAcks.size() + " entries of stream " + stream, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Takes over entries delivered to any consumer of the group that were not
+	 * acknowledged for at least minIdleMSec. Successive calls walk through the
+	 * whole pending list and then start over.
+	 *
+	 * @param minIdleMSec how long an entry must have been pending to be taken
+	 * @param count       largest number of entries examined
+	 * @return the entries now owned by this consumer
+	 */
+	public List<StreamEntry> claim(long minIdleMSec, int count)
+	{
+		try
+		{
+			List<StreamEntry> entries;
+			if (autoClaim)
+			{
+				try
+				{
+					entries = autoClaim(minIdleMSec, count);
+				} catch (JedisDataException e)
+				{
+					if ((e.getMessage() == null) || !e.getMessage().toLowerCase().contains("unknown command"))
+					{
+						throw e;
+					}
+					CustomLogger.info("XAUTOCLAIM is not supported by the server, using XPENDING and XCLAIM");
+					autoClaim = false;
+					entries = pendingClaim(minIdleMSec, count);
+				}
+			} else
+			{
+				entries = pendingClaim(minIdleMSec, count);
+			}
+
+			claimed += entries.size();
+			return entries;
+		} catch (Exception e)
+		{
+			failed("Claiming pending entries of stream " + stream, e);
+			throw e;
+		}
+	}
+
+	// XAUTOCLAIM, Redis 6.2 and later, scans the pending list from the cursor
+	@SuppressWarnings("unchecked")
+	private List<StreamEntry> autoClaim(long minIdleMSec, int count)
+	{
+		List<Object> reply = (List<Object>) getJedis().sendCommand(Command.XAUTOCLAIM, stream, group, consumer,
+				String.valueOf(minIdleMSec), claimCursor, "COUNT", String.valueOf(count));
+
+		claimCursor = SafeEncoder.encode((byte[]) reply.get(0));
+
+		// entries deleted from the stream while pending come back without fields
+		List<Object> entries = new ArrayList<>();
+		for (Object o : (List<Object>) reply.get(1))
+		{
+			if ((o instanceof List) && (((List<Object>) o).get(1) != null))
+			{
+				entries.add(o);
+			}
+		}
+		return BuilderFactory.STREAM_ENTRY_LIST.build(entries);
+	}
+
+	// Same as XAUTOCLAIM on older servers, from the start of the pending list
+	private List<StreamEntry> pendingClaim(long minIdleMSec, int count)
+	{
+		List<StreamEntryID> ids = new ArrayList<>();
+		for (StreamPendingEntry p : getJedis().xpending(stream, group, null, null, count, null))
+		{
+			if (p.getIdleTime() >= minIdleMSec)
+			{
+				ids.add(p.getID());
+			}
+		}
+
+		if (ids.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+		return getJedis().xclaim(stream, group, consumer, minIdleMSec, 0, 0, false,
+				ids.toArray(new StreamEntryID[0]));
+	}
+
+	/**
+	 * @return number of entries delivered to this consumer and not acknowledged
+	 *         yet, including the ones whose acknowledgement is still buffered
+	 */
+	@SuppressWarnings("unchecked")
+	public long getPendingCount()
+	{
+		try
+		{
+			List<Object> reply = (List<Object>) getJedis().sendCommand(Command.XPENDING, stream, group);
+			if (reply.get(3) != null)
+			{
+				for (Object o : (List<Object>) reply.get(3))
+				{
+					List<Object> c = (List<Object>) o;
+					if (consumer.equals(SafeEncoder.encode((byte[]) c.get(0))))
+					{
+						return Long.parseLong(SafeEncoder.encode((byte[]) c.get(1)));
+					}
+				}
+			}
+			return 0;
+		} catch (Exception e)
+		{
+			failed("Getting pending entries of stream " + stream, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return number of entries in the stream not delivered to the group yet, or
+	 *         -1 if the server can't tell (before Redis 7, or after entries were
+	 *         deleted)
+	 */
+	@SuppressWarnings("unchecked")
+	public long getGroupLag()
+	{
+		try
+		{
+			List<Object> reply = (List<Object>) getJedis().sendCommand(Command.XINFO, "GROUPS", stream);
+			for (Object o : reply)
+			{
+				List<Object> info = (List<Object>) o;
+				if (!group.equals(field(info, "name")))
+				{
+					continue;
+				}
+
+				Object lag = field(info, "lag");
+				return (lag instanceof Long) ? (Long) lag : -1;
+			}
+			return -1;
+		} catch (Exception e)
+		{
+			failed("Getting the lag of group " + group + " of stream " + stream, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Lag of this consumer: the entries it holds without having acknowledged them
+	 * plus, when known, the entries still waiting to be delivered to the group.
+	 */
+	public long getLag()
+	{
+		long groupLag = getGroupLag();
+		return getPendingCount() + Math.max(groupLag, 0);
+	}
+
+	// Counters of this consumer since it was opened
+	public long getDelivered()
+	{
+		return delivered;
+	}
+
+	public long getAcked()
+	{
+		return acked;
+	}
+
+	public long getClaimed()
+	{
+		return claimed;
+	}
+
+	/**
+	 * Sends the buffered acknowledgements and gives the connection back. Entries
+	 * read and not acknowledged stay pending in the group and can be claimed by
+	 * another consumer.
+	 */
+	@Override
+	public void close()
+	{
+		try
+		{
+			flushAcks();
+		} finally
+		{
+			release();
+		}
+	}
+
+	// Value of a field of a flat field/value XINFO reply, strings decoded
+	private static Object field(List<Object> info, String name)
+	{
+		for (int i = 0; i + 1 < info.size(); i += 2)
+		{
+			if (name.equals(SafeEncoder.encode((byte[]) info.get(i))))
+			{
+				Object v = info.get(i + 1);
+				return (v instanceof byte[]) ? SafeEncoder.encode((byte[]) v) : v;
+			}
+		}
+		return null;
+	}
+
+	private Jedis getJedis()
+	{
+		if (connection == null)
+		{
+			connection = StreamConnections.borrow(conn, stream);
+		}
+		return connection;
+	}
+
+	// Only a transport failure makes the next call start over on a new connection,
+	// after an error reply the connection is still usable
+	private void failed(String what, Exception e)
+	{
+		CustomLogger.error(what + " failed: " + e.getMessage(), e);
+		if (FailureClassifier.classify(e) == FailureClassifier.Kind.TRANSPORT)
+		{
+			release();
+			conn.resetConnection();
+		}
+	}
+
+	private void release()
+	{
+		if (connection != null)
+		{
+			try
+			{
+				connection.close();
+			} catch (Exception e)
+			{
+				CustomLogger.error("Error returning a stream connection: " + e.getMessage(), e);
+			}
+			connection = null;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.microsoft.cse.redis.api.streams;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.microsoft.cse.redis.api.exceptions.FailureClassifier;
+import com.microsoft.cse.redis.api.exceptions.RedisApiException;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.StreamEntryID;
+
+/**
+ * Appends entries to a Redis stream. A batch of entries is pipelined, at most
+ * PIPELINE_MAX_COMMANDS XADDs per round trip. When STREAM_MAX_LEN is set the
+ * stream is trimmed to about that many entries as it grows.
+ */
+public class StreamProducer
+{
+	private final ConnectionFactory conn;
+	private final String stream;
+	private final long maxLen;
+
+	public StreamProducer(String stream) throws RedisApiException
+	{
+		this(stream, ConfigurationManager.getStreamMaxLen());
+	}
+
+	/**
+	 * @param stream name of the stream
+	 * @param maxLen approximate number of entries the stream is trimmed to, 0 to
+	 *               never trim
+	 */
+	public StreamProducer(String stream, long maxLen) throws RedisApiException
+	{
+		this(ConnectionFactory.getConnection(), stream, maxLen);
+	}
+
+	/**
+	 * @param data   data source whose connections the entries are added with
+	 * @param stream name of the stream
+	 * @param maxLen approximate number of entries the stream is trimmed to, 0 to
+	 *               never trim
+	 */
+	public StreamProducer(DataFactory data, String stream, long maxLen) throws RedisApiException
+	{
+		this(data.getConnectionFactory(), stream, maxLen);
+	}
+
+	private StreamProducer(ConnectionFactory conn, String stream, long maxLen) throws RedisApiException
+	{
+		this.conn = conn;
+		StreamConnections.check(conn);
+		this.stream = stream;
+		this.maxLen = maxLen;
+	}
+
+	public String getStream()
+	{
+		return stream;
+	}
+
+	/**
+	 * @param fields fields of the entry
+	 * @return the id Redis gave the entry
+	 */
+	public StreamEntryID add(Map<String, String> fields)
+	{
+		return add(Collections.singletonList(fields)).get(0);
+	}
+
+	/**
+	 * Appends the entries in order.
+	 *
+	 * @param entries fields of each entry
+	 * @return the ids of the entries, in the same order
+	 */
+	public List<StreamEntryID> add(List<Map<String, String>> entries)
+	{
+		List<StreamEntryID> ids = new ArrayList<>(entries.size());
+		int batch = Math.max(1, ConfigurationManager.getPipelineMaxCommands());
+
+		try (Jedis jd = StreamConnections.borrow(conn, stream))
+		{
+			for (int from = 0; from < entries.size(); from += batch)
+			{
+				List<Response<StreamEntryID>> replies = new ArrayList<>();
+				Pipeline p = jd.pipelined();
+
+				for (Map<String, String> fields : entries.subList(from, Math.min(from + batch, entries.size())))
+				{
+					if (maxLen > 0)
+					{
+						replies.add(p.xadd(stream, StreamEntryID.NEW_ENTRY, fields, maxLen, true));
+					} else
+					{
+						replies.add(p.xadd(stream, StreamEntryID.NEW_ENTRY, fields));
+					}
+				}
+				p.sync();
+
+				for (Response<StreamEntryID> r : replies)
+				{
+					ids.add(r.get());
+				}
+			}
+		} catch (Exception e)
+		{
+			CustomLogger.error("Adding " + entries.size() + " entries to stream " + stream + " failed: "
+					+ e.getMessage(), e);
+			if (FailureClassifier.classify(e) == FailureClassifier.Kind.TRANSPORT)
+			{
+				conn.resetConnection();
+			}
+			throw e;
+		}
+
+		return ids;
+	}
+}
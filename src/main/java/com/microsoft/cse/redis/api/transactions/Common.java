@@ -2,6 +2,7 @@ package com.microsoft.cse.redis.api.transactions;
 
 import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
 import com.microsoft.cse.redis.api.redis.data.DataFactory;
+import com.microsoft.cse.redis.api.redis.data.PipelineFlushListener;
 import com.microsoft.cse.redis.api.redis.data.PipelinedPooledRedisDataFactory;
 
 /**
@@ -30,6 +31,23 @@ public class Common
 		}
 	}
 
+	/**
+	 * Starts a pipeline for the current thread, like startPipeline(), and reports
+	 * the replies and failures of every flush to the listener. The pipeline is
+	 * flushed automatically when it grows over its configured limits. Notice it
+	 * only works for pipelined and pooled Jedis connection.
+	 */
+	public static void startPipeline(PipelineFlushListener listener)
+	{
+		ConnectionFactory f = ConnectionFactory.getConnection();
+		DataFactory d = DataFactory.getDataFactory(f);
+		if (PipelinedPooledRedisDataFactory.class.isInstance(d))
+		{
+			PipelinedPooledRedisDataFactory pipelinedFactory = (PipelinedPooledRedisDataFactory) d;
+			pipelinedFactory.startPipeline(listener);
+		}
+	}
+
 	/**
 	 * Commits a pipeline for the current thread. Notice it only works for pipelined
 	 * and pooled Jedis connection.
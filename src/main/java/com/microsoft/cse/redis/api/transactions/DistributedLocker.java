@@ -1,9 +1,9 @@
 package com.microsoft.cse.redis.api.transactions;
 
 import java.time.Instant;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import com.microsoft.cse.redis.api.exceptions.LockerException;
 import com.microsoft.cse.redis.api.helper.ConfigurationManager;
@@ -19,6 +19,9 @@ public class DistributedLocker
 	String lockName, ownerName;
 	ConnectionFactory connectionFactory;
 	DataFactory dataFactory;
+	// Renewals of a fixed lock, until unlock()
+	private volatile LeaseManager.Lease lease;
+	private volatile long fencingToken;
 
 	/**
 	 * Initializes the locker.
@@ -52,48 +55,70 @@ public class DistributedLocker
 		long startTime = Instant.now().toEpochMilli();
 
 		/**
-		 * If I can't set the lock value (setnx == 0), then it means somebody ownes it,
-		 * which means I will have to wait until it is released, except when I'm the
-		 * lock owner.
+		 * If I can't take the lock (token == 0), then it means somebody ownes it, which
+		 * means I will have to wait until it is released. If I am the owner already,
+		 * the script gives me my token back.
 		 */
-		long lockResult;
-		while ((lockResult = dataFactory.setIfNotExists(lockName, ownerName, ConfigurationManager.getLockTTL())) <= 0)
+		long token;
+		LockReleaseNotifier.Waiter waiter = null;
+		try
 		{
-			// If lockerResult is less than 0, then we had a problem
-			if (lockResult < 0)
+			while ((token = acquire()) <= 0)
 			{
-				CustomLogger.trace("lock:error");
-				throw new LockerException("Unable to acquire the lock: unkown error.");
+				CustomLogger.trace("lock:locked");
+
+				/**
+				 * If timeout is 0, don't watch for the timeout. Otherwise, give up trying if we
+				 * reach the timeout
+				 */
+				long elapsed = Instant.now().toEpochMilli() - startTime;
+				if ((timeout > 0) && (elapsed >= timeout))
+				{
+					CustomLogger.debug("Timeout expired for lock " + lockName + ", owner " + ownerName + "...");
+					return false;
+				}
+
+				/**
+				 * Listen to the release before trying again, so that a release coming in
+				 * between is not missed.
+				 */
+				if ((waiter == null) && ConfigurationManager.getLockWaitNotify())
+				{
+					waiter = listen();
+					if (waiter != null)
+					{
+						continue;
+					}
+				}
+
+				// Wait for the release, or the next try
+				long wait = (waiter == null) ? ConfigurationManager.getLockPullTime()
+						: ConfigurationManager.getLockNotifyFallbackMSec();
+				if (timeout > 0)
+				{
+					wait = Math.max(1, Math.min(wait, timeout - elapsed));
+				}
+				CustomLogger.debug("Waiting lock " + lockName + " for " + ownerName + "...");
+				try
+				{
+					CustomLogger.trace("lock:locked:wait");
+					if (waiter == null)
+					{
+						Thread.sleep(wait);
+					} else
+					{
+						waiter.await(wait);
+					}
+				} catch (InterruptedException e)
+				{
+					CustomLogger.warn("Lock wait was interrupted.", e);
+				}
 			}
-
-			CustomLogger.trace("lock:locked");
-			// Gets the locker name. If it's me, just assume I can keep the lock
-			String lockedPartition = dataFactory.get(lockName);
-			if ((lockedPartition != null) && lockedPartition.equals(ownerName))
-			{
-				CustomLogger.trace("lock:owned_by_slf");
-				return true;
-			}
-
-			/**
-			 * If timeout is 0, don't watch for the timeout. Otherwise, give up trying if we
-			 * reach the timeout
-			 */
-			if ((timeout > 0) && ((Instant.now().toEpochMilli() - startTime) >= timeout))
-			{
-				CustomLogger.debug("Timeout expired for lock " + lockName + ", owner " + ownerName + "...");
-				return false;
-			}
-
-			// Wait for the next try
-			CustomLogger.debug("Waiting lock " + lockName + " for " + ownerName + "...");
-			try
-			{
-				CustomLogger.trace("lock:locked:wait");
-				Thread.sleep(ConfigurationManager.getLockPullTime());
-			} catch (InterruptedException e)
+		} finally
+		{
+			if (waiter != null)
 			{
-				CustomLogger.warn("Lock wait was interrupted.", e);
+				waiter.close();
 			}
 		}
 
@@ -103,30 +128,72 @@ public class DistributedLocker
 			CustomLogger.trace("lock:fixedlock");
 			CustomLogger.debug("Activating fixed lock " + lockName + " for " + ownerName + "...");
 
-			// Fire and forget thread
-			ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-			executor.scheduleAtFixedRate(() -> renewLock(), 0, ConfigurationManager.getLockRenewTime(),
-					TimeUnit.MILLISECONDS);
+			if (lease != null)
+			{
+				lease.close();
+			}
+			lease = LeaseManager.forDataFactory(dataFactory).start(lockName, ownerName,
+					ConfigurationManager.getLockTTL(), ConfigurationManager.getLockRenewTime());
 		}
 
-		CustomLogger.info(ownerName + " acquired lock on " + lockName);
+		fencingToken = token;
+		CustomLogger.info(ownerName + " acquired lock on " + lockName + " with token " + token);
 
 		return true;
 	}
 
+	// Takes the lock, or extends it if it is mine, in one atomic call
+	private long acquire() throws LockerException
+	{
+		Object token;
+		try
+		{
+			token = dataFactory.eval(LockScripts.ACQUIRE,
+					Arrays.asList(lockName, LockScripts.fenceKeyOf(lockName)),
+					Arrays.asList(ownerName, Long.toString(ConfigurationManager.getLockTTL() * 1000L)));
+		} catch (RuntimeException e)
+		{
+			CustomLogger.trace("lock:error");
+			throw new LockerException("Unable to acquire the lock: " + e.getMessage());
+		}
+		return ((Number) token).longValue();
+	}
+
 	/**
-	 * renewLock only sets the TTL of the lockm using a new connection from the
-	 * connection pool and closing it afterwards.
+	 * Fencing token of the lock, taken when it was acquired. Every owner acquiring
+	 * the lock gets a larger one, so a system guarded by the lock can reject the
+	 * writes carrying a token older than the last one it saw: the ones of an owner
+	 * that was paused long enough to lose the lock.
+	 *
+	 * @return the token, 0 if the lock was never acquired
 	 */
-	private void renewLock()
+	public long getFencingToken()
+	{
+		return fencingToken;
+	}
+
+	/**
+	 * Extends the lock by the lock TTL, if it is still held by this owner.
+	 *
+	 * @return true if it was extended, false if the lock was lost
+	 */
+	public boolean renew()
+	{
+		List<?> renewed = (List<?>) dataFactory.eval(LockScripts.RENEW, Collections.singletonList(lockName),
+				Arrays.asList(Long.toString(ConfigurationManager.getLockTTL() * 1000L), ownerName));
+		return ((Number) renewed.get(0)).longValue() > 0;
+	}
+
+	// Subscribes to the releases of the lock, null to poll if that failed
+	private LockReleaseNotifier.Waiter listen()
 	{
-		CustomLogger.trace("renewLock");
 		try
 		{
-			dataFactory.setExpiration(lockName, ConfigurationManager.getLockTTL());
-		} catch (Exception error)
+			return LockReleaseNotifier.forDataFactory(dataFactory).register(lockName);
+		} catch (RuntimeException e)
 		{
-			CustomLogger.error("Error renewing lock: " + error.getMessage(), error);
+			CustomLogger.warn("Can't listen to the releases of lock " + lockName + ", polling it.", e);
+			return null;
 		}
 	}
 
@@ -136,20 +203,25 @@ public class DistributedLocker
 	public void unlock()
 	{
 		CustomLogger.trace("unlock:start");
-		String currentOwner = dataFactory.get(lockName);
+		if (lease != null)
+		{
+			lease.close();
+			lease = null;
+		}
 
 		/**
-		 * If the owner name is empty or different from the current one, we simply
-		 * ignore the unlock action.
+		 * The lock is deleted only if I still own it, in the same atomic call that
+		 * checks it and tells the waiters.
 		 */
-		if (((currentOwner == null) || currentOwner.equals("")) || !currentOwner.equals(ownerName))
+		String channel = ConfigurationManager.getLockWaitNotify() ? LockReleaseNotifier.channelOf(lockName) : "";
+		Object released = dataFactory.eval(LockScripts.RELEASE, Collections.singletonList(lockName),
+				Arrays.asList(ownerName, channel));
+		if (((Number) released).longValue() > 0)
 		{
-			CustomLogger.trace("unlock:already_unlocked:locked_by_other");
-			return;
+			CustomLogger.trace("unlock:locked_by_self:del");
 		} else
 		{
-			CustomLogger.trace("unlock:locked_by_self:del");
-			dataFactory.delete(lockName);
+			CustomLogger.trace("unlock:already_unlocked:locked_by_other");
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,230 @@
+package com.microsoft.cse.redis.api.transactions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+import com.microsoft.cse.redis.api.redis.data.LuaScript;
+
+/**
+ * Rate limiter shared by every process using the same Redis: at most a number
+ * of permits per period, whichever process asks for them. Each request for
+ * permits is a single script call that Redis runs atomically, with the time of
+ * Redis, so the clocks of the processes don't matter.
+ *
+ * To save round trips a process can take permits in batches and hand them out
+ * locally. Permits taken that way are dropped if they were not used within
+ * RATE_LIMIT_MAX_HOLD_MSEC, so a process never uses permits later than that,
+ * and at most one batch per process is held at a time.
+ */
+public class DistributedRateLimiter
+{
+	public enum Algorithm
+	{
+		// permits refill continuously, up to a burst of a whole period
+		TOKEN_BUCKET,
+		// at most the permits in any period, each permit being logged in Redis
+		SLIDING_WINDOW
+	}
+
+	private static final LuaScript TOKEN_BUCKET_SCRIPT = LuaScript
+			.fromResource("/lua/rate_limit_token_bucket.lua");
+	private static final LuaScript SLIDING_WINDOW_SCRIPT = LuaScript
+			.fromResource("/lua/rate_limit_sliding_window.lua");
+
+	private final String key;
+	private final Algorithm algorithm;
+	private final long permits;
+	private final long periodMSec;
+	private final DataFactory dataFactory;
+
+	// names the permits of the sliding window, unique across the processes
+	private final String clientId = UUID.randomUUID().toString();
+	private final AtomicLong calls = new AtomicLong();
+
+	private int batch;
+	private long maxHoldNanos;
+
+	// Permits taken from Redis and not handed out yet, guarded by this
+	private long localPermits;
+	private long localExpiresAt;
+	private long lastWaitMSec;
+
+	private final AtomicLong roundTrips = new AtomicLong();
+	private final AtomicLong granted = new AtomicLong();
+	private final AtomicLong denied = new AtomicLong();
+
+	/**
+	 * Initializes the limiter.
+	 *
+	 * @param name       name of the limiter, every process using the same name
+	 *                   shares its permits
+	 * @param algorithm  how the permits are counted
+	 * @param permits    permits per period
+	 * @param periodMSec period in milliseconds
+	 */
+	public DistributedRateLimiter(String name, Algorithm algorithm, long permits, long periodMSec)
+	{
+		this(DataFactory.getDataFactory(ConnectionFactory.getConnection()), name, algorithm, permits, periodMSec);
+	}
+
+	public DistributedRateLimiter(DataFactory dataFactory, String name, Algorithm algorithm, long permits,
+			long periodMSec)
+	{
+		if ((permits <= 0) || (periodMSec <= 0))
+		{
+			throw new IllegalArgumentException("Rate limit needs permits and a period: " + permits + " per "
+					+ periodMSec + "ms");
+		}
+
+		this.dataFactory = dataFactory;
+		this.key = "rate_limit:" + name;
+		this.algorithm = algorithm;
+		this.permits = permits;
+		this.periodMSec = periodMSec;
+		setLocalBatch(ConfigurationManager.getRateLimitBatch(), ConfigurationManager.getRateLimitMaxHoldMSec());
+	}
+
+	/**
+	 * Takes permits from Redis in batches, handed out locally.
+	 *
+	 * @param batch       permits taken at once, 1 to ask Redis for every permit
+	 * @param maxHoldMSec permits not used within this time are dropped
+	 */
+	public synchronized void setLocalBatch(int batch, long maxHoldMSec)
+	{
+		this.batch = (int) Math.max(1, Math.min(batch, permits));
+		this.maxHoldNanos = Math.max(0, maxHoldMSec) * 1000000;
+	}
+
+	public boolean tryAcquire()
+	{
+		return tryAcquire(1);
+	}
+
+	/**
+	 * Takes permits if they are available right now.
+	 *
+	 * @param n permits needed
+	 * @return true if the permits were taken, false if the rate was reached
+	 */
+	public synchronized boolean tryAcquire(int n)
+	{
+		if ((n <= 0) || (n > permits))
+		{
+			throw new IllegalArgumentException("Permits must be between 1 and " + permits + ": " + n);
+		}
+
+		long now = System.nanoTime();
+		if ((localPermits > 0) && ((now - localExpiresAt) >= 0))
+		{
+			// held too long, using them now could go over the rate
+			localPermits = 0;
+		}
+
+		if (localPermits >= n)
+		{
+			localPermits -= n;
+			granted.addAndGet(n);
+			return true;
+		}
+
+		long needed = n - localPermits;
+		long got = request(Math.max(needed, batch), needed);
+		if (got < needed)
+		{
+			denied.incrementAndGet();
+			return false;
+		}
+
+		if (localPermits == 0)
+		{
+			localExpiresAt = now + maxHoldNanos;
+		}
+		localPermits += got - n;
+		granted.addAndGet(n);
+		return true;
+	}
+
+	/**
+	 * Waits for permits, sleeping until Redis expects them to be available.
+	 *
+	 * @param n         permits needed
+	 * @param timeoutMSec time to wait in milliseconds, 0 to wait indefinitely
+	 * @return true if the permits were taken, false if it timed out
+	 */
+	public boolean acquire(int n, long timeoutMSec) throws InterruptedException
+	{
+		long start = System.currentTimeMillis();
+		while (!tryAcquire(n))
+		{
+			long wait;
+			synchronized (this)
+			{
+				wait = Math.max(1, lastWaitMSec);
+			}
+			if (timeoutMSec > 0)
+			{
+				long left = timeoutMSec - (System.currentTimeMillis() - start);
+				if (left <= 0)
+				{
+					return false;
+				}
+				wait = Math.min(wait, left);
+			}
+			Thread.sleep(wait);
+		}
+		return true;
+	}
+
+	// Asks Redis for between minimum and requested permits, returns the ones granted
+	private long request(long requested, long minimum)
+	{
+		roundTrips.incrementAndGet();
+
+		List<String> args;
+		LuaScript script;
+		if (algorithm == Algorithm.TOKEN_BUCKET)
+		{
+			script = TOKEN_BUCKET_SCRIPT;
+			args = Arrays.asList(Long.toString(permits), Long.toString(periodMSec), Long.toString(requested),
+					Long.toString(minimum));
+		} else
+		{
+			script = SLIDING_WINDOW_SCRIPT;
+			args = Arrays.asList(Long.toString(permits), Long.toString(periodMSec), Long.toString(requested),
+					Long.toString(minimum), clientId + ":" + calls.incrementAndGet());
+		}
+
+		List<?> reply = (List<?>) dataFactory.eval(script, Collections.singletonList(key), args);
+		long got = ((Number) reply.get(0)).longValue();
+		lastWaitMSec = ((Number) reply.get(1)).longValue();
+
+		CustomLogger.debug("Rate limiter " + key + " granted " + got + " of " + requested + " permits");
+		return got;
+	}
+
+	// Number of script calls made to Redis
+	public long getRoundTrips()
+	{
+		return roundTrips.get();
+	}
+
+	// Number of permits handed out
+	public long getGranted()
+	{
+		return granted.get();
+	}
+
+	// Number of tryAcquire calls refused
+	public long getDenied()
+	{
+		return denied.get();
+	}
+}
@@ -0,0 +1,301 @@
+package com.microsoft.cse.redis.api.transactions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+/**
+ * Keeps the TTL of held keys, such as fixed locks, from running out. All the
+ * leases of a DataFactory are renewed by one thread shared by the process: every
+ * LEASE_TICK_MSEC the leases due are renewed together, in a single pipeline, so
+ * thousands of locks cost neither a thread each nor a round trip each. Locks
+ * are renewed by a script that checks their owner, so a lock taken over by
+ * another owner is never extended.
+ *
+ * A lease stops being renewed once it is closed, or once its key is found gone
+ * or held by another owner.
+ */
+public final class LeaseManager
+{
+	private static final Map<DataFactory, LeaseManager> managers = new ConcurrentHashMap<>();
+
+	// Locks renewed by a single script call, longer calls would block Redis
+	private static final int MAX_SCRIPT_KEYS = 500;
+
+	private static volatile ScheduledExecutorService scheduler;
+
+	private final DataFactory dataFactory;
+	private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+	private final long tickMSec;
+	private final ScheduledFuture<?> ticks;
+
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong renewals = new AtomicLong();
+	private final AtomicLong late = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong lost = new AtomicLong();
+
+	private LeaseManager(DataFactory dataFactory)
+	{
+		this.dataFactory = dataFactory;
+		this.tickMSec = Math.max(1, ConfigurationManager.getLeaseTickMSec());
+		this.ticks = getScheduler().scheduleWithFixedDelay(this::tick, tickMSec, tickMSec, TimeUnit.MILLISECONDS);
+	}
+
+	public static LeaseManager forDataFactory(DataFactory dataFactory)
+	{
+		return managers.computeIfAbsent(dataFactory, LeaseManager::new);
+	}
+
+	private static ScheduledExecutorService getScheduler()
+	{
+		if (scheduler == null)
+		{
+			synchronized (LeaseManager.class)
+			{
+				if (scheduler == null)
+				{
+					scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+					{
+						Thread t = new Thread(r, "redis-lease-renewer");
+						t.setDaemon(true);
+						return t;
+					});
+				}
+			}
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Key kept alive by the manager until it is closed.
+	 */
+	public final class Lease implements AutoCloseable
+	{
+		private final String key;
+		// owner the key must still hold its value of, null for any value
+		private final String owner;
+		private final int ttlSec;
+		private final long renewMSec;
+		// guarded by the tick thread
+		private long dueAt;
+		private volatile boolean active = true;
+
+		private Lease(String key, String owner, int ttlSec, long renewMSec)
+		{
+			this.key = key;
+			this.owner = owner;
+			this.ttlSec = ttlSec;
+			this.renewMSec = renewMSec;
+			this.dueAt = System.currentTimeMillis() + renewMSec;
+		}
+
+		public String getKey()
+		{
+			return key;
+		}
+
+		// False once closed, or once its key was found gone or taken over
+		public boolean isActive()
+		{
+			return active;
+		}
+
+		// Stops the renewals, the key expires with its current TTL
+		@Override
+		public void close()
+		{
+			active = false;
+			leases.remove(this);
+		}
+	}
+
+	/**
+	 * Renews the TTL of a key until the returned lease is closed.
+	 *
+	 * @param key       key to keep alive, must have been set with a TTL
+	 * @param ttlSec    TTL set at each renewal, in seconds
+	 * @param renewMSec time between renewals, less than the TTL
+	 * @return the lease, to be closed once the key is no longer held
+	 */
+	public Lease start(String key, int ttlSec, long renewMSec)
+	{
+		return start(key, null, ttlSec, renewMSec);
+	}
+
+	/**
+	 * Same as start, for a lock: it is only renewed while its value is still the
+	 * owner, the lease ends once another owner holds it.
+	 */
+	public Lease start(String key, String owner, int ttlSec, long renewMSec)
+	{
+		Lease l = new Lease(key, owner, ttlSec, Math.max(1, renewMSec));
+		leases.add(l);
+		CustomLogger.debug("Renewing " + key + " every " + renewMSec + "ms");
+		return l;
+	}
+
+	// Renews the leases due by the next tick, in one call per TTL, and per shard
+	// for the leases of an owner
+	private void tick()
+	{
+		long now = System.currentTimeMillis();
+		Map<String, List<Lease>> due = new HashMap<>();
+		for (Lease l : leases)
+		{
+			if ((l.dueAt - now) <= (tickMSec / 2))
+			{
+				String batch = (l.owner == null) ? Integer.toString(l.ttlSec)
+						: l.ttlSec + "/" + dataFactory.shardOf(l.key);
+				due.computeIfAbsent(batch, b -> new ArrayList<>()).add(l);
+			}
+		}
+
+		for (List<Lease> l : due.values())
+		{
+			for (int i = 0; i < l.size(); i += MAX_SCRIPT_KEYS)
+			{
+				renew(l.subList(i, Math.min(l.size(), i + MAX_SCRIPT_KEYS)), now);
+			}
+		}
+	}
+
+	private void renew(List<Lease> l, long now)
+	{
+		List<Long> result;
+		try
+		{
+			batches.incrementAndGet();
+			result = (l.get(0).owner == null) ? expire(l) : renewOwned(l);
+		} catch (Exception e)
+		{
+			// tried again at the next tick, while the TTL lasts
+			failed.addAndGet(l.size());
+			CustomLogger.warn("Renewing " + l.size() + " leases failed: " + e.getMessage());
+			return;
+		}
+
+		for (int i = 0; i < l.size(); i++)
+		{
+			Lease lease = l.get(i);
+			if (!lease.active)
+			{
+				continue;
+			}
+
+			Long r = result.get(i);
+			if ((r == null) || (r <= 0))
+			{
+				lost.incrementAndGet();
+				CustomLogger.warn("Lease of " + lease.key + " lost, the key is gone or has another owner");
+				lease.close();
+				continue;
+			}
+
+			renewals.incrementAndGet();
+			if ((now - lease.dueAt) > tickMSec)
+			{
+				late.incrementAndGet();
+			}
+			lease.dueAt = now + lease.renewMSec;
+		}
+	}
+
+	// Sets the TTL of keys held by no owner in a single pipeline
+	private List<Long> expire(List<Lease> l)
+	{
+		Set<String> keys = new HashSet<>();
+		for (Lease lease : l)
+		{
+			keys.add(lease.key);
+		}
+
+		Map<String, Long> r = dataFactory.setExpiration(keys, l.get(0).ttlSec);
+		List<Long> result = new ArrayList<>();
+		for (Lease lease : l)
+		{
+			result.add(r.get(lease.key));
+		}
+		return result;
+	}
+
+	// Extends locks still held by their owner, all of them on one shard, in a
+	// single script call
+	private List<Long> renewOwned(List<Lease> l)
+	{
+		List<String> keys = new ArrayList<>();
+		List<String> args = new ArrayList<>();
+		args.add(Long.toString(l.get(0).ttlSec * 1000L));
+		for (Lease lease : l)
+		{
+			keys.add(lease.key);
+			args.add(lease.owner);
+		}
+
+		List<Long> result = new ArrayList<>();
+		for (Object o : (List<?>) dataFactory.eval(LockScripts.RENEW, keys, args))
+		{
+			result.add(((Number) o).longValue());
+		}
+		return result;
+	}
+
+	// Stops the renewals of every lease of the manager
+	public void shutdown()
+	{
+		ticks.cancel(false);
+		for (Lease l : leases)
+		{
+			l.close();
+		}
+		managers.remove(dataFactory, this);
+	}
+
+	// Leases being renewed
+	public int getActive()
+	{
+		return leases.size();
+	}
+
+	// Renewal calls sent, pipelines or scripts
+	public long getBatches()
+	{
+		return batches.get();
+	}
+
+	public long getRenewals()
+	{
+		return renewals.get();
+	}
+
+	// Renewals done more than a tick after they were due
+	public long getLateRenewals()
+	{
+		return late.get();
+	}
+
+	// Renewals that failed, to be tried again at the next tick
+	public long getFailedRenewals()
+	{
+		return failed.get();
+	}
+
+	// Leases dropped because their key had expired or was deleted
+	public long getLostLeases()
+	{
+		return lost.get();
+	}
+}
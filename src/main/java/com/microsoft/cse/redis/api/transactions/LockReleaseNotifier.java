@@ -0,0 +1,143 @@
+package com.microsoft.cse.redis.api.transactions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.pubsub.Subscription;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+/**
+ * Wakes the threads waiting for a lock when its owner releases it. The release
+ * script publishes on the channel of the lock, and the waiters of a process
+ * share one subscription to it, held while any of them waits. Pub/sub messages
+ * can be lost and an expired lock sends none, so the waiters still try again
+ * after a while without one.
+ */
+final class LockReleaseNotifier
+{
+	private static final String CHANNEL_PREFIX = "lock_release:";
+
+	private static final Map<DataFactory, LockReleaseNotifier> notifiers = new ConcurrentHashMap<>();
+
+	private final DataFactory dataFactory;
+	// Channels subscribed to, guarded by itself
+	private final Map<String, Channel> channels = new HashMap<>();
+
+	private LockReleaseNotifier(DataFactory dataFactory)
+	{
+		this.dataFactory = dataFactory;
+	}
+
+	static LockReleaseNotifier forDataFactory(DataFactory dataFactory)
+	{
+		return notifiers.computeIfAbsent(dataFactory, LockReleaseNotifier::new);
+	}
+
+	// Channel the releases of a lock are published to, on the shard of the lock
+	static String channelOf(String lockName)
+	{
+		return CHANNEL_PREFIX + LockScripts.tagOf(lockName);
+	}
+
+	// Subscription shared by the waiters of a lock
+	private static final class Channel
+	{
+		private Subscription subscription;
+		private int waiters;
+		// releases heard so far, guarded by this
+		private long releases;
+
+		private synchronized void released()
+		{
+			releases++;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Thread waiting for a lock. Releases published once it was created wake it,
+	 * including the ones published before it waits.
+	 */
+	final class Waiter implements AutoCloseable
+	{
+		private final String channel;
+		private final Channel c;
+		private long seen;
+
+		private Waiter(String channel, Channel c)
+		{
+			this.channel = channel;
+			this.c = c;
+			synchronized (c)
+			{
+				seen = c.releases;
+			}
+		}
+
+		/**
+		 * @param maxMSec time to wait for a release
+		 * @return true if the lock was released, false if the time ran out
+		 */
+		boolean await(long maxMSec) throws InterruptedException
+		{
+			long end = System.currentTimeMillis() + maxMSec;
+			synchronized (c)
+			{
+				long left = maxMSec;
+				while ((c.releases == seen) && (left > 0))
+				{
+					c.wait(left);
+					left = end - System.currentTimeMillis();
+				}
+				boolean released = c.releases != seen;
+				seen = c.releases;
+				return released;
+			}
+		}
+
+		@Override
+		public void close()
+		{
+			Subscription s = null;
+			synchronized (channels)
+			{
+				if (--c.waiters == 0)
+				{
+					channels.remove(channel);
+					s = c.subscription;
+				}
+			}
+			if (s != null)
+			{
+				s.close();
+			}
+		}
+	}
+
+	/**
+	 * Starts listening to the releases of a lock.
+	 *
+	 * @return the waiter, to be closed once the lock was taken or given up
+	 * @throws RuntimeException if the channel can't be subscribed to
+	 */
+	Waiter register(String lockName)
+	{
+		String channel = channelOf(lockName);
+		synchronized (channels)
+		{
+			Channel c = channels.get(channel);
+			if (c == null)
+			{
+				Channel n = new Channel();
+				n.subscription = dataFactory.subscribe(channel, (ch, message) -> n.released());
+				CustomLogger.debug("Listening to the releases of lock " + lockName);
+				channels.put(channel, n);
+				c = n;
+			}
+			c.waiters++;
+			return new Waiter(channel, c);
+		}
+	}
+}
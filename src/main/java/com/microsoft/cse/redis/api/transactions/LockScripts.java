@@ -0,0 +1,33 @@
+package com.microsoft.cse.redis.api.transactions;
+
+import com.microsoft.cse.redis.api.helper.ConsistentHashRing;
+import com.microsoft.cse.redis.api.redis.data.LuaScript;
+
+// Scripts taking, renewing and releasing the locks atomically, and the names
+// of the keys and channels that go with a lock
+final class LockScripts
+{
+	static final LuaScript ACQUIRE = LuaScript.fromResource("/lua/lock_acquire.lua");
+	static final LuaScript RENEW = LuaScript.fromResource("/lua/lock_renew.lua");
+	static final LuaScript RELEASE = LuaScript.fromResource("/lua/lock_release.lua");
+
+	private LockScripts()
+	{
+	}
+
+	/**
+	 * The lock name as a {hashtag}, so that names built from it are placed on the
+	 * shard of the lock. A name that has a tag already is kept as is.
+	 */
+	static String tagOf(String lockName)
+	{
+		String tagged = "{" + lockName + "}";
+		return ConsistentHashRing.hashTag(tagged).equals(ConsistentHashRing.hashTag(lockName)) ? tagged : lockName;
+	}
+
+	// Counter the fencing tokens of a lock are taken from
+	static String fenceKeyOf(String lockName)
+	{
+		return tagOf(lockName) + ":fence";
+	}
+}
@@ -0,0 +1,133 @@
+package com.microsoft.cse.redis.api.transactions;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.microsoft.cse.redis.api.exceptions.TransactionException;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+import com.microsoft.cse.redis.api.redis.data.TransactionCallback;
+import com.microsoft.cse.redis.api.redis.data.TransactionResult;
+
+/**
+ * Optimistic (WATCH/MULTI/EXEC) transactions with retries. A read-modify-write
+ * costs a single round trip for the reads and one for the MULTI/EXEC, instead
+ * of taking a DistributedLocker around it. When a watched key is changed by
+ * someone else the transaction is run again, after a randomized exponential
+ * backoff, up to TRANSACTION_MAX_RETRIES times.
+ */
+public class OptimisticTransaction
+{
+	private static final LongAdder attempts = new LongAdder();
+	private static final LongAdder commits = new LongAdder();
+	private static final LongAdder conflicts = new LongAdder();
+	private static final LongAdder exhausted = new LongAdder();
+
+	private OptimisticTransaction()
+	{
+	}
+
+	/**
+	 * Runs the transaction until it commits without conflict.
+	 *
+	 * @param callback  reads the watched keys and queues the writes; it can be run
+	 *                  more than once
+	 * @param watchKeys keys whose change by someone else makes the transaction run
+	 *                  again
+	 * @return the value returned by the callback on the attempt that committed
+	 * @throws TransactionException if it still conflicted after all the retries
+	 */
+	public static <T> T execute(TransactionCallback<T> callback, String... watchKeys) throws TransactionException
+	{
+		return execute(Arrays.asList(watchKeys), callback, ConfigurationManager.getTransactionMaxRetries());
+	}
+
+	public static <T> T execute(List<String> watchKeys, TransactionCallback<T> callback, int maxRetries)
+			throws TransactionException
+	{
+		DataFactory d = DataFactory.getDataFactory(ConnectionFactory.getConnection());
+
+		for (int attempt = 0; attempt <= maxRetries; attempt++)
+		{
+			attempts.increment();
+			TransactionResult<T> result = d.executeTransaction(watchKeys, callback);
+
+			if (!result.isConflict())
+			{
+				commits.increment();
+				return result.getValue();
+			}
+
+			conflicts.increment();
+			CustomLogger.debug("Transaction on " + watchKeys + " conflicted, attempt " + (attempt + 1));
+
+			if (attempt < maxRetries)
+			{
+				backoff(attempt);
+			}
+		}
+
+		exhausted.increment();
+		throw new TransactionException(
+				"Transaction on " + watchKeys + " still conflicted after " + (maxRetries + 1) + " attempts");
+	}
+
+	// Full jitter: a random wait up to an exponentially growing, capped bound, so
+	// the writers that conflicted don't all come back at the same time
+	private static void backoff(int attempt) throws TransactionException
+	{
+		long base = ConfigurationManager.getTransactionBackoffMSec();
+		long bound = Math.min(ConfigurationManager.getTransactionMaxBackoffMSec(), base << Math.min(attempt, 20));
+		try
+		{
+			Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new TransactionException("Interrupted while waiting to retry a transaction", e);
+		}
+	}
+
+	// Number of attempts, including retries
+	public static long getAttempts()
+	{
+		return attempts.sum();
+	}
+
+	// Attempts that committed or were discarded by the callback
+	public static long getCommits()
+	{
+		return commits.sum();
+	}
+
+	// Attempts aborted because a watched key changed
+	public static long getConflicts()
+	{
+		return conflicts.sum();
+	}
+
+	// Transactions that gave up after all their retries
+	public static long getExhausted()
+	{
+		return exhausted.sum();
+	}
+
+	// Share of the attempts that conflicted, between 0 and 1
+	public static double getConflictRate()
+	{
+		long a = attempts.sum();
+		return (a == 0) ? 0 : (double) conflicts.sum() / a;
+	}
+
+	public static void resetMetrics()
+	{
+		attempts.reset();
+		commits.reset();
+		conflicts.reset();
+		exhausted.reset();
+	}
+}
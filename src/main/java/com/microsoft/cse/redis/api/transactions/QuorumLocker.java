@@ -0,0 +1,282 @@
+package com.microsoft.cse.redis.api.transactions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.microsoft.cse.redis.api.exceptions.LockerException;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.CustomLogger;
+import com.microsoft.cse.redis.api.helper.Deadline;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory.conn_type;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+/**
+ * Lock held on a majority of independent Redis endpoints, so that it survives
+ * the loss of a minority of them (the Redlock algorithm). The lock is taken on
+ * every endpoint at once, each endpoint given LOCK_QUORUM_ENDPOINT_TIMEOUT_MSEC
+ * to answer, and it is held if a majority took it and time is left of its TTL,
+ * once the time spent taking it and the drift of the clocks are deducted. Failed
+ * attempts are released everywhere and tried again after a random delay.
+ *
+ * The endpoints are the ones listed in HOST_NAME and HOST_PORT, each one with a
+ * pool of its own. The owner must stop using what the lock guards once
+ * getValidityMSec() reaches 0, unless renew() extended it.
+ */
+public class QuorumLocker
+{
+	// Endpoint connections, created once and shared by the lockers
+	private static final Map<String, DataFactory> endpoints = new ConcurrentHashMap<>();
+
+	private static volatile ExecutorService executor;
+
+	private final String lockName;
+	private final String ownerName;
+	private final List<DataFactory> nodes;
+	private final int quorum;
+
+	// System.nanoTime() after which the lock may be held by another owner
+	private volatile long validUntil;
+
+	/**
+	 * Initializes the locker on the endpoints of HOST_NAME and HOST_PORT.
+	 *
+	 * @param lockName  name of the lock
+	 * @param ownerName owner's name of the lock, unique among the owners
+	 */
+	public QuorumLocker(String lockName, String ownerName)
+	{
+		this(lockName, ownerName, getEndpoints(ConfigurationManager.getHostname(),
+				ConfigurationManager.getPortnumber()));
+	}
+
+	/**
+	 * Initializes the locker on the given endpoints.
+	 *
+	 * @param nodes data factories of independent endpoints, none of them a replica
+	 *              of another
+	 */
+	public QuorumLocker(String lockName, String ownerName, List<DataFactory> nodes)
+	{
+		if (nodes.isEmpty())
+		{
+			throw new IllegalArgumentException("Quorum lock " + lockName + " has no endpoint");
+		}
+
+		this.lockName = lockName;
+		this.ownerName = ownerName;
+		this.nodes = new ArrayList<>(nodes);
+		this.quorum = (nodes.size() / 2) + 1;
+	}
+
+	// Data factories of the endpoints, each one with connections of its own
+	public static List<DataFactory> getEndpoints(String[] hosts, int[] ports)
+	{
+		if (hosts.length != ports.length)
+		{
+			throw new IllegalArgumentException("The number of hosts do not mathch the number of ports");
+		}
+
+		List<DataFactory> l = new ArrayList<>();
+		for (int i = 0; i < hosts.length; i++)
+		{
+			String host = hosts[i];
+			int port = ports[i];
+			l.add(endpoints.computeIfAbsent(host + ":" + port,
+					e -> DataFactory.newDataFactory(ConnectionFactory.newInstance("lock-quorum-" + e,
+							conn_type.JEDISPOOL, new String[] { host }, new int[] { port },
+							ConfigurationManager.getPassword(), ConfigurationManager.getLockQuorumPoolSize(), 1,
+							ConfigurationManager.getConnectionTimeoutMSec()))));
+		}
+		return l;
+	}
+
+	private static ExecutorService getExecutor()
+	{
+		if (executor == null)
+		{
+			synchronized (QuorumLocker.class)
+			{
+				if (executor == null)
+				{
+					executor = Executors.newCachedThreadPool(r ->
+					{
+						Thread t = new Thread(r, "redis-quorum-lock");
+						t.setDaemon(true);
+						return t;
+					});
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Gets the lock on a majority of the endpoints, trying again until the timeout.
+	 *
+	 * @param timeout time-out in milliseconds, 0 to wait indefinitely
+	 * @return true if the lock was acquired, false if it timed out
+	 */
+	public boolean lock(long timeout) throws LockerException
+	{
+		long start = System.currentTimeMillis();
+		long ttl = ConfigurationManager.getLockTTL() * 1000L;
+
+		while (true)
+		{
+			long attemptStart = System.nanoTime();
+			int taken = count(n -> ((Number) n.eval(LockScripts.ACQUIRE,
+					Arrays.asList(lockName, LockScripts.fenceKeyOf(lockName)),
+					Arrays.asList(ownerName, Long.toString(ttl)))).longValue() > 0);
+
+			long validity = ttl - elapsedMSec(attemptStart) - drift(ttl);
+			if ((taken >= quorum) && (validity > 0))
+			{
+				validUntil = attemptStart + TimeUnit.MILLISECONDS.toNanos(ttl - drift(ttl));
+				CustomLogger.info(ownerName + " acquired lock on " + lockName + " on " + taken + " of "
+						+ nodes.size() + " endpoints, valid for " + validity + "ms");
+				return true;
+			}
+
+			// a minority, or too late: give back what was taken
+			CustomLogger.debug("Lock " + lockName + " taken on " + taken + " of " + nodes.size()
+					+ " endpoints for " + ownerName + ", trying again");
+			release();
+
+			long elapsed = System.currentTimeMillis() - start;
+			if ((timeout > 0) && (elapsed >= timeout))
+			{
+				CustomLogger.debug("Timeout expired for lock " + lockName + ", owner " + ownerName + "...");
+				return false;
+			}
+
+			long wait = 1 + ThreadLocalRandom.current().nextLong(Math.max(1,
+					ConfigurationManager.getLockQuorumRetryDelayMSec()));
+			if (timeout > 0)
+			{
+				wait = Math.min(wait, timeout - elapsed);
+			}
+			try
+			{
+				Thread.sleep(wait);
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new LockerException("Lock wait was interrupted.");
+			}
+		}
+	}
+
+	/**
+	 * Extends the lock by the lock TTL on the endpoints where this owner still
+	 * holds it.
+	 *
+	 * @return true if it is still held on a majority with time left, false if it
+	 *         was lost
+	 */
+	public boolean renew()
+	{
+		long ttl = ConfigurationManager.getLockTTL() * 1000L;
+		long attemptStart = System.nanoTime();
+		int renewed = count(n -> ((Number) ((List<?>) n.eval(LockScripts.RENEW,
+				Collections.singletonList(lockName), Arrays.asList(Long.toString(ttl), ownerName))).get(0))
+						.longValue() > 0);
+
+		if ((renewed >= quorum) && ((ttl - elapsedMSec(attemptStart) - drift(ttl)) > 0))
+		{
+			validUntil = attemptStart + TimeUnit.MILLISECONDS.toNanos(ttl - drift(ttl));
+			return true;
+		}
+		validUntil = System.nanoTime();
+		return false;
+	}
+
+	// Releases the lock on every endpoint at once, whether it was taken there or not
+	public void unlock()
+	{
+		validUntil = System.nanoTime();
+		release();
+	}
+
+	// Time left before the lock may be taken by another owner, 0 if it is not held
+	public long getValidityMSec()
+	{
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(validUntil - System.nanoTime()));
+	}
+
+	private void release()
+	{
+		count(n -> ((Number) n.eval(LockScripts.RELEASE, Collections.singletonList(lockName),
+				Arrays.asList(ownerName, ""))).longValue() > 0);
+	}
+
+	/**
+	 * Runs the call on every endpoint at once, each one bounded by the endpoint
+	 * timeout, so a dead endpoint costs the timeout and not a connection timeout.
+	 *
+	 * @return the number of endpoints where the call returned true
+	 */
+	private int count(Function<DataFactory, Boolean> call)
+	{
+		long timeout = ConfigurationManager.getLockQuorumEndpointTimeoutMSec();
+		List<Future<Boolean>> futures = new ArrayList<>();
+		for (DataFactory n : nodes)
+		{
+			futures.add(getExecutor().submit(() ->
+			{
+				Deadline.Scope scope = Deadline.start(timeout, TimeUnit.MILLISECONDS);
+				try
+				{
+					return call.apply(n);
+				} finally
+				{
+					scope.close();
+				}
+			}));
+		}
+
+		long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		int ok = 0;
+		for (Future<Boolean> f : futures)
+		{
+			try
+			{
+				if (f.get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS))
+				{
+					ok++;
+				}
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			} catch (Exception e)
+			{
+				// an endpoint down or too slow counts against the quorum
+				f.cancel(true);
+				CustomLogger.debug("Quorum lock " + lockName + " failed on an endpoint: " + e.getMessage());
+			}
+		}
+		return ok;
+	}
+
+	// Clocks of the endpoints may run apart by 1% of the TTL, plus 2ms
+	private static long drift(long ttl)
+	{
+		return (ttl / 100) + 2;
+	}
+
+	private static long elapsedMSec(long startNanos)
+	{
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+}
@@ -0,0 +1,22 @@
+-- Takes the lock KEYS[1] for the owner ARGV[1], for ARGV[2] milliseconds, if
+-- it is free or already the owner's. Every owner taking the lock gets the next
+-- value of the counter KEYS[2] as fencing token, so whatever the lock guards
+-- can reject the writes of an owner that lost it.
+-- Returns the fencing token of the owner, 0 if another owner holds the lock
+local holder = redis.call('GET', KEYS[1])
+if holder == ARGV[1] then
+	redis.call('PEXPIRE', KEYS[1], ARGV[2])
+	local token = tonumber(redis.call('GET', KEYS[2]))
+	if token then
+		return token
+	end
+	return redis.call('INCR', KEYS[2])
+end
+
+if holder then
+	return 0
+end
+
+local token = redis.call('INCR', KEYS[2])
+redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+return token
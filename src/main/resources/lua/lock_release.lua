@@ -0,0 +1,12 @@
+-- Deletes the lock KEYS[1] if it is still held by the owner ARGV[1], and tells
+-- the waiters on the channel ARGV[2] unless it is empty.
+-- Returns 1 if the lock was released, 0 if the owner did not hold it
+if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+	return 0
+end
+
+redis.call('DEL', KEYS[1])
+if ARGV[2] ~= '' then
+	redis.call('PUBLISH', ARGV[2], ARGV[1])
+end
+return 1
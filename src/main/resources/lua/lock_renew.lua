@@ -0,0 +1,12 @@
+-- Extends the locks KEYS[i] to ARGV[1] milliseconds, each one only if it is
+-- still held by its owner ARGV[i + 1].
+-- Returns, for each lock, 1 if it was extended, 0 if it was lost
+local renewed = {}
+for i = 1, #KEYS do
+	if redis.call('GET', KEYS[i]) == ARGV[i + 1] then
+		renewed[i] = redis.call('PEXPIRE', KEYS[i], ARGV[1])
+	else
+		renewed[i] = 0
+	end
+end
+return renewed
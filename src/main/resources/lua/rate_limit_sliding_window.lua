@@ -0,0 +1,41 @@
+-- Sliding window log: grants between ARGV[4] and ARGV[3] permits if fewer than
+-- ARGV[1] were granted in the last ARGV[2] milliseconds. Every permit is an
+-- entry of the sorted set at KEYS[1], scored with its time, named after the
+-- call ARGV[5]. Time is read from Redis, so the clocks of the clients don't
+-- matter.
+-- Returns {permits granted, msec until the minimum is available, 0 if granted}
+if redis.replicate_commands then
+	pcall(redis.replicate_commands)
+end
+
+local permits = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+local minimum = tonumber(ARGV[4])
+
+local t = redis.call('TIME')
+local now = tonumber(t[1]) * 1000 + tonumber(t[2]) / 1000
+
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window)
+local free = permits - redis.call('ZCARD', KEYS[1])
+
+local granted = 0
+if free >= minimum then
+	granted = math.min(requested, free)
+	for i = 1, granted do
+		redis.call('ZADD', KEYS[1], now, ARGV[5] .. ':' .. i)
+	end
+end
+redis.call('PEXPIRE', KEYS[1], math.ceil(window) + 1000)
+
+local wait = 0
+if granted == 0 then
+	-- the entry whose expiry frees the minimum
+	local oldest = redis.call('ZRANGE', KEYS[1], minimum - free - 1, minimum - free - 1, 'WITHSCORES')
+	if oldest[2] then
+		wait = math.max(1, math.ceil(tonumber(oldest[2]) + window - now))
+	else
+		wait = math.ceil(window)
+	end
+end
+return { granted, wait }
@@ -0,0 +1,38 @@
+-- Token bucket: takes between ARGV[4] and ARGV[3] permits out of the bucket
+-- at KEYS[1], which refills ARGV[1] permits every ARGV[2] milliseconds, up to
+-- ARGV[1]. Time is read from Redis, so the clocks of the clients don't matter.
+-- Returns {permits granted, msec until the minimum is available, 0 if granted}
+if redis.replicate_commands then
+	pcall(redis.replicate_commands)
+end
+
+local permits = tonumber(ARGV[1])
+local period = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+local minimum = tonumber(ARGV[4])
+
+local t = redis.call('TIME')
+local now = tonumber(t[1]) * 1000 + tonumber(t[2]) / 1000
+
+local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(state[1]) or permits
+local ts = tonumber(state[2]) or now
+if now > ts then
+	tokens = math.min(permits, tokens + ((now - ts) * permits / period))
+	ts = now
+end
+
+local granted = 0
+if tokens >= minimum then
+	granted = math.min(requested, math.floor(tokens))
+	tokens = tokens - granted
+end
+
+redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts))
+redis.call('PEXPIRE', KEYS[1], math.ceil(period) + 1000)
+
+local wait = 0
+if granted == 0 then
+	wait = math.ceil((minimum - tokens) * period / permits)
+end
+return { granted, wait }
@@ -0,0 +1,157 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.bulk.BulkLoadResult;
+import com.microsoft.cse.redis.api.bulk.BulkLoader;
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.StringHelper;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory.conn_type;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+/**
+ * Tests for bulk loading files.
+ */
+public class BulkLoaderTest
+{
+	public static DataFactory d;
+
+	@BeforeAll
+	static void setup()
+	{
+		TestBase.setup();
+
+		d = DataFactory.getDataFactory(TestBase.getConnectionFactory());
+	}
+
+	@AfterAll
+	static void tearDown()
+	{
+		TestBase.teardown();
+	}
+
+	/**
+	 * Loads a CSV file with every record type, a quoted value and a bad line, and
+	 * reads the values back.
+	 */
+	@Test
+	public void shouldLoadCsv() throws Exception
+	{
+		String k = StringHelper.getSaltString();
+		List<String> lines = new ArrayList<>();
+		lines.add("# type,key,arguments");
+		for (int i = 0; i < 1000; i++)
+		{
+			lines.add("set," + k + i + ",value" + i);
+		}
+		lines.add("set," + k + "q,\"a, \"\"quoted\"\" value\"");
+		lines.add("hset," + k + "h,f1,v1");
+		lines.add("hset," + k + "h,f2,v2");
+		lines.add("sadd," + k + "s,m1");
+		lines.add("zadd," + k + "z,1.5,m1");
+		lines.add("lpush," + k + "l,v1");
+		lines.add("bogus," + k + "b,v1");
+
+		Path file = Files.createTempFile("bulk", ".csv");
+		try
+		{
+			Files.write(file, lines, StandardCharsets.UTF_8);
+			BulkLoadResult r = new BulkLoader().load(file, BulkLoader.Format.CSV);
+
+			assertEquals(1006, r.getRecords());
+			assertEquals(1, r.getSkipped());
+			assertEquals(0, r.getErrors());
+			assertEquals(r.getCommands(), r.getReplies());
+			assertTrue(r.isDone());
+
+			assertEquals("value999", d.get(k + "999"));
+			assertEquals("a, \"quoted\" value", d.get(k + "q"));
+			assertEquals("v2", d.getMultimap(k + "h").get("f2"));
+			assertEquals(Set.of("m1"), d.getUnsortedSet(k + "s"));
+			assertEquals(Set.of("m1"), d.getZSet(k + "z", 0L, 2L));
+			assertEquals(List.of("v1"), d.getMultivalue(k + "l"));
+		} finally
+		{
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Loads an NDJSON file, including escapes and a record with its own TTL.
+	 */
+	@Test
+	public void shouldLoadNdjson() throws Exception
+	{
+		String k = StringHelper.getSaltString();
+		List<String> lines = new ArrayList<>();
+		lines.add("{\"type\":\"set\",\"key\":\"" + k + "a\",\"value\":\"line\\nbreak \\u00e9\"}");
+		lines.add("{\"type\":\"set\",\"key\":\"" + k + "t\",\"value\":\"v\",\"ttl\":100}");
+		lines.add("{\"type\":\"zadd\",\"key\":\"" + k + "z\",\"score\":3,\"member\":\"m\"}");
+		lines.add("{\"type\":\"hset\",\"key\":\"" + k + "h\",\"field\":\"f\"}");
+
+		Path file = Files.createTempFile("bulk", ".ndjson");
+		try
+		{
+			Files.write(file, lines, StandardCharsets.UTF_8);
+			BulkLoadResult r = new BulkLoader().load(file, BulkLoader.Format.NDJSON);
+
+			assertEquals(3, r.getRecords());
+			assertEquals(1, r.getSkipped());
+			assertEquals(0, r.getErrors());
+			assertEquals("line\nbreak \u00e9", d.get(k + "a"));
+			assertEquals("v", d.get(k + "t"));
+			assertEquals(Set.of("m"), d.getZSet(k + "z", 0L, 5L));
+		} finally
+		{
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Loads a file with the connections of a named data source instead of the
+	 * process wide ones.
+	 */
+	@Test
+	public void shouldLoadOnDataSource() throws Exception
+	{
+		String k = StringHelper.getSaltString();
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < 100; i++)
+		{
+			lines.add("set," + k + i + ",value" + i);
+		}
+
+		ConnectionFactory bulk = ConnectionFactory.newInstance("bulk", conn_type.JEDISPOOL,
+				ConfigurationManager.getHostname(), ConfigurationManager.getPortnumber(),
+				ConfigurationManager.getPassword(), 2, 1, ConfigurationManager.getConnectionTimeoutMSec());
+		Path file = Files.createTempFile("bulk", ".csv");
+		try
+		{
+			Files.write(file, lines, StandardCharsets.UTF_8);
+			DataFactory data = DataFactory.newDataFactory(bulk);
+			BulkLoadResult r = new BulkLoader(data).load(file, BulkLoader.Format.CSV);
+
+			assertEquals(100, r.getRecords());
+			assertEquals(0, r.getErrors());
+			assertEquals("value99", data.get(k + "99"));
+			assertEquals("value0", d.get(k + "0"));
+		} finally
+		{
+			Files.delete(file);
+			bulk.shutdown();
+		}
+	}
+}
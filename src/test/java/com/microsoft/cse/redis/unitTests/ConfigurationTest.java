@@ -0,0 +1,83 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.helper.Configuration;
+
+/**
+ * Tests for the configuration snapshot. These tests don't need Redis.
+ */
+public class ConfigurationTest
+{
+	private static Properties valid()
+	{
+		Properties p = new Properties();
+		p.setProperty("REDIS_CONNECTION_TIMEOUT", "5000");
+		p.setProperty("REDIS_CONNECTION_CHECK", "100");
+		p.setProperty("REDIS_DATA_EXPIRE", "60");
+		p.setProperty("LOCK_TTL", "1");
+		p.setProperty("LOCK_PULL_TIME", "30");
+		p.setProperty("LOCK_RENEW_TIME", "800");
+		return p;
+	}
+
+	/**
+	 * Values must be parsed once into the snapshot, with defaults for the ones that
+	 * are not set.
+	 */
+	@Test
+	public void shouldParseSnapshot()
+	{
+		Properties p = valid();
+		p.setProperty("SCATTER_CHUNK_SIZE", " 250");
+		p.setProperty("POOL_SIZE", "12");
+		p.setProperty("SERVER_SIDE_SSL", "TRUE");
+		Configuration c = Configuration.fromProperties(p);
+
+		assertEquals(60, c.getRedisDataExpireSec(), "Required value was not parsed.");
+		assertEquals(800, c.getLockRenewTime(), "Required value was not parsed.");
+		assertEquals(12, c.getPoolSize(), "Pool size was not parsed.");
+		assertTrue(c.getServerSideSSLEnabled(), "SSL flag was not parsed.");
+		assertEquals(250, c.getInt("SCATTER_CHUNK_SIZE", 5000), "Optional value was not parsed.");
+		assertEquals(8, c.getInt("SCATTER_PARALLELISM", 8), "Default was not used.");
+
+		p.setProperty("SCATTER_PARALLELISM", "many");
+		Configuration bad = Configuration.fromProperties(p);
+		assertThrows(NumberFormatException.class, () -> bad.getInt("SCATTER_PARALLELISM", 8));
+
+		assertFalse(c.hasSameValues(Configuration.fromProperties(valid())), "Different values compared equal.");
+		assertTrue(Configuration.fromProperties(valid()).hasSameValues(Configuration.fromProperties(valid())),
+				"Same values compared different.");
+	}
+
+	/**
+	 * A snapshot missing a required value, or with an invalid one, must be
+	 * rejected.
+	 */
+	@Test
+	public void shouldRejectInvalidConfiguration()
+	{
+		Properties missing = valid();
+		missing.remove("LOCK_TTL");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> Configuration.fromProperties(missing));
+		assertTrue(e.getMessage().contains("LOCK_TTL"), "Missing value was not reported.");
+
+		Properties negative = valid();
+		negative.setProperty("REDIS_DATA_EXPIRE", "-1");
+		assertThrows(IllegalArgumentException.class, () -> Configuration.fromProperties(negative));
+
+		Properties pool = valid();
+		pool.setProperty("POOL_SIZE", "lots");
+		assertThrows(IllegalArgumentException.class, () -> Configuration.fromProperties(pool));
+
+		assertEquals(0, Configuration.fromProperties(valid()).getPoolSize(), "Pool size has no default.");
+	}
+}
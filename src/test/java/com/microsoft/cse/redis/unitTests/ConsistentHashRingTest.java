@@ -0,0 +1,167 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.helper.ClusterEndpoints;
+import com.microsoft.cse.redis.api.helper.Configuration;
+import com.microsoft.cse.redis.api.helper.ConsistentHashRing;
+import com.microsoft.cse.redis.api.redis.connection.jedis.ShardedConnection;
+
+/**
+ * Tests for the consistent hash ring used by the sharded connection. These
+ * tests don't need Redis.
+ */
+public class ConsistentHashRingTest
+{
+	private static final int KEYS = 10000;
+
+	private static ConsistentHashRing<String> ring(int nodes)
+	{
+		ConsistentHashRing<String> r = new ConsistentHashRing<>(160);
+		for (int i = 0; i < nodes; i++)
+		{
+			r.add("redis" + i + ":6379", "redis" + i);
+		}
+		return r;
+	}
+
+	private static Configuration endpoints(String hosts, String ports)
+	{
+		Properties p = new Properties();
+		p.setProperty("REDIS_CONNECTION_TIMEOUT", "5000");
+		p.setProperty("REDIS_CONNECTION_CHECK", "100");
+		p.setProperty("REDIS_DATA_EXPIRE", "60");
+		p.setProperty("LOCK_TTL", "1");
+		p.setProperty("LOCK_PULL_TIME", "30");
+		p.setProperty("LOCK_RENEW_TIME", "800");
+		p.setProperty("HOST_NAME", hosts);
+		p.setProperty("HOST_PORT", ports);
+		return Configuration.fromProperties(p);
+	}
+
+	private static Map<String, String> owners(ConsistentHashRing<String> r)
+	{
+		Map<String, String> owners = new HashMap<>();
+		for (int i = 0; i < KEYS; i++)
+		{
+			owners.put("key" + i, r.get("key" + i));
+		}
+		return owners;
+	}
+
+	/**
+	 * Keys sharing a hashtag must be on the same node.
+	 */
+	@Test
+	public void shouldKeepHashtagsTogether()
+	{
+		ConsistentHashRing<String> r = ring(5);
+
+		for (int i = 0; i < 100; i++)
+		{
+			String node = r.get("{user" + i + "}:profile");
+			assertEquals(node, r.get("{user" + i + "}:orders"), "Hashtag keys were split over nodes.");
+			assertEquals(node, r.get("user" + i), "Hashtag was not hashed alone.");
+		}
+	}
+
+	/**
+	 * Adding a node must only move the keys it takes over, roughly 1/N of them, and
+	 * spread the keys evenly.
+	 */
+	@Test
+	public void shouldMoveFewKeysWhenAddingNode()
+	{
+		ConsistentHashRing<String> r = ring(4);
+		Map<String, String> before = owners(r);
+
+		r.add("redis4:6379", "redis4");
+		Map<String, String> after = owners(r);
+
+		int moved = 0;
+		Map<String, Integer> counts = new HashMap<>();
+		for (String key : before.keySet())
+		{
+			if (!before.get(key).equals(after.get(key)))
+			{
+				moved++;
+				assertEquals("redis4", after.get(key), "A key moved between two old nodes.");
+			}
+			counts.merge(after.get(key), 1, Integer::sum);
+		}
+
+		assertTrue(moved < (KEYS * 0.3), "Too many keys moved: " + moved);
+		for (int c : counts.values())
+		{
+			assertTrue((c > (KEYS / 5) * 0.6) && (c < (KEYS / 5) * 1.4), "Keys are not evenly spread: " + counts);
+		}
+	}
+
+	/**
+	 * Removing a node must only move the keys it owned.
+	 */
+	@Test
+	public void shouldOnlyMoveKeysOfRemovedNode()
+	{
+		ConsistentHashRing<String> r = ring(5);
+		Map<String, String> before = owners(r);
+
+		r.remove("redis2:6379");
+		Map<String, String> after = owners(r);
+
+		for (String key : before.keySet())
+		{
+			if (!before.get(key).equals("redis2"))
+			{
+				assertEquals(before.get(key), after.get(key), "A key of a remaining node moved.");
+			}
+		}
+	}
+
+	/**
+	 * An endpoint added to HOST_NAME/HOST_PORT by a reloaded configuration must
+	 * become a shard of the sharded connection, and only take keys over from the
+	 * others.
+	 */
+	@Test
+	public void shouldRebalanceShardsOnEndpointChange()
+	{
+		Configuration before = endpoints("localhost, localhost", "7001, 7002");
+		Configuration after = endpoints("localhost, localhost, localhost", "7001, 7002, 7003");
+		ShardedConnection c = new ShardedConnection(ClusterEndpoints.newClusterEndpoints(
+				new String[] { "localhost", "localhost" }, new int[] { 7001, 7002 }), 2, null, 100);
+
+		try
+		{
+			Map<String, String> owners = new HashMap<>();
+			for (int i = 0; i < KEYS; i++)
+			{
+				owners.put("key" + i, c.getShardName("key" + i));
+			}
+
+			c.onConfigurationChange(before, after);
+
+			assertEquals(3, c.getShardNames().size(), "Added endpoint did not become a shard.");
+			int moved = 0;
+			for (String key : owners.keySet())
+			{
+				if (!owners.get(key).equals(c.getShardName(key)))
+				{
+					moved++;
+					assertEquals("localhost:7003", c.getShardName(key), "A key moved between two old shards.");
+				}
+			}
+			assertTrue(moved > 0, "No key moved to the added shard.");
+		} finally
+		{
+			c.shutdown();
+		}
+	}
+}
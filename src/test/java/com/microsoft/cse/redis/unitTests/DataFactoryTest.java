@@ -1,24 +1,45 @@
 package com.microsoft.cse.redis.unitTests;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
 import com.microsoft.cse.redis.api.helper.StringHelper;
+import com.microsoft.cse.redis.api.pubsub.Subscription;
+import com.microsoft.cse.redis.api.redis.data.AutoPipelinedPooledRedisDataFactory;
 import com.microsoft.cse.redis.api.redis.data.DataFactory;
+import com.microsoft.cse.redis.api.redis.data.IdGenerator;
+import com.microsoft.cse.redis.api.redis.data.PipelineFlushResult;
+import com.microsoft.cse.redis.api.redis.data.PipelineResult;
+import com.microsoft.cse.redis.api.redis.data.PipelinedPooledRedisDataFactory;
+import com.microsoft.cse.redis.api.transactions.Common;
 
 /**
  * This test class tests the DataFactory for the API, and primarily focuses on
@@ -648,6 +669,320 @@ class DataFactoryTest
 		assertTrue(!res.contains(arr[0]));
 	}
 
+	/**
+	 * Tests the batched set/get/delete methods, which use a single pipeline for all
+	 * the keys.
+	 */
+	@Test
+	void shouldSetGetAndDeleteBatched()
+	{
+
+		// create map of random keys/values
+		Map<String, String> v = new HashMap<String, String>();
+		for (int i = 0; i < 5; i++)
+		{
+			v.put(StringHelper.getSaltString(), StringHelper.getSaltString());
+		}
+
+		// test setting all the values in one batch
+		d.set(v);
+
+		// assert that every key was set and retrieved properly
+		assertEquals(v, d.get(v.keySet()), "Batched set/get did not operate correctly.");
+
+		// test deleting all the keys in one batch
+		Map<String, Long> deleted = d.delete(v.keySet());
+
+		// assert every key was deleted
+		for (String k : v.keySet())
+		{
+			assertEquals(1, deleted.get(k), "Batched delete did not delete key " + k);
+			assertNull(d.get(k), "Batched delete did not remove key " + k);
+		}
+	}
+
+	/**
+	 * Tests batched calls bigger than SCATTER_CHUNK_SIZE, which are split in
+	 * chunks pipelined in parallel.
+	 */
+	@Test
+	void shouldScatterLargeBatches()
+	{
+
+		// create more keys than fit in two chunks
+		Map<String, String> v = new HashMap<String, String>();
+		String prefix = StringHelper.getSaltString();
+		for (int i = 0; i < ((ConfigurationManager.getScatterChunkSize() * 2) + 1); i++)
+		{
+			v.put(prefix + i, Integer.toString(i));
+		}
+
+		d.set(v);
+
+		// assert every chunk was set and the results were merged
+		assertEquals(v, d.get(v.keySet()), "Scattered set/get did not operate correctly.");
+
+		Map<String, Long> deleted = d.delete(v.keySet());
+		assertEquals(v.size(), deleted.size(), "Scattered delete did not return every key.");
+		assertTrue(deleted.values().stream().allMatch(l -> l == 1), "Scattered delete missed keys.");
+	}
+
+	/**
+	 * Tests that a blob bigger than a few chunks is streamed in and out of Redis,
+	 * replaced and deleted.
+	 */
+	@Test
+	void shouldStreamBlob() throws IOException
+	{
+
+		String k = StringHelper.getSaltString();
+
+		// random payload of three and a half chunks
+		byte[] payload = new byte[(ConfigurationManager.getBlobChunkSize() * 7) / 2];
+		new Random().nextBytes(payload);
+
+		try (OutputStream out = d.openBlobOutput(k))
+		{
+			out.write(payload);
+		}
+
+		// assert the blob reads back byte for byte
+		try (InputStream in = d.openBlobInput(k))
+		{
+			assertArrayEquals(payload, in.readAllBytes(), "Blob was not read back correctly.");
+		}
+
+		// replace it with a smaller one
+		byte[] smaller = Arrays.copyOf(payload, 10);
+		try (OutputStream out = d.openBlobOutput(k))
+		{
+			out.write(smaller);
+		}
+		try (InputStream in = d.openBlobInput(k))
+		{
+			assertArrayEquals(smaller, in.readAllBytes(), "Blob was not replaced.");
+		}
+
+		// assert it is gone once deleted
+		assertEquals(1, d.deleteBlob(k));
+		assertNull(d.openBlobInput(k), "Deleted blob can still be opened.");
+	}
+
+	/**
+	 * Tests that subscribers get the messages published to their channel, or to a
+	 * channel matching their pattern, in order, and none after unsubscribing.
+	 */
+	@Test
+	void shouldPublishToSubscribers() throws Exception
+	{
+		String channel = StringHelper.getSaltString();
+		List<String> received = new CopyOnWriteArrayList<>();
+		List<String> matched = new CopyOnWriteArrayList<>();
+
+		try (Subscription s = d.subscribe(channel, (c, m) -> received.add(m));
+				Subscription p = d.psubscribe(channel + "*", (c, m) -> matched.add(m)))
+		{
+			assertEquals(channel, s.getChannel(), "Subscription is not to the channel.");
+			assertTrue(p.isPattern(), "Pattern subscription is not a pattern.");
+
+			// subscribing is asynchronous, wait until the server counts both
+			long deadline = System.currentTimeMillis() + 5000;
+			while ((d.publish(channel, "ping") < 2) && (System.currentTimeMillis() < deadline))
+			{
+				Thread.sleep(10);
+			}
+
+			List<String> expected = new ArrayList<>();
+			for (int i = 0; i < 10; i++)
+			{
+				expected.add(String.valueOf(i));
+				d.publish(channel, String.valueOf(i));
+			}
+
+			deadline = System.currentTimeMillis() + 5000;
+			while ((matched.size() < 11) && (System.currentTimeMillis() < deadline))
+			{
+				Thread.sleep(10);
+			}
+
+			received.removeIf("ping"::equals);
+			matched.removeIf("ping"::equals);
+			assertEquals(expected, received);
+			assertEquals(expected, matched);
+		}
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((d.publish(channel, "gone") > 0) && (System.currentTimeMillis() < deadline))
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(0, d.publish(channel, "gone"));
+	}
+
+	/**
+	 * Tests that a pipeline scope bigger than PIPELINE_MAX_COMMANDS is flushed
+	 * automatically, and that every flush is reported to the listener.
+	 */
+	@Test
+	void shouldAutoFlushPipeline()
+	{
+
+		// keep track of the flushes reported by the pipeline
+		List<PipelineFlushResult> flushes = new ArrayList<>();
+
+		// queue enough commands to go over the limit twice
+		int count = (ConfigurationManager.getPipelineMaxCommands() * 2) + 1;
+		String k = StringHelper.getSaltString();
+
+		Common.startPipeline(flushes::add);
+		for (int i = 0; i < count; i++)
+		{
+			d.set(k + i, Integer.toString(i));
+		}
+		Common.endPipeline();
+
+		// two automatic flushes and the one done by endPipeline
+		assertEquals(3, flushes.size(), "Pipeline was not flushed automatically.");
+		assertTrue(flushes.get(2).isLast(), "Last flush was not reported as such.");
+
+		// every command was sent, and none of them failed
+		assertEquals(count, flushes.stream().mapToInt(PipelineFlushResult::getCommandCount).sum());
+		assertTrue(flushes.stream().noneMatch(PipelineFlushResult::hasFailures), "Pipelined set failed.");
+
+		// assert the values made it to Redis
+		assertEquals("0", d.get(k + 0), "Value of the first flush was not set.");
+		assertEquals(Integer.toString(count - 1), d.get(k + (count - 1)), "Value of the last flush was not set.");
+	}
+
+	/**
+	 * Tests that pipelined reads and writes return their real replies once the
+	 * pipeline is flushed.
+	 */
+	@Test
+	void shouldResolvePipelinedResults()
+	{
+
+		PipelinedPooledRedisDataFactory p = (PipelinedPooledRedisDataFactory) d;
+
+		// get random strings (for keys and value)
+		String k = StringHelper.getSaltString();
+		String missing = StringHelper.getSaltString();
+		String v = StringHelper.getSaltString();
+
+		// queue a write, a read of the same key and a delete of a key that is not set
+		p.startPipeline();
+		p.set(k, v);
+		PipelineResult<String> read = p.getPipelined(k);
+		PipelineResult<Long> deleted = p.deletePipelined(missing);
+
+		// nothing was sent yet
+		assertFalse(read.isDone(), "Pipelined read was resolved before the flush.");
+
+		p.endPipeline();
+
+		// assert the read saw the queued write, and the delete reports the real reply
+		assertEquals(v, read.get(), "Pipelined read did not return the queued value.");
+		assertEquals(0L, deleted.get(), "Pipelined delete did not return the real reply.");
+	}
+
+	/**
+	 * Tests that batch calls inside a pipeline scope are queued on its pipeline, in
+	 * order with the commands queued before them.
+	 */
+	@Test
+	void shouldQueueBatchesInPipeline()
+	{
+
+		PipelinedPooledRedisDataFactory p = (PipelinedPooledRedisDataFactory) d;
+
+		// get random strings (for keys and values)
+		String k1 = StringHelper.getSaltString();
+		String k2 = StringHelper.getSaltString();
+		Map<String, String> values = new HashMap<>();
+		values.put(k1, StringHelper.getSaltString());
+		values.put(k2, StringHelper.getSaltString());
+
+		// queue a batch write, then read it and delete it as batches
+		p.startPipeline();
+		p.set(values);
+		Map<String, String> read = p.get(values.keySet());
+		Map<String, Long> deleted = p.delete(values.keySet());
+		p.endPipeline();
+
+		// assert the read saw the queued writes, and the keys are gone
+		assertEquals(values, read, "Batch read did not see the queued batch write.");
+		assertEquals(2, deleted.size(), "Batch delete did not reply for every key.");
+		assertNull(d.get(k1), "Key of the batch delete is still set.");
+		assertNull(d.get(k2), "Key of the batch delete is still set.");
+	}
+
+	/**
+	 * Tests that commands issued concurrently by many threads through the
+	 * auto-pipelined data factory each get their own reply.
+	 */
+	@Test
+	void shouldCoalesceConcurrentCommands() throws Exception
+	{
+
+		AutoPipelinedPooledRedisDataFactory a = new AutoPipelinedPooledRedisDataFactory(
+				TestBase.getConnectionFactory());
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+
+		try
+		{
+			// every task sets its own key and reads it back
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 200; i++)
+			{
+				String k = StringHelper.getSaltString();
+				String v = StringHelper.getSaltString();
+				results.add(executor.submit(() -> {
+					a.set(k, v);
+					return v.equals(a.get(k)) && (a.delete(k) == 1);
+				}));
+			}
+
+			// assert no thread got the reply of another
+			for (Future<Boolean> f : results)
+			{
+				assertTrue(f.get(), "Auto-pipelined command returned the wrong reply.");
+			}
+		} finally
+		{
+			executor.shutdown();
+			a.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that an auto-pipelined command that can't be encoded fails its own
+	 * caller only, and the commands batched with it are still written.
+	 */
+	@Test
+	void shouldFailOnlyUnencodableCommand() throws Exception
+	{
+
+		AutoPipelinedPooledRedisDataFactory a = new AutoPipelinedPooledRedisDataFactory(
+				TestBase.getConnectionFactory());
+
+		try
+		{
+			// queue a set with a null value next to a valid one
+			String k = StringHelper.getSaltString();
+			String v = StringHelper.getSaltString();
+			CompletableFuture<String> invalid = a.setAsync(StringHelper.getSaltString(), null);
+			CompletableFuture<String> valid = a.setAsync(k, v);
+
+			// assert only the invalid command failed
+			assertThrows(ExecutionException.class, invalid::get, "Command with a null value did not fail.");
+			assertEquals("OK", valid.get(), "Command batched with an invalid one failed.");
+			assertEquals(v, a.get(k), "Command batched with an invalid one was not written.");
+		} finally
+		{
+			a.shutdown();
+		}
+	}
+
 	/*** Exception/Edge-case Testing ***/
 
 	/**
@@ -718,6 +1053,66 @@ class DataFactoryTest
 		assertNotEquals(g1, g2);
 	}
 
+	/**
+	 * Tests that leased blocks skip the IDs other clients may have taken above the
+	 * counter, and that those clients never get an ID of a block.
+	 */
+	@Test
+	void shouldSkipIdsAboveCounter()
+	{
+		String key = StringHelper.getSaltString();
+		long counter = d.increment(key, 5);
+		IdGenerator g = new IdGenerator(d, key, 10, 1000);
+
+		// a client adding up to 999 to the counter before and after the lease
+		long id = g.next();
+		assertTrue(id > (counter + 999), "Block overlaps the IDs taken above the counter: " + id);
+		assertTrue(d.increment(key, 1) > (id + 9), "Counter was left inside the block.");
+		d.delete(key);
+	}
+
+	/**
+	 * Tests that IDs taken from several threads and two generators on the same
+	 * key are all unique, with one lease per block.
+	 */
+	@Test
+	void shouldGenerateUniqueIds() throws Exception
+	{
+		String key = StringHelper.getSaltString();
+		IdGenerator g1 = new IdGenerator(d, key, 100);
+		IdGenerator g2 = new IdGenerator(d, key, 100);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<List<Long>>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++)
+			{
+				IdGenerator g = ((i % 2) == 0) ? g1 : g2;
+				results.add(executor.submit(() -> {
+					List<Long> l = new ArrayList<>();
+					for (int j = 0; j < 2500; j++)
+					{
+						l.add(g.next());
+					}
+					return l;
+				}));
+			}
+
+			Set<Long> ids = new HashSet<>();
+			for (Future<List<Long>> f : results)
+			{
+				ids.addAll(f.get());
+			}
+			assertEquals(20000, ids.size());
+			assertTrue((g1.getLeases() + g2.getLeases()) <= 202);
+		} finally
+		{
+			executor.shutdown();
+			d.delete(key);
+		}
+	}
+
 	/**
 	 * Shuts down the connection to Redis.
 	 */
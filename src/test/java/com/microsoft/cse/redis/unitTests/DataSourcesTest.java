@@ -0,0 +1,128 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.helper.ClusterEndpoints;
+import com.microsoft.cse.redis.api.helper.Configuration;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory.conn_type;
+import com.microsoft.cse.redis.api.redis.data.DataSources;
+
+/**
+ * Tests for the named data sources. These tests don't need Redis.
+ */
+public class DataSourcesTest
+{
+	private static Configuration config()
+	{
+		Properties p = new Properties();
+		p.setProperty("DATASOURCES", "Bulk, reports");
+		p.setProperty("DATASOURCE_BULK_KEY_PREFIXES", "reindex:, export:");
+		p.setProperty("DATASOURCE_BULK_RETRY_ATTEMPTS", "1");
+		p.setProperty("DATASOURCE_REPORTS_KEY_PREFIXES", "reindex:daily:");
+		p.setProperty("DATASOURCE_REPORTS_HOST_NAME", "reports-redis");
+		p.setProperty("DATASOURCE_REPORTS_HOST_PORT", "6390");
+		return config(p);
+	}
+
+	// Configuration of the required settings and the given ones
+	private static Configuration config(Properties p)
+	{
+		p.setProperty("REDIS_CONNECTION_TIMEOUT", "5000");
+		p.setProperty("REDIS_CONNECTION_CHECK", "100");
+		p.setProperty("REDIS_DATA_EXPIRE", "60");
+		p.setProperty("LOCK_TTL", "1");
+		p.setProperty("LOCK_PULL_TIME", "30");
+		p.setProperty("LOCK_RENEW_TIME", "800");
+		p.setProperty("RETRY_ATTEMPTS", "3");
+		return Configuration.fromProperties(p);
+	}
+
+	/**
+	 * Keys must go to the data source with the longest prefix they start with, and
+	 * the others to none.
+	 */
+	@Test
+	public void shouldRouteKeysByPrefix()
+	{
+		Configuration c = config();
+
+		assertEquals(Arrays.asList("bulk", "reports"), DataSources.getNames(c), "Data sources were not listed.");
+		assertEquals("bulk", DataSources.sourceOf(c, "reindex:42"), "Key was not routed by its prefix.");
+		assertEquals("bulk", DataSources.sourceOf(c, "export:1"), "Second prefix was not used.");
+		assertEquals("reports", DataSources.sourceOf(c, "reindex:daily:7"), "Longest prefix did not win.");
+		assertNull(DataSources.sourceOf(c, "session:1"), "Key without a prefix was routed.");
+	}
+
+	/**
+	 * Settings of a data source must override the shared ones, which apply to
+	 * what it does not set.
+	 */
+	@Test
+	public void shouldFallBackToSharedSettings()
+	{
+		Configuration c = config();
+
+		assertEquals(1, c.getInt("bulk", "RETRY_ATTEMPTS", 5), "Data source setting was not used.");
+		assertEquals(3, c.getInt("reports", "RETRY_ATTEMPTS", 5), "Shared setting was not used.");
+		assertEquals(10, c.getInt("reports", "POOL_SIZE", 10), "Default was not used.");
+		assertEquals(3, c.getInt(null, "RETRY_ATTEMPTS", 5), "Default data source did not use the shared setting.");
+	}
+
+	/**
+	 * A data source with its own DATASOURCE_&lt;NAME&gt;_HOST_NAME must connect
+	 * to its own endpoints, not to the ones shared by the process.
+	 */
+	@Test
+	public void shouldNotShareEndpointsOfDataSource()
+	{
+		Configuration c = config();
+		ClusterEndpoints shared = ClusterEndpoints.clusterEndpoints(new String[] { "localhost" }, new int[] { 6379 });
+
+		ConnectionFactory reports = ConnectionFactory.newInstance("reports", conn_type.JEDISSHARDED,
+				new String[] { c.getProperty("reports", "HOST_NAME") },
+				new int[] { c.getInt("reports", "HOST_PORT", 6379) }, null, 2, 1, 100);
+		try
+		{
+			assertNotSame(shared, reports.getClusterEndpoints(), "Data source used the shared endpoints.");
+			assertEquals(1, reports.getClusterEndpoints().getAll().size(), "Data source has extra endpoints.");
+			assertEquals("reports-redis", reports.getClusterEndpoints().getAll().get(0).getHost(),
+					"Data source did not use its own host.");
+			assertEquals(6390, reports.getClusterEndpoints().getAll().get(0).getPort(),
+					"Data source did not use its own port.");
+		} finally
+		{
+			reports.shutdown();
+		}
+	}
+
+	/**
+	 * With a shared POOL_SIZE set, the data sources listed in DATASOURCES must
+	 * fall back to it, while connections made under another name, such as the
+	 * quorum lock endpoints, must keep the size they were created with unless
+	 * they have one of their own.
+	 */
+	@Test
+	public void shouldNotGiveSharedPoolSizeToOtherConnections()
+	{
+		Properties p = new Properties();
+		p.setProperty("POOL_SIZE", "30");
+		p.setProperty("DATASOURCES", "Bulk");
+		p.setProperty("DATASOURCE_LOCK-QUORUM-REDIS2:6379_POOL_SIZE", "4");
+		Configuration c = config(p);
+
+		assertEquals(30, DataSources.getPoolSize(c, null), "Shared POOL_SIZE was not used.");
+		assertEquals(30, DataSources.getPoolSize(c, "bulk"), "Data source did not fall back to POOL_SIZE.");
+		assertEquals(0, DataSources.getPoolSize(c, "lock-quorum-redis1:6379"),
+				"Quorum endpoint was given the shared POOL_SIZE.");
+		assertEquals(4, DataSources.getPoolSize(c, "lock-quorum-redis2:6379"),
+				"Quorum endpoint did not use its own POOL_SIZE.");
+	}
+}
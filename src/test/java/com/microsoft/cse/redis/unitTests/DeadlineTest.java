@@ -0,0 +1,115 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.exceptions.DeadlineExceededException;
+import com.microsoft.cse.redis.api.helper.ClusterEndpoints;
+import com.microsoft.cse.redis.api.helper.Deadline;
+import com.microsoft.cse.redis.api.redis.connection.jedis.ShardedConnection;
+import com.microsoft.cse.redis.api.redis.data.HedgedReads;
+
+/**
+ * Tests for the per-call deadlines. These tests don't need Redis.
+ */
+public class DeadlineTest
+{
+	/**
+	 * A nested scope must never extend the enclosing deadline, and closing it must
+	 * put the enclosing one back.
+	 */
+	@Test
+	public void shouldNestScopes()
+	{
+		assertNull(Deadline.current(), "Deadline set before any scope.");
+
+		try (Deadline.Scope outer = Deadline.start(100, TimeUnit.MILLISECONDS))
+		{
+			try (Deadline.Scope inner = Deadline.start(10, TimeUnit.SECONDS))
+			{
+				assertSame(inner.getDeadline(), Deadline.current(), "Nested scope was not attached.");
+				assertTrue(Deadline.current().remainingMillis() <= 100, "Nested scope extended the deadline.");
+			}
+			try (Deadline.Scope inner = Deadline.start(1, TimeUnit.MILLISECONDS))
+			{
+				assertSame(inner.getDeadline(), Deadline.current(), "Nested scope was not attached.");
+				assertTrue(Deadline.current().remainingMillis() <= 1, "Nested scope was not shortened.");
+			}
+			assertSame(outer.getDeadline(), Deadline.current(), "Enclosing deadline was not restored.");
+		}
+		assertNull(Deadline.current(), "Deadline left on the thread.");
+	}
+
+	/**
+	 * Once the deadline has passed, calls must fail right away, and a read that is
+	 * still running must not be waited for.
+	 */
+	@Test
+	public void shouldFailFastWhenExpired() throws InterruptedException
+	{
+		try (Deadline.Scope s = Deadline.start(1, TimeUnit.MILLISECONDS))
+		{
+			Thread.sleep(5);
+			assertTrue(s.getDeadline().isExpired(), "Deadline did not expire.");
+			assertThrows(DeadlineExceededException.class, () -> s.getDeadline().check("in test"));
+		}
+
+		HedgedReads h = new HedgedReads(0, 0, 0);
+		long start = System.nanoTime();
+		try (Deadline.Scope s = Deadline.start(50, TimeUnit.MILLISECONDS))
+		{
+			assertSame(s.getDeadline(), Deadline.current(), "Read does not run under the deadline.");
+			assertThrows(DeadlineExceededException.class, () -> h.read(() -> (Closeable) () -> {
+			}, () -> null, c ->
+			{
+				try
+				{
+					Thread.sleep(2000);
+				} catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				return "late";
+			}));
+		}
+		long elapsedMSec = (System.nanoTime() - start) / 1000000;
+		assertTrue(elapsedMSec < 1000, "Read outlasted its deadline: " + elapsedMSec + "ms");
+	}
+
+	/**
+	 * Opening a new pooled connection must give up when the deadline passes, not
+	 * after the full connection timeout. The server never answers, so the
+	 * connection hangs in its AUTH the way it would on an unreachable host.
+	 */
+	@Test
+	public void shouldBoundNewConnectionsByDeadline() throws IOException
+	{
+		try (ServerSocket silent = new ServerSocket(0, 10, InetAddress.getLoopbackAddress()))
+		{
+			ShardedConnection c = new ShardedConnection(ClusterEndpoints.newClusterEndpoints(
+					new String[] { silent.getInetAddress().getHostAddress() }, new int[] { silent.getLocalPort() }),
+					1, "secret", 5000);
+			long start = System.nanoTime();
+			try (Deadline.Scope s = Deadline.start(50, TimeUnit.MILLISECONDS))
+			{
+				assertThrows(DeadlineExceededException.class, () -> c.getConnection("key"));
+				assertSame(s.getDeadline(), Deadline.current(), "Deadline was replaced by the borrow.");
+			} finally
+			{
+				c.shutdown();
+			}
+			long elapsedMSec = (System.nanoTime() - start) / 1000000;
+			assertTrue(elapsedMSec < 1000, "Connecting outlasted its deadline: " + elapsedMSec + "ms");
+		}
+	}
+}
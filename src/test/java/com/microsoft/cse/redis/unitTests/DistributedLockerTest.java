@@ -1,9 +1,12 @@
 package com.microsoft.cse.redis.unitTests;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -12,7 +15,10 @@ import org.junit.jupiter.api.Test;
 import com.microsoft.cse.redis.api.exceptions.LockerException;
 import com.microsoft.cse.redis.api.helper.ConfigurationManager;
 import com.microsoft.cse.redis.api.helper.StringHelper;
+import com.microsoft.cse.redis.api.redis.connection.ConnectionFactory;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
 import com.microsoft.cse.redis.api.transactions.DistributedLocker;
+import com.microsoft.cse.redis.api.transactions.LeaseManager;
 
 /**
  * Tests for distributed locker mechanism.
@@ -183,4 +189,90 @@ public class DistributedLockerTest
 		assertEquals(true, secondaryAcquired, "Secondary owner could not acquired the lock.");
 	}
 
-}
\ No newline at end of file
+	/**
+	 * A waiting owner must get the lock as soon as it is released, without waiting
+	 * for its next try.
+	 */
+	@Test
+	public void getReleasedLockNotified() throws Exception
+	{
+		String primaryOwnerName = StringHelper.getSaltString();
+		String secondaryOwnerName = StringHelper.getSaltString();
+		String lockName = StringHelper.getSaltString();
+
+		DistributedLocker primaryOwnerLocker = new DistributedLocker(lockName, primaryOwnerName);
+		assertEquals(true, primaryOwnerLocker.lock(false, 500), "Primary owner could not acquired the lock.");
+
+		// Secondary owner waits for the lock on another thread
+		DistributedLocker secondaryOwnerLocker = new DistributedLocker(lockName, secondaryOwnerName);
+		CompletableFuture<Long> acquiredAt = CompletableFuture.supplyAsync(() ->
+		{
+			try
+			{
+				return secondaryOwnerLocker.lock(false, 5000) ? Instant.now().toEpochMilli() : -1L;
+			} catch (LockerException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		});
+
+		Thread.sleep(300);
+		assertEquals(false, acquiredAt.isDone(), "Secondary owner did not wait for the lock.");
+		long releasedAt = Instant.now().toEpochMilli();
+		primaryOwnerLocker.unlock();
+
+		long wait = acquiredAt.get(5, TimeUnit.SECONDS) - releasedAt;
+		assertTrue((wait >= 0) && (wait < ConfigurationManager.getLockNotifyFallbackMSec() / 2),
+				"Secondary owner was not woken by the release: " + wait + "ms");
+	}
+
+	/**
+	 * A fixed lock must be renewed by the shared lease manager until it is released.
+	 */
+	@Test
+	public void renewFixedLockUntilReleased() throws Exception
+	{
+		String ownerName = StringHelper.getSaltString();
+		String lockName = StringHelper.getSaltString();
+		LeaseManager leases = LeaseManager
+				.forDataFactory(DataFactory.getDataFactory(ConnectionFactory.getConnection()));
+
+		DistributedLocker locker = new DistributedLocker(lockName, ownerName);
+		assertEquals(true, locker.lock(true, 500), "Could not acquired the lock.");
+		int active = leases.getActive();
+		long renewals = leases.getRenewals();
+
+		Thread.sleep((ConfigurationManager.getLockTTL() * 1000) + 500);
+		assertTrue(leases.getRenewals() > renewals, "Fixed lock was not renewed.");
+
+		locker.unlock();
+		assertEquals(active - 1, leases.getActive(), "Fixed lock still renewed after unlock.");
+	}
+
+	/**
+	 * Every new owner must get a larger fencing token, and a former owner must
+	 * neither release nor renew the lock of the next one.
+	 */
+	@Test
+	public void fenceFormerOwners() throws Exception
+	{
+		String lockName = StringHelper.getSaltString();
+		DistributedLocker primaryOwnerLocker = new DistributedLocker(lockName, StringHelper.getSaltString());
+		DistributedLocker secondaryOwnerLocker = new DistributedLocker(lockName, StringHelper.getSaltString());
+
+		assertEquals(true, primaryOwnerLocker.lock(false, 500), "Primary owner could not acquired the lock.");
+		long primaryToken = primaryOwnerLocker.getFencingToken();
+		assertEquals(true, primaryOwnerLocker.lock(false, 500), "Primary owner could not acquired its own lock.");
+		assertEquals(primaryToken, primaryOwnerLocker.getFencingToken(), "Owner got a new token for its lock.");
+		primaryOwnerLocker.unlock();
+
+		assertEquals(true, secondaryOwnerLocker.lock(false, 500), "Secondary owner could not acquired the lock.");
+		assertTrue(secondaryOwnerLocker.getFencingToken() > primaryToken, "Fencing token did not increase.");
+
+		primaryOwnerLocker.unlock();
+		assertEquals(false, primaryOwnerLocker.renew(), "Former owner renewed the lock.");
+		assertEquals(false, new DistributedLocker(lockName, StringHelper.getSaltString()).lock(false, 100),
+				"Former owner released the lock of the next one.");
+		assertEquals(true, secondaryOwnerLocker.renew(), "Owner could not renew its lock.");
+	}
+}
@@ -0,0 +1,69 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.helper.StringHelper;
+import com.microsoft.cse.redis.api.transactions.DistributedRateLimiter;
+import com.microsoft.cse.redis.api.transactions.DistributedRateLimiter.Algorithm;
+
+/**
+ * Tests for the distributed rate limiter.
+ */
+public class DistributedRateLimiterTest
+{
+	@BeforeAll
+	static void setup()
+	{
+		TestBase.setup();
+	}
+
+	@AfterAll
+	static void tearDown()
+	{
+		TestBase.teardown();
+	}
+
+	/**
+	 * Two limiters of the same name must share the permits, with either algorithm.
+	 */
+	@Test
+	public void shouldLimitRate()
+	{
+		for (Algorithm a : Algorithm.values())
+		{
+			String name = StringHelper.getSaltString();
+			DistributedRateLimiter first = new DistributedRateLimiter(name, a, 5, 60000);
+			DistributedRateLimiter second = new DistributedRateLimiter(name, a, 5, 60000);
+
+			assertTrue(first.tryAcquire(3), a + " refused free permits.");
+			assertTrue(second.tryAcquire(2), a + " refused free permits.");
+			assertFalse(first.tryAcquire(), a + " granted more permits than the rate.");
+			assertFalse(second.tryAcquire(), a + " granted more permits than the rate.");
+		}
+	}
+
+	/**
+	 * Permits taken in batches must save round trips, without going over the rate.
+	 */
+	@Test
+	public void shouldBatchLocally() throws InterruptedException
+	{
+		String name = StringHelper.getSaltString();
+		DistributedRateLimiter limiter = new DistributedRateLimiter(name, Algorithm.SLIDING_WINDOW, 10, 60000);
+		limiter.setLocalBatch(5, 60000);
+
+		for (int i = 0; i < 10; i++)
+		{
+			assertTrue(limiter.tryAcquire(), "Refused permit " + i + ".");
+		}
+		assertFalse(limiter.tryAcquire(), "Granted more permits than the rate.");
+		assertEquals(3, limiter.getRoundTrips(), "Permits were not taken in batches.");
+		assertFalse(limiter.acquire(1, 50), "Waited past the rate.");
+	}
+}
@@ -0,0 +1,79 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import com.microsoft.cse.redis.api.exceptions.DeadlineExceededException;
+import com.microsoft.cse.redis.api.exceptions.FailureClassifier;
+import com.microsoft.cse.redis.api.exceptions.FailureClassifier.Kind;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+/**
+ * Tests for the sorting of failures into transport, busy and data errors. These
+ * tests don't need Redis.
+ */
+public class FailureClassifierTest
+{
+	/**
+	 * Failures must be sorted by what they say about the connection, also when
+	 * they are wrapped by Spring.
+	 */
+	@Test
+	public void shouldClassifyFailures()
+	{
+		Exception wrongType = new JedisDataException(
+				"WRONGTYPE Operation against a key holding the wrong kind of value");
+
+		assertEquals(Kind.TRANSPORT,
+				FailureClassifier.classify(new JedisConnectionException(new SocketTimeoutException("Read timed out"))),
+				"Broken connection was not a transport failure.");
+		assertEquals(Kind.TRANSPORT,
+				FailureClassifier.classify(new RedisConnectionFailureException("Cannot get Jedis connection")),
+				"Spring connection failure was not a transport failure.");
+		assertEquals(Kind.BUSY, FailureClassifier.classify(new JedisDataException("LOADING Redis is loading")),
+				"LOADING was not a busy failure.");
+		assertEquals(Kind.BUSY, FailureClassifier.classify(new JedisExhaustedPoolException("Pool exhausted")),
+				"Exhausted pool was not a busy failure.");
+		assertEquals(Kind.DATA, FailureClassifier.classify(wrongType), "WRONGTYPE was not a data error.");
+		assertEquals(Kind.DATA,
+				FailureClassifier.classify(new JedisDataException("BUSYKEY Target key name already exists.")),
+				"BUSYKEY was not a data error.");
+		assertEquals(Kind.DATA,
+				FailureClassifier.classify(new JedisDataException("BUSYGROUP Consumer Group name already exists")),
+				"BUSYGROUP was not a data error.");
+		assertEquals(Kind.DATA,
+				FailureClassifier.classify(new InvalidDataAccessApiUsageException(wrongType.getMessage(), wrongType)),
+				"Wrapped WRONGTYPE was not a data error.");
+		assertEquals(Kind.DEADLINE, FailureClassifier.classify(new DeadlineExceededException("Deadline exceeded")),
+				"Deadline was not recognized.");
+		assertEquals(Kind.UNKNOWN, FailureClassifier.classify(new IllegalArgumentException()),
+				"Bug was classified.");
+	}
+
+	/**
+	 * Only failures that show the command was never sent may count as not run.
+	 */
+	@Test
+	public void shouldTellCommandsNotRun()
+	{
+		assertTrue(FailureClassifier.wasNotRun(
+				new JedisConnectionException("Failed connecting", new ConnectException("Connection refused"))),
+				"Refused connection ran the command.");
+		assertTrue(FailureClassifier.wasNotRun(new JedisDataException("BUSY Redis is busy running a script")),
+				"BUSY ran the command.");
+		assertFalse(FailureClassifier.wasNotRun(new JedisConnectionException(new SocketTimeoutException())),
+				"Read timeout may have run the command.");
+		assertFalse(FailureClassifier.wasNotRun(new JedisDataException("WRONGTYPE")), "Data error was not run.");
+	}
+}
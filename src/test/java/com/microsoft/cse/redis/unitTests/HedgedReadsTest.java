@@ -0,0 +1,105 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Closeable;
+
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.redis.data.HedgedReads;
+
+/**
+ * Tests for the hedging of slow reads, using fake connections. These tests
+ * don't need Redis.
+ */
+public class HedgedReadsTest
+{
+	private static final class FakeConnection implements Closeable
+	{
+		private final String name;
+		private final long delayMSec;
+
+		FakeConnection(String name, long delayMSec)
+		{
+			this.name = name;
+			this.delayMSec = delayMSec;
+		}
+
+		String read()
+		{
+			if (delayMSec > 0)
+			{
+				try
+				{
+					Thread.sleep(delayMSec);
+				} catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			return name;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	private static void warmUp(HedgedReads h)
+	{
+		for (int i = 0; i < 1000; i++)
+		{
+			h.read(() -> new FakeConnection("primary", 0), () -> new FakeConnection("hedge", 0),
+					FakeConnection::read);
+		}
+	}
+
+	/**
+	 * A read much slower than the recent ones must be answered by its duplicate.
+	 */
+	@Test
+	public void shouldHedgeSlowReads()
+	{
+		HedgedReads h = new HedgedReads(90, 0, 100);
+		warmUp(h);
+		assertTrue(h.getDelayMicros() >= 0, "No hedging delay after the warm up.");
+		long wins = h.getHedgeWins();
+
+		long start = System.nanoTime();
+		String value = h.read(() -> new FakeConnection("primary", 2000), () -> new FakeConnection("hedge", 0),
+				FakeConnection::read);
+		long elapsedMSec = (System.nanoTime() - start) / 1000000;
+
+		assertEquals("hedge", value, "Slow read was not hedged.");
+		assertTrue(elapsedMSec < 1000, "Hedged read waited for the slow connection: " + elapsedMSec + "ms");
+		assertEquals(wins + 1, h.getHedgeWins(), "Hedge win was not counted.");
+		assertEquals(1001, h.getReads(), "Reads were not counted.");
+	}
+
+	/**
+	 * Without budget slow reads are not hedged, and failures reach the caller.
+	 */
+	@Test
+	public void shouldRespectBudget()
+	{
+		HedgedReads h = new HedgedReads(90, 0, 0);
+		warmUp(h);
+		for (int i = 0; i < 20; i++)
+		{
+			h.read(() -> new FakeConnection("primary", 5), () -> new FakeConnection("hedge", 0),
+					FakeConnection::read);
+		}
+
+		assertTrue(h.getHedges() <= 10, "Hedges went over the saved up budget: " + h.getHedges());
+		assertTrue(h.getRejected() >= 10, "Slow reads over the budget were not rejected.");
+
+		assertThrows(IllegalArgumentException.class,
+				() -> h.read(() -> new FakeConnection("primary", 0), () -> new FakeConnection("hedge", 0), c ->
+				{
+					throw new IllegalArgumentException("WRONGTYPE");
+				}));
+	}
+}
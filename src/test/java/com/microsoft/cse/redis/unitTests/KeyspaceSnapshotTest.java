@@ -0,0 +1,86 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.bulk.BulkLoadResult;
+import com.microsoft.cse.redis.api.bulk.KeyspaceSnapshot;
+import com.microsoft.cse.redis.api.helper.StringHelper;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+
+/**
+ * Tests for keyspace exports and restores.
+ */
+public class KeyspaceSnapshotTest
+{
+	public static DataFactory d;
+
+	@BeforeAll
+	static void setup()
+	{
+		TestBase.setup();
+
+		d = DataFactory.getDataFactory(TestBase.getConnectionFactory());
+	}
+
+	@AfterAll
+	static void tearDown()
+	{
+		TestBase.teardown();
+	}
+
+	/**
+	 * Exports the keys under a prefix, deletes them and restores them from the
+	 * file, values and hashes included.
+	 */
+	@Test
+	public void shouldExportAndRestore() throws Exception
+	{
+		String prefix = StringHelper.getSaltString() + ":";
+		for (int i = 0; i < 2500; i++)
+		{
+			d.set(prefix + i, "value" + i);
+		}
+		Map<String, String> hash = new HashMap<>();
+		hash.put("f1", "v1");
+		hash.put("f2", "v2");
+		d.setMultimap(prefix + "h", hash);
+
+		Path file = Files.createTempFile("snapshot", ".bin");
+		try
+		{
+			KeyspaceSnapshot s = new KeyspaceSnapshot();
+			BulkLoadResult exported = s.export(file, prefix + "*");
+			assertEquals(2501, exported.getRecords());
+
+			for (int i = 0; i < 2500; i++)
+			{
+				d.delete(prefix + i);
+			}
+			d.delete(prefix + "h");
+			assertNull(d.get(prefix + "7"));
+
+			BulkLoadResult restored = s.restore(file, false);
+			assertEquals(2501, restored.getRecords());
+			assertEquals(0, restored.getErrors());
+			assertEquals("value7", d.get(prefix + "7"));
+			assertEquals(hash, d.getMultimap(prefix + "h"));
+
+			// the keys exist now, so without replace every one is refused
+			assertEquals(2501, s.restore(file, false).getErrors());
+			assertEquals(0, s.restore(file, true).getErrors());
+		} finally
+		{
+			Files.delete(file);
+		}
+	}
+}
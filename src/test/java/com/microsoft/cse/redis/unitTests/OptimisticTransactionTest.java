@@ -0,0 +1,101 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.helper.StringHelper;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+import com.microsoft.cse.redis.api.redis.data.TransactionResult;
+import com.microsoft.cse.redis.api.transactions.OptimisticTransaction;
+
+/**
+ * Tests for optimistic (WATCH/MULTI/EXEC) transactions.
+ */
+public class OptimisticTransactionTest
+{
+	public static DataFactory d;
+
+	@BeforeAll
+	static void setup()
+	{
+		TestBase.setup();
+
+		d = DataFactory.getDataFactory(TestBase.getConnectionFactory());
+	}
+
+	@AfterAll
+	static void tearDown()
+	{
+		TestBase.teardown();
+	}
+
+	/**
+	 * Increments a counter from many threads at once, with a read-modify-write
+	 * transaction. No increment may be lost.
+	 */
+	@Test
+	public void shouldNotLoseConcurrentUpdates() throws Exception
+	{
+		String key = StringHelper.getSaltString();
+		d.set(key, "0");
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 50; i++)
+			{
+				results.add(executor.submit(() -> OptimisticTransaction.execute(tx -> {
+					String next = Integer.toString(Integer.parseInt(tx.get(key)) + 1);
+					tx.set(key, next);
+					return next;
+				}, key)));
+			}
+			for (Future<String> f : results)
+			{
+				f.get();
+			}
+		} finally
+		{
+			executor.shutdown();
+		}
+
+		assertEquals("50", d.get(key), "Concurrent transactions lost an update.");
+		assertTrue(OptimisticTransaction.getAttempts() >= 50, "Transaction attempts were not counted.");
+	}
+
+	/**
+	 * Changes a watched key between the read and the EXEC of a transaction, which
+	 * must then report a conflict and not apply its writes.
+	 */
+	@Test
+	public void shouldReportConflict()
+	{
+		String key = StringHelper.getSaltString();
+		String other = StringHelper.getSaltString();
+		d.set(key, "before");
+
+		TransactionResult<String> result = d.executeTransaction(Collections.singletonList(key), tx -> {
+			String v = tx.get(key);
+			// someone else changes the watched key
+			d.set(key, "changed");
+			tx.set(other, v);
+			return v;
+		});
+
+		assertTrue(result.isConflict(), "Transaction did not detect the change of a watched key.");
+		assertNull(d.get(other), "Conflicting transaction applied its writes.");
+	}
+}
@@ -0,0 +1,85 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.helper.StringHelper;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+import com.microsoft.cse.redis.api.transactions.QuorumLocker;
+
+/**
+ * Tests for the quorum locks, on the endpoints of the configuration.
+ */
+public class QuorumLockerTest
+{
+	@BeforeAll
+	static void setup()
+	{
+		TestBase.setup();
+	}
+
+	@AfterAll
+	static void tearDown()
+	{
+		TestBase.teardown();
+	}
+
+	/**
+	 * A lock held on the quorum must be refused to another owner until it is
+	 * released.
+	 */
+	@Test
+	public void getQuorumLock() throws Exception
+	{
+		String lockName = StringHelper.getSaltString();
+		QuorumLocker primaryOwnerLocker = new QuorumLocker(lockName, StringHelper.getSaltString());
+		QuorumLocker secondaryOwnerLocker = new QuorumLocker(lockName, StringHelper.getSaltString());
+
+		assertEquals(true, primaryOwnerLocker.lock(500), "Primary owner could not acquired the lock.");
+		long validity = primaryOwnerLocker.getValidityMSec();
+		assertTrue((validity > 0) && (validity < (ConfigurationManager.getLockTTL() * 1000)),
+				"Validity does not account for the drift: " + validity + "ms");
+
+		assertEquals(false, secondaryOwnerLocker.lock(200), "Secondary owner acquired a held lock.");
+		assertEquals(true, primaryOwnerLocker.renew(), "Primary owner could not renew the lock.");
+
+		primaryOwnerLocker.unlock();
+		assertEquals(0, primaryOwnerLocker.getValidityMSec(), "Released lock still valid.");
+		assertEquals(true, secondaryOwnerLocker.lock(500), "Secondary owner could not acquired a released lock.");
+		assertEquals(false, primaryOwnerLocker.renew(), "Former owner renewed the lock.");
+		secondaryOwnerLocker.unlock();
+	}
+
+	/**
+	 * An unreachable endpoint must not keep the lock from being taken on the
+	 * others, nor hold the call for longer than the endpoint timeout.
+	 */
+	@Test
+	public void getQuorumLockWithEndpointDown() throws Exception
+	{
+		// the endpoint of the configuration, listed twice so that it makes a majority,
+		// and a non-routable address that never answers
+		String host = ConfigurationManager.getHostname()[0];
+		int port = ConfigurationManager.getPortnumber()[0];
+		List<DataFactory> nodes = QuorumLocker.getEndpoints(new String[] { host, host, "10.255.255.1" },
+				new int[] { port, port, 6379 });
+		QuorumLocker locker = new QuorumLocker(StringHelper.getSaltString(), StringHelper.getSaltString(), nodes);
+
+		long timeout = ConfigurationManager.getLockQuorumEndpointTimeoutMSec();
+		long start = System.nanoTime();
+		assertEquals(true, locker.lock(500), "Lock was not acquired with a minority of the endpoints down.");
+		long elapsedMSec = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(elapsedMSec < (timeout + 250),
+				"Unreachable endpoint held the lock for " + elapsedMSec + "ms, timeout is " + timeout + "ms");
+
+		locker.unlock();
+	}
+}
@@ -0,0 +1,72 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.helper.ConfigurationManager;
+import com.microsoft.cse.redis.api.retry.RetryPolicy;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Tests for the retry policies used by RetryAspect. These tests don't need
+ * Redis.
+ */
+public class RetryPolicyTest
+{
+	/**
+	 * Only failures that show the command never ran may be retried for
+	 * non-idempotent commands, and data errors are never retried.
+	 */
+	@Test
+	public void shouldClassifyFailures()
+	{
+		Exception refused = new JedisConnectionException("Failed connecting",
+				new ConnectException("Connection refused"));
+		Exception broken = new JedisConnectionException(new SocketTimeoutException("Read timed out"));
+		Exception loading = new JedisDataException("LOADING Redis is loading the dataset in memory");
+		Exception wrongType = new JedisDataException(
+				"WRONGTYPE Operation against a key holding the wrong kind of value");
+
+		assertTrue(RetryPolicy.isRetriable(refused, false), "Refused connection was not retried.");
+		assertTrue(RetryPolicy.isRetriable(loading, false), "LOADING was not retried.");
+		assertTrue(RetryPolicy.isRetriable(broken, true), "Broken connection was not retried.");
+		assertFalse(RetryPolicy.isRetriable(broken, false), "Non-idempotent command was retried.");
+		assertFalse(RetryPolicy.isRetriable(wrongType, true), "Data error was retried.");
+		assertFalse(RetryPolicy.isRetriable(new IllegalArgumentException(), true), "Bug was retried.");
+	}
+
+	/**
+	 * Backoffs must be jittered between 0 and the exponential backoff of the
+	 * retry, capped by RETRY_MAX_BACKOFF_MSEC.
+	 */
+	@Test
+	public void shouldJitterBackoff()
+	{
+		RetryPolicy p = RetryPolicy.forOperation("shouldJitterBackoff");
+		int base = ConfigurationManager.getIntProperty("RETRY_BACKOFF_MSEC", 10);
+		int max = ConfigurationManager.getIntProperty("RETRY_MAX_BACKOFF_MSEC", 200);
+
+		assertEquals(ConfigurationManager.getIntProperty("RETRY_ATTEMPTS", 3), p.getAttempts(),
+				"Default attempts were not used.");
+
+		long longest = 0;
+		for (int i = 0; i < 10000; i++)
+		{
+			long first = p.backoffMSec(1);
+			assertTrue((first >= 0) && (first <= base), "First backoff out of range: " + first);
+
+			long late = p.backoffMSec(30);
+			assertTrue((late >= 0) && (late <= max), "Backoff went over the cap: " + late);
+			longest = Math.max(longest, late);
+		}
+		assertTrue(longest > (max / 2), "Backoff was not exponential.");
+	}
+}
@@ -0,0 +1,113 @@
+package com.microsoft.cse.redis.unitTests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.cse.redis.api.helper.StringHelper;
+import com.microsoft.cse.redis.api.redis.data.DataFactory;
+import com.microsoft.cse.redis.api.streams.StreamConsumer;
+import com.microsoft.cse.redis.api.streams.StreamProducer;
+
+import redis.clients.jedis.StreamEntry;
+import redis.clients.jedis.StreamEntryID;
+
+/**
+ * Tests for stream producers and consumer groups.
+ */
+public class StreamTest
+{
+	public static DataFactory d;
+
+	@BeforeAll
+	static void setup()
+	{
+		TestBase.setup();
+
+		d = DataFactory.getDataFactory(TestBase.getConnectionFactory());
+	}
+
+	@AfterAll
+	static void tearDown()
+	{
+		TestBase.teardown();
+	}
+
+	/**
+	 * Adds a batch of entries, reads them all back through a consumer group and
+	 * acknowledges them, after which nothing is pending anymore.
+	 */
+	@Test
+	public void shouldConsumeAndAcknowledge() throws Exception
+	{
+		String stream = StringHelper.getSaltString();
+		StreamProducer producer = new StreamProducer(stream);
+
+		List<Map<String, String>> entries = new ArrayList<>();
+		for (int i = 0; i < 250; i++)
+		{
+			entries.add(Collections.singletonMap("n", String.valueOf(i)));
+		}
+		List<StreamEntryID> ids = producer.add(entries);
+		assertEquals(250, ids.size());
+
+		try (StreamConsumer consumer = new StreamConsumer(stream, "group", "consumer"))
+		{
+			List<StreamEntry> read = new ArrayList<>();
+			List<StreamEntry> batch;
+			while (!(batch = consumer.read(100)).isEmpty())
+			{
+				read.addAll(batch);
+				consumer.ack(batch);
+			}
+
+			assertEquals(250, read.size());
+			assertEquals(ids.get(0), read.get(0).getID());
+			assertEquals("249", read.get(249).getFields().get("n"));
+
+			consumer.flushAcks();
+			assertEquals(0, consumer.getPendingCount());
+			assertEquals(250, consumer.getAcked());
+		}
+
+		d.delete(stream);
+	}
+
+	/**
+	 * Reads entries with one consumer without acknowledging them; a second
+	 * consumer of the group must be able to claim them.
+	 */
+	@Test
+	public void shouldClaimPendingEntries() throws Exception
+	{
+		String stream = StringHelper.getSaltString();
+		new StreamProducer(stream).add(Collections.singletonMap("n", "1"));
+
+		try (StreamConsumer dead = new StreamConsumer(stream, "group", "dead");
+				StreamConsumer alive = new StreamConsumer(stream, "group", "alive"))
+		{
+			assertEquals(1, dead.read(10).size());
+			assertEquals(1, dead.getPendingCount());
+			assertTrue(dead.getLag() >= 1);
+
+			Thread.sleep(50);
+			List<StreamEntry> claimed = alive.claim(10, 10);
+			assertEquals(1, claimed.size());
+			assertEquals("1", claimed.get(0).getFields().get("n"));
+			assertEquals(0, dead.getPendingCount());
+			assertEquals(1, alive.getPendingCount());
+
+			alive.ack(claimed);
+		}
+
+		d.delete(stream);
+	}
+}